@@ -1,12 +1,22 @@
 package io.github.sijiezhong.track;
 
+import io.github.sijiezhong.track.config.AnalyticsCacheProperties;
+import io.github.sijiezhong.track.config.ExportProperties;
+import io.github.sijiezhong.track.config.FunnelProperties;
 import io.github.sijiezhong.track.config.IdempotencyProperties;
+import io.github.sijiezhong.track.config.ImportProperties;
+import io.github.sijiezhong.track.config.ReplicaProperties;
+import io.github.sijiezhong.track.config.RollupProperties;
+import io.github.sijiezhong.track.config.SketchProperties;
+import io.github.sijiezhong.track.config.SseProperties;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 
 @SpringBootApplication
-@EnableConfigurationProperties({IdempotencyProperties.class})
+@EnableConfigurationProperties({IdempotencyProperties.class, SseProperties.class, ReplicaProperties.class, ExportProperties.class,
+        ImportProperties.class, RollupProperties.class, FunnelProperties.class, SketchProperties.class,
+        AnalyticsCacheProperties.class})
 public class TrackApplication {
     public static void main(String[] args) {
         SpringApplication.run(TrackApplication.class, args);
@@ -0,0 +1,218 @@
+package io.github.sijiezhong.track.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.sijiezhong.track.config.AnalyticsCacheProperties;
+import io.github.sijiezhong.track.config.RollupProperties;
+import io.github.sijiezhong.track.rollup.RollupAggregator;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 两级分析结果缓存
+ *
+ * <p>查找顺序为本地有界缓存、Redis 共享层（可选）、最后计算。同一节点上同一键的并发未命中只计算一次，
+ * 其余请求等待同一结果。历史结果的缓存键带有应用的历史版本，迟到数据被预聚合器处理后版本变化，
+ * 旧条目不再命中并按最近使用淘汰；包含今天的结果只缓存 analytics-cache.today-ttl-seconds。
+ *
+ * <p>历史结果的正确性与预聚合器绑定：event_history_version 只由 {@link RollupAggregator} 在处理批次时推进，
+ * 绕过它写入或删除的历史事件不会让缓存失效。rollup.enabled=false 时版本不再变化，
+ * 所有结果都按包含今天的结果处理，只缓存 today-ttl-seconds。
+ *
+ * <p>按版本缓存的查找在一个只读、可重复读的事务中完成：历史版本与未命中时的计算读同一连接、同一快照，
+ * 只读事务路由到副本时也不会把副本上落后的结果存到主库上更新的版本下。
+ *
+ * <p>结果在计算时序列化一次，ETag 为 JSON 的摘要，随结果一同缓存；Redis 层存放 JSON，
+ * 其他节点读取后反序列化为相同结构，ETag 保持一致。Redis 出错时只记录日志，退回本地计算。
+ */
+@Component
+public class AnalyticsCache {
+
+    private static final Logger log = LoggerFactory.getLogger(AnalyticsCache.class);
+
+    private static final String VERSION_SQL =
+            "select coalesce((select v.version from event_history_version v where v.app_id = ?), 0)";
+
+    private final AnalyticsCacheProperties properties;
+    private final RollupProperties rollupProperties;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate snapshotTx;
+    private final ObjectMapper objectMapper;
+    private final RedisAnalyticsCacheTier redisTier;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Entry> local;
+    private final ConcurrentHashMap<String, CompletableFuture<CachedResult<?>>> inflight = new ConcurrentHashMap<>();
+
+    @Autowired
+    public AnalyticsCache(AnalyticsCacheProperties properties, RollupProperties rollupProperties,
+                          JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                          ObjectMapper objectMapper,
+                          @Autowired(required = false) RedisAnalyticsCacheTier redisTier,
+                          @Autowired(required = false) MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.rollupProperties = rollupProperties;
+        this.jdbcTemplate = jdbcTemplate;
+        this.snapshotTx = new TransactionTemplate(transactionManager);
+        this.snapshotTx.setReadOnly(true);
+        this.snapshotTx.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.objectMapper = objectMapper;
+        this.redisTier = redisTier;
+        this.meterRegistry = meterRegistry;
+        int maxEntries = Math.max(1, properties.getLocalMaxEntries());
+        this.local = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * 读取或计算结果
+     *
+     * @param historical 结果只依赖今天之前的数据；预聚合器关闭时忽略，按包含今天处理
+     * @param type 结果类型，用于从 Redis 层反序列化
+     * @param loader 未命中时计算结果
+     */
+    public <T> CachedResult<T> get(QuerySignature signature, boolean historical, TypeReference<T> type, Supplier<T> loader) {
+        if (!properties.isEnabled()) {
+            return seal(loader.get());
+        }
+        // 预聚合器关闭时历史版本不会推进，按版本缓存的历史结果永远不会失效
+        if (!historical || !rollupProperties.isEnabled()) {
+            return lookup(signature.canonical() + "@today", type, loader,
+                    Duration.ofSeconds(properties.getTodayTtlSeconds()));
+        }
+        // 版本与未命中时的计算读同一快照，见类注释
+        return snapshotTx.execute(status -> lookup(signature.canonical() + "@v" + historyVersion(signature.appId()),
+                type, loader, Duration.ofSeconds(properties.getHistoricalTtlSeconds())));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CachedResult<T> lookup(String key, TypeReference<T> type, Supplier<T> loader, Duration ttl) {
+        CachedResult<T> hit = (CachedResult<T>) localGet(key);
+        if (hit != null) {
+            count("local");
+            return hit;
+        }
+        CompletableFuture<CachedResult<?>> mine = new CompletableFuture<>();
+        CompletableFuture<CachedResult<?>> running = inflight.putIfAbsent(key, mine);
+        if (running != null) {
+            count("shared");
+            return (CachedResult<T>) join(running);
+        }
+        try {
+            CachedResult<T> result = loadThrough(key, type, loader, ttl);
+            localPut(key, result, ttl);
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException ex) {
+            mine.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inflight.remove(key, mine);
+        }
+    }
+
+    /**
+     * 计算结果的 ETag，缓存关闭时使用
+     */
+    public <T> CachedResult<T> seal(T value) {
+        return new CachedResult<>(value, etag(toJson(value)));
+    }
+
+    private <T> CachedResult<T> loadThrough(String key, TypeReference<T> type, Supplier<T> loader, Duration ttl) {
+        String redisKey = redisTier == null ? null : QuerySignature.sha256Hex(key.getBytes(StandardCharsets.UTF_8));
+        if (redisTier != null) {
+            try {
+                String[] shared = redisTier.get(redisKey);
+                if (shared != null) {
+                    count("redis");
+                    return new CachedResult<>(objectMapper.readValue(shared[1], type), shared[0]);
+                }
+            } catch (RuntimeException | JsonProcessingException ex) {
+                log.warn("读取共享分析缓存失败，改为本地计算: error={}", ex.getMessage());
+            }
+        }
+        count("miss");
+        T value = loader.get();
+        String json = toJson(value);
+        CachedResult<T> result = new CachedResult<>(value, etag(json));
+        if (redisTier != null) {
+            try {
+                redisTier.put(redisKey, result.etag(), json, ttl);
+            } catch (RuntimeException ex) {
+                log.warn("写入共享分析缓存失败: error={}", ex.getMessage());
+            }
+        }
+        return result;
+    }
+
+    private long historyVersion(Integer appId) {
+        Long version = jdbcTemplate.queryForObject(VERSION_SQL, Long.class, appId);
+        return version == null ? 0 : version;
+    }
+
+    private CachedResult<?> localGet(String key) {
+        synchronized (local) {
+            Entry entry = local.get(key);
+            if (entry == null) return null;
+            if (entry.expiresAt() < System.currentTimeMillis()) {
+                local.remove(key);
+                return null;
+            }
+            return entry.result();
+        }
+    }
+
+    private void localPut(String key, CachedResult<?> result, Duration ttl) {
+        synchronized (local) {
+            local.put(key, new Entry(result, System.currentTimeMillis() + ttl.toMillis()));
+        }
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("分析结果序列化失败", e);
+        }
+    }
+
+    static String etag(String json) {
+        return "\"" + QuerySignature.sha256Hex(json.getBytes(StandardCharsets.UTF_8)).substring(0, 32) + "\"";
+    }
+
+    private static CachedResult<?> join(CompletableFuture<CachedResult<?>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) throw cause;
+            throw ex;
+        }
+    }
+
+    private void count(String outcome) {
+        if (meterRegistry != null) meterRegistry.counter("track.analytics.cache", "outcome", outcome).increment();
+    }
+
+    private record Entry(CachedResult<?> result, long expiresAt) {
+    }
+}
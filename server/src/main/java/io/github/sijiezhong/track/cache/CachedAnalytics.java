@@ -0,0 +1,101 @@
+package io.github.sijiezhong.track.cache;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import io.github.sijiezhong.track.funnel.FunnelOrder;
+import io.github.sijiezhong.track.service.AnalyticsService;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 带缓存的看板分析查询：趋势、路径、留存、漏斗
+ *
+ * <p>查询依赖的数据在今天零点之前结束时作为历史结果缓存，否则作为今天的结果短时缓存。
+ * 趋势按天可加，跨越今天零点的范围拆成历史与今天两段分别缓存再拼接，刷新时只重算今天的部分；
+ * 其余查询按会话或 cohort 跨天关联，不能拆分，整体归入其中一类。
+ */
+@Component
+public class CachedAnalytics {
+
+    private static final TypeReference<List<Map<String, Object>>> ROWS = new TypeReference<>() {};
+    private static final TypeReference<Map<String, Object>> OBJECT = new TypeReference<>() {};
+
+    private final AnalyticsService analyticsService;
+    private final AnalyticsCache cache;
+
+    public CachedAnalytics(AnalyticsService analyticsService, AnalyticsCache cache) {
+        this.analyticsService = analyticsService;
+        this.cache = cache;
+    }
+
+    public CachedResult<List<Map<String, Object>>> trendDaily(Integer appId, String eventName, LocalDateTime start,
+                                                              LocalDateTime end) {
+        LocalDateTime today = LocalDate.now().atStartOfDay();
+        if (end != null && end.isBefore(today)) {
+            return trendPart(appId, eventName, start, end, true);
+        }
+        if (start != null && !start.isBefore(today)) {
+            return trendPart(appId, eventName, start, end, false);
+        }
+        // 时间范围为闭区间，历史段截止到今天零点前1微秒（数据库时间精度）
+        CachedResult<List<Map<String, Object>>> past = trendPart(appId, eventName, start, today.minusNanos(1_000), true);
+        CachedResult<List<Map<String, Object>>> current = trendPart(appId, eventName, today, end, false);
+        List<Map<String, Object>> rows = new ArrayList<>(past.value().size() + current.value().size());
+        rows.addAll(past.value());
+        rows.addAll(current.value());
+        return cache.seal(rows);
+    }
+
+    public CachedResult<List<Map<String, Object>>> pathEdges(Integer appId, LocalDateTime start, LocalDateTime end) {
+        QuerySignature signature = QuerySignature.of("path", appId).with("start", start).with("end", end);
+        return cache.get(signature, endsBeforeToday(end, 0), ROWS,
+                () -> analyticsService.pathEdges(appId, start, end));
+    }
+
+    /**
+     * 回访事件不受结束时间限制，最晚到结束日之后第 day 天，历史判断需包含回访窗口
+     */
+    public CachedResult<List<Map<String, Object>>> retentionDaily(Integer appId, String cohortEvent, String returnEvent,
+                                                                  Integer day, LocalDateTime start, LocalDateTime end) {
+        QuerySignature signature = QuerySignature.of("retention", appId).with("cohortEvent", cohortEvent)
+                .with("returnEvent", returnEvent).with("day", day).with("start", start).with("end", end);
+        return cache.get(signature, endsBeforeToday(end, day), ROWS,
+                () -> analyticsService.retentionDaily(appId, cohortEvent, returnEvent, day, start, end));
+    }
+
+    public CachedResult<List<Map<String, Object>>> retentionMatrix(Integer appId, String cohortEvent, String returnEvent,
+                                                                   int days, LocalDateTime start, LocalDateTime end) {
+        QuerySignature signature = QuerySignature.of("retentionMatrix", appId).with("cohortEvent", cohortEvent)
+                .with("returnEvent", returnEvent).with("days", days).with("start", start).with("end", end);
+        return cache.get(signature, endsBeforeToday(end, days), ROWS,
+                () -> analyticsService.retentionMatrix(appId, cohortEvent, returnEvent, days, start, end));
+    }
+
+    public CachedResult<Map<String, Object>> funnel(Integer appId, List<String> steps, LocalDateTime start,
+                                                    LocalDateTime end, Integer windowDays, FunnelOrder order) {
+        QuerySignature signature = QuerySignature.of("funnel", appId).with("steps", steps).with("start", start)
+                .with("end", end).with("windowDays", windowDays).with("order", order);
+        return cache.get(signature, endsBeforeToday(end, 0), OBJECT,
+                () -> analyticsService.funnel(appId, steps, start, end, windowDays, order));
+    }
+
+    private CachedResult<List<Map<String, Object>>> trendPart(Integer appId, String eventName, LocalDateTime start,
+                                                              LocalDateTime end, boolean historical) {
+        QuerySignature signature = QuerySignature.of("trend", appId).with("eventName", eventName)
+                .with("start", start).with("end", end);
+        return cache.get(signature, historical, ROWS, () -> analyticsService.trendDaily(appId, eventName, start, end));
+    }
+
+    /**
+     * 结束时间所在日之后再过 extraDays 天仍早于今天，即依赖的数据都在今天之前
+     */
+    static boolean endsBeforeToday(LocalDateTime end, Integer extraDays) {
+        if (end == null) return false;
+        int extra = extraDays == null ? 0 : Math.max(0, extraDays);
+        return end.toLocalDate().plusDays(extra).isBefore(LocalDate.now());
+    }
+}
@@ -0,0 +1,10 @@
+package io.github.sijiezhong.track.cache;
+
+/**
+ * 缓存的分析结果及其 ETag
+ *
+ * @param value 结果，发布后只读
+ * @param etag 结果 JSON 的摘要（含引号），内容相同的结果 ETag 相同
+ */
+public record CachedResult<T>(T value, String etag) {
+}
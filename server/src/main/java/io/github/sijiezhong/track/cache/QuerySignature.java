@@ -0,0 +1,66 @@
+package io.github.sijiezhong.track.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 规范化的查询签名
+ *
+ * <p>参数按名称排序，空值省略，字符串去掉首尾空白，时间取 ISO 格式，列表保持顺序。
+ * 参数相同而书写顺序不同的请求得到同一签名。
+ */
+public final class QuerySignature {
+
+    private final String query;
+    private final Integer appId;
+    private final Map<String, String> params = new TreeMap<>();
+
+    private QuerySignature(String query, Integer appId) {
+        this.query = query;
+        this.appId = appId;
+    }
+
+    public static QuerySignature of(String query, Integer appId) {
+        return new QuerySignature(query, appId);
+    }
+
+    public QuerySignature with(String name, Object value) {
+        if (value == null) return this;
+        String normalized = value instanceof List<?> list
+                ? String.join(",", list.stream().map(v -> String.valueOf(v).trim()).toList())
+                : String.valueOf(value).trim();
+        params.put(name, normalized);
+        return this;
+    }
+
+    public Integer appId() {
+        return appId;
+    }
+
+    /**
+     * 签名的规范文本，如 trend|app=1|end=2024-01-31T00:00|eventName=pv
+     */
+    public String canonical() {
+        StringBuilder sb = new StringBuilder(query).append("|app=").append(appId);
+        params.forEach((k, v) -> sb.append('|').append(k).append('=').append(v));
+        return sb.toString();
+    }
+
+    static String sha256Hex(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return canonical();
+    }
+}
@@ -0,0 +1,41 @@
+package io.github.sijiezhong.track.cache;
+
+import io.github.sijiezhong.track.config.AnalyticsCacheProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 分析结果的 Redis 共享缓存层
+ * 仅在 analytics-cache.redis=true 时创建
+ *
+ * <p>值为 ETag 与结果 JSON，以换行分隔；过期时间与本地层相同。
+ */
+@Component
+@ConditionalOnProperty(prefix = "analytics-cache", name = "redis", havingValue = "true")
+public class RedisAnalyticsCacheTier {
+
+    private final StringRedisTemplate redis;
+    private final String prefix;
+
+    public RedisAnalyticsCacheTier(StringRedisTemplate redis, AnalyticsCacheProperties properties) {
+        this.redis = redis;
+        this.prefix = properties.getRedisKeyPrefix();
+    }
+
+    /**
+     * @return [etag, json]，不存在时为 null
+     */
+    public String[] get(String key) {
+        String val = redis.opsForValue().get(prefix + key);
+        if (val == null) return null;
+        int i = val.indexOf('\n');
+        return i < 0 ? null : new String[]{val.substring(0, i), val.substring(i + 1)};
+    }
+
+    public void put(String key, String etag, String json, Duration ttl) {
+        redis.opsForValue().set(prefix + key, etag + "\n" + json, ttl);
+    }
+}
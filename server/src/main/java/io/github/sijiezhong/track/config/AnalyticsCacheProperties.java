@@ -0,0 +1,45 @@
+package io.github.sijiezhong.track.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 分析结果缓存配置
+ *
+ * <p>趋势、漏斗、留存、路径结果按规范化的查询签名缓存。时间范围在今天之前结束的查询视为历史结果，
+ * 缓存键包含应用的历史版本（见 event_history_version），迟到数据或历史导入后自然失效；
+ * 其余结果只缓存较短时间。
+ */
+@ConfigurationProperties(prefix = "analytics-cache")
+public class AnalyticsCacheProperties {
+
+    // 关闭后每次请求都重新计算，仍然返回 ETag
+    private boolean enabled = true;
+    // 本地缓存条目上限，按最近使用淘汰
+    private int localMaxEntries = 2000;
+    // 历史结果的缓存时间（秒），版本号变化会提前失效
+    private long historicalTtlSeconds = 86_400;
+    // 包含今天的结果的缓存时间（秒）
+    private long todayTtlSeconds = 30;
+    // 是否启用 Redis 共享缓存层，多节点部署时各节点共享计算结果
+    private boolean redis = false;
+    // Redis 键前缀
+    private String redisKeyPrefix = "track:analytics:";
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+    public int getLocalMaxEntries() { return localMaxEntries; }
+    public void setLocalMaxEntries(int localMaxEntries) { this.localMaxEntries = localMaxEntries; }
+
+    public long getHistoricalTtlSeconds() { return historicalTtlSeconds; }
+    public void setHistoricalTtlSeconds(long historicalTtlSeconds) { this.historicalTtlSeconds = historicalTtlSeconds; }
+
+    public long getTodayTtlSeconds() { return todayTtlSeconds; }
+    public void setTodayTtlSeconds(long todayTtlSeconds) { this.todayTtlSeconds = todayTtlSeconds; }
+
+    public boolean isRedis() { return redis; }
+    public void setRedis(boolean redis) { this.redis = redis; }
+
+    public String getRedisKeyPrefix() { return redisKeyPrefix; }
+    public void setRedisKeyPrefix(String redisKeyPrefix) { this.redisKeyPrefix = redisKeyPrefix; }
+}
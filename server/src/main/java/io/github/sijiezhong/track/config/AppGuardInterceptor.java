@@ -16,10 +16,11 @@ public class AppGuardInterceptor implements HandlerInterceptor {
         String path = request.getRequestURI();
         // 仅保护敏感接口：
         // 1. 旧路径（向后兼容）：/api/admin, /api/analytics（包括所有子路径），/api/events/export, /api/webhook
-        // 2. 新路径的管理员和导出接口：/api/v1/admin, /api/v1/webhooks, /api/v1/events/export
+        // 2. 新路径的管理员和导出接口：/api/v1/admin, /api/v1/webhooks, /api/v1/events/export, /api/v1/events/changes, /api/v1/events/import
         // 注意：新路径的分析接口（/api/v1/events/trend等）不在拦截器保护范围内，让Spring Security先处理认证
         boolean isProtectedPath = path.startsWith("/api/v1/admin") || path.startsWith("/api/v1/webhooks") 
-            || path.startsWith("/api/v1/events/export")
+            || path.startsWith("/api/v1/events/export") || path.startsWith("/api/v1/events/changes")
+            || path.startsWith("/api/v1/events/import")
             // 向后兼容旧路径（注意：/api/analytics及其所有子路径都需要保护）
             || path.startsWith("/api/admin") || path.startsWith("/api/analytics") 
             || path.startsWith("/api/events/export") || path.startsWith("/api/webhook");
@@ -0,0 +1,154 @@
+package io.github.sijiezhong.track.config;
+
+import io.github.sijiezhong.track.export.arrow.ArrowCompression;
+import io.github.sijiezhong.track.export.parquet.ParquetCodec;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 事件导出配置
+ *
+ * <p>导出通过只读事务中的 JDBC 游标逐批读取并直接写入响应流，内存占用与导出行数无关。
+ */
+@ConfigurationProperties(prefix = "export")
+public class ExportProperties {
+
+    // 游标每次从数据库拉取的行数
+    private int fetchSize = 5000;
+    // 响应输出缓冲区大小（字节）
+    private int writeBufferBytes = 64 * 1024;
+    // Parquet 导出配置
+    private Parquet parquet = new Parquet();
+    // Arrow IPC 导出配置
+    private Arrow arrow = new Arrow();
+    // 异步导出任务配置
+    private Jobs jobs = new Jobs();
+    // 增量变更订阅配置
+    private Changes changes = new Changes();
+
+    public int getFetchSize() { return fetchSize; }
+    public void setFetchSize(int fetchSize) { this.fetchSize = fetchSize; }
+
+    public int getWriteBufferBytes() { return writeBufferBytes; }
+    public void setWriteBufferBytes(int writeBufferBytes) { this.writeBufferBytes = writeBufferBytes; }
+
+    public Parquet getParquet() { return parquet; }
+    public void setParquet(Parquet parquet) { this.parquet = parquet; }
+
+    public Arrow getArrow() { return arrow; }
+    public void setArrow(Arrow arrow) { this.arrow = arrow; }
+
+    public Jobs getJobs() { return jobs; }
+    public void setJobs(Jobs jobs) { this.jobs = jobs; }
+
+    public Changes getChanges() { return changes; }
+    public void setChanges(Changes changes) { this.changes = changes; }
+
+    /**
+     * Parquet 导出：内存中只缓冲一个行组
+     */
+    public static class Parquet {
+        // 行组大小（按未压缩估计字节数）
+        private long rowGroupBytes = 64L * 1024 * 1024;
+        // 每个数据页的最大行数
+        private int pageRows = 20_000;
+        // 页压缩方式 uncompressed | gzip
+        private ParquetCodec codec = ParquetCodec.GZIP;
+        // 字典列在单个行组内的最大字典条目数，超过后该行组改为 PLAIN 编码
+        private int maxDictionaryEntries = 65_536;
+
+        public long getRowGroupBytes() { return rowGroupBytes; }
+        public void setRowGroupBytes(long rowGroupBytes) { this.rowGroupBytes = rowGroupBytes; }
+
+        public int getPageRows() { return pageRows; }
+        public void setPageRows(int pageRows) { this.pageRows = pageRows; }
+
+        public ParquetCodec getCodec() { return codec; }
+        public void setCodec(ParquetCodec codec) { this.codec = codec; }
+
+        public int getMaxDictionaryEntries() { return maxDictionaryEntries; }
+        public void setMaxDictionaryEntries(int maxDictionaryEntries) { this.maxDictionaryEntries = maxDictionaryEntries; }
+    }
+
+    /**
+     * Arrow IPC 流导出：内存中只缓冲一个记录批次
+     */
+    public static class Arrow {
+        // 每个记录批次的行数
+        private int batchRows = 65_536;
+        // 缓冲区压缩方式 none | zstd
+        private ArrowCompression compression = ArrowCompression.NONE;
+
+        public int getBatchRows() { return batchRows; }
+        public void setBatchRows(int batchRows) { this.batchRows = batchRows; }
+
+        public ArrowCompression getCompression() { return compression; }
+        public void setCompression(ArrowCompression compression) { this.compression = compression; }
+    }
+
+    /**
+     * 异步导出任务：文件写入本地暂存目录，完成后按保留时间自动删除
+     */
+    public static class Jobs {
+        // 暂存目录
+        private String spoolDir = System.getProperty("java.io.tmpdir") + "/track-export";
+        // 工作线程数，即同时占用的数据库连接数上限
+        private int workerThreads = 2;
+        // 排队任务上限，超过后拒绝新任务
+        private int queueCapacity = 32;
+        // 单个应用同时排队或执行的任务上限
+        private int maxActivePerApp = 2;
+        // 单个任务的最大并行切片数
+        private int maxParallelism = 4;
+        // 所有任务共享的切片读取线程数
+        private int sliceThreads = 4;
+        // 文件保留时间（分钟），从任务结束开始计算
+        private long retentionMinutes = 60;
+        // 过期清理间隔（毫秒）
+        private long cleanupIntervalMs = 60_000;
+
+        public String getSpoolDir() { return spoolDir; }
+        public void setSpoolDir(String spoolDir) { this.spoolDir = spoolDir; }
+
+        public int getWorkerThreads() { return workerThreads; }
+        public void setWorkerThreads(int workerThreads) { this.workerThreads = workerThreads; }
+
+        public int getQueueCapacity() { return queueCapacity; }
+        public void setQueueCapacity(int queueCapacity) { this.queueCapacity = queueCapacity; }
+
+        public int getMaxActivePerApp() { return maxActivePerApp; }
+        public void setMaxActivePerApp(int maxActivePerApp) { this.maxActivePerApp = maxActivePerApp; }
+
+        public int getMaxParallelism() { return maxParallelism; }
+        public void setMaxParallelism(int maxParallelism) { this.maxParallelism = maxParallelism; }
+
+        public int getSliceThreads() { return sliceThreads; }
+        public void setSliceThreads(int sliceThreads) { this.sliceThreads = sliceThreads; }
+
+        public long getRetentionMinutes() { return retentionMinutes; }
+        public void setRetentionMinutes(long retentionMinutes) { this.retentionMinutes = retentionMinutes; }
+
+        public long getCleanupIntervalMs() { return cleanupIntervalMs; }
+        public void setCleanupIntervalMs(long cleanupIntervalMs) { this.cleanupIntervalMs = cleanupIntervalMs; }
+    }
+
+    /**
+     * 增量变更订阅：按 id 水位分页读取新事件
+     */
+    public static class Changes {
+        // 默认页大小
+        private int defaultLimit = 1000;
+        // 页大小上限
+        private int maxLimit = 10_000;
+        // 沉淀窗口（毫秒），创建时间在窗口内的事件暂不返回，应大于最长的写入事务
+        private long settleMs = 5000;
+
+        public int getDefaultLimit() { return defaultLimit; }
+        public void setDefaultLimit(int defaultLimit) { this.defaultLimit = defaultLimit; }
+
+        public int getMaxLimit() { return maxLimit; }
+        public void setMaxLimit(int maxLimit) { this.maxLimit = maxLimit; }
+
+        public long getSettleMs() { return settleMs; }
+        public void setSettleMs(long settleMs) { this.settleMs = settleMs; }
+    }
+}
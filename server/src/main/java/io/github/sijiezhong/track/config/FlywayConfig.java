@@ -0,0 +1,25 @@
+package io.github.sijiezhong.track.config;
+
+import org.springframework.boot.autoconfigure.flyway.FlywayConfigurationCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Map;
+
+/**
+ * Flyway 补充配置
+ *
+ * <p>CREATE INDEX CONCURRENTLY 要等待所有更早的事务结束，而 Flyway 默认在主连接上开事务取
+ * 事务级咨询锁，非事务迁移会被自己的锁事务挡住。这里改用会话级咨询锁。
+ * spring.flyway.postgresql.transactional-lock 在当前 Boot 与 Flyway 10 的组合下不生效，
+ * 因此直接以 Flyway 原生配置项设置。
+ */
+@Configuration
+public class FlywayConfig {
+
+    @Bean
+    public FlywayConfigurationCustomizer postgresqlSessionLockCustomizer() {
+        return configuration -> configuration.configuration(
+                Map.of("flyway.postgresql.transactional.lock", "false"));
+    }
+}
@@ -0,0 +1,19 @@
+package io.github.sijiezhong.track.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 漏斗分析配置
+ *
+ * <p>漏斗有两种执行方式：在应用内流式匹配，或在数据库内按会话聚合后匹配、只返回每步计数。
+ * 按执行计划估计的输入行数选择。
+ */
+@ConfigurationProperties(prefix = "funnel")
+public class FunnelProperties {
+
+    // 估计输入行数不小于该值时在数据库内计算；小于0表示始终在应用内计算
+    private long pushdownMinRows = 200_000;
+
+    public long getPushdownMinRows() { return pushdownMinRows; }
+    public void setPushdownMinRows(long pushdownMinRows) { this.pushdownMinRows = pushdownMinRows; }
+}
@@ -360,7 +360,8 @@ public class GlobalExceptionHandler {
         // 注意：分析接口不在受保护路径中，因为它们需要先检查认证（返回401）
         // 注意：查询接口不在受保护路径中，因为它返回400而不是403
         return path.startsWith("/api/v1/admin") || path.startsWith("/api/v1/webhooks")
-            || path.startsWith("/api/v1/events/export") || path.startsWith("/api/v1/events/stream")
+            || path.startsWith("/api/v1/events/export") || path.startsWith("/api/v1/events/changes") || path.startsWith("/api/v1/events/import")
+            || path.startsWith("/api/v1/events/stream")
             // 向后兼容旧路径
             || path.startsWith("/api/admin") || path.startsWith("/api/events/export") 
             || path.startsWith("/api/webhook");
@@ -0,0 +1,68 @@
+package io.github.sijiezhong.track.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 历史事件批量导入配置
+ *
+ * <p>上传文件先落盘，解析校验后经 COPY 并行写入无日志暂存表，再批量建立会话、按行号分块并行合并到 event 表。
+ */
+@ConfigurationProperties(prefix = "import")
+public class ImportProperties {
+
+    // 上传文件、拒绝行报告的暂存目录
+    private String spoolDir = System.getProperty("java.io.tmpdir") + "/track-import";
+    // 同时执行的导入任务数
+    private int workerThreads = 1;
+    // 排队任务上限，超过后拒绝新任务
+    private int queueCapacity = 4;
+    // 单个应用同时排队或执行的任务上限
+    private int maxActivePerApp = 1;
+    // COPY 写入暂存表的并行连接数
+    private int copyThreads = 4;
+    // 每次 COPY 的行数
+    private int copyBatchRows = 20_000;
+    // 合并到 event 表的并行连接数
+    private int mergeThreads = 4;
+    // 每个合并事务覆盖的行号范围
+    private int mergeChunkRows = 50_000;
+    // 拒绝行数上限，超过后任务失败且不合并任何数据；小于0表示不限制
+    private long maxRejects = 10_000;
+    // 任务与报告的保留时间（分钟），从任务结束开始计算
+    private long retentionMinutes = 24 * 60;
+    // 过期清理间隔（毫秒）
+    private long cleanupIntervalMs = 60_000;
+
+    public String getSpoolDir() { return spoolDir; }
+    public void setSpoolDir(String spoolDir) { this.spoolDir = spoolDir; }
+
+    public int getWorkerThreads() { return workerThreads; }
+    public void setWorkerThreads(int workerThreads) { this.workerThreads = workerThreads; }
+
+    public int getQueueCapacity() { return queueCapacity; }
+    public void setQueueCapacity(int queueCapacity) { this.queueCapacity = queueCapacity; }
+
+    public int getMaxActivePerApp() { return maxActivePerApp; }
+    public void setMaxActivePerApp(int maxActivePerApp) { this.maxActivePerApp = maxActivePerApp; }
+
+    public int getCopyThreads() { return copyThreads; }
+    public void setCopyThreads(int copyThreads) { this.copyThreads = copyThreads; }
+
+    public int getCopyBatchRows() { return copyBatchRows; }
+    public void setCopyBatchRows(int copyBatchRows) { this.copyBatchRows = copyBatchRows; }
+
+    public int getMergeThreads() { return mergeThreads; }
+    public void setMergeThreads(int mergeThreads) { this.mergeThreads = mergeThreads; }
+
+    public int getMergeChunkRows() { return mergeChunkRows; }
+    public void setMergeChunkRows(int mergeChunkRows) { this.mergeChunkRows = mergeChunkRows; }
+
+    public long getMaxRejects() { return maxRejects; }
+    public void setMaxRejects(long maxRejects) { this.maxRejects = maxRejects; }
+
+    public long getRetentionMinutes() { return retentionMinutes; }
+    public void setRetentionMinutes(long retentionMinutes) { this.retentionMinutes = retentionMinutes; }
+
+    public long getCleanupIntervalMs() { return cleanupIntervalMs; }
+    public void setCleanupIntervalMs(long cleanupIntervalMs) { this.cleanupIntervalMs = cleanupIntervalMs; }
+}
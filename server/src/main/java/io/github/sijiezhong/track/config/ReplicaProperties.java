@@ -0,0 +1,60 @@
+package io.github.sijiezhong.track.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 只读副本路由配置
+ *
+ * <p>开启后只读事务（{@code @Transactional(readOnly = true)}）的连接从副本获取，
+ * 读写事务与不在事务中的访问仍走主库。副本延迟超过阈值或不可达时自动回落到主库。
+ */
+@ConfigurationProperties(prefix = "replica")
+public class ReplicaProperties {
+
+    // 是否启用副本路由
+    private boolean enabled = false;
+    // 副本列表
+    private List<Node> nodes = new ArrayList<>();
+    // 可容忍的最大复制延迟（毫秒），超过后该副本暂停接收读流量
+    private long maxLagMs = 5000;
+    // 复制延迟探测间隔（毫秒）
+    private long lagCheckIntervalMs = 1000;
+    // 每个副本的连接池大小
+    private int maximumPoolSize = 10;
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+    public List<Node> getNodes() { return nodes; }
+    public void setNodes(List<Node> nodes) { this.nodes = nodes; }
+
+    public long getMaxLagMs() { return maxLagMs; }
+    public void setMaxLagMs(long maxLagMs) { this.maxLagMs = maxLagMs; }
+
+    public long getLagCheckIntervalMs() { return lagCheckIntervalMs; }
+    public void setLagCheckIntervalMs(long lagCheckIntervalMs) { this.lagCheckIntervalMs = lagCheckIntervalMs; }
+
+    public int getMaximumPoolSize() { return maximumPoolSize; }
+    public void setMaximumPoolSize(int maximumPoolSize) { this.maximumPoolSize = maximumPoolSize; }
+
+    /**
+     * 单个副本的连接信息，用户名与密码为空时沿用主库配置
+     */
+    public static class Node {
+        private String url;
+        private String username;
+        private String password;
+
+        public String getUrl() { return url; }
+        public void setUrl(String url) { this.url = url; }
+
+        public String getUsername() { return username; }
+        public void setUsername(String username) { this.username = username; }
+
+        public String getPassword() { return password; }
+        public void setPassword(String password) { this.password = password; }
+    }
+}
@@ -0,0 +1,34 @@
+package io.github.sijiezhong.track.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 按小时预聚合配置
+ *
+ * <p>后台聚合器按 event.id 水位把新事件累加到 event_rollup_hourly，趋势、热点与分群查询
+ * 由预聚合表加上水位之后的少量原始事件拼出结果。
+ */
+@ConfigurationProperties(prefix = "rollup")
+public class RollupProperties {
+
+    // 关闭后不运行聚合器，分析查询全部扫描原始事件
+    private boolean enabled = true;
+    // 聚合间隔（毫秒）
+    private long intervalMs = 10_000;
+    // 每个聚合事务最多处理的事件数
+    private int batchSize = 50_000;
+    // 沉淀窗口（毫秒），创建时间在窗口内的事件留给下一轮
+    private long settleMs = 5_000;
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+    public long getIntervalMs() { return intervalMs; }
+    public void setIntervalMs(long intervalMs) { this.intervalMs = intervalMs; }
+
+    public int getBatchSize() { return batchSize; }
+    public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+
+    public long getSettleMs() { return settleMs; }
+    public void setSettleMs(long settleMs) { this.settleMs = settleMs; }
+}
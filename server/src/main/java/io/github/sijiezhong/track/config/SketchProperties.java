@@ -0,0 +1,39 @@
+package io.github.sijiezhong.track.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 独立用户草图配置
+ *
+ * <p>后台聚合器按 event.id 水位把新事件的用户并入 event_user_sketch 中按天的 HyperLogLog 草图，
+ * 独立用户数由任意日期范围内的草图并集加上水位之后的少量原始事件估计。
+ */
+@ConfigurationProperties(prefix = "sketch")
+public class SketchProperties {
+
+    // 关闭后不运行聚合器，独立用户数改为精确去重
+    private boolean enabled = true;
+    // 聚合间隔（毫秒）
+    private long intervalMs = 10_000;
+    // 每个聚合事务最多处理的事件数
+    private int batchSize = 50_000;
+    // 沉淀窗口（毫秒），创建时间在窗口内的事件留给下一轮
+    private long settleMs = 5_000;
+    // 内存中缓存的草图个数上限，按最近使用淘汰；稠密草图约12KB
+    private int cacheMaxEntries = 4096;
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+    public long getIntervalMs() { return intervalMs; }
+    public void setIntervalMs(long intervalMs) { this.intervalMs = intervalMs; }
+
+    public int getBatchSize() { return batchSize; }
+    public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+
+    public long getSettleMs() { return settleMs; }
+    public void setSettleMs(long settleMs) { this.settleMs = settleMs; }
+
+    public int getCacheMaxEntries() { return cacheMaxEntries; }
+    public void setCacheMaxEntries(int cacheMaxEntries) { this.cacheMaxEntries = cacheMaxEntries; }
+}
@@ -0,0 +1,112 @@
+package io.github.sijiezhong.track.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * SSE 实时推送配置
+ *
+ * <p>上报线程只负责入队，由独立的分发线程池按订阅者写出，
+ * 每个订阅者拥有独立的有界队列，慢客户端不会拖慢上报接口。
+ */
+@ConfigurationProperties(prefix = "sse")
+public class SseProperties {
+
+    /**
+     * 订阅者队列满时的处理策略
+     */
+    public enum OverflowPolicy {
+        /** 丢弃队列中最旧的消息，保留最新消息 */
+        DROP_OLDEST,
+        /** 断开慢消费者，客户端可自行重连 */
+        DISCONNECT
+    }
+
+    /**
+     * 跨节点推送总线类型
+     */
+    public enum ClusterBus {
+        /** 单节点部署，不做跨节点转发 */
+        NONE,
+        /** Redis pub/sub */
+        REDIS,
+        /** PostgreSQL LISTEN/NOTIFY，无需额外中间件 */
+        POSTGRES
+    }
+
+    // SSE 连接超时时间（毫秒）
+    private long timeoutMs = 30 * 60 * 1000L;
+    // 每个订阅者的待发送队列容量
+    private int queueCapacity = 256;
+    // 队列溢出策略
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    // 分发线程数
+    private int dispatcherThreads = 4;
+    // 单次调度最多连续写出的消息数，避免单个订阅者长期占用分发线程
+    private int drainBatch = 64;
+    // 合并模式（mode=batch）的合并窗口（毫秒）
+    private long coalesceWindowMs = 100;
+    // 合并模式单帧最多携带的事件数，超出部分拆分为多帧
+    private int coalesceMaxEvents = 500;
+    // 每个应用保留用于断线重放的最近事件数，0 表示不重放
+    private int replayBufferSize = 1024;
+    // 跨节点转发配置
+    private Cluster cluster = new Cluster();
+
+    public long getTimeoutMs() { return timeoutMs; }
+    public void setTimeoutMs(long timeoutMs) { this.timeoutMs = timeoutMs; }
+
+    public int getQueueCapacity() { return queueCapacity; }
+    public void setQueueCapacity(int queueCapacity) { this.queueCapacity = queueCapacity; }
+
+    public OverflowPolicy getOverflowPolicy() { return overflowPolicy; }
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) { this.overflowPolicy = overflowPolicy; }
+
+    public int getDispatcherThreads() { return dispatcherThreads; }
+    public void setDispatcherThreads(int dispatcherThreads) { this.dispatcherThreads = dispatcherThreads; }
+
+    public int getDrainBatch() { return drainBatch; }
+    public void setDrainBatch(int drainBatch) { this.drainBatch = drainBatch; }
+
+    public long getCoalesceWindowMs() { return coalesceWindowMs; }
+    public void setCoalesceWindowMs(long coalesceWindowMs) { this.coalesceWindowMs = coalesceWindowMs; }
+
+    public int getCoalesceMaxEvents() { return coalesceMaxEvents; }
+    public void setCoalesceMaxEvents(int coalesceMaxEvents) { this.coalesceMaxEvents = coalesceMaxEvents; }
+
+    public int getReplayBufferSize() { return replayBufferSize; }
+    public void setReplayBufferSize(int replayBufferSize) { this.replayBufferSize = replayBufferSize; }
+
+    public Cluster getCluster() { return cluster; }
+    public void setCluster(Cluster cluster) { this.cluster = cluster; }
+
+    /**
+     * 跨节点转发：本节点上报的事件按应用批量发布到总线，其他节点只订阅有本地连接的应用
+     */
+    public static class Cluster {
+        // 总线类型
+        private ClusterBus bus = ClusterBus.NONE;
+        // 批量发布间隔（毫秒）
+        private long flushIntervalMs = 50;
+        // 单条总线消息最多携带的事件数
+        private int maxBatchEvents = 200;
+        // 待发布事件上限（所有应用合计），超出后新事件不再跨节点转发
+        private int outboxCapacity = 20000;
+        // 总线频道名前缀，后接应用ID
+        private String channelPrefix = "track_sse_";
+
+        public ClusterBus getBus() { return bus; }
+        public void setBus(ClusterBus bus) { this.bus = bus; }
+
+        public long getFlushIntervalMs() { return flushIntervalMs; }
+        public void setFlushIntervalMs(long flushIntervalMs) { this.flushIntervalMs = flushIntervalMs; }
+
+        public int getMaxBatchEvents() { return maxBatchEvents; }
+        public void setMaxBatchEvents(int maxBatchEvents) { this.maxBatchEvents = maxBatchEvents; }
+
+        public int getOutboxCapacity() { return outboxCapacity; }
+        public void setOutboxCapacity(int outboxCapacity) { this.outboxCapacity = outboxCapacity; }
+
+        public String getChannelPrefix() { return channelPrefix; }
+        public void setChannelPrefix(String channelPrefix) { this.channelPrefix = channelPrefix; }
+    }
+}
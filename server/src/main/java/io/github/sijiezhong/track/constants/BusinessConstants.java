@@ -45,6 +45,11 @@ public final class BusinessConstants {
      */
     public static final int MIN_FUNNEL_STEPS = 2;
     
+    /**
+     * 留存矩阵最大回访天数
+     */
+    public static final int MAX_RETENTION_DAYS = 90;
+    
     /**
      * 事件名称最大长度
      */
@@ -42,5 +42,14 @@ public final class HttpHeaderConstants {
      * X-Forwarded-For请求头（用于获取客户端真实IP）
      */
     public static final String HEADER_X_FORWARDED_FOR = "X-Forwarded-For";
+    
+    /**
+     * 增量变更订阅的下一个水位响应头
+     */
+    public static final String HEADER_NEXT_WATERMARK = "X-Next-Watermark";
+    
+    /**
+     * 增量变更订阅是否还有下一页响应头
+     */
+    public static final String HEADER_HAS_MORE = "X-Has-More";
 }
-
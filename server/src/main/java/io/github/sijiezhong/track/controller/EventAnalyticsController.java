@@ -1,10 +1,15 @@
 package io.github.sijiezhong.track.controller;
 
+import io.github.sijiezhong.track.cache.CachedAnalytics;
+import io.github.sijiezhong.track.cache.CachedResult;
 import io.github.sijiezhong.track.constants.ApiConstants;
+import io.github.sijiezhong.track.constants.BusinessConstants;
 import io.github.sijiezhong.track.constants.HttpHeaderConstants;
 import io.github.sijiezhong.track.dto.ApiResponse;
 import io.github.sijiezhong.track.exception.BusinessException;
 import io.github.sijiezhong.track.exception.ErrorCode;
+import io.github.sijiezhong.track.funnel.FunnelOrder;
+import io.github.sijiezhong.track.repository.PropertyFilter;
 import io.github.sijiezhong.track.service.AnalyticsService;
 import io.github.sijiezhong.track.util.ResponseUtil;
 import io.swagger.v3.oas.annotations.Operation;
@@ -19,6 +24,7 @@ import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import java.time.LocalDateTime;
 import java.util.Arrays;
@@ -31,6 +37,8 @@ import java.util.Map;
  * <p>提供事件数据的统计分析功能，包括趋势、路径、留存、漏斗、分群和热点分析。
  * 所有分析接口都需要应用ID请求头进行数据隔离。
  * 
+ * <p>趋势、路径、留存、漏斗结果经分析缓存返回并带 ETag，请求携带相同的 If-None-Match 时返回304。
+ * 
  * @author sijie
  */
 @RestController
@@ -41,9 +49,11 @@ public class EventAnalyticsController {
     private static final Logger log = LoggerFactory.getLogger(EventAnalyticsController.class);
 
     private final AnalyticsService analyticsService;
+    private final CachedAnalytics cachedAnalytics;
 
-    public EventAnalyticsController(AnalyticsService analyticsService) {
+    public EventAnalyticsController(AnalyticsService analyticsService, CachedAnalytics cachedAnalytics) {
         this.analyticsService = analyticsService;
+        this.cachedAnalytics = cachedAnalytics;
     }
 
     /**
@@ -64,7 +74,8 @@ public class EventAnalyticsController {
             @Parameter(description = "事件名", required = true) @RequestParam("eventName") String eventName,
             @Parameter(description = "粒度，仅支持daily") @RequestParam(name = "interval", defaultValue = "daily") String interval,
             @Parameter(description = "起始时间") @RequestParam(name = "startTime", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
-            @Parameter(description = "结束时间") @RequestParam(name = "endTime", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime) {
+            @Parameter(description = "结束时间") @RequestParam(name = "endTime", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime,
+            WebRequest webRequest) {
         
         log.debug("收到趋势分析请求: appId={}, eventName={}, interval={}", appId, eventName, interval);
         
@@ -72,8 +83,8 @@ public class EventAnalyticsController {
             throw new BusinessException(ErrorCode.BAD_REQUEST, "不支持的粒度: " + interval);
         }
         
-        List<Map<String, Object>> result = analyticsService.trendDaily(appId, eventName, startTime, endTime);
-        return ResponseUtil.success(result);
+        CachedResult<List<Map<String, Object>>> result = cachedAnalytics.trendDaily(appId, eventName, startTime, endTime);
+        return notModifiedOr(webRequest, result);
     }
 
     /**
@@ -90,12 +101,13 @@ public class EventAnalyticsController {
     public ApiResponse<List<Map<String, Object>>> path(
             @Parameter(description = "应用头，必填") @RequestHeader(HttpHeaderConstants.HEADER_APP_ID) Integer appId,
             @Parameter(description = "起始时间") @RequestParam(name = "startTime", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
-            @Parameter(description = "结束时间") @RequestParam(name = "endTime", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime) {
+            @Parameter(description = "结束时间") @RequestParam(name = "endTime", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime,
+            WebRequest webRequest) {
         
         log.debug("收到路径分析请求: appId={}", appId);
         
-        List<Map<String, Object>> result = analyticsService.pathEdges(appId, startTime, endTime);
-        return ResponseUtil.success(result);
+        CachedResult<List<Map<String, Object>>> result = cachedAnalytics.pathEdges(appId, startTime, endTime);
+        return notModifiedOr(webRequest, result);
     }
 
     /**
@@ -118,7 +130,8 @@ public class EventAnalyticsController {
             @Parameter(description = "回访事件名", required = true) @RequestParam("returnEvent") String returnEvent,
             @Parameter(description = "留存天数，如1表示第二天") @RequestParam(name = "day", defaultValue = "1") Integer day,
             @Parameter(description = "起始时间") @RequestParam(name = "startTime", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
-            @Parameter(description = "结束时间") @RequestParam(name = "endTime", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime) {
+            @Parameter(description = "结束时间") @RequestParam(name = "endTime", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime,
+            WebRequest webRequest) {
         
         log.debug("收到留存分析请求: appId={}, cohortEvent={}, returnEvent={}, day={}", 
             appId, cohortEvent, returnEvent, day);
@@ -127,8 +140,43 @@ public class EventAnalyticsController {
             throw new BusinessException(ErrorCode.BAD_REQUEST, "留存天数必须大于等于1");
         }
         
-        List<Map<String, Object>> result = analyticsService.retentionDaily(appId, cohortEvent, returnEvent, day, startTime, endTime);
-        return ResponseUtil.success(result);
+        CachedResult<List<Map<String, Object>>> result = cachedAnalytics.retentionDaily(appId, cohortEvent, returnEvent, day, startTime, endTime);
+        return notModifiedOr(webRequest, result);
+    }
+
+    /**
+     * 留存矩阵（按天）
+     * 
+     * @param appId 应用ID请求头（必填）
+     * @param cohortEvent cohort事件名称
+     * @param returnEvent 回访事件名称
+     * @param days 回访天数，计算第1..days天
+     * @param startTime 起始时间（可选）
+     * @param endTime 结束时间（可选）
+     * @return 每个cohort日的回访人数与留存率
+     */
+    @GetMapping("/retention/matrix")
+    @Operation(summary = "留存矩阵-按天", description = "一次返回第1..days天的留存，{cohortDate, cohort, retained[], rates[]}")
+    @PreAuthorize("hasAnyRole('ADMIN','ANALYST')")
+    public ApiResponse<List<Map<String, Object>>> retentionMatrix(
+            @Parameter(description = "应用头，必填") @RequestHeader(HttpHeaderConstants.HEADER_APP_ID) Integer appId,
+            @Parameter(description = "cohort事件名", required = true) @RequestParam("cohortEvent") String cohortEvent,
+            @Parameter(description = "回访事件名", required = true) @RequestParam("returnEvent") String returnEvent,
+            @Parameter(description = "回访天数") @RequestParam(name = "days", defaultValue = "7") Integer days,
+            @Parameter(description = "起始时间") @RequestParam(name = "startTime", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
+            @Parameter(description = "结束时间") @RequestParam(name = "endTime", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime,
+            WebRequest webRequest) {
+        
+        log.debug("收到留存矩阵请求: appId={}, cohortEvent={}, returnEvent={}, days={}", 
+            appId, cohortEvent, returnEvent, days);
+        
+        if (days == null || days < 1 || days > BusinessConstants.MAX_RETENTION_DAYS) {
+            throw new BusinessException(ErrorCode.BAD_REQUEST,
+                    "回访天数必须在1到" + BusinessConstants.MAX_RETENTION_DAYS + "之间");
+        }
+        
+        CachedResult<List<Map<String, Object>>> result = cachedAnalytics.retentionMatrix(appId, cohortEvent, returnEvent, days, startTime, endTime);
+        return notModifiedOr(webRequest, result);
     }
 
     /**
@@ -138,28 +186,32 @@ public class EventAnalyticsController {
      * @param stepsCsv 事件步骤（逗号分隔，如 a,b,c）
      * @param startTime 起始时间（可选）
      * @param endTime 结束时间（可选）
-     * @param windowDays 窗口天数（可选）
+     * @param windowDays 转化窗口天数，从第一步开始计算（可选）
+     * @param order 顺序约束 loose|strict（可选，默认loose）
      * @return 漏斗分析结果
      */
     @GetMapping("/funnel")
-    @Operation(summary = "漏斗分析", description = "steps=以逗号分隔的事件序列，返回 {steps, counts, conversionRates}")
+    @Operation(summary = "漏斗分析", description = "steps=以逗号分隔的事件序列，windowDays 限定转化窗口，order=loose|strict，返回 {steps, counts, conversionRates}")
     @PreAuthorize("hasAnyRole('ADMIN','ANALYST')")
     public ApiResponse<Map<String, Object>> funnel(
             @Parameter(description = "应用头，必填") @RequestHeader(HttpHeaderConstants.HEADER_APP_ID) Integer appId,
             @Parameter(description = "事件步骤，逗号分隔，如 a,b,c") @RequestParam("steps") String stepsCsv,
             @Parameter(description = "起始时间") @RequestParam(name = "startTime", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
             @Parameter(description = "结束时间") @RequestParam(name = "endTime", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime,
-            @Parameter(description = "窗口天数，可选") @RequestParam(name = "windowDays", required = false) Integer windowDays) {
+            @Parameter(description = "转化窗口天数，可选") @RequestParam(name = "windowDays", required = false) Integer windowDays,
+            @Parameter(description = "顺序约束 loose|strict，loose 允许步骤之间夹杂其他步骤事件") @RequestParam(name = "order", required = false) String order,
+            WebRequest webRequest) {
         
-        log.debug("收到漏斗分析请求: appId={}, steps={}", appId, stepsCsv);
+        log.debug("收到漏斗分析请求: appId={}, steps={}, windowDays={}, order={}", appId, stepsCsv, windowDays, order);
         
         List<String> steps = Arrays.stream(stepsCsv.split(","))
                 .map(String::trim)
                 .filter(s -> !s.isEmpty())
                 .toList();
         
-        Map<String, Object> result = analyticsService.funnel(appId, steps, startTime, endTime);
-        return ResponseUtil.success(result);
+        CachedResult<Map<String, Object>> result = cachedAnalytics.funnel(appId, steps, startTime, endTime, windowDays,
+                FunnelOrder.from(order));
+        return notModifiedOr(webRequest, result);
     }
 
     /**
@@ -167,20 +219,22 @@ public class EventAnalyticsController {
      * 
      * @param appId 应用ID请求头（必填）
      * @param eventName 事件名称
-     * @param by 分组字段（支持 browser|device|os|referrer）
+     * @param by 分组字段（支持 browser|device|os|referrer|properties.属性名）
+     * @param props 属性过滤条件，格式 key:value（可选，可重复）
      * @return 分群统计结果
      */
     @GetMapping("/segmentation")
-    @Operation(summary = "分群统计", description = "按字段分组统计事件数量，by 支持 browser|device|os|referrer")
+    @Operation(summary = "分群统计", description = "按字段分组统计事件数量，by 支持 browser|device|os|referrer|properties.<key>；prop=key:value 按属性过滤")
     @PreAuthorize("hasAnyRole('ADMIN','ANALYST')")
     public ApiResponse<Map<String, Object>> segmentation(
             @Parameter(description = "应用头，必填") @RequestHeader(HttpHeaderConstants.HEADER_APP_ID) Integer appId,
             @Parameter(description = "事件名") @RequestParam("eventName") String eventName,
-            @Parameter(description = "分组字段", example = "browser") @RequestParam("by") String by) {
+            @Parameter(description = "分组字段", example = "browser") @RequestParam("by") String by,
+            @Parameter(description = "属性过滤 key:value，可重复") @RequestParam(name = "prop", required = false) List<String> props) {
         
-        log.debug("收到分群统计请求: appId={}, eventName={}, by={}", appId, eventName, by);
+        log.debug("收到分群统计请求: appId={}, eventName={}, by={}, prop={}", appId, eventName, by, props);
         
-        Map<String, Object> result = analyticsService.segmentation(appId, eventName, by);
+        Map<String, Object> result = analyticsService.segmentation(appId, eventName, by, PropertyFilter.parse(props));
         return ResponseUtil.success(result);
     }
 
@@ -205,4 +259,14 @@ public class EventAnalyticsController {
         Map<String, Object> result = analyticsService.heatmap(appId, eventName, bucket);
         return ResponseUtil.success(result);
     }
+
+    /**
+     * 结果 ETag 与 If-None-Match 相同时返回304（返回 null 表示响应已处理），否则返回结果并带上 ETag
+     */
+    private static <T> ApiResponse<T> notModifiedOr(WebRequest webRequest, CachedResult<T> result) {
+        if (webRequest.checkNotModified(result.etag())) {
+            return null;
+        }
+        return ResponseUtil.success(result.value());
+    }
 }
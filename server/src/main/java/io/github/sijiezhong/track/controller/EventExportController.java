@@ -2,36 +2,59 @@ package io.github.sijiezhong.track.controller;
 
 import io.github.sijiezhong.track.constants.ApiConstants;
 import io.github.sijiezhong.track.constants.HttpHeaderConstants;
-import io.github.sijiezhong.track.domain.Event;
-import io.github.sijiezhong.track.repository.EventRepository;
+import io.github.sijiezhong.track.config.ExportProperties;
+import io.github.sijiezhong.track.dto.ApiResponse;
+import io.github.sijiezhong.track.dto.ExportJobResponse;
+import io.github.sijiezhong.track.export.ChangeFeedPage;
+import io.github.sijiezhong.track.export.ChangeFeedReader;
+import io.github.sijiezhong.track.export.EventExportQuery;
+import io.github.sijiezhong.track.export.EventExportReader;
+import io.github.sijiezhong.track.export.ExportColumnSelection;
+import io.github.sijiezhong.track.export.ExportFormat;
+import io.github.sijiezhong.track.export.ExportJob;
+import io.github.sijiezhong.track.export.ExportJobService;
+import io.github.sijiezhong.track.export.ExportRowWriter;
+import io.github.sijiezhong.track.exception.BusinessException;
+import io.github.sijiezhong.track.exception.ErrorCode;
+import io.github.sijiezhong.track.exception.ForbiddenException;
+import io.github.sijiezhong.track.exception.ResourceNotFoundException;
+import io.github.sijiezhong.track.repository.PropertyFilter;
+import io.github.sijiezhong.track.util.ResponseUtil;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.domain.Sort;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.ByteArrayOutputStream;
-import java.nio.charset.StandardCharsets;
-import java.time.format.DateTimeFormatter;
+import java.io.BufferedOutputStream;
+import java.net.URI;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * 事件导出控制器
  * 
- * <p>提供事件数据的导出功能，支持CSV和Parquet格式。
+ * <p>提供事件数据的导出功能，支持CSV、NDJSON、Arrow IPC和Parquet格式，可同步流式下载，也可提交异步导出任务。
  * 所有导出都会进行应用隔离，确保数据安全。
  * 
  * @author sijie
@@ -43,191 +66,367 @@ public class EventExportController {
 
     private static final Logger log = LoggerFactory.getLogger(EventExportController.class);
 
-    private final EventRepository eventRepository;
+    private final EventExportReader exportReader;
+    private final ExportJobService exportJobService;
+    private final ChangeFeedReader changeFeedReader;
+    private final ExportProperties exportProperties;
 
-    public EventExportController(EventRepository eventRepository) {
-        this.eventRepository = eventRepository;
+    public EventExportController(EventExportReader exportReader, ExportJobService exportJobService,
+                                 ChangeFeedReader changeFeedReader, ExportProperties exportProperties) {
+        this.exportReader = exportReader;
+        this.exportJobService = exportJobService;
+        this.changeFeedReader = changeFeedReader;
+        this.exportProperties = exportProperties;
     }
 
     /**
      * 导出事件CSV
      * 
-     * <p>根据应用ID导出事件数据为CSV格式。支持字段选择和事件名过滤。
+     * <p>根据应用ID导出事件数据为CSV格式。支持字段选择、事件名、时间范围和属性过滤。
      * 只读用户将自动隐藏properties字段。
      * 
+     * <p>数据经只读事务中的 JDBC 游标逐批读取并直接写入响应流，内存占用与导出行数无关。
+     * 角色与参数在进入异步写出前校验，写出线程中没有安全上下文。
+     * 
      * @param appId 应用ID请求头（必填）
      * @param fieldsCsv 导出列（逗号分隔，如 id,eventName,appId；为空则使用默认列）
      * @param filterEventName 按事件名过滤（可选）
+     * @param startTime 起始时间（可选）
+     * @param endTime 结束时间（可选）
+     * @param props 属性过滤条件，格式 key:value（可选，可重复）
      * @return CSV文件响应
      */
     @GetMapping(value = "/export.csv", produces = "text/csv")
-    @Operation(summary = "导出事件CSV（按应用）", description = "根据 X-App-Id 导出该应用的事件CSV；支持 fields=列名逗号分隔 和 eventName 过滤")
-    public ResponseEntity<byte[]> exportCsv(
+    @Operation(summary = "导出事件CSV（按应用）", description = "根据 X-App-Id 流式导出该应用的事件CSV；支持 fields=列名逗号分隔、eventName、startTime/endTime 与 prop=key:value 属性过滤")
+    public ResponseEntity<StreamingResponseBody> exportCsv(
             @Parameter(description = "应用头，必填") @RequestHeader(HttpHeaderConstants.HEADER_APP_ID) Integer appId,
             @Parameter(description = "导出列，逗号分隔，如 id,eventName,appId；为空则使用默认列") @RequestParam(name = "fields", required = false) String fieldsCsv,
-            @Parameter(description = "按事件名过滤，可选") @RequestParam(name = "eventName", required = false) String filterEventName) {
+            @Parameter(description = "按事件名过滤，可选") @RequestParam(name = "eventName", required = false) String filterEventName,
+            @Parameter(description = "起始时间") @RequestParam(name = "startTime", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
+            @Parameter(description = "结束时间") @RequestParam(name = "endTime", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime,
+            @Parameter(description = "属性过滤 key:value，可重复") @RequestParam(name = "prop", required = false) List<String> props) {
         
-        log.info("收到CSV导出请求: appId={}, fields={}, filterEventName={}", appId, fieldsCsv, filterEventName);
+        log.info("收到CSV导出请求: appId={}, fields={}, filterEventName={}, startTime={}, endTime={}, prop={}",
+                appId, fieldsCsv, filterEventName, startTime, endTime, props);
         
-        List<Event> list = eventRepository.findAll(Sort.by(Sort.Direction.DESC, "id"));
-        List<Event> filtered = list.stream()
-                .filter(e -> appId.equals(e.getAppId()))
-                .filter(e -> filterEventName == null || filterEventName.equals(e.getEventName()))
-                .collect(Collectors.toList());
-
         boolean hideProperties = currentHasRole("ROLE_READONLY");
-        String[] selected = null;
-        if (fieldsCsv != null && !fieldsCsv.isBlank()) {
-            selected = fieldsCsv.split(",");
-        }
-        StringBuilder sb = new StringBuilder();
-        if (selected != null) {
-            // 按选择列输出表头
-            sb.append(String.join(",", selected)).append('\n');
-        } else {
-            if (hideProperties) {
-                sb.append("id,eventName,userId,sessionId,appId,eventTime,ua,referrer,ip,device,os,browser\n");
-            } else {
-                sb.append("id,eventName,userId,sessionId,appId,eventTime,ua,referrer,ip,device,os,browser,properties\n");
-            }
-        }
-        DateTimeFormatter fmt = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
-        for (Event e : filtered) {
-            if (selected != null) {
-                // 动态列输出
-                for (int i = 0; i < selected.length; i++) {
-                    String col = selected[i].trim();
-                    sb.append(csv(valueOf(col, e, fmt, hideProperties)));
-                    if (i < selected.length - 1) sb.append(',');
-                }
-                sb.append('\n');
-            } else {
-                sb.append(csv(e.getId()))
-                  .append(',').append(csv(e.getEventName()))
-                  .append(',').append(csv(e.getUserId()))
-                  .append(',').append(csv(e.getSessionId()))
-                  .append(',').append(csv(e.getAppId()))
-                  .append(',').append(csv(e.getEventTime() == null ? null : e.getEventTime().format(fmt)))
-                  .append(',').append(csv(e.getUa()))
-                  .append(',').append(csv(e.getReferrer()))
-                  .append(',').append(csv(e.getIp()))
-                  .append(',').append(csv(e.getDevice()))
-                  .append(',').append(csv(e.getOs()))
-                  .append(',').append(csv(e.getBrowser()));
-                if (!hideProperties) {
-                    sb.append(',').append(csv(e.getProperties()));
-                }
-                sb.append('\n');
-            }
-        }
-        
-        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
-        
-        log.info("CSV导出完成: appId={}, rowCount={}, size={} bytes", appId, filtered.size(), bytes.length);
-        
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=events.csv")
-                .contentType(MediaType.valueOf("text/csv"))
-                .body(bytes);
+        EventExportQuery query = exportQuery(appId, filterEventName, startTime, endTime, props, hideProperties);
+        // 列下推：只查询选中的列，过滤条件全部在数据库完成
+        ExportColumnSelection selection = ExportColumnSelection.parse(fieldsCsv, hideProperties);
+
+        return stream(ExportFormat.CSV, query, selection);
     }
 
     /**
      * 导出事件Parquet
      * 
-     * <p>根据应用ID导出事件数据为Parquet格式（当前为最小可用实现）。
+     * <p>列式格式，字段类型与事件表一致；事件名、设备、系统、浏览器列使用字典编码。
+     * 与 CSV 导出相同，经 JDBC 游标流式读取，内存中只缓冲一个行组。
      * 
      * @param appId 应用ID请求头（必填）
+     * @param fieldsCsv 导出列（逗号分隔；为空则使用默认列，未知列忽略）
+     * @param filterEventName 按事件名过滤（可选）
+     * @param startTime 起始时间（可选）
+     * @param endTime 结束时间（可选）
+     * @param props 属性过滤条件，格式 key:value（可选，可重复）
      * @return Parquet文件响应
      */
     @GetMapping(value = "/export.parquet", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
-    @Operation(summary = "导出事件Parquet（按应用）", description = "根据 X-App-Id 导出该应用的事件Parquet（最小可用实现）")
-    public ResponseEntity<byte[]> exportParquet(@Parameter(description = "应用头，必填") @RequestHeader(HttpHeaderConstants.HEADER_APP_ID) Integer appId) {
-        log.info("收到Parquet导出请求: appId={}", appId);
+    @Operation(summary = "导出事件Parquet（按应用）", description = "根据 X-App-Id 流式导出该应用的事件Parquet；过滤参数与 CSV 导出一致")
+    public ResponseEntity<StreamingResponseBody> exportParquet(
+            @Parameter(description = "应用头，必填") @RequestHeader(HttpHeaderConstants.HEADER_APP_ID) Integer appId,
+            @Parameter(description = "导出列，逗号分隔；为空则使用默认列") @RequestParam(name = "fields", required = false) String fieldsCsv,
+            @Parameter(description = "按事件名过滤，可选") @RequestParam(name = "eventName", required = false) String filterEventName,
+            @Parameter(description = "起始时间") @RequestParam(name = "startTime", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
+            @Parameter(description = "结束时间") @RequestParam(name = "endTime", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime,
+            @Parameter(description = "属性过滤 key:value，可重复") @RequestParam(name = "prop", required = false) List<String> props) {
+        log.info("收到Parquet导出请求: appId={}, fields={}, filterEventName={}, startTime={}, endTime={}, prop={}",
+                appId, fieldsCsv, filterEventName, startTime, endTime, props);
         
-        // 为避免引入额外依赖，这里用极简二进制占位（实际可替换为 Apache Parquet Writer）
-        List<Event> list = eventRepository.findAll(Sort.by(Sort.Direction.DESC, "id"));
-        List<Event> filtered = list.stream().filter(e -> appId.equals(e.getAppId())).collect(Collectors.toList());
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        // 伪Parquet头（魔数占位）+ 简单行计数 + 每行以换行分隔的JSON（可被后续真实Parquet替换）
-        byte[] magic = new byte[]{'P','A','R','1'}; // placeholder magic
-        out.writeBytes(magic);
-        String header = "rows=" + filtered.size() + "\n";
-        out.writeBytes(header.getBytes(StandardCharsets.UTF_8));
-        for (Event e : filtered) {
-            String line = "{" +
-                    "\"id\":" + e.getId() + "," +
-                    "\"eventName\":\"" + (e.getEventName()==null?"":e.getEventName()) + "\"," +
-                    "\"appId\":" + e.getAppId() +
-                    "}" + "\n";
-            out.writeBytes(line.getBytes(StandardCharsets.UTF_8));
-        }
-        byte[] bytes = out.toByteArray();
+        boolean hideProperties = currentHasRole("ROLE_READONLY");
+        EventExportQuery query = exportQuery(appId, filterEventName, startTime, endTime, props, hideProperties);
+        ExportColumnSelection selection = ExportColumnSelection.parse(fieldsCsv, hideProperties);
+        return stream(ExportFormat.PARQUET, query, selection);
+    }
+
+    /**
+     * 导出事件NDJSON
+     * 
+     * <p>每行一个 JSON 对象，properties 作为嵌套 JSON 输出而不是转义后的字符串；其余同 CSV 导出。
+     * 
+     * @param appId 应用ID请求头（必填）
+     * @param fieldsCsv 导出列（逗号分隔；为空则使用默认列）
+     * @param filterEventName 按事件名过滤（可选）
+     * @param startTime 起始时间（可选）
+     * @param endTime 结束时间（可选）
+     * @param props 属性过滤条件，格式 key:value（可选，可重复）
+     * @return NDJSON文件响应
+     */
+    @GetMapping(value = "/export.ndjson", produces = "application/x-ndjson")
+    @Operation(summary = "导出事件NDJSON（按应用）", description = "根据 X-App-Id 流式导出该应用的事件，每行一个 JSON 对象；过滤参数与 CSV 导出一致")
+    public ResponseEntity<StreamingResponseBody> exportNdjson(
+            @Parameter(description = "应用头，必填") @RequestHeader(HttpHeaderConstants.HEADER_APP_ID) Integer appId,
+            @Parameter(description = "导出列，逗号分隔；为空则使用默认列") @RequestParam(name = "fields", required = false) String fieldsCsv,
+            @Parameter(description = "按事件名过滤，可选") @RequestParam(name = "eventName", required = false) String filterEventName,
+            @Parameter(description = "起始时间") @RequestParam(name = "startTime", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
+            @Parameter(description = "结束时间") @RequestParam(name = "endTime", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime,
+            @Parameter(description = "属性过滤 key:value，可重复") @RequestParam(name = "prop", required = false) List<String> props) {
+        log.info("收到NDJSON导出请求: appId={}, fields={}, filterEventName={}, startTime={}, endTime={}, prop={}",
+                appId, fieldsCsv, filterEventName, startTime, endTime, props);
         
-        log.info("Parquet导出完成: appId={}, rowCount={}, size={} bytes", appId, filtered.size(), bytes.length);
+        boolean hideProperties = currentHasRole("ROLE_READONLY");
+        EventExportQuery query = exportQuery(appId, filterEventName, startTime, endTime, props, hideProperties);
+        ExportColumnSelection selection = ExportColumnSelection.parse(fieldsCsv, hideProperties);
+        return stream(ExportFormat.NDJSON, query, selection);
+    }
+
+    /**
+     * 导出事件Arrow IPC流
+     * 
+     * <p>Arrow 流式格式，pandas、Polars、DuckDB 可直接加载；按 export.arrow.batch-rows 分批写出记录批次，
+     * 可选 ZSTD 缓冲区压缩。列类型与 Parquet 导出一致。
+     * 
+     * @param appId 应用ID请求头（必填）
+     * @param fieldsCsv 导出列（逗号分隔；为空则使用默认列，未知列忽略）
+     * @param filterEventName 按事件名过滤（可选）
+     * @param startTime 起始时间（可选）
+     * @param endTime 结束时间（可选）
+     * @param props 属性过滤条件，格式 key:value（可选，可重复）
+     * @return Arrow IPC流响应
+     */
+    @GetMapping(value = "/export.arrows", produces = "application/vnd.apache.arrow.stream")
+    @Operation(summary = "导出事件Arrow IPC流（按应用）", description = "根据 X-App-Id 流式导出该应用的事件为 Arrow IPC 流；过滤参数与 CSV 导出一致")
+    public ResponseEntity<StreamingResponseBody> exportArrow(
+            @Parameter(description = "应用头，必填") @RequestHeader(HttpHeaderConstants.HEADER_APP_ID) Integer appId,
+            @Parameter(description = "导出列，逗号分隔；为空则使用默认列") @RequestParam(name = "fields", required = false) String fieldsCsv,
+            @Parameter(description = "按事件名过滤，可选") @RequestParam(name = "eventName", required = false) String filterEventName,
+            @Parameter(description = "起始时间") @RequestParam(name = "startTime", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
+            @Parameter(description = "结束时间") @RequestParam(name = "endTime", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime,
+            @Parameter(description = "属性过滤 key:value，可重复") @RequestParam(name = "prop", required = false) List<String> props) {
+        log.info("收到Arrow导出请求: appId={}, fields={}, filterEventName={}, startTime={}, endTime={}, prop={}",
+                appId, fieldsCsv, filterEventName, startTime, endTime, props);
         
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=events.parquet")
-                .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .body(bytes);
+        boolean hideProperties = currentHasRole("ROLE_READONLY");
+        EventExportQuery query = exportQuery(appId, filterEventName, startTime, endTime, props, hideProperties);
+        ExportColumnSelection selection = ExportColumnSelection.parse(fieldsCsv, hideProperties);
+        return stream(ExportFormat.ARROW, query, selection);
     }
 
     /**
-     * 检查当前用户是否具有指定角色
+     * 提交异步导出任务
      * 
-     * @param role 角色名称
-     * @return 如果用户具有该角色返回true，否则返回false
+     * <p>立即返回任务ID，由后台线程池把文件写入暂存目录；客户端轮询进度，完成后通过下载地址分段下载。
+     * 过滤参数与同步导出一致，结果同样按事件时间倒序。parallelism 大于1时按时间切片并行读取，
+     * 各切片独立压缩后直接拼接，仅 CSV 与 NDJSON 支持。
+     * 
+     * @param appId 应用ID请求头（必填）
+     * @param formatValue 导出格式 csv | ndjson | arrow | parquet
+     * @param compression 压缩方式 none | gzip
+     * @param parallelism 并行切片数
+     * @param fieldsCsv 导出列（逗号分隔；为空则使用默认列）
+     * @param filterEventName 按事件名过滤（可选）
+     * @param startTime 起始时间（可选）
+     * @param endTime 结束时间（可选）
+     * @param props 属性过滤条件，格式 key:value（可选，可重复）
+     * @return 202 与任务状态
      */
-    private boolean currentHasRole(String role) {
-        Authentication a = SecurityContextHolder.getContext().getAuthentication();
-        if (a == null) return false;
-        for (GrantedAuthority ga : a.getAuthorities()) {
-            if (role.equals(ga.getAuthority())) return true;
+    @PostMapping("/export/jobs")
+    @Operation(summary = "提交异步导出任务", description = "后台写出导出文件，返回任务ID；应用同时进行的任务数有上限，超出返回 429")
+    public ResponseEntity<ApiResponse<ExportJobResponse>> submitJob(
+            @Parameter(description = "应用头，必填") @RequestHeader(HttpHeaderConstants.HEADER_APP_ID) Integer appId,
+            @Parameter(description = "导出格式 csv | ndjson | arrow | parquet") @RequestParam(name = "format", defaultValue = "csv") String formatValue,
+            @Parameter(description = "压缩方式 none | gzip") @RequestParam(name = "compression", defaultValue = "none") String compression,
+            @Parameter(description = "按时间切片并行读取的切片数，受服务端上限约束；Arrow 与 Parquet 忽略") @RequestParam(name = "parallelism", defaultValue = "1") int parallelism,
+            @Parameter(description = "导出列，逗号分隔；为空则使用默认列") @RequestParam(name = "fields", required = false) String fieldsCsv,
+            @Parameter(description = "按事件名过滤，可选") @RequestParam(name = "eventName", required = false) String filterEventName,
+            @Parameter(description = "起始时间") @RequestParam(name = "startTime", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
+            @Parameter(description = "结束时间") @RequestParam(name = "endTime", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime,
+            @Parameter(description = "属性过滤 key:value，可重复") @RequestParam(name = "prop", required = false) List<String> props) {
+        ExportFormat format = ExportFormat.fromExtension(formatValue);
+        if (format == null) {
+            throw new BusinessException(ErrorCode.EXPORT_FORMAT_INVALID, "不支持的导出格式: " + formatValue);
         }
-        return false;
+        boolean gzip = "gzip".equalsIgnoreCase(compression);
+        if (!gzip && !"none".equalsIgnoreCase(compression)) {
+            throw new BusinessException(ErrorCode.EXPORT_FORMAT_INVALID, "不支持的压缩方式: " + compression);
+        }
+        boolean hideProperties = currentHasRole("ROLE_READONLY");
+        EventExportQuery query = exportQuery(appId, filterEventName, startTime, endTime, props, hideProperties);
+        ExportColumnSelection selection = ExportColumnSelection.parse(fieldsCsv, hideProperties);
+        ExportJob job = exportJobService.submit(query, selection, format, gzip, parallelism);
+        return ResponseEntity.accepted()
+                .location(URI.create(jobPath(job)))
+                .body(ResponseUtil.success(ExportJobResponse.from(job, jobPath(job) + "/file")));
     }
 
     /**
-     * 将对象转换为CSV格式的字符串（处理引号和换行）
+     * 列出当前应用的导出任务
+     */
+    @GetMapping("/export/jobs")
+    @Operation(summary = "导出任务列表", description = "当前应用未过期的导出任务，按创建时间倒序")
+    public ApiResponse<List<ExportJobResponse>> listJobs(
+            @Parameter(description = "应用头，必填") @RequestHeader(HttpHeaderConstants.HEADER_APP_ID) Integer appId) {
+        List<ExportJobResponse> result = new ArrayList<>();
+        for (ExportJob job : exportJobService.list(appId)) {
+            result.add(ExportJobResponse.from(job, jobPath(job) + "/file"));
+        }
+        return ResponseUtil.success(result);
+    }
+
+    /**
+     * 查询导出任务进度
+     */
+    @GetMapping("/export/jobs/{jobId}")
+    @Operation(summary = "导出任务进度", description = "返回状态、已写出行数与字节数；成功后附带下载地址")
+    public ApiResponse<ExportJobResponse> getJob(
+            @Parameter(description = "应用头，必填") @RequestHeader(HttpHeaderConstants.HEADER_APP_ID) Integer appId,
+            @PathVariable("jobId") String jobId) {
+        ExportJob job = exportJobService.get(appId, jobId);
+        return ResponseUtil.success(ExportJobResponse.from(job, jobPath(job) + "/file"));
+    }
+
+    /**
+     * 下载导出文件
      * 
-     * @param v 对象值
-     * @return CSV格式的字符串
+     * <p>支持 Range 请求（206 分段响应），断线后可从已下载位置续传；
+     * 文件在任务结束后不再变化，ETag 取任务ID。
      */
-    private String csv(Object v) {
-        if (v == null) return "";
-        String s = v.toString();
-        boolean needQuote = s.contains(",") || s.contains("\n") || s.contains("\"");
-        if (needQuote) {
-            s = s.replace("\"", "\"\"");
-            return "\"" + s + "\"";
+    @GetMapping("/export/jobs/{jobId}/file")
+    @Operation(summary = "下载导出文件", description = "任务成功后可下载，支持 Range 断点续传；未完成返回 409")
+    public ResponseEntity<Resource> downloadJob(
+            @Parameter(description = "应用头，必填") @RequestHeader(HttpHeaderConstants.HEADER_APP_ID) Integer appId,
+            @PathVariable("jobId") String jobId) {
+        ExportJob job = exportJobService.get(appId, jobId);
+        if (job.getStatus() != ExportJob.Status.SUCCEEDED) {
+            throw new BusinessException(ErrorCode.EXPORT_JOB_NOT_READY, "导出任务尚未完成: " + job.getStatus());
         }
-        return s;
+        Resource file = new FileSystemResource(job.getFile());
+        if (!file.exists()) {
+            throw new ResourceNotFoundException(ErrorCode.NOT_FOUND, "导出文件已过期: " + jobId);
+        }
+        // 响应体为 Resource 时由 Spring MVC 按 Range 头返回 206 分段内容
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + job.getFileName())
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .eTag(job.getId())
+                .lastModified(job.getFinishedAt())
+                .contentType(MediaType.valueOf(job.getContentType()))
+                .body(file);
     }
 
     /**
-     * 根据列名获取事件对象的字段值
+     * 取消或删除导出任务
+     */
+    @DeleteMapping("/export/jobs/{jobId}")
+    @Operation(summary = "取消导出任务", description = "排队或执行中的任务被取消，已完成的任务删除文件")
+    public ResponseEntity<Void> cancelJob(
+            @Parameter(description = "应用头，必填") @RequestHeader(HttpHeaderConstants.HEADER_APP_ID) Integer appId,
+            @PathVariable("jobId") String jobId) {
+        exportJobService.cancel(appId, jobId);
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * 增量变更订阅
+     * 
+     * <p>返回 id 大于水位 after 的事件，按 id 升序，每行一个 JSON 对象（与 NDJSON 导出相同）。
+     * 下一个水位与是否还有下一页通过响应头 X-Next-Watermark、X-Has-More 返回，客户端持久化水位后续读；
+     * X-Has-More 为 false 时等待下次轮询即可。每次轮询是 (app_id, id) 索引上的一段范围扫描，
+     * 页大小受服务端上限约束，适合每隔几秒调用一次。
+     * 
+     * <p>最近 export.changes.settle-ms 内写入的事件暂不返回，避免水位越过尚未提交的较小 id。
      * 
-     * @param col 列名
-     * @param e 事件对象
-     * @param fmt 日期时间格式化器
-     * @param hideProps 是否隐藏properties字段
-     * @return 字段值
+     * @param appId 应用ID请求头（必填）
+     * @param after 水位，上次响应的 X-Next-Watermark；首次同步传0
+     * @param limit 页大小（可选）
+     * @param fieldsCsv 导出列（逗号分隔；为空则使用默认列）
+     * @param filterEventName 按事件名过滤（可选）
+     * @return NDJSON响应
+     */
+    @GetMapping(value = "/changes", produces = "application/x-ndjson")
+    @Operation(summary = "增量变更订阅（按应用）", description = "按 id 水位返回新事件，每行一个 JSON 对象；下一个水位见响应头 X-Next-Watermark，X-Has-More 表示可立即续读")
+    public ResponseEntity<StreamingResponseBody> changes(
+            @Parameter(description = "应用头，必填") @RequestHeader(HttpHeaderConstants.HEADER_APP_ID) Integer appId,
+            @Parameter(description = "水位：上次响应的 X-Next-Watermark，首次传0") @RequestParam(name = "after", defaultValue = "0") long after,
+            @Parameter(description = "页大小，受服务端上限约束") @RequestParam(name = "limit", required = false) Integer limit,
+            @Parameter(description = "导出列，逗号分隔；为空则使用默认列") @RequestParam(name = "fields", required = false) String fieldsCsv,
+            @Parameter(description = "按事件名过滤，可选") @RequestParam(name = "eventName", required = false) String filterEventName) {
+        ExportProperties.Changes config = exportProperties.getChanges();
+        int pageSize = limit == null ? config.getDefaultLimit() : Math.max(1, Math.min(limit, config.getMaxLimit()));
+        boolean hideProperties = currentHasRole("ROLE_READONLY");
+        ExportColumnSelection selection = ExportColumnSelection.parse(fieldsCsv, hideProperties);
+        // 页大小有上限，整页读完再写出，水位才能放进响应头
+        ChangeFeedPage page = changeFeedReader.read(appId, Math.max(0L, after), filterEventName,
+                selection.queryColumns(), pageSize);
+        log.debug("增量变更订阅: appId={}, after={}, rows={}, nextWatermark={}, hasMore={}, settling={}",
+                appId, after, page.getRows().size(), page.getNextWatermark(), page.isHasMore(), page.isSettling());
+
+        StreamingResponseBody body = out -> {
+            BufferedOutputStream buffered = new BufferedOutputStream(out, exportProperties.getWriteBufferBytes());
+            ExportRowWriter writer = ExportFormat.NDJSON.open(buffered, selection, exportProperties);
+            for (Object[] row : page.getRows()) {
+                writer.writeRow(row);
+            }
+            writer.finish();
+            buffered.flush();
+        };
+        return ResponseEntity.ok()
+                .header(HttpHeaderConstants.HEADER_NEXT_WATERMARK, Long.toString(page.getNextWatermark()))
+                .header(HttpHeaderConstants.HEADER_HAS_MORE, Boolean.toString(page.isHasMore()))
+                .cacheControl(CacheControl.noStore())
+                .contentType(MediaType.valueOf(ExportFormat.NDJSON.getContentType()))
+                .body(body);
+    }
+
+    /**
+     * 同步导出：经只读事务中的 JDBC 游标逐批读取并直接写入响应流
      */
-    private Object valueOf(String col, Event e, DateTimeFormatter fmt, boolean hideProps) {
-        return switch (col) {
-            case "id" -> e.getId();
-            case "eventName" -> e.getEventName();
-            case "userId" -> e.getUserId();
-            case "sessionId" -> e.getSessionId();
-            case "appId" -> e.getAppId();
-            case "eventTime" -> e.getEventTime() == null ? null : e.getEventTime().format(fmt);
-            case "ua" -> e.getUa();
-            case "referrer" -> e.getReferrer();
-            case "ip" -> e.getIp();
-            case "device" -> e.getDevice();
-            case "os" -> e.getOs();
-            case "browser" -> e.getBrowser();
-            case "properties" -> hideProps ? null : e.getProperties();
-            default -> null;
+    private ResponseEntity<StreamingResponseBody> stream(ExportFormat format, EventExportQuery query,
+                                                         ExportColumnSelection selection) {
+        StreamingResponseBody body = out -> {
+            long start = System.currentTimeMillis();
+            BufferedOutputStream buffered = new BufferedOutputStream(out, exportProperties.getWriteBufferBytes());
+            ExportRowWriter writer = format.open(buffered, selection, exportProperties);
+            long rows = exportReader.scan(query, selection.queryColumns(), writer::writeRow);
+            writer.finish();
+            buffered.flush();
+            log.info("{}导出完成: appId={}, rowCount={}, costMs={}", format, query.getAppId(), rows,
+                    System.currentTimeMillis() - start);
         };
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=events." + format.getExtension())
+                .contentType(MediaType.valueOf(format.getContentType()))
+                .body(body);
+    }
+
+    private static String jobPath(ExportJob job) {
+        return ApiConstants.API_PREFIX + "/events/export/jobs/" + job.getId();
+    }
+
+    /**
+     * 构造导出范围；只读用户不可见 properties，也不能按属性取值过滤，否则可以逐个试探出属性内容
+     */
+    private EventExportQuery exportQuery(Integer appId, String eventName, LocalDateTime startTime, LocalDateTime endTime,
+                                         List<String> props, boolean hideProperties) {
+        PropertyFilter propertyFilter = PropertyFilter.parse(props);
+        if (hideProperties && !propertyFilter.isEmpty()) {
+            throw new ForbiddenException("只读用户不能按属性过滤");
+        }
+        return new EventExportQuery(appId, eventName, startTime, endTime, propertyFilter);
+    }
+
+    /**
+     * 检查当前用户是否具有指定角色
+     * 
+     * @param role 角色名称
+     * @return 如果用户具有该角色返回true，否则返回false
+     */
+    private boolean currentHasRole(String role) {
+        Authentication a = SecurityContextHolder.getContext().getAuthentication();
+        if (a == null) return false;
+        for (GrantedAuthority ga : a.getAuthorities()) {
+            if (role.equals(ga.getAuthority())) return true;
+        }
+        return false;
     }
 }
@@ -0,0 +1,164 @@
+package io.github.sijiezhong.track.controller;
+
+import io.github.sijiezhong.track.constants.ApiConstants;
+import io.github.sijiezhong.track.constants.HttpHeaderConstants;
+import io.github.sijiezhong.track.dto.ApiResponse;
+import io.github.sijiezhong.track.dto.ImportJobResponse;
+import io.github.sijiezhong.track.exception.BusinessException;
+import io.github.sijiezhong.track.exception.ErrorCode;
+import io.github.sijiezhong.track.exception.ResourceNotFoundException;
+import io.github.sijiezhong.track.importer.ImportFormat;
+import io.github.sijiezhong.track.importer.ImportJob;
+import io.github.sijiezhong.track.importer.ImportJobService;
+import io.github.sijiezhong.track.util.ResponseUtil;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 历史事件导入控制器
+ * 
+ * <p>用于新接入应用时回填其他系统中的历史事件：上传 CSV 或 NDJSON 文件（可 gzip 压缩），
+ * 事件保留文件中的原始 eventTime。导入异步执行，客户端轮询进度，并可下载拒绝行报告。
+ * 列名与导出一致，本系统的导出文件可直接导入。
+ * 
+ * @author sijie
+ */
+@RestController
+@RequestMapping(ApiConstants.API_PREFIX + "/events/import")
+@Tag(name = "Event Import", description = "历史事件批量导入")
+public class EventImportController {
+
+    private static final Logger log = LoggerFactory.getLogger(EventImportController.class);
+
+    private final ImportJobService importJobService;
+
+    public EventImportController(ImportJobService importJobService) {
+        this.importJobService = importJobService;
+    }
+
+    /**
+     * 提交导入任务
+     * 
+     * <p>请求体即文件内容（不使用 multipart），上传完成后立即返回任务ID。
+     * 文件首行（CSV 表头）或每个 JSON 对象的键为列名：eventName、eventTime 必填，
+     * 可选 userId、sessionId、properties、ua、referrer、ip、device、os、browser、channel、anonymousId。
+     * 
+     * @param appId 应用ID请求头（必填），导入的事件全部归属该应用
+     * @param formatValue 文件格式 csv | ndjson
+     * @param compression 压缩方式 none | gzip
+     * @param body 文件内容
+     * @return 202 与任务状态
+     */
+    @PostMapping("/jobs")
+    @Operation(summary = "提交导入任务", description = "请求体为 CSV 或 NDJSON 文件内容；后台经 COPY 写入暂存表、批量建立会话后合并到事件表")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ApiResponse<ImportJobResponse>> submitJob(
+            @Parameter(description = "应用头，必填") @RequestHeader(HttpHeaderConstants.HEADER_APP_ID) Integer appId,
+            @Parameter(description = "文件格式 csv | ndjson") @RequestParam(name = "format", defaultValue = "csv") String formatValue,
+            @Parameter(description = "压缩方式 none | gzip") @RequestParam(name = "compression", defaultValue = "none") String compression,
+            InputStream body) throws IOException {
+        ImportFormat format = ImportFormat.fromValue(formatValue);
+        if (format == null) {
+            throw new BusinessException(ErrorCode.IMPORT_FORMAT_INVALID, "不支持的导入格式: " + formatValue);
+        }
+        boolean gzip = "gzip".equalsIgnoreCase(compression);
+        if (!gzip && !"none".equalsIgnoreCase(compression)) {
+            throw new BusinessException(ErrorCode.IMPORT_FORMAT_INVALID, "不支持的压缩方式: " + compression);
+        }
+        log.info("收到导入请求: appId={}, format={}, gzip={}", appId, format, gzip);
+        ImportJob job = importJobService.submit(appId, format, gzip, body);
+        return ResponseEntity.accepted()
+                .location(URI.create(jobPath(job)))
+                .body(ResponseUtil.success(ImportJobResponse.from(job, jobPath(job) + "/rejects")));
+    }
+
+    /**
+     * 列出当前应用的导入任务
+     */
+    @GetMapping("/jobs")
+    @Operation(summary = "导入任务列表", description = "当前应用未过期的导入任务，按创建时间倒序")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ApiResponse<List<ImportJobResponse>> listJobs(
+            @Parameter(description = "应用头，必填") @RequestHeader(HttpHeaderConstants.HEADER_APP_ID) Integer appId) {
+        List<ImportJobResponse> result = new ArrayList<>();
+        for (ImportJob job : importJobService.list(appId)) {
+            result.add(ImportJobResponse.from(job, jobPath(job) + "/rejects"));
+        }
+        return ResponseUtil.success(result);
+    }
+
+    /**
+     * 查询导入任务进度
+     */
+    @GetMapping("/jobs/{jobId}")
+    @Operation(summary = "导入任务进度", description = "返回阶段、已解析字节数、拒绝行数、会话数与已合并行数")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ApiResponse<ImportJobResponse> getJob(
+            @Parameter(description = "应用头，必填") @RequestHeader(HttpHeaderConstants.HEADER_APP_ID) Integer appId,
+            @PathVariable("jobId") String jobId) {
+        ImportJob job = importJobService.get(appId, jobId);
+        return ResponseUtil.success(ImportJobResponse.from(job, jobPath(job) + "/rejects"));
+    }
+
+    /**
+     * 下载拒绝行报告
+     * 
+     * <p>NDJSON，每行包含行号 line、原因 reason 与原文 record（过长时截断）。
+     */
+    @GetMapping("/jobs/{jobId}/rejects")
+    @Operation(summary = "下载拒绝行报告", description = "每行一个 JSON 对象：line、reason、record")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Resource> downloadRejects(
+            @Parameter(description = "应用头，必填") @RequestHeader(HttpHeaderConstants.HEADER_APP_ID) Integer appId,
+            @PathVariable("jobId") String jobId) {
+        ImportJob job = importJobService.get(appId, jobId);
+        Resource file = new FileSystemResource(job.getRejectsFile());
+        if (job.getRowsRejected() == 0 || !file.exists()) {
+            throw new ResourceNotFoundException(ErrorCode.NOT_FOUND, "导入任务没有拒绝行: " + jobId);
+        }
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=rejects-" + job.getId() + ".ndjson")
+                .contentType(MediaType.valueOf("application/x-ndjson"))
+                .body(file);
+    }
+
+    /**
+     * 取消或删除导入任务
+     */
+    @DeleteMapping("/jobs/{jobId}")
+    @Operation(summary = "取消导入任务", description = "排队中的任务直接取消；执行中的任务在当前批次结束后中止，已合并的分块不回滚")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Void> cancelJob(
+            @Parameter(description = "应用头，必填") @RequestHeader(HttpHeaderConstants.HEADER_APP_ID) Integer appId,
+            @PathVariable("jobId") String jobId) {
+        importJobService.cancel(appId, jobId);
+        return ResponseEntity.noContent().build();
+    }
+
+    private static String jobPath(ImportJob job) {
+        return ApiConstants.API_PREFIX + "/events/import/jobs/" + job.getId();
+    }
+}
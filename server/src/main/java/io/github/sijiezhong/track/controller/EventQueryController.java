@@ -4,11 +4,14 @@ import io.github.sijiezhong.track.constants.ApiConstants;
 import io.github.sijiezhong.track.constants.HttpHeaderConstants;
 import io.github.sijiezhong.track.domain.Event;
 import io.github.sijiezhong.track.dto.ApiResponse;
+import io.github.sijiezhong.track.dto.EventCursor;
 import io.github.sijiezhong.track.dto.EventListItem;
 import io.github.sijiezhong.track.dto.PageResult;
+import io.github.sijiezhong.track.dto.TotalMode;
 import io.github.sijiezhong.track.exception.ErrorCode;
 import io.github.sijiezhong.track.exception.ForbiddenException;
 import io.github.sijiezhong.track.repository.EventRepository;
+import io.github.sijiezhong.track.repository.PropertyFilter;
 import io.github.sijiezhong.track.util.ResponseUtil;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -18,6 +21,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.format.annotation.DateTimeFormat;
@@ -29,7 +33,6 @@ import org.springframework.web.bind.annotation.RestController;
 
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * 事件查询控制器
@@ -37,6 +40,12 @@ import java.util.stream.Collectors;
  * <p>提供事件数据的查询接口，支持多条件过滤和分页查询。
  * 所有查询都会进行应用隔离，确保数据安全。
  * 
+ * <p>分页支持两种方式：传 page 的偏移分页（兼容旧客户端），以及传 cursor 的游标分页。
+ * 游标分页按 (event_time, id) 定位，翻页耗时与深度无关。
+ * 
+ * <p>total 参数控制总数统计：exact 精确 count（偏移分页默认），estimate 取执行计划估计，
+ * none 不统计只返回 hasNext（游标分页默认）。
+ * 
  * @author sijie
  */
 @RestController
@@ -45,6 +54,8 @@ import java.util.stream.Collectors;
 public class EventQueryController {
 
     private static final Logger log = LoggerFactory.getLogger(EventQueryController.class);
+    
+    private static final Sort NEWEST_FIRST = Sort.by(Sort.Order.desc("eventTime"), Sort.Order.desc("id"));
 
     private final EventRepository eventRepository;
 
@@ -63,10 +74,13 @@ public class EventQueryController {
      * @param endTime 结束时间（可选）
      * @param page 页码（从0开始，默认0）
      * @param size 每页大小（默认20）
+     * @param cursor 游标（可选）；传空字符串取第一页，之后传上一页返回的 nextCursor
+     * @param total 总数统计方式 exact|estimate|none（可选）
+     * @param props 属性过滤条件，格式 key:value，key 可用点号访问嵌套字段（可选，可重复）
      * @return 分页查询结果
      */
     @GetMapping
-    @Operation(summary = "分页查询事件", description = "支持按事件名/应用/会话/时间范围过滤")
+    @Operation(summary = "分页查询事件", description = "支持按事件名/应用/会话/时间范围/属性(prop=key:value)过滤；传 cursor 时使用游标分页，返回 nextCursor")
     public ApiResponse<PageResult<EventListItem>> page(
             @Parameter(description = "应用头，必填") @RequestHeader(value = HttpHeaderConstants.HEADER_APP_ID, required = true) Integer headerAppId,
             @Parameter(description = "事件名") @RequestParam(name = "eventName", required = false) String eventName,
@@ -75,10 +89,13 @@ public class EventQueryController {
             @Parameter(description = "起始时间") @RequestParam(name = "startTime", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
             @Parameter(description = "结束时间") @RequestParam(name = "endTime", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime,
             @Parameter(description = "页码(从0开始)") @RequestParam(name = "page", defaultValue = "0") int page,
-            @Parameter(description = "每页大小") @RequestParam(name = "size", defaultValue = "20") int size) {
+            @Parameter(description = "每页大小") @RequestParam(name = "size", defaultValue = "20") int size,
+            @Parameter(description = "游标，空字符串表示第一页") @RequestParam(name = "cursor", required = false) String cursor,
+            @Parameter(description = "总数统计方式 exact|estimate|none") @RequestParam(name = "total", required = false) String total,
+            @Parameter(description = "属性过滤 key:value，可重复") @RequestParam(name = "prop", required = false) List<String> props) {
         
-        log.debug("收到事件查询请求: appId={}, eventName={}, page={}, size={}", 
-            headerAppId, eventName, page, size);
+        log.debug("收到事件查询请求: appId={}, eventName={}, page={}, size={}, cursor={}", 
+            headerAppId, eventName, page, size, cursor);
         
         // 应用ID校验
         if (headerAppId == null) {
@@ -96,9 +113,88 @@ public class EventQueryController {
             size = ApiConstants.DEFAULT_PAGE_SIZE;
         }
         
-        // 创建分页对象，按事件时间倒序（最新的在前）
-        Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "eventTime"));
+        PropertyFilter propertyFilter = PropertyFilter.parse(props);
+        Specification<Event> spec = buildSpec(headerAppId, eventName, sessionId, startTime, endTime)
+                .and(propertyFilter.toSpecification());
+        if (cursor != null) {
+            PageResult<EventListItem> result = cursorPage(spec, cursor, size);
+            TotalMode totalMode = TotalMode.from(total, TotalMode.NONE);
+            if (totalMode == TotalMode.EXACT) {
+                result.setTotal(eventRepository.count(spec));
+            } else if (totalMode == TotalMode.ESTIMATE) {
+                result.setTotal(eventRepository.estimateCount(headerAppId, eventName, sessionId, startTime, endTime, propertyFilter));
+                result.setTotalEstimated(true);
+            }
+            return ResponseUtil.success(result);
+        }
         
+        // 创建分页对象，按事件时间倒序（最新的在前），id 作为同一时间内的稳定次序
+        Pageable pageable = PageRequest.of(page, size, NEWEST_FIRST);
+        
+        TotalMode totalMode = TotalMode.from(total, TotalMode.EXACT);
+        if (totalMode != TotalMode.EXACT) {
+            // 不做 count(*)：多取一行判断 hasNext
+            Slice<EventListItem> slice = eventRepository.findListItems(spec, pageable);
+            PageResult<EventListItem> result = new PageResult<>(-1, page, size, slice.getContent());
+            result.setHasNext(slice.hasNext());
+            if (totalMode == TotalMode.ESTIMATE) {
+                long seen = pageable.getOffset() + slice.getNumberOfElements();
+                boolean exactTail = !slice.hasNext() && (slice.hasContent() || pageable.getOffset() == 0);
+                if (!exactTail) {
+                    long estimate = eventRepository.estimateCount(headerAppId, eventName, sessionId, startTime, endTime, propertyFilter);
+                    result.setTotal(slice.hasNext() ? Math.max(estimate, seen + 1) : estimate);
+                    result.setTotalEstimated(true);
+                } else {
+                    // 已到最后一页，总数是精确的
+                    result.setTotal(seen);
+                }
+            }
+            log.debug("事件查询完成: total={}, mode={}, page={}, size={}", result.getTotal(), totalMode, page, size);
+            return ResponseUtil.success(result);
+        }
+        
+        // 投影查询，只读取列表项需要的列
+        Page<EventListItem> pageResult = eventRepository.findListItemPage(spec, pageable);
+        
+        PageResult<EventListItem> result = new PageResult<>(
+            pageResult.getTotalElements(), 
+            pageResult.getNumber(), 
+            pageResult.getSize(), 
+            pageResult.getContent()
+        );
+        
+        log.debug("事件查询完成: total={}, page={}, size={}", result.getTotal(), page, size);
+        
+        return ResponseUtil.success(result);
+    }
+    
+    /**
+     * 游标分页：多取一行判断是否有下一页，不统计总数
+     */
+    private PageResult<EventListItem> cursorPage(Specification<Event> spec, String cursor, int size) {
+        if (!cursor.isBlank()) {
+            EventCursor after = EventCursor.decode(cursor.trim());
+            // 冗余的 event_time <= t 让索引扫描直接从游标位置开始
+            spec = spec.and((root, query, cb) -> cb.and(
+                cb.lessThanOrEqualTo(root.get("eventTime"), after.getEventTime()),
+                cb.or(cb.lessThan(root.get("eventTime"), after.getEventTime()),
+                      cb.lessThan(root.get("id"), after.getId()))));
+        }
+        Slice<EventListItem> slice = eventRepository.findListItems(spec, PageRequest.of(0, size, NEWEST_FIRST));
+        List<EventListItem> rows = slice.getContent();
+        boolean hasNext = slice.hasNext();
+        PageResult<EventListItem> result = new PageResult<>(-1, 0, size, rows);
+        result.setHasNext(hasNext);
+        if (hasNext) {
+            EventListItem last = rows.get(rows.size() - 1);
+            result.setNextCursor(new EventCursor(last.getEventTime(), last.getId()).encode());
+        }
+        log.debug("事件游标查询完成: size={}, hasNext={}", size, hasNext);
+        return result;
+    }
+    
+    private Specification<Event> buildSpec(Integer headerAppId, String eventName, Long sessionId,
+                                           LocalDateTime startTime, LocalDateTime endTime) {
         // 构建查询条件
         Specification<Event> spec = Specification.where(null);
         
@@ -126,29 +222,6 @@ public class EventQueryController {
             final LocalDateTime finalEndTime = endTime;
             spec = spec.and((root, query, cb) -> cb.lessThanOrEqualTo(root.get("eventTime"), finalEndTime));
         }
-        
-        Page<Event> pageResult = eventRepository.findAll(spec, pageable);
-        List<EventListItem> content = pageResult.getContent().stream()
-            .map(e -> new EventListItem(
-                e.getId(),
-                e.getEventName(),
-                e.getUserId(),
-                e.getSessionId(),
-                e.getAppId(),
-                e.getEventTime(),
-                e.getProperties()
-            ))
-            .collect(Collectors.toList());
-        
-        PageResult<EventListItem> result = new PageResult<>(
-            pageResult.getTotalElements(), 
-            pageResult.getNumber(), 
-            pageResult.getSize(), 
-            content
-        );
-        
-        log.debug("事件查询完成: total={}, page={}, size={}", result.getTotal(), page, size);
-        
-        return ResponseUtil.success(result);
+        return spec;
     }
 }
@@ -3,6 +3,8 @@ package io.github.sijiezhong.track.controller;
 import io.github.sijiezhong.track.constants.ApiConstants;
 import io.github.sijiezhong.track.constants.HttpHeaderConstants;
 import io.github.sijiezhong.track.stream.EventStreamBroadcaster;
+import io.github.sijiezhong.track.stream.StreamFilter;
+import io.github.sijiezhong.track.stream.StreamMode;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -12,9 +14,12 @@ import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.util.List;
+
 /**
  * 事件流控制器
  * 
@@ -40,14 +45,56 @@ public class EventStreamController {
      * 订阅事件SSE流
      * 
      * <p>按应用维度订阅事件创建实时推送。客户端需要保持HTTP连接开启以接收事件。
+     * mode=raw（默认）逐条推送 event 帧；mode=batch 按短窗口合并为 events 数组帧，
+     * 适合高频应用的实时看板。
+     * 
+     * <p>可按事件名、设备、操作系统、浏览器、属性等值条件过滤，并按比例采样；
+     * 过滤在服务端完成，条件相同的订阅者共享过滤结果。
+     * 
+     * <p>每条推送携带事件ID，断线重连时浏览器会自动带上 Last-Event-ID，服务端据此补发期间的事件；
+     * 无法补发时推送 gap 事件，客户端应回退到查询接口补齐。
      * 
      * @param appId 应用ID请求头（必填）
+     * @param mode 推送模式 raw|batch（可选）
+     * @param eventName 事件名，可重复或逗号分隔（可选）
+     * @param device 设备类型，可重复或逗号分隔（可选）
+     * @param os 操作系统，可重复或逗号分隔（可选）
+     * @param browser 浏览器，可重复或逗号分隔（可选）
+     * @param prop 属性条件 key:value，可重复（可选）
+     * @param sample 采样率 (0,1]（可选）
+     * @param lastEventId 上次收到的事件ID（可选，重连时由浏览器自动携带）
      * @return SSE发射器
      */
     @GetMapping("/stream")
-    @Operation(summary = "订阅事件SSE流", description = "按应用维度订阅事件创建实时推送")
-    public SseEmitter stream(@Parameter(description = "应用头，必填") @RequestHeader(HttpHeaderConstants.HEADER_APP_ID) Integer appId) {
-        log.info("客户端订阅事件流: appId={}", appId);
-        return broadcaster.subscribe(appId);
+    @Operation(summary = "订阅事件SSE流", description = "按应用维度订阅事件创建实时推送；mode=raw 逐条推送，mode=batch 合并推送 events 数组；支持服务端过滤与采样")
+    public SseEmitter stream(@Parameter(description = "应用头，必填") @RequestHeader(HttpHeaderConstants.HEADER_APP_ID) Integer appId,
+                             @Parameter(description = "推送模式 raw|batch，默认raw") @RequestParam(name = "mode", required = false) String mode,
+                             @Parameter(description = "事件名，可多值") @RequestParam(name = "eventName", required = false) List<String> eventName,
+                             @Parameter(description = "设备类型，可多值") @RequestParam(name = "device", required = false) List<String> device,
+                             @Parameter(description = "操作系统，可多值") @RequestParam(name = "os", required = false) List<String> os,
+                             @Parameter(description = "浏览器，可多值") @RequestParam(name = "browser", required = false) List<String> browser,
+                             @Parameter(description = "属性条件 key:value，可多值") @RequestParam(name = "prop", required = false) List<String> prop,
+                             @Parameter(description = "采样率 (0,1]") @RequestParam(name = "sample", required = false) Double sample,
+                             @Parameter(description = "上次收到的事件ID，用于断线续传") @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId) {
+        StreamMode streamMode = StreamMode.from(mode);
+        StreamFilter filter = StreamFilter.of(eventName, device, os, browser, prop, sample);
+        log.info("客户端订阅事件流: appId={}, mode={}, filter={}, lastEventId={}", appId, streamMode, filter.key(), lastEventId);
+        return broadcaster.subscribe(appId, streamMode, filter, lastEventId);
+    }
+
+    /**
+     * 订阅实时指标SSE流
+     * 
+     * <p>每秒推送一次 metrics 快照：上一秒事件数、按事件名的秒级与当前分钟计数、最近一分钟活跃用户数。
+     * 指标在服务端由上报流增量计算，不查询数据库，可替代对统计接口的轮询。
+     * 
+     * @param appId 应用ID请求头（必填）
+     * @return SSE发射器
+     */
+    @GetMapping("/stream/metrics")
+    @Operation(summary = "订阅实时指标SSE流", description = "每秒推送 metrics 快照：eventsPerSecond、上一完整秒与最近60个完整秒（滑动）按事件名计数、activeUsers")
+    public SseEmitter streamMetrics(@Parameter(description = "应用头，必填") @RequestHeader(HttpHeaderConstants.HEADER_APP_ID) Integer appId) {
+        log.info("客户端订阅实时指标: appId={}", appId);
+        return broadcaster.subscribeMetrics(appId);
     }
 }
@@ -11,12 +11,17 @@ import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.LocalDate;
+import java.util.Map;
+
 /**
  * 统计控制器
  * 
@@ -57,5 +62,36 @@ public class StatsController {
         
         return ResponseUtil.success(stats);
     }
+    
+    /**
+     * 独立用户数
+     * 
+     * @param appId 应用ID请求头（必填）
+     * @param startDate 起始日期，含（可选）
+     * @param endDate 结束日期，含（可选）
+     * @param eventName 事件名（可选，不填为全部事件）
+     * @param dim 维度 browser|device|os（可选）
+     * @param value 维度取值，指定维度时必填
+     * @return 独立用户数及相对误差
+     */
+    @GetMapping("/stats/unique-users")
+    @Operation(summary = "独立用户数", 
+               description = "合并按天的 HyperLogLog 草图估计任意日期范围、事件与维度下的独立用户数，返回 {uniqueUsers, relativeError}")
+    @PreAuthorize("hasAnyRole('ADMIN','ANALYST')")
+    public ApiResponse<Map<String, Object>> uniqueUsers(
+            @Parameter(description = "应用头，必填") 
+            @RequestHeader(HttpHeaderConstants.HEADER_APP_ID) Integer appId,
+            @Parameter(description = "起始日期") @RequestParam(name = "startDate", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @Parameter(description = "结束日期") @RequestParam(name = "endDate", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @Parameter(description = "事件名") @RequestParam(name = "eventName", required = false) String eventName,
+            @Parameter(description = "维度 browser|device|os") @RequestParam(name = "dim", required = false) String dim,
+            @Parameter(description = "维度取值，空值记为 unknown") @RequestParam(name = "value", required = false) String value) {
+        
+        log.debug("收到独立用户数请求: appId={}, startDate={}, endDate={}, eventName={}, dim={}, value={}",
+            appId, startDate, endDate, eventName, dim, value);
+        
+        Map<String, Object> result = statsService.uniqueUsers(appId, startDate, endDate, eventName, dim, value);
+        
+        return ResponseUtil.success(result);
+    }
 }
-
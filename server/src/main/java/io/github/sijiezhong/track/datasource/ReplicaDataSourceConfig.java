@@ -0,0 +1,68 @@
+package io.github.sijiezhong.track.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.github.sijiezhong.track.config.ReplicaProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 启用副本路由时替换默认数据源（replica.enabled=true）
+ *
+ * <p>主库沿用 spring.datasource 与 spring.datasource.hikari 配置；每个副本独立连接池。
+ * 对外暴露的 {@code @Primary} 数据源是包了 LazyConnectionDataSourceProxy 的路由数据源，
+ * JPA、JdbcTemplate、Flyway 均使用它，Flyway 与写入不在只读事务中，始终走主库。
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "replica", name = "enabled", havingValue = "true")
+public class ReplicaDataSourceConfig {
+
+    @Bean(destroyMethod = "close")
+    public ReplicaRoutingDataSource replicaRoutingDataSource(DataSourceProperties dataSourceProperties,
+                                                             ReplicaProperties replicaProperties,
+                                                             Environment environment,
+                                                             ObjectProvider<MeterRegistry> meterRegistry) {
+        HikariDataSource primary = dataSourceProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class).build();
+        // 与自动配置一致，spring.datasource.hikari.* 作用于主库连接池
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        if (primary.getPoolName() == null) primary.setPoolName("primary");
+
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        int i = 0;
+        for (ReplicaProperties.Node node : replicaProperties.getNodes()) {
+            String key = "replica-" + i++;
+            HikariDataSource ds = new HikariDataSource();
+            ds.setPoolName(key);
+            ds.setJdbcUrl(node.getUrl());
+            ds.setUsername(node.getUsername() != null ? node.getUsername() : dataSourceProperties.determineUsername());
+            ds.setPassword(node.getPassword() != null ? node.getPassword() : dataSourceProperties.determinePassword());
+            ds.setDriverClassName(dataSourceProperties.determineDriverClassName());
+            ds.setMaximumPoolSize(replicaProperties.getMaximumPoolSize());
+            ds.setReadOnly(true);
+            // 启动时副本不可达不应阻止应用启动，由延迟探测负责标记
+            ds.setInitializationFailTimeout(-1);
+            replicas.put(key, ds);
+        }
+        return new ReplicaRoutingDataSource(primary, replicas, replicaProperties.getMaxLagMs(),
+                replicaProperties.getLagCheckIntervalMs(), meterRegistry.getIfAvailable());
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+}
@@ -0,0 +1,38 @@
+package io.github.sijiezhong.track.datasource;
+
+import javax.sql.DataSource;
+
+/**
+ * 单个只读副本及其最近一次探测结果
+ */
+final class ReplicaNode {
+
+    private final String key;
+    private final DataSource dataSource;
+    // 由探测线程写、请求线程读
+    private volatile long lagMs;
+    private volatile boolean reachable = true;
+
+    ReplicaNode(String key, DataSource dataSource) {
+        this.key = key;
+        this.dataSource = dataSource;
+    }
+
+    String getKey() { return key; }
+    DataSource getDataSource() { return dataSource; }
+    long getLagMs() { return lagMs; }
+    boolean isReachable() { return reachable; }
+
+    void update(long lagMs, boolean reachable) {
+        this.lagMs = lagMs;
+        this.reachable = reachable;
+    }
+
+    void markUnreachable() {
+        this.reachable = false;
+    }
+
+    boolean isUsable(long maxLagMs) {
+        return reachable && lagMs <= maxLagMs;
+    }
+}
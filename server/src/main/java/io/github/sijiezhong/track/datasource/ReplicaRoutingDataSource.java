@@ -0,0 +1,273 @@
+package io.github.sijiezhong.track.datasource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 主库/只读副本路由数据源
+ *
+ * <p>只读事务路由到延迟在阈值内的副本（轮询），其余访问走主库。必须包在
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy} 中使用：
+ * 事务管理器开启事务时只读标记尚未设置，延迟到第一条语句时再取物理连接才能路由正确。
+ *
+ * <p>后台线程定期探测各副本的复制延迟；没有可用副本或副本取连接失败时回落到主库，
+ * 被标记不可达的副本在下一次探测成功后恢复。WAL 接收进程不在流复制状态的副本同样视为不可达，
+ * 判定需要探测账号能读取 pg_stat_wal_receiver 的状态列（超级用户或 pg_monitor/pg_read_all_stats 角色），
+ * 读不到时只依据与主库 LSN 的比较。
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    static final String PRIMARY = "primary";
+
+    private static final String PRIMARY_LSN_SQL = "select pg_current_wal_lsn()::text";
+
+    // 探测结果为该值表示副本的 WAL 接收进程未在流复制（断开、重连中或只从归档恢复）
+    private static final long RECEIVER_DOWN = -1L;
+
+    // 主库上 pg_is_in_recovery() 为 false，延迟按0计。副本已回放到探测前读取的主库 LSN 时为0；
+    // 读不到主库 LSN 时退回比较本地接收与回放位置。否则用最后回放事务的时间估算
+    // （主库空闲时该时间不再前进，因此先比较 LSN）。
+    // 仅比较本地接收与回放位置不够：接收进程断开后两者都停住且相等，延迟会一直报0
+    private static final String LAG_SQL = "with p(lsn) as (select cast(? as pg_lsn)) "
+            + "select case when not pg_is_in_recovery() then 0 "
+            + "when not exists (select 1 from pg_stat_wal_receiver where status = 'streaming' or status is null) then "
+            + RECEIVER_DOWN + " "
+            + "when (select lsn from p) is not null and pg_last_wal_replay_lsn() >= (select lsn from p) then 0 "
+            + "when (select lsn from p) is null and pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() then 0 "
+            + "else coalesce(extract(epoch from (now() - pg_last_xact_replay_timestamp())) * 1000, 0) end";
+
+    private final DataSource primary;
+    private final List<ReplicaNode> replicas;
+    private final long maxLagMs;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledExecutorService prober;
+
+    private final Counter primaryRoutes;
+    private final Counter replicaRoutes;
+    private final Counter fallbacks;
+
+    /**
+     * @param primary 主库
+     * @param replicas 副本，key 用于日志与指标
+     * @param maxLagMs 可容忍的最大复制延迟
+     * @param lagCheckIntervalMs 探测间隔，小于等于0时不启动探测（测试中手动调用 {@link #checkLag()}）
+     * @param meterRegistry 指标注册表，可为空
+     */
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, long maxLagMs,
+                                    long lagCheckIntervalMs, MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.maxLagMs = maxLagMs;
+        this.replicas = new ArrayList<>(replicas.size());
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (Map.Entry<String, DataSource> e : replicas.entrySet()) {
+            ReplicaNode node = new ReplicaNode(e.getKey(), e.getValue());
+            this.replicas.add(node);
+            targets.put(node.getKey(), node.getDataSource());
+            if (meterRegistry != null) {
+                Gauge.builder("track.datasource.replica.lag", node, ReplicaNode::getLagMs)
+                        .tag("replica", node.getKey())
+                        .baseUnit("milliseconds")
+                        .register(meterRegistry);
+            }
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        // 只允许上面登记的 key，未知 key 说明路由逻辑有误
+        setLenientFallback(false);
+        afterPropertiesSet();
+
+        this.primaryRoutes = counter(meterRegistry, "track.datasource.route", "target", PRIMARY);
+        this.replicaRoutes = counter(meterRegistry, "track.datasource.route", "target", "replica");
+        this.fallbacks = counter(meterRegistry, "track.datasource.replica.fallback", null, null);
+
+        if (lagCheckIntervalMs > 0 && !this.replicas.isEmpty()) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("replica-lag-");
+            threadFactory.setDaemon(true);
+            this.prober = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            this.prober.scheduleWithFixedDelay(this::checkLag, 0, lagCheckIntervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            this.prober = null;
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            increment(primaryRoutes);
+            return PRIMARY;
+        }
+        ReplicaNode node = pickReplica();
+        if (node == null) {
+            increment(fallbacks);
+            return PRIMARY;
+        }
+        increment(replicaRoutes);
+        return node.getKey();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Object key = determineCurrentLookupKey();
+        DataSource target = resolve(key);
+        try {
+            return target.getConnection();
+        } catch (SQLException ex) {
+            if (PRIMARY.equals(key)) throw ex;
+            return fallback(key, ex).getConnection();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        Object key = determineCurrentLookupKey();
+        DataSource target = resolve(key);
+        try {
+            return target.getConnection(username, password);
+        } catch (SQLException ex) {
+            if (PRIMARY.equals(key)) throw ex;
+            return fallback(key, ex).getConnection(username, password);
+        }
+    }
+
+    /**
+     * 探测所有副本的复制延迟
+     */
+    void checkLag() {
+        String primaryLsn = primaryLsn();
+        for (ReplicaNode node : replicas) {
+            boolean wasUsable = node.isUsable(maxLagMs);
+            try (Connection c = node.getDataSource().getConnection();
+                 PreparedStatement st = c.prepareStatement(LAG_SQL)) {
+                st.setQueryTimeout(5);
+                st.setString(1, primaryLsn);
+                try (ResultSet rs = st.executeQuery()) {
+                    long lag = rs.next() ? rs.getLong(1) : 0L;
+                    if (lag == RECEIVER_DOWN) {
+                        node.update(node.getLagMs(), false);
+                        if (wasUsable) {
+                            log.warn("副本 WAL 接收进程未在流复制，只读流量回落到主库: replica={}", node.getKey());
+                        }
+                        continue;
+                    }
+                    node.update(Math.max(0L, lag), true);
+                }
+            } catch (SQLException | RuntimeException ex) {
+                node.update(node.getLagMs(), false);
+                if (wasUsable) {
+                    log.warn("副本不可用，只读流量回落到主库: replica={}, error={}", node.getKey(), ex.getMessage());
+                }
+                continue;
+            }
+            boolean usable = node.isUsable(maxLagMs);
+            if (wasUsable && !usable) {
+                log.warn("副本复制延迟超过阈值，暂停读路由: replica={}, lagMs={}, maxLagMs={}", node.getKey(), node.getLagMs(), maxLagMs);
+            } else if (!wasUsable && usable) {
+                log.info("副本恢复读路由: replica={}, lagMs={}", node.getKey(), node.getLagMs());
+            }
+        }
+    }
+
+    /**
+     * 读取主库当前 WAL 位置，失败时返回 null
+     */
+    private String primaryLsn() {
+        try (Connection c = primary.getConnection();
+             Statement st = c.createStatement()) {
+            st.setQueryTimeout(5);
+            try (ResultSet rs = st.executeQuery(PRIMARY_LSN_SQL)) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        } catch (SQLException | RuntimeException ex) {
+            log.debug("读取主库 WAL 位置失败: {}", ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 轮询选择一个可用副本，全部不可用时返回 null
+     */
+    private ReplicaNode pickReplica() {
+        int n = replicas.size();
+        if (n == 0) return null;
+        int start = Math.floorMod(next.getAndIncrement(), n);
+        for (int i = 0; i < n; i++) {
+            ReplicaNode node = replicas.get((start + i) % n);
+            if (node.isUsable(maxLagMs)) return node;
+        }
+        return null;
+    }
+
+    private DataSource resolve(Object key) {
+        if (PRIMARY.equals(key)) return primary;
+        for (ReplicaNode node : replicas) {
+            if (node.getKey().equals(key)) return node.getDataSource();
+        }
+        throw new IllegalStateException("unknown datasource key: " + key);
+    }
+
+    private DataSource fallback(Object key, SQLException ex) {
+        for (ReplicaNode node : replicas) {
+            if (node.getKey().equals(key)) node.markUnreachable();
+        }
+        increment(fallbacks);
+        log.warn("副本取连接失败，回落到主库: replica={}, error={}", key, ex.getMessage());
+        return primary;
+    }
+
+    List<ReplicaNode> getReplicas() {
+        return replicas;
+    }
+
+    @Override
+    public void close() {
+        if (prober != null) prober.shutdownNow();
+        closeQuietly(primary);
+        for (ReplicaNode node : replicas) closeQuietly(node.getDataSource());
+    }
+
+    private static void closeQuietly(DataSource ds) {
+        if (ds instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception ignored) {
+                // 关闭阶段的异常不影响退出
+            }
+        }
+    }
+
+    private static Counter counter(MeterRegistry registry, String name, String tagKey, String tagValue) {
+        if (registry == null) return null;
+        Counter.Builder builder = Counter.builder(name);
+        if (tagKey != null) builder.tag(tagKey, tagValue);
+        return builder.register(registry);
+    }
+
+    private static void increment(Counter counter) {
+        if (counter != null) counter.increment();
+    }
+}
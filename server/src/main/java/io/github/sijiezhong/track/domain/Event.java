@@ -1,6 +1,14 @@
 package io.github.sijiezhong.track.domain;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import jakarta.persistence.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
 import java.time.LocalDateTime;
 
 /**
@@ -10,6 +18,8 @@ import java.time.LocalDateTime;
 @Entity
 @Table(name = "event")
 public class Event {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
   @Id
   @GeneratedValue(strategy = GenerationType.IDENTITY)
   private Long id; // 事件主键ID
@@ -23,8 +33,9 @@ public class Event {
   @Column(name = "session_id")
   private Long sessionId; // 关联的会话ID
 
-  @Column(nullable = false, columnDefinition = "text")
-  private String properties; // 事件属性(JSON字符串)
+  @JdbcTypeCode(SqlTypes.JSON)
+  @Column(columnDefinition = "jsonb")
+  private JsonNode properties; // 事件属性(jsonb)
 
   private Integer appId; // 应用ID
 
@@ -99,12 +110,39 @@ public class Event {
     this.sessionId = sessionId;
   }
 
+  /**
+   * 事件属性的 JSON 文本，兼容旧的字符串读写方式
+   */
   public String getProperties() {
-    return properties;
+    return properties == null ? null : properties.toString();
   }
 
+  /**
+   * 以 JSON 文本设置属性；无法解析的文本包装为 {"_raw": 原文}
+   */
   public void setProperties(String properties) {
-    this.properties = properties;
+    if (properties == null || properties.isBlank()) {
+      this.properties = null;
+      return;
+    }
+    try {
+      this.properties = MAPPER.readTree(properties);
+    } catch (JsonProcessingException ex) {
+      ObjectNode raw = JsonNodeFactory.instance.objectNode();
+      raw.put("_raw", properties);
+      this.properties = raw;
+    }
+  }
+
+  public JsonNode getPropertiesNode() {
+    return properties;
+  }
+
+  /**
+   * 直接设置属性节点，写入时不经过字符串中转
+   */
+  public void setPropertiesNode(JsonNode properties) {
+    this.properties = properties == null || properties.isNull() ? null : properties;
   }
 
   public Integer getAppId() {
@@ -0,0 +1,64 @@
+package io.github.sijiezhong.track.dto;
+
+import io.github.sijiezhong.track.exception.BusinessException;
+import io.github.sijiezhong.track.exception.ErrorCode;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * 事件游标分页的续查位置
+ *
+ * <p>记录上一页最后一行的 (eventTime, id)，对外编码为不透明的 base64url 字符串。
+ * 下一页按 {@code (event_time, id) < (eventTime, id)} 直接定位，无需扫描并丢弃之前的行。
+ *
+ * @author sijie
+ */
+public final class EventCursor {
+
+    private final LocalDateTime eventTime;
+    private final long id;
+
+    public EventCursor(LocalDateTime eventTime, long id) {
+        this.eventTime = eventTime;
+        this.id = id;
+    }
+
+    public LocalDateTime getEventTime() {
+        return eventTime;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * 编码为对外的游标字符串
+     */
+    public String encode() {
+        String raw = eventTime + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标字符串
+     *
+     * @param token 游标字符串
+     * @return 续查位置
+     * @throws BusinessException 游标格式无效时抛出
+     */
+    public static EventCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int idx = raw.lastIndexOf('|');
+            if (idx <= 0) {
+                throw new BusinessException(ErrorCode.INVALID_CURSOR);
+            }
+            return new EventCursor(LocalDateTime.parse(raw.substring(0, idx)), Long.parseLong(raw.substring(idx + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new BusinessException(ErrorCode.INVALID_CURSOR);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package io.github.sijiezhong.track.dto;
 
+import com.fasterxml.jackson.databind.JsonNode;
+
 import java.time.LocalDateTime;
 
 /**
@@ -24,6 +26,12 @@ public class EventListItem {
         this.eventTime = eventTime;
         this.properties = properties;
     }
+    /**
+     * 投影查询使用：properties 列为 jsonb，读出为 JsonNode
+     */
+    public EventListItem(Long id, String eventName, Integer userId, Long sessionId, Integer appId, LocalDateTime eventTime, JsonNode properties) {
+        this(id, eventName, userId, sessionId, appId, eventTime, properties == null ? null : properties.toString());
+    }
     // getters/setters
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
@@ -0,0 +1,77 @@
+package io.github.sijiezhong.track.dto;
+
+import io.github.sijiezhong.track.export.ExportJob;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * 导出任务状态与进度
+ */
+public class ExportJobResponse {
+
+    private String jobId;
+    private String format;
+    private boolean gzip;
+    private int parallelism;        // 实际使用的并行切片数
+    private String status;          // QUEUED / RUNNING / SUCCEEDED / FAILED / CANCELLED
+    private long rowsWritten;       // 已写出行数
+    private long bytesWritten;      // 已写入文件的字节数
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private String error;           // 失败原因
+    private String downloadUrl;     // 成功后可下载，支持 Range 断点续传
+
+    public ExportJobResponse() {}
+
+    /**
+     * @param downloadUrl 下载地址，仅在任务成功时填入
+     */
+    public static ExportJobResponse from(ExportJob job, String downloadUrl) {
+        ExportJobResponse r = new ExportJobResponse();
+        r.jobId = job.getId();
+        r.format = job.getFormat().getExtension();
+        r.gzip = job.isGzip();
+        r.parallelism = job.getParallelism();
+        r.status = job.getStatus().name();
+        r.rowsWritten = job.getRowsWritten();
+        r.bytesWritten = job.getBytesWritten();
+        r.createdAt = toLocal(job.getCreatedAt());
+        r.startedAt = toLocal(job.getStartedAt());
+        r.finishedAt = toLocal(job.getFinishedAt());
+        r.error = job.getError();
+        r.downloadUrl = job.getStatus() == ExportJob.Status.SUCCEEDED ? downloadUrl : null;
+        return r;
+    }
+
+    private static LocalDateTime toLocal(Instant t) {
+        return t == null ? null : LocalDateTime.ofInstant(t, ZoneId.systemDefault());
+    }
+
+    public String getJobId() { return jobId; }
+    public void setJobId(String jobId) { this.jobId = jobId; }
+    public String getFormat() { return format; }
+    public void setFormat(String format) { this.format = format; }
+    public boolean isGzip() { return gzip; }
+    public void setGzip(boolean gzip) { this.gzip = gzip; }
+    public int getParallelism() { return parallelism; }
+    public void setParallelism(int parallelism) { this.parallelism = parallelism; }
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    public long getRowsWritten() { return rowsWritten; }
+    public void setRowsWritten(long rowsWritten) { this.rowsWritten = rowsWritten; }
+    public long getBytesWritten() { return bytesWritten; }
+    public void setBytesWritten(long bytesWritten) { this.bytesWritten = bytesWritten; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+    public LocalDateTime getStartedAt() { return startedAt; }
+    public void setStartedAt(LocalDateTime startedAt) { this.startedAt = startedAt; }
+    public LocalDateTime getFinishedAt() { return finishedAt; }
+    public void setFinishedAt(LocalDateTime finishedAt) { this.finishedAt = finishedAt; }
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+    public String getDownloadUrl() { return downloadUrl; }
+    public void setDownloadUrl(String downloadUrl) { this.downloadUrl = downloadUrl; }
+}
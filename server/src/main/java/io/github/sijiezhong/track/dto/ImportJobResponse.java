@@ -0,0 +1,101 @@
+package io.github.sijiezhong.track.dto;
+
+import io.github.sijiezhong.track.importer.ImportJob;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * 导入任务状态与进度
+ */
+public class ImportJobResponse {
+
+    private String jobId;
+    private String format;
+    private boolean gzip;
+    private String status;          // QUEUED / RUNNING / SUCCEEDED / FAILED / CANCELLED
+    private String phase;           // STAGING / SESSIONS / MERGING，开始执行前为空
+    private long bytesTotal;        // 上传文件大小
+    private long bytesRead;         // 已解析字节数
+    private long rowsRead;          // 已读取记录数
+    private long rowsRejected;      // 拒绝行数
+    private long rowsStaged;        // 已写入暂存表行数
+    private long sessionsCreated;   // 新建会话数
+    private long sessionsUpdated;   // 合并到已有会话数
+    private long rowsMerged;        // 已写入 event 表行数
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private String error;           // 失败原因
+    private String rejectsUrl;      // 有拒绝行时可下载拒绝行报告
+
+    public ImportJobResponse() {}
+
+    /**
+     * @param rejectsUrl 拒绝行报告地址，仅在有拒绝行时填入
+     */
+    public static ImportJobResponse from(ImportJob job, String rejectsUrl) {
+        ImportJobResponse r = new ImportJobResponse();
+        r.jobId = job.getId();
+        r.format = job.getFormat().getExtension();
+        r.gzip = job.isGzip();
+        r.status = job.getStatus().name();
+        r.phase = job.getPhase() == null ? null : job.getPhase().name();
+        r.bytesTotal = job.getBytesTotal();
+        r.bytesRead = job.getBytesRead();
+        r.rowsRead = job.getRowsRead();
+        r.rowsRejected = job.getRowsRejected();
+        r.rowsStaged = job.getRowsStaged();
+        r.sessionsCreated = job.getSessionsCreated();
+        r.sessionsUpdated = job.getSessionsUpdated();
+        r.rowsMerged = job.getRowsMerged();
+        r.createdAt = toLocal(job.getCreatedAt());
+        r.startedAt = toLocal(job.getStartedAt());
+        r.finishedAt = toLocal(job.getFinishedAt());
+        r.error = job.getError();
+        r.rejectsUrl = job.getRowsRejected() > 0 ? rejectsUrl : null;
+        return r;
+    }
+
+    private static LocalDateTime toLocal(Instant t) {
+        return t == null ? null : LocalDateTime.ofInstant(t, ZoneId.systemDefault());
+    }
+
+    public String getJobId() { return jobId; }
+    public void setJobId(String jobId) { this.jobId = jobId; }
+    public String getFormat() { return format; }
+    public void setFormat(String format) { this.format = format; }
+    public boolean isGzip() { return gzip; }
+    public void setGzip(boolean gzip) { this.gzip = gzip; }
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    public String getPhase() { return phase; }
+    public void setPhase(String phase) { this.phase = phase; }
+    public long getBytesTotal() { return bytesTotal; }
+    public void setBytesTotal(long bytesTotal) { this.bytesTotal = bytesTotal; }
+    public long getBytesRead() { return bytesRead; }
+    public void setBytesRead(long bytesRead) { this.bytesRead = bytesRead; }
+    public long getRowsRead() { return rowsRead; }
+    public void setRowsRead(long rowsRead) { this.rowsRead = rowsRead; }
+    public long getRowsRejected() { return rowsRejected; }
+    public void setRowsRejected(long rowsRejected) { this.rowsRejected = rowsRejected; }
+    public long getRowsStaged() { return rowsStaged; }
+    public void setRowsStaged(long rowsStaged) { this.rowsStaged = rowsStaged; }
+    public long getSessionsCreated() { return sessionsCreated; }
+    public void setSessionsCreated(long sessionsCreated) { this.sessionsCreated = sessionsCreated; }
+    public long getSessionsUpdated() { return sessionsUpdated; }
+    public void setSessionsUpdated(long sessionsUpdated) { this.sessionsUpdated = sessionsUpdated; }
+    public long getRowsMerged() { return rowsMerged; }
+    public void setRowsMerged(long rowsMerged) { this.rowsMerged = rowsMerged; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+    public LocalDateTime getStartedAt() { return startedAt; }
+    public void setStartedAt(LocalDateTime startedAt) { this.startedAt = startedAt; }
+    public LocalDateTime getFinishedAt() { return finishedAt; }
+    public void setFinishedAt(LocalDateTime finishedAt) { this.finishedAt = finishedAt; }
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+    public String getRejectsUrl() { return rejectsUrl; }
+    public void setRejectsUrl(String rejectsUrl) { this.rejectsUrl = rejectsUrl; }
+}
@@ -1,12 +1,24 @@
 package io.github.sijiezhong.track.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.util.List;
 
+/**
+ * 分页结果
+ *
+ * <p>偏移分页返回 total/page；游标分页返回 nextCursor/hasNext，此时 page 固定为0。
+ * 未统计总数时 total 为-1；total 为执行计划估计值时 totalEstimated 为 true。
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class PageResult<T> {
     private long total;
     private int page;
     private int size;
     private List<T> content;
+    private String nextCursor; // 游标分页的下一页游标，没有下一页时为 null
+    private Boolean hasNext;   // 是否还有下一页，精确统计总数的偏移分页时为 null
+    private Boolean totalEstimated; // total 是否为估计值，精确或未统计时为 null
 
     public PageResult() { }
     public PageResult(long total, int page, int size, List<T> content) {
@@ -23,4 +35,10 @@ public class PageResult<T> {
     public void setSize(int size) { this.size = size; }
     public List<T> getContent() { return content; }
     public void setContent(List<T> content) { this.content = content; }
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+    public Boolean getHasNext() { return hasNext; }
+    public void setHasNext(Boolean hasNext) { this.hasNext = hasNext; }
+    public Boolean getTotalEstimated() { return totalEstimated; }
+    public void setTotalEstimated(Boolean totalEstimated) { this.totalEstimated = totalEstimated; }
 }
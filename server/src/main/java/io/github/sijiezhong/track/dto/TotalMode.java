@@ -0,0 +1,31 @@
+package io.github.sijiezhong.track.dto;
+
+import io.github.sijiezhong.track.exception.BusinessException;
+import io.github.sijiezhong.track.exception.ErrorCode;
+
+/**
+ * 分页查询的总数统计方式
+ */
+public enum TotalMode {
+    /** 精确 count(*)，与旧行为一致 */
+    EXACT,
+    /** 取执行计划的行数估计，不扫描数据 */
+    ESTIMATE,
+    /** 不统计总数，只返回 hasNext */
+    NONE;
+
+    /**
+     * 解析查询参数，为空时返回 defaultMode
+     */
+    public static TotalMode from(String value, TotalMode defaultMode) {
+        if (value == null || value.isBlank()) {
+            return defaultMode;
+        }
+        for (TotalMode m : values()) {
+            if (m.name().equalsIgnoreCase(value.trim())) {
+                return m;
+            }
+        }
+        throw new BusinessException(ErrorCode.BAD_REQUEST, "不支持的总数统计方式: " + value);
+    }
+}
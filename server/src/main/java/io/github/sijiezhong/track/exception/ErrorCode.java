@@ -20,6 +20,7 @@ public enum ErrorCode {
     NOT_FOUND(404, "资源未找到"),
     METHOD_NOT_ALLOWED(405, "方法不允许"),
     CONFLICT(409, "资源冲突"),
+    TOO_MANY_REQUESTS(429, "请求过于频繁"),
     VALIDATION_ERROR(400, "参数验证失败"),
     
     // 业务错误码 (4xx范围，使用400-499)
@@ -32,6 +33,10 @@ public enum ErrorCode {
     INVALID_PAGE_PARAMS(400, "无效的分页参数"),
     FUNNEL_STEPS_INVALID(400, "漏斗步骤数量必须大于等于2"),
     SEGMENTATION_BY_INVALID(400, "不支持的分组维度"),
+    INVALID_CURSOR(400, "无效的分页游标"),
+    EXPORT_FORMAT_INVALID(400, "不支持的导出格式"),
+    EXPORT_JOB_NOT_READY(409, "导出任务尚未完成"),
+    IMPORT_FORMAT_INVALID(400, "不支持的导入格式"),
     
     // 服务器错误 5xx
     INTERNAL_ERROR(500, "内部服务器错误"),
@@ -0,0 +1,84 @@
+package io.github.sijiezhong.track.export;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 增量变更订阅的一页结果
+ *
+ * <p>行按 id 升序；nextWatermark 是本页最后一行的 id，没有返回行时等于请求的水位，
+ * 客户端下次以它作为 after 参数续读。
+ */
+public final class ChangeFeedPage {
+
+    private final List<Object[]> rows;
+    private final long nextWatermark;
+    private final boolean hasMore;
+    private final boolean settling;
+
+    private ChangeFeedPage(List<Object[]> rows, long nextWatermark, boolean hasMore, boolean settling) {
+        this.rows = Collections.unmodifiableList(rows);
+        this.nextWatermark = nextWatermark;
+        this.hasMore = hasMore;
+        this.settling = settling;
+    }
+
+    /**
+     * 按沉淀窗口截断读到的行
+     *
+     * <p>id 在插入时分配、在提交时才可见，较小 id 的事务可能晚于较大 id 提交。
+     * 遇到第一条创建时间晚于 cutoff 的行即停止，该行及之后的行留到下次轮询，
+     * 以免水位越过仍可能有未提交事务的 id 区间。
+     *
+     * @param rows 查询列取值，按 id 升序，最多 limit + 1 行
+     * @param ids 各行 id
+     * @param createTimes 各行创建时间
+     * @param cutoff 沉淀截止时间，之后创建的行本次不返回
+     * @param after 请求的水位
+     * @param limit 页大小
+     */
+    static ChangeFeedPage settle(List<Object[]> rows, long[] ids, LocalDateTime[] createTimes,
+                                 LocalDateTime cutoff, long after, int limit) {
+        int n = Math.min(rows.size(), limit);
+        int settled = 0;
+        while (settled < n && (createTimes[settled] == null || !createTimes[settled].isAfter(cutoff))) {
+            settled++;
+        }
+        boolean settling = settled < n;
+        // 多读的一行只用于判断是否还有下一页；被沉淀窗口截断时客户端应等待下次轮询
+        boolean hasMore = !settling && rows.size() > limit;
+        long watermark = settled > 0 ? ids[settled - 1] : after;
+        return new ChangeFeedPage(new ArrayList<>(rows.subList(0, settled)), watermark, hasMore, settling);
+    }
+
+    /**
+     * 本应用有导入合并在途时的空页：水位不变，按沉淀处理，客户端等待下次轮询
+     */
+    static ChangeFeedPage importing(long after) {
+        return new ChangeFeedPage(new ArrayList<>(), after, false, true);
+    }
+
+    public List<Object[]> getRows() {
+        return rows;
+    }
+
+    public long getNextWatermark() {
+        return nextWatermark;
+    }
+
+    /**
+     * 本页已满且之后还有已沉淀的行，客户端可立即续读
+     */
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    /**
+     * 本页在沉淀窗口处被截断，或因导入合并在途未读取
+     */
+    public boolean isSettling() {
+        return settling;
+    }
+}
@@ -0,0 +1,130 @@
+package io.github.sijiezhong.track.export;
+
+import io.github.sijiezhong.track.config.ExportProperties;
+import io.github.sijiezhong.track.importer.ImportBarrier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按 id 水位读取增量事件，供数仓持续同步
+ *
+ * <p>每次轮询是 (app_id, id) 索引上从水位开始的一段范围扫描，代价只与页大小有关。
+ * 与导出不同，始终在主库读取：沉淀窗口按主库上的提交时间推算，副本延迟会直接吃掉窗口，
+ * 延迟超过窗口时水位会越过副本尚未回放的行且不再回头。
+ *
+ * <p>id 由序列在插入时分配，事务提交顺序与 id 顺序不一定一致。为避免水位越过尚未提交的行，
+ * 创建时间在沉淀窗口（export.changes.settle-ms）内的行暂不返回。窗口只能覆盖提交耗时小于窗口、
+ * 且各实例时钟偏差在窗口内的情况，超过窗口才提交的行会被跳过，窗口应大于最长的写入事务。
+ * 批量导入的合并事务不受窗口约束：先读出本页的 id 上界，再检查本应用是否有合并在途（{@link ImportBarrier}），
+ * 有则返回空页，否则再读取上界以内的行。只看本应用的合并，不取锁，各应用的轮询互不影响，也不阻塞合并。
+ */
+@Component
+public class ChangeFeedReader {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate primaryTx;
+    private final ExportProperties.Changes properties;
+
+    public ChangeFeedReader(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                            ExportProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        // 非只读事务，副本路由不会选中副本
+        this.primaryTx = new TransactionTemplate(transactionManager);
+        this.properties = properties.getChanges();
+    }
+
+    /**
+     * 读取水位之后的一页事件
+     *
+     * @param appId 应用ID
+     * @param after 水位，只返回 id 大于它的事件
+     * @param eventName 按事件名过滤，可为空
+     * @param columns 查询列
+     * @param limit 页大小，调用方已按上限约束
+     * @return 按 id 升序的一页事件与下一个水位；有导入合并在途时为水位不变的空页
+     */
+    public ChangeFeedPage read(Integer appId, long after, String eventName, List<EventExportColumn> columns, int limit) {
+        List<Object> boundArgs = new ArrayList<>();
+        String boundSql = boundSql(appId, after, eventName, limit, boundArgs);
+        int width = columns.size();
+        List<Object[]> rows = new ArrayList<>();
+        long[] ids = new long[limit + 1];
+        LocalDateTime[] createTimes = new LocalDateTime[limit + 1];
+        Boolean quiet = primaryTx.execute(status -> {
+            Long bound = jdbcTemplate.queryForObject(boundSql, Long.class, boundArgs.toArray());
+            if (bound == null) return true;
+            if (Boolean.TRUE.equals(jdbcTemplate.queryForObject(ImportBarrier.MERGING_SQL, Boolean.class, appId))) {
+                return false;
+            }
+            List<Object> args = new ArrayList<>();
+            String sql = toSql(appId, after, bound, eventName, columns, limit, args);
+            jdbcTemplate.query(sql, rs -> {
+                int i = rows.size();
+                Object[] values = new Object[width];
+                for (int c = 0; c < width; c++) {
+                    values[c] = EventExportReader.read(rs, c + 1, columns.get(c));
+                }
+                ids[i] = rs.getLong(width + 1);
+                createTimes[i] = rs.getObject(width + 2, LocalDateTime.class);
+                rows.add(values);
+            }, args.toArray());
+            return true;
+        });
+        if (!Boolean.TRUE.equals(quiet)) return ChangeFeedPage.importing(after);
+        // create_time 由应用在写入时取本机时间，截止时间同样按应用时钟计算
+        LocalDateTime cutoff = LocalDateTime.now().minusNanos(properties.getSettleMs() * 1_000_000L);
+        return ChangeFeedPage.settle(rows, ids, createTimes, cutoff, after, limit);
+    }
+
+    /**
+     * 本页的 id 上界：水位之后第 limit + 1 行（不足时为最后一行）的 id，没有行时为 null
+     *
+     * <p>只读 (app_id, id) 索引；上界以内的 id 都在此之前分配，之后检查合并才有意义。
+     */
+    static String boundSql(Integer appId, long after, String eventName, int limit, List<Object> args) {
+        StringBuilder sql = new StringBuilder("select max(t.id) from (select e.id from event e ");
+        appendRange(sql, appId, after, null, eventName, args);
+        sql.append(" order by e.id limit ?) t");
+        args.add(limit + 1);
+        return sql.toString();
+    }
+
+    /**
+     * 生成查询语句：查询列之后追加 id 与 create_time，多读一行用于判断是否还有下一页
+     *
+     * @param bound id 上界（含），由 {@link #boundSql} 读出
+     */
+    static String toSql(Integer appId, long after, long bound, String eventName, List<EventExportColumn> columns,
+                        int limit, List<Object> args) {
+        StringBuilder sql = new StringBuilder("select ");
+        for (EventExportColumn c : columns) {
+            sql.append("e.").append(c.getColumnName()).append(", ");
+        }
+        sql.append("e.id, e.create_time from event e ");
+        appendRange(sql, appId, after, bound, eventName, args);
+        sql.append(" order by e.id limit ?");
+        args.add(limit + 1);
+        return sql.toString();
+    }
+
+    private static void appendRange(StringBuilder sql, Integer appId, long after, Long bound, String eventName,
+                                    List<Object> args) {
+        sql.append("where e.app_id = ? and e.id > ?");
+        args.add(appId);
+        args.add(after);
+        if (bound != null) {
+            sql.append(" and e.id <= ?");
+            args.add(bound);
+        }
+        if (eventName != null && !eventName.isBlank()) {
+            sql.append(" and e.event_name = ?");
+            args.add(eventName);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package io.github.sijiezhong.track.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 把导出行写为 CSV，写入缓冲满后直接刷到输出流
+ */
+public final class CsvExportWriter implements ExportRowWriter {
+
+    private final Writer writer;
+    private final ExportColumnSelection selection;
+    private final int[] indexes;
+
+    public CsvExportWriter(OutputStream out, ExportColumnSelection selection) {
+        // 缓冲由调用方的 BufferedOutputStream 提供
+        this.writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        this.selection = selection;
+        this.indexes = selection.headerIndexes();
+    }
+
+    public void writeHeader() throws IOException {
+        writer.write(String.join(",", selection.headers()));
+        writer.write('\n');
+    }
+
+    @Override
+    public void writeRow(Object[] values) throws IOException {
+        for (int i = 0; i < indexes.length; i++) {
+            if (i > 0) writer.write(',');
+            int idx = indexes[i];
+            if (idx >= 0) {
+                Object v = selection.queryColumns().get(idx).format(values[idx]);
+                if (v != null) writer.write(escape(v.toString()));
+            }
+        }
+        writer.write('\n');
+    }
+
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void finish() throws IOException {
+        flush();
+    }
+
+    /**
+     * 含逗号、换行或引号的值加引号，引号转义为两个引号
+     */
+    static String escape(String s) {
+        boolean needQuote = s.indexOf(',') >= 0 || s.indexOf('\n') >= 0 || s.indexOf('"') >= 0;
+        if (!needQuote) return s;
+        return "\"" + s.replace("\"", "\"\"") + "\"";
+    }
+}
@@ -0,0 +1,99 @@
+package io.github.sijiezhong.track.export;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 事件导出列
+ *
+ * <p>每列对应 {@link io.github.sijiezhong.track.domain.Event} 的一个属性，导出时只 SELECT 所需列，
+ * 不再加载完整实体。apiName 是 fields 参数与表头中使用的列名。
+ */
+public enum EventExportColumn {
+    ID("id", "id"),
+    EVENT_NAME("eventName", "event_name"),
+    USER_ID("userId", "user_id"),
+    SESSION_ID("sessionId", "session_id"),
+    APP_ID("appId", "app_id"),
+    EVENT_TIME("eventTime", "event_time"),
+    UA("ua", "ua"),
+    REFERRER("referrer", "referrer"),
+    IP("ip", "ip"),
+    DEVICE("device", "device"),
+    OS("os", "os"),
+    BROWSER("browser", "browser"),
+    PROPERTIES("properties", "properties");
+
+    private static final DateTimeFormatter FMT = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+    private final String apiName;
+    private final String columnName;
+
+    EventExportColumn(String apiName, String columnName) {
+        this.apiName = apiName;
+        this.columnName = columnName;
+    }
+
+    /**
+     * 列名，同时也是实体属性名
+     */
+    public String getApiName() {
+        return apiName;
+    }
+
+    /**
+     * event 表中的列名，供 JDBC 直接查询使用
+     */
+    public String getColumnName() {
+        return columnName;
+    }
+
+    /**
+     * 是否为只读用户不可见的敏感列
+     */
+    public boolean isSensitive() {
+        return this == PROPERTIES;
+    }
+
+    /**
+     * 取值种类少的列，列式导出时使用字典编码
+     */
+    public boolean isLowCardinality() {
+        return this == EVENT_NAME || this == DEVICE || this == OS || this == BROWSER;
+    }
+
+    /**
+     * 格式化为导出文本，时间使用 ISO 格式
+     */
+    public Object format(Object value) {
+        if (value instanceof LocalDateTime t) {
+            return t.format(FMT);
+        }
+        return value;
+    }
+
+    /**
+     * 按列名查找，未知列名返回 null
+     */
+    public static EventExportColumn fromApiName(String name) {
+        if (name == null) return null;
+        String n = name.trim();
+        for (EventExportColumn c : values()) {
+            if (c.apiName.equals(n)) return c;
+        }
+        return null;
+    }
+
+    /**
+     * 默认导出列；只读用户不含敏感列
+     */
+    public static List<EventExportColumn> defaults(boolean hideSensitive) {
+        List<EventExportColumn> out = new ArrayList<>();
+        for (EventExportColumn c : values()) {
+            if (!(hideSensitive && c.isSensitive())) out.add(c);
+        }
+        return out;
+    }
+}
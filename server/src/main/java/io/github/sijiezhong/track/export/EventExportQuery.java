@@ -0,0 +1,117 @@
+package io.github.sijiezhong.track.export;
+
+import io.github.sijiezhong.track.repository.PropertyFilter;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 导出范围：应用必填，事件名、时间范围、属性条件可选
+ *
+ * <p>所有导出（同步流式、单游标任务、并行切片任务）统一按 (event_time, id) 倒序，
+ * 同一查询的结果顺序与是否切片无关。
+ */
+public final class EventExportQuery {
+
+    private final Integer appId;
+    private final String eventName;
+    private final LocalDateTime startTime;
+    private final LocalDateTime endTime;
+    private final PropertyFilter properties;
+    // 时间切片中除最新的一片外，结束时间不含边界
+    private final boolean endExclusive;
+
+    public EventExportQuery(Integer appId, String eventName, LocalDateTime startTime, LocalDateTime endTime,
+                            PropertyFilter properties) {
+        this(appId, eventName, startTime, endTime, properties, false);
+    }
+
+    private EventExportQuery(Integer appId, String eventName, LocalDateTime startTime, LocalDateTime endTime,
+                             PropertyFilter properties, boolean endExclusive) {
+        this.appId = appId;
+        this.eventName = eventName == null || eventName.isBlank() ? null : eventName;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.properties = properties == null ? PropertyFilter.NONE : properties;
+        this.endExclusive = endExclusive;
+    }
+
+    public Integer getAppId() { return appId; }
+    public String getEventName() { return eventName; }
+    public LocalDateTime getStartTime() { return startTime; }
+    public LocalDateTime getEndTime() { return endTime; }
+    public PropertyFilter getProperties() { return properties; }
+
+    /**
+     * 把时间范围等分为至多 n 个切片，按时间从新到旧排列
+     *
+     * <p>除最新的切片外都不含结束时间，各切片首尾相接、互不重叠。
+     * 每个切片按 (event_time, id) 倒序读取，依次拼接即为整个范围不切片时的结果。
+     *
+     * @param minTime 范围内最早的事件时间，查询未指定起始时间时使用
+     * @param maxTime 范围内最晚的事件时间，查询未指定结束时间时使用
+     * @return 切片列表；范围为空或无法再分时只返回一个切片
+     */
+    public List<EventExportQuery> slices(LocalDateTime minTime, LocalDateTime maxTime, int n) {
+        LocalDateTime from = startTime != null ? startTime : minTime;
+        LocalDateTime to = endTime != null ? endTime : maxTime;
+        long totalMicros = from == null || to == null ? 0L : ChronoUnit.MICROS.between(from, to);
+        int count = (int) Math.min(Math.max(1, n), Math.max(1L, totalMicros));
+        List<EventExportQuery> result = new ArrayList<>(count);
+        for (int i = count - 1; i >= 0; i--) {
+            LocalDateTime sliceStart = i == 0 ? from : from.plus(totalMicros * i / count, ChronoUnit.MICROS);
+            LocalDateTime sliceEnd = i == count - 1 ? to : from.plus(totalMicros * (i + 1) / count, ChronoUnit.MICROS);
+            result.add(new EventExportQuery(appId, eventName, sliceStart, sliceEnd, properties, i < count - 1));
+        }
+        return result;
+    }
+
+    /**
+     * 生成查询语句，按 (event_time, id) 倒序以命中 (app_id, event_time desc, id desc) 索引
+     *
+     * @param columns 查询列
+     * @param args 输出参数
+     */
+    String toSql(List<EventExportColumn> columns, List<Object> args) {
+        StringBuilder sql = new StringBuilder("select ");
+        if (columns.isEmpty()) {
+            sql.append("e.id");
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) sql.append(", ");
+            sql.append("e.").append(columns.get(i).getColumnName());
+        }
+        sql.append(" from event e where e.app_id = ?");
+        args.add(appId);
+        if (eventName != null) {
+            sql.append(" and e.event_name = ?");
+            args.add(eventName);
+        }
+        if (startTime != null) {
+            sql.append(" and e.event_time >= ?");
+            args.add(startTime);
+        }
+        if (endTime != null) {
+            sql.append(endExclusive ? " and e.event_time < ?" : " and e.event_time <= ?");
+            args.add(endTime);
+        }
+        properties.appendSql("e", sql, args);
+        sql.append(" order by e.event_time desc, e.id desc");
+        return sql.toString();
+    }
+
+    /**
+     * 查询范围内最早与最晚事件时间的语句，只按应用与事件名过滤以走索引
+     */
+    String toBoundsSql(List<Object> args) {
+        StringBuilder sql = new StringBuilder("select min(e.event_time), max(e.event_time) from event e where e.app_id = ?");
+        args.add(appId);
+        if (eventName != null) {
+            sql.append(" and e.event_name = ?");
+            args.add(eventName);
+        }
+        return sql.toString();
+    }
+}
@@ -0,0 +1,124 @@
+package io.github.sijiezhong.track.export;
+
+import io.github.sijiezhong.track.config.ExportProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 以服务端游标逐行读取导出数据
+ *
+ * <p>PostgreSQL 驱动只有在关闭自动提交、设置 fetchSize 且结果集为 forward-only 时才使用游标分批拉取，
+ * 否则会一次性把结果读入内存。因此扫描在只读事务中进行（启用副本路由时同时走副本）。
+ */
+@Component
+public class EventExportReader {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTx;
+    private final ExportProperties properties;
+
+    public EventExportReader(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                             ExportProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+        this.properties = properties;
+    }
+
+    /**
+     * 逐行回调
+     */
+    @FunctionalInterface
+    public interface RowHandler {
+        /**
+         * @param values 与查询列顺序一致的取值；数组在各行之间复用，不能在回调之外保留
+         */
+        void onRow(Object[] values) throws IOException;
+    }
+
+    /**
+     * 扫描满足条件的事件
+     *
+     * @param query 导出范围
+     * @param columns 查询列
+     * @param handler 行回调，抛出的 IOException 会中止扫描并原样抛出
+     * @return 扫描行数
+     */
+    public long scan(EventExportQuery query, List<EventExportColumn> columns, RowHandler handler) throws IOException {
+        List<Object> args = new ArrayList<>();
+        String sql = query.toSql(columns, args);
+        int fetchSize = properties.getFetchSize();
+        PreparedStatementCreator psc = con -> {
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            for (int i = 0; i < args.size(); i++) {
+                ps.setObject(i + 1, args.get(i));
+            }
+            return ps;
+        };
+        Object[] values = new Object[columns.size()];
+        long[] count = new long[1];
+        RowCallbackHandler rch = rs -> {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = read(rs, i + 1, columns.get(i));
+            }
+            try {
+                handler.onRow(values);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            count[0]++;
+        };
+        try {
+            readOnlyTx.executeWithoutResult(status -> jdbcTemplate.query(psc, rch));
+        } catch (UncheckedIOException ex) {
+            // 通常是客户端断开，事务回滚并关闭游标
+            throw ex.getCause();
+        }
+        return count[0];
+    }
+
+    /**
+     * 导出范围内最早与最晚的事件时间，用于切分并行读取的时间片；没有数据时两者均为 null
+     */
+    public LocalDateTime[] timeBounds(EventExportQuery query) {
+        List<Object> args = new ArrayList<>();
+        String sql = query.toBoundsSql(args);
+        return readOnlyTx.execute(status -> jdbcTemplate.queryForObject(sql,
+                (rs, i) -> new LocalDateTime[]{rs.getObject(1, LocalDateTime.class), rs.getObject(2, LocalDateTime.class)},
+                args.toArray()));
+    }
+
+    static Object read(ResultSet rs, int index, EventExportColumn column) throws SQLException {
+        Object v;
+        switch (column) {
+            case ID:
+            case SESSION_ID:
+                v = rs.getLong(index);
+                break;
+            case USER_ID:
+            case APP_ID:
+                v = rs.getInt(index);
+                break;
+            case EVENT_TIME:
+                return rs.getObject(index, LocalDateTime.class);
+            default:
+                // properties 为 jsonb，按文本读取即为 JSON
+                return rs.getString(index);
+        }
+        return rs.wasNull() ? null : v;
+    }
+}
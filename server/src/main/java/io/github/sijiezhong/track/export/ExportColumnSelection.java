@@ -0,0 +1,88 @@
+package io.github.sijiezhong.track.export;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 一次导出请求的列选择
+ *
+ * <p>headers 保持请求中的列顺序（未知列与被隐藏的敏感列输出空值），
+ * {@link #queryColumns()} 是实际需要从数据库读取的去重列集合。
+ */
+public final class ExportColumnSelection {
+
+    private final List<String> headers;
+    private final List<EventExportColumn> columns; // 与 headers 对齐，不读取的列为 null
+    private final List<EventExportColumn> queryColumns;
+
+    private ExportColumnSelection(List<String> headers, List<EventExportColumn> columns) {
+        this.headers = Collections.unmodifiableList(headers);
+        this.columns = Collections.unmodifiableList(columns);
+        Set<EventExportColumn> distinct = new LinkedHashSet<>();
+        for (EventExportColumn c : columns) {
+            if (c != null) distinct.add(c);
+        }
+        this.queryColumns = List.copyOf(distinct);
+    }
+
+    /**
+     * 解析 fields 参数
+     *
+     * @param fieldsCsv 逗号分隔的列名，为空时使用默认列
+     * @param hideSensitive 是否隐藏敏感列
+     * @return 列选择
+     */
+    public static ExportColumnSelection parse(String fieldsCsv, boolean hideSensitive) {
+        List<String> headers = new ArrayList<>();
+        List<EventExportColumn> columns = new ArrayList<>();
+        if (fieldsCsv == null || fieldsCsv.isBlank()) {
+            for (EventExportColumn c : EventExportColumn.defaults(hideSensitive)) {
+                headers.add(c.getApiName());
+                columns.add(c);
+            }
+        } else {
+            for (String raw : fieldsCsv.split(",")) {
+                EventExportColumn c = EventExportColumn.fromApiName(raw);
+                headers.add(raw);
+                columns.add(c != null && hideSensitive && c.isSensitive() ? null : c);
+            }
+        }
+        return new ExportColumnSelection(headers, columns);
+    }
+
+    public List<String> headers() {
+        return headers;
+    }
+
+    public List<EventExportColumn> columns() {
+        return columns;
+    }
+
+    public List<EventExportColumn> queryColumns() {
+        return queryColumns;
+    }
+
+    /**
+     * 每个表头列在 {@link #queryColumns()} 中的下标，不读取的列为 -1
+     */
+    public int[] headerIndexes() {
+        int[] out = new int[columns.size()];
+        for (int i = 0; i < out.length; i++) {
+            EventExportColumn c = columns.get(i);
+            out[i] = c == null ? -1 : queryColumns.indexOf(c);
+        }
+        return out;
+    }
+
+    /**
+     * 查询列的实体属性名
+     */
+    public List<String> queryAttributes() {
+        List<String> out = new ArrayList<>(queryColumns.size());
+        for (EventExportColumn c : queryColumns) out.add(c.getApiName());
+        return out;
+    }
+}
@@ -0,0 +1,108 @@
+package io.github.sijiezhong.track.export;
+
+import io.github.sijiezhong.track.config.ExportProperties;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 导出文件格式
+ */
+public enum ExportFormat {
+    CSV("csv", "text/csv") {
+        @Override
+        public ExportRowWriter open(OutputStream out, ExportColumnSelection selection, ExportProperties properties)
+                throws IOException {
+            CsvExportWriter writer = new CsvExportWriter(out, selection);
+            writer.writeHeader();
+            return writer;
+        }
+
+        @Override
+        public boolean isSplittable() {
+            return true;
+        }
+
+        @Override
+        public ExportRowWriter openSlice(OutputStream out, ExportColumnSelection selection, ExportProperties properties,
+                                         boolean first) throws IOException {
+            return first ? open(out, selection, properties) : new CsvExportWriter(out, selection);
+        }
+    },
+    NDJSON("ndjson", "application/x-ndjson") {
+        @Override
+        public ExportRowWriter open(OutputStream out, ExportColumnSelection selection, ExportProperties properties)
+                throws IOException {
+            return new NdjsonExportWriter(out, selection);
+        }
+
+        @Override
+        public boolean isSplittable() {
+            return true;
+        }
+
+        @Override
+        public ExportRowWriter openSlice(OutputStream out, ExportColumnSelection selection, ExportProperties properties,
+                                         boolean first) throws IOException {
+            return open(out, selection, properties);
+        }
+    },
+    ARROW("arrows", "application/vnd.apache.arrow.stream") {
+        @Override
+        public ExportRowWriter open(OutputStream out, ExportColumnSelection selection, ExportProperties properties)
+                throws IOException {
+            return new ArrowExportWriter(out, selection.queryColumns(), properties.getArrow());
+        }
+    },
+    PARQUET("parquet", "application/octet-stream") {
+        @Override
+        public ExportRowWriter open(OutputStream out, ExportColumnSelection selection, ExportProperties properties)
+                throws IOException {
+            return new ParquetExportWriter(out, selection.queryColumns(), properties.getParquet());
+        }
+    };
+
+    private final String extension;
+    private final String contentType;
+
+    ExportFormat(String extension, String contentType) {
+        this.extension = extension;
+        this.contentType = contentType;
+    }
+
+    public String getExtension() { return extension; }
+    public String getContentType() { return contentType; }
+
+    /**
+     * 创建写出器；CSV 在此写出表头
+     */
+    public abstract ExportRowWriter open(OutputStream out, ExportColumnSelection selection, ExportProperties properties)
+            throws IOException;
+
+    /**
+     * 是否可以分片写出后按顺序直接拼接（Parquet 的文件尾引用全文偏移、Arrow 流只能有一个 Schema，均不能拼接）
+     */
+    public boolean isSplittable() {
+        return false;
+    }
+
+    /**
+     * 创建分片写出器，只有第一个分片带表头等文件头部内容
+     */
+    public ExportRowWriter openSlice(OutputStream out, ExportColumnSelection selection, ExportProperties properties,
+                                     boolean first) throws IOException {
+        throw new UnsupportedOperationException(name() + " cannot be split");
+    }
+
+    /**
+     * 按扩展名或格式名解析（忽略大小写），无法识别时返回 null
+     */
+    public static ExportFormat fromExtension(String value) {
+        if (value == null) return null;
+        String v = value.trim();
+        for (ExportFormat f : values()) {
+            if (f.extension.equalsIgnoreCase(v) || f.name().equalsIgnoreCase(v)) return f;
+        }
+        return null;
+    }
+}
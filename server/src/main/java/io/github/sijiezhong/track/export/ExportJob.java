@@ -0,0 +1,121 @@
+package io.github.sijiezhong.track.export;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 异步导出任务的状态与进度
+ *
+ * <p>进度可能由多个分片线程同时累加，查询线程读取；状态迁移用 CAS，
+ * 保证排队中取消与开始执行不会同时发生。
+ */
+public final class ExportJob {
+
+    public enum Status {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED;
+
+        public boolean isTerminal() {
+            return this == SUCCEEDED || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    private final String id;
+    private final Integer appId;
+    private final ExportFormat format;
+    private final boolean gzip;
+    private final int parallelism;
+    private final EventExportQuery query;
+    private final ExportColumnSelection selection;
+    private final Path file;
+    private final Instant createdAt = Instant.now();
+
+    private final AtomicReference<Status> status = new AtomicReference<>(Status.QUEUED);
+    private volatile boolean cancelRequested;
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    ExportJob(String id, EventExportQuery query, ExportColumnSelection selection, ExportFormat format,
+              boolean gzip, int parallelism, Path file) {
+        this.id = id;
+        this.appId = query.getAppId();
+        this.format = format;
+        this.gzip = gzip;
+        this.parallelism = parallelism;
+        this.query = query;
+        this.selection = selection;
+        this.file = file;
+    }
+
+    public String getId() { return id; }
+    public Integer getAppId() { return appId; }
+    public ExportFormat getFormat() { return format; }
+    public boolean isGzip() { return gzip; }
+    public int getParallelism() { return parallelism; }
+    public Status getStatus() { return status.get(); }
+    public long getRowsWritten() { return rowsWritten.get(); }
+    public long getBytesWritten() { return bytesWritten.get(); }
+    public Instant getCreatedAt() { return createdAt; }
+    public Instant getStartedAt() { return startedAt; }
+    public Instant getFinishedAt() { return finishedAt; }
+    public String getError() { return error; }
+
+    /**
+     * 导出文件，仅在 {@link Status#SUCCEEDED} 后存在
+     */
+    public Path getFile() { return file; }
+
+    /**
+     * 下载文件名，压缩时追加 .gz
+     */
+    public String getFileName() {
+        return "events-" + id + "." + format.getExtension() + (gzip ? ".gz" : "");
+    }
+
+    public String getContentType() {
+        return gzip ? "application/gzip" : format.getContentType();
+    }
+
+    EventExportQuery getQuery() { return query; }
+    ExportColumnSelection getSelection() { return selection; }
+    boolean isCancelRequested() { return cancelRequested; }
+
+    void addRowsWritten(long n) { rowsWritten.addAndGet(n); }
+    void addBytesWritten(long n) { bytesWritten.addAndGet(n); }
+
+    boolean start() {
+        if (!status.compareAndSet(Status.QUEUED, Status.RUNNING)) return false;
+        startedAt = Instant.now();
+        return true;
+    }
+
+    /**
+     * 迁移到终态，只有第一次调用生效
+     */
+    boolean finish(Status terminal, String error) {
+        Status current = status.get();
+        while (!current.isTerminal()) {
+            if (status.compareAndSet(current, terminal)) {
+                this.error = error;
+                this.finishedAt = Instant.now();
+                return true;
+            }
+            current = status.get();
+        }
+        return false;
+    }
+
+    boolean cancelIfQueued() {
+        if (!status.compareAndSet(Status.QUEUED, Status.CANCELLED)) return false;
+        finishedAt = Instant.now();
+        return true;
+    }
+
+    void requestCancel() {
+        cancelRequested = true;
+    }
+}
@@ -0,0 +1,393 @@
+package io.github.sijiezhong.track.export;
+
+import io.github.sijiezhong.track.config.ExportProperties;
+import io.github.sijiezhong.track.exception.BusinessException;
+import io.github.sijiezhong.track.exception.ErrorCode;
+import io.github.sijiezhong.track.exception.ResourceNotFoundException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 异步导出任务
+ *
+ * <p>任务由有界线程池执行，导出文件先写入暂存目录下的 {@code .part} 文件，成功后原子改名，
+ * 下载方只会看到完整文件。工作线程数即导出同时占用的数据库连接数上限；
+ * 单个应用同时排队或执行的任务数受 {@code export.jobs.max-active-per-app} 限制，
+ * 避免一个应用的大批导出占满线程池。
+ *
+ * <p>可拼接的格式（CSV、NDJSON）可按时间切片并行读取，每片单独的游标与连接，
+ * 所有任务共享 {@code export.jobs.slice-threads} 个切片读取线程。
+ *
+ * <p>任务状态只保存在本节点内存中，多节点部署时下载请求需要落到提交任务的节点。
+ * 结束的任务在保留时间后连同文件一起删除；重启后遗留的文件同样按修改时间过期清理。
+ */
+@Component
+public class ExportJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(ExportJobService.class);
+
+    private static final String PART_SUFFIX = ".part";
+    // 进度每隔多少行对外发布一次
+    private static final int PROGRESS_ROWS = 1024;
+    private static final int GZIP_BUFFER_BYTES = 64 * 1024;
+
+    private final EventExportReader reader;
+    private final ExportProperties properties;
+    private final Path spoolDir;
+    private final Duration retention;
+    private final ThreadPoolExecutor workers;
+    // 并行导出的切片读取线程，数量即切片读取同时占用的数据库连接数上限
+    private final ExecutorService sliceReaders;
+    private final ScheduledExecutorService cleaner;
+
+    private final Map<String, ExportJob> jobs = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicInteger> activeByApp = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ExportJobService(EventExportReader reader, ExportProperties properties,
+                            @Autowired(required = false) MeterRegistry meterRegistry) throws IOException {
+        this.reader = reader;
+        this.properties = properties;
+        ExportProperties.Jobs config = properties.getJobs();
+        this.spoolDir = Paths.get(config.getSpoolDir()).toAbsolutePath();
+        Files.createDirectories(spoolDir);
+        this.retention = Duration.ofMinutes(Math.max(0L, config.getRetentionMinutes()));
+
+        int threads = Math.max(1, config.getWorkerThreads());
+        CustomizableThreadFactory workerFactory = new CustomizableThreadFactory("export-job-");
+        workerFactory.setDaemon(true);
+        this.workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, config.getQueueCapacity())), workerFactory);
+
+        CustomizableThreadFactory sliceFactory = new CustomizableThreadFactory("export-slice-");
+        sliceFactory.setDaemon(true);
+        this.sliceReaders = Executors.newFixedThreadPool(Math.max(1, config.getSliceThreads()), sliceFactory);
+
+        CustomizableThreadFactory cleanerFactory = new CustomizableThreadFactory("export-spool-");
+        cleanerFactory.setDaemon(true);
+        this.cleaner = Executors.newSingleThreadScheduledExecutor(cleanerFactory);
+        long interval = Math.max(1000L, config.getCleanupIntervalMs());
+        this.cleaner.scheduleWithFixedDelay(this::sweep, 0, interval, TimeUnit.MILLISECONDS);
+
+        if (meterRegistry != null) {
+            Gauge.builder("track.export.jobs.queued", workers, w -> w.getQueue().size()).register(meterRegistry);
+            Gauge.builder("track.export.jobs.running", workers, ThreadPoolExecutor::getActiveCount).register(meterRegistry);
+        }
+    }
+
+    /**
+     * 提交导出任务
+     *
+     * @throws BusinessException 应用的活动任务已达上限（429）或全局队列已满（503）
+     */
+    public ExportJob submit(EventExportQuery query, ExportColumnSelection selection, ExportFormat format,
+                            boolean gzip, int parallelism) {
+        Integer appId = query.getAppId();
+        // 不能拼接的格式只能单游标写出
+        int slices = format.isSplittable()
+                ? Math.max(1, Math.min(parallelism, properties.getJobs().getMaxParallelism())) : 1;
+        int limit = Math.max(1, properties.getJobs().getMaxActivePerApp());
+        AtomicInteger active = activeByApp.computeIfAbsent(appId, k -> new AtomicInteger());
+        if (active.incrementAndGet() > limit) {
+            active.decrementAndGet();
+            throw new BusinessException(ErrorCode.TOO_MANY_REQUESTS, "该应用进行中的导出任务已达上限: " + limit);
+        }
+        String id = UUID.randomUUID().toString().replace("-", "");
+        String fileName = id + "." + format.getExtension() + (gzip ? ".gz" : "");
+        ExportJob job = new ExportJob(id, query, selection, format, gzip, slices, spoolDir.resolve(fileName));
+        jobs.put(id, job);
+        try {
+            workers.execute(() -> run(job));
+        } catch (RejectedExecutionException ex) {
+            jobs.remove(id);
+            active.decrementAndGet();
+            throw new BusinessException(ErrorCode.SERVICE_UNAVAILABLE, "导出队列已满，请稍后重试");
+        }
+        log.info("导出任务已提交: jobId={}, appId={}, format={}, gzip={}, parallelism={}", id, appId, format, gzip, slices);
+        return job;
+    }
+
+    /**
+     * 查询任务，不存在、已过期或不属于该应用时抛出 404
+     */
+    public ExportJob get(Integer appId, String id) {
+        ExportJob job = id == null ? null : jobs.get(id);
+        if (job == null || !job.getAppId().equals(appId)) {
+            throw new ResourceNotFoundException(ErrorCode.NOT_FOUND, "导出任务不存在或已过期: " + id);
+        }
+        return job;
+    }
+
+    /**
+     * 该应用的全部任务，按创建时间倒序
+     */
+    public List<ExportJob> list(Integer appId) {
+        List<ExportJob> result = new ArrayList<>();
+        for (ExportJob job : jobs.values()) {
+            if (job.getAppId().equals(appId)) result.add(job);
+        }
+        result.sort(Comparator.comparing(ExportJob::getCreatedAt).reversed());
+        return result;
+    }
+
+    /**
+     * 取消并删除任务：排队中的直接取消，执行中的在下一行写出时中止，已结束的删除文件
+     */
+    public void cancel(Integer appId, String id) {
+        ExportJob job = get(appId, id);
+        job.requestCancel();
+        if (job.cancelIfQueued()) {
+            // 尚未开始执行，工作线程取到后会跳过，名额在这里归还
+            release(job);
+        } else {
+            // 执行中的任务由工作线程结束时归还名额
+            job.finish(ExportJob.Status.CANCELLED, null);
+        }
+        jobs.remove(id);
+        deleteQuietly(job.getFile());
+    }
+
+    void run(ExportJob job) {
+        if (!job.start()) return;
+        Path part = job.getFile().resolveSibling(job.getFile().getFileName() + PART_SUFFIX);
+        long start = System.currentTimeMillis();
+        try {
+            long rows = job.getParallelism() > 1
+                    ? writeSliced(job, part)
+                    : writeFile(job, job.getQuery(), part, true, new AtomicBoolean());
+            Files.move(part, job.getFile(), StandardCopyOption.ATOMIC_MOVE);
+            if (job.finish(ExportJob.Status.SUCCEEDED, null)) {
+                log.info("导出任务完成: jobId={}, appId={}, rowCount={}, bytes={}, parallelism={}, costMs={}",
+                        job.getId(), job.getAppId(), rows, job.getBytesWritten(), job.getParallelism(),
+                        System.currentTimeMillis() - start);
+            } else {
+                // 改名与取消并发时以取消为准
+                deleteQuietly(job.getFile());
+            }
+        } catch (IOException | RuntimeException ex) {
+            deleteQuietly(part);
+            if (job.isCancelRequested()) {
+                job.finish(ExportJob.Status.CANCELLED, null);
+                log.info("导出任务已取消: jobId={}, appId={}", job.getId(), job.getAppId());
+            } else {
+                job.finish(ExportJob.Status.FAILED, ex.getMessage());
+                log.error("导出任务失败: jobId={}, appId={}", job.getId(), job.getAppId(), ex);
+            }
+        } finally {
+            release(job);
+        }
+    }
+
+    /**
+     * 单游标写出一个文件（整个任务或其中一个时间片）
+     *
+     * @param first 是否为第一个分片，只有它写出表头
+     * @param abort 其他分片失败时置位，本分片随即中止
+     * @return 写出行数
+     */
+    private long writeFile(ExportJob job, EventExportQuery query, Path target, boolean first, AtomicBoolean abort)
+            throws IOException {
+        ExportFormat format = job.getFormat();
+        try (OutputStream file = Files.newOutputStream(target);
+             OutputStream counted = new CountingOutputStream(file, job);
+             OutputStream out = new BufferedOutputStream(
+                     job.isGzip() ? new GZIPOutputStream(counted, GZIP_BUFFER_BYTES) : counted,
+                     properties.getWriteBufferBytes())) {
+            ExportRowWriter writer = job.getParallelism() > 1
+                    ? format.openSlice(out, job.getSelection(), properties, first)
+                    : format.open(out, job.getSelection(), properties);
+            long[] count = new long[1];
+            long rows = reader.scan(query, job.getSelection().queryColumns(), values -> {
+                if (job.isCancelRequested() || abort.get()) {
+                    throw new InterruptedIOException("export job cancelled");
+                }
+                writer.writeRow(values);
+                if (++count[0] % PROGRESS_ROWS == 0) job.addRowsWritten(PROGRESS_ROWS);
+            });
+            writer.finish();
+            job.addRowsWritten(rows % PROGRESS_ROWS);
+            return rows;
+        }
+    }
+
+    /**
+     * 按时间切片并行读取，各切片独立写入（独立压缩）临时文件，再按时间从新到旧依次拼接
+     *
+     * <p>多个 gzip 成员首尾相接仍是合法的 gzip 文件，CSV 只有第一片带表头，因此拼接不需要解压。
+     * 前面的切片一完成就开始拼接，与后面切片的读取重叠。
+     */
+    private long writeSliced(ExportJob job, Path part) throws IOException {
+        LocalDateTime[] bounds = reader.timeBounds(job.getQuery());
+        List<EventExportQuery> slices = job.getQuery().slices(bounds[0], bounds[1], job.getParallelism());
+        AtomicBoolean abort = new AtomicBoolean();
+        List<Path> files = new ArrayList<>(slices.size());
+        List<Future<Long>> futures = new ArrayList<>(slices.size());
+        try {
+            for (int i = 0; i < slices.size(); i++) {
+                EventExportQuery slice = slices.get(i);
+                Path file = part.resolveSibling(job.getId() + ".slice" + i + PART_SUFFIX);
+                boolean first = i == 0;
+                files.add(file);
+                futures.add(sliceReaders.submit(() -> writeFile(job, slice, file, first, abort)));
+            }
+            long rows = 0;
+            try (FileChannel out = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (int i = 0; i < futures.size(); i++) {
+                    rows += await(futures.get(i));
+                    append(files.get(i), out);
+                    deleteQuietly(files.get(i));
+                }
+            }
+            return rows;
+        } catch (IOException | RuntimeException ex) {
+            abort.set(true);
+            for (Future<Long> f : futures) {
+                try {
+                    f.get();
+                } catch (Exception ignored) {
+                    // 只等待其余分片关闭游标与文件，异常以第一个为准
+                }
+            }
+            throw ex;
+        } finally {
+            for (Path file : files) deleteQuietly(file);
+        }
+    }
+
+    private static long await(Future<Long> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("export job interrupted");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof RuntimeException re) throw re;
+            throw new IOException(cause);
+        }
+    }
+
+    private static void append(Path source, FileChannel target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, target);
+            }
+        }
+    }
+
+    /**
+     * 删除过期任务与暂存目录中无主的过期文件
+     */
+    void sweep() {
+        try {
+            Instant cutoff = Instant.now().minus(retention);
+            for (ExportJob job : jobs.values()) {
+                Instant finishedAt = job.getFinishedAt();
+                if (finishedAt != null && finishedAt.isBefore(cutoff) && jobs.remove(job.getId(), job)) {
+                    deleteQuietly(job.getFile());
+                    log.info("导出文件已过期删除: jobId={}, appId={}", job.getId(), job.getAppId());
+                }
+            }
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(spoolDir)) {
+                for (Path f : files) {
+                    String name = f.getFileName().toString();
+                    int dot = name.indexOf('.');
+                    String id = dot > 0 ? name.substring(0, dot) : name;
+                    if (!jobs.containsKey(id) && Files.getLastModifiedTime(f).toInstant().isBefore(cutoff)) {
+                        deleteQuietly(f);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            log.warn("清理导出暂存目录失败: dir={}, error={}", spoolDir, ex.getMessage());
+        }
+    }
+
+    private void release(ExportJob job) {
+        AtomicInteger active = activeByApp.get(job.getAppId());
+        if (active != null) active.decrementAndGet();
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            log.warn("删除导出文件失败: file={}, error={}", file, ex.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cleaner.shutdownNow();
+        workers.shutdownNow();
+        sliceReaders.shutdownNow();
+    }
+
+    /**
+     * 统计写入文件的字节数作为任务进度
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private final ExportJob job;
+
+        CountingOutputStream(OutputStream out, ExportJob job) {
+            super(out);
+            this.job = job;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            job.addBytesWritten(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            job.addBytesWritten(len);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package io.github.sijiezhong.track.export;
+
+import java.io.IOException;
+
+/**
+ * 导出格式写出器，同步导出与导出任务共用
+ */
+public interface ExportRowWriter {
+
+    /**
+     * @param values 与 {@link ExportColumnSelection#queryColumns()} 对齐的取值，数组在各行之间复用
+     */
+    void writeRow(Object[] values) throws IOException;
+
+    /**
+     * 写出缓冲内容与文件尾，不关闭输出流
+     */
+    void finish() throws IOException;
+}
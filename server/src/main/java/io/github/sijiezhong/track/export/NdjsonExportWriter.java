@@ -0,0 +1,64 @@
+package io.github.sijiezhong.track.export;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 把导出行写为 NDJSON，每行一个 JSON 对象
+ *
+ * <p>键与 CSV 表头一致（未知列与被隐藏的列为 null）；properties 按原样嵌入为 JSON 对象，
+ * 数据库中的 jsonb 文本本身就是合法 JSON，不需要解析再序列化。
+ */
+public final class NdjsonExportWriter implements ExportRowWriter {
+
+    private static final JsonFactory FACTORY = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .build();
+
+    private final JsonGenerator generator;
+    private final ExportColumnSelection selection;
+    private final int[] indexes;
+
+    public NdjsonExportWriter(OutputStream out, ExportColumnSelection selection) throws IOException {
+        // 缓冲由调用方的 BufferedOutputStream 提供
+        this.generator = FACTORY.createGenerator(out);
+        this.generator.setRootValueSeparator(null);
+        this.selection = selection;
+        this.indexes = selection.headerIndexes();
+    }
+
+    @Override
+    public void writeRow(Object[] values) throws IOException {
+        generator.writeStartObject();
+        for (int i = 0; i < indexes.length; i++) {
+            generator.writeFieldName(selection.headers().get(i));
+            int idx = indexes[i];
+            Object v = idx >= 0 ? values[idx] : null;
+            if (v == null) {
+                generator.writeNull();
+                continue;
+            }
+            EventExportColumn column = selection.queryColumns().get(idx);
+            if (column == EventExportColumn.PROPERTIES) {
+                generator.writeRawValue(v.toString());
+            } else if (v instanceof Long l) {
+                generator.writeNumber(l);
+            } else if (v instanceof Integer n) {
+                generator.writeNumber(n);
+            } else {
+                generator.writeString(column.format(v).toString());
+            }
+        }
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    @Override
+    public void finish() throws IOException {
+        generator.flush();
+    }
+}
@@ -0,0 +1,61 @@
+package io.github.sijiezhong.track.export;
+
+import io.github.sijiezhong.track.config.ExportProperties;
+import io.github.sijiezhong.track.export.parquet.ParquetColumn;
+import io.github.sijiezhong.track.export.parquet.ParquetFileWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把导出行写为 Parquet，列类型与事件表字段一致
+ *
+ * <p>id 为必填 INT64，时间为微秒时间戳，properties 标注为 JSON；
+ * 事件名、设备、系统、浏览器使用字典编码。
+ */
+public final class ParquetExportWriter implements ExportRowWriter {
+
+    private final ParquetFileWriter writer;
+
+    /**
+     * @param columns 导出列，与 {@link #writeRow(Object[])} 的取值顺序一致
+     */
+    public ParquetExportWriter(OutputStream out, List<EventExportColumn> columns, ExportProperties.Parquet config)
+            throws IOException {
+        List<ParquetColumn> schema = new ArrayList<>(columns.size());
+        for (EventExportColumn c : columns) {
+            schema.add(toParquet(c, config));
+        }
+        this.writer = new ParquetFileWriter(out, schema, config.getCodec(), config.getRowGroupBytes(), config.getPageRows());
+    }
+
+    @Override
+    public void writeRow(Object[] values) throws IOException {
+        writer.writeRow(values);
+    }
+
+    /**
+     * 写出剩余行组与文件尾，不关闭输出流
+     */
+    @Override
+    public void finish() throws IOException {
+        writer.close();
+    }
+
+    private static ParquetColumn toParquet(EventExportColumn c, ExportProperties.Parquet config) {
+        String name = c.getApiName();
+        if (c.isLowCardinality()) {
+            return ParquetColumn.dictionary(name, config.getMaxDictionaryEntries());
+        }
+        return switch (c) {
+            case ID -> ParquetColumn.of(name, ParquetColumn.Kind.INT64, true);
+            case SESSION_ID -> ParquetColumn.of(name, ParquetColumn.Kind.INT64, false);
+            case USER_ID, APP_ID -> ParquetColumn.of(name, ParquetColumn.Kind.INT32, false);
+            case EVENT_TIME -> ParquetColumn.of(name, ParquetColumn.Kind.TIMESTAMP_MICROS, false);
+            case PROPERTIES -> ParquetColumn.of(name, ParquetColumn.Kind.JSON, false);
+            default -> ParquetColumn.of(name, ParquetColumn.Kind.STRING, false);
+        };
+    }
+}
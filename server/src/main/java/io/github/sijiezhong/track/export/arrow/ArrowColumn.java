@@ -0,0 +1,167 @@
+package io.github.sijiezhong.track.export.arrow;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Arrow 列定义及其当前记录批次的缓冲区
+ *
+ * <p>定长列为 validity + values 两个缓冲区，字符串列为 validity + offsets + data 三个缓冲区；
+ * 没有空值时 validity 缓冲区长度为0。
+ */
+public final class ArrowColumn {
+
+    public enum Kind {
+        INT32, INT64, TIMESTAMP_MICROS, STRING,
+        /** UTF8 存储，字段元数据标注 arrow.json 扩展类型 */
+        JSON
+    }
+
+    // Type 联合体的类型编号
+    private static final int TYPE_INT = 2;
+    private static final int TYPE_UTF8 = 5;
+    private static final int TYPE_TIMESTAMP = 10;
+    private static final int TIME_UNIT_MICROSECOND = 2;
+
+    private final String name;
+    private final Kind kind;
+    private final boolean nullable;
+
+    private int rows;
+    private int nullCount;
+    private byte[] validity = new byte[128];
+    private byte[] values = new byte[1024];
+    private int valuesLength;
+    private int[] offsets = new int[1025];
+
+    private ArrowColumn(String name, Kind kind, boolean nullable) {
+        this.name = name;
+        this.kind = kind;
+        this.nullable = nullable;
+    }
+
+    public static ArrowColumn of(String name, Kind kind, boolean nullable) {
+        return new ArrowColumn(name, kind, nullable);
+    }
+
+    public String getName() { return name; }
+    public Kind getKind() { return kind; }
+
+    void append(Object value) {
+        if (value == null && !nullable) {
+            throw new IllegalArgumentException("column " + name + " is not nullable");
+        }
+        int byteIndex = rows >>> 3;
+        if (byteIndex >= validity.length) validity = Arrays.copyOf(validity, validity.length * 2);
+        if (value == null) {
+            nullCount++;
+        } else {
+            validity[byteIndex] |= (byte) (1 << (rows & 7));
+        }
+        switch (kind) {
+            case INT32 -> putLE(value == null ? 0 : ((Number) value).intValue(), 4);
+            case INT64 -> putLE(value == null ? 0 : ((Number) value).longValue(), 8);
+            case TIMESTAMP_MICROS -> putLE(value == null ? 0 : toMicros(value), 8);
+            default -> {
+                if (value != null) {
+                    byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+                    ensure(bytes.length);
+                    System.arraycopy(bytes, 0, values, valuesLength, bytes.length);
+                    valuesLength += bytes.length;
+                }
+                if (rows + 1 >= offsets.length) offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                offsets[rows + 1] = valuesLength;
+            }
+        }
+        rows++;
+    }
+
+    int getNullCount() { return nullCount; }
+
+    /**
+     * 当前批次的缓冲区，顺序与 Arrow 列式格式规定一致
+     */
+    List<byte[]> buffers() {
+        List<byte[]> out = new ArrayList<>(3);
+        out.add(nullCount == 0 ? new byte[0] : Arrays.copyOf(validity, (rows + 7) >>> 3));
+        if (kind == Kind.STRING || kind == Kind.JSON) {
+            byte[] o = new byte[(rows + 1) * 4];
+            for (int i = 0; i <= rows; i++) {
+                int v = offsets[i];
+                o[4 * i] = (byte) v;
+                o[4 * i + 1] = (byte) (v >>> 8);
+                o[4 * i + 2] = (byte) (v >>> 16);
+                o[4 * i + 3] = (byte) (v >>> 24);
+            }
+            out.add(o);
+        }
+        out.add(Arrays.copyOf(values, valuesLength));
+        return out;
+    }
+
+    void reset() {
+        Arrays.fill(validity, 0, Math.min(validity.length, (rows + 7) >>> 3), (byte) 0);
+        rows = 0;
+        nullCount = 0;
+        valuesLength = 0;
+    }
+
+    /**
+     * Schema 中的 Field 表
+     */
+    FlatBufferWriter.Table field() {
+        FlatBufferWriter.Table type;
+        int typeId;
+        switch (kind) {
+            case INT32, INT64 -> {
+                typeId = TYPE_INT;
+                type = new FlatBufferWriter.Table().addInt(0, kind == Kind.INT32 ? 32 : 64).addBool(1, true);
+            }
+            case TIMESTAMP_MICROS -> {
+                typeId = TYPE_TIMESTAMP;
+                type = new FlatBufferWriter.Table().addShort(0, TIME_UNIT_MICROSECOND).addString(1, "UTC");
+            }
+            default -> {
+                typeId = TYPE_UTF8;
+                type = new FlatBufferWriter.Table();
+            }
+        }
+        FlatBufferWriter.Table field = new FlatBufferWriter.Table()
+                .addString(0, name)
+                .addBool(1, nullable)
+                .addByte(2, typeId)
+                .addTable(3, type)
+                .addTables(5, List.of());
+        if (kind == Kind.JSON) {
+            // 规范定义的 JSON 扩展类型，不认识扩展类型的读取方按 UTF8 处理
+            field.addTables(6, List.of(
+                    new FlatBufferWriter.Table().addString(0, "ARROW:extension:name").addString(1, "arrow.json"),
+                    new FlatBufferWriter.Table().addString(0, "ARROW:extension:metadata").addString(1, "")));
+        }
+        return field;
+    }
+
+    private void putLE(long v, int size) {
+        ensure(size);
+        for (int i = 0; i < size; i++) {
+            values[valuesLength++] = (byte) (v >>> (8 * i));
+        }
+    }
+
+    private void ensure(int n) {
+        if (valuesLength + n > values.length) values = Arrays.copyOf(values, Math.max(values.length * 2, valuesLength + n));
+    }
+
+    private static long toMicros(Object value) {
+        if (value instanceof LocalDateTime t) {
+            Instant instant = t.atZone(ZoneId.systemDefault()).toInstant();
+            return instant.getEpochSecond() * 1_000_000L + instant.getNano() / 1_000;
+        }
+        return ((Number) value).longValue();
+    }
+}
@@ -0,0 +1,11 @@
+package io.github.sijiezhong.track.export.arrow;
+
+/**
+ * Arrow IPC 缓冲区压缩方式
+ *
+ * <p>格式只定义了 LZ4_FRAME 与 ZSTD 两种，这里只提供 ZSTD。
+ */
+public enum ArrowCompression {
+    NONE,
+    ZSTD
+}
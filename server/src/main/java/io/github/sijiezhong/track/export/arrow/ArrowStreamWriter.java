@@ -0,0 +1,161 @@
+package io.github.sijiezhong.track.export.arrow;
+
+import io.airlift.compress.zstd.ZstdCompressor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Arrow IPC 流式格式写出器
+ *
+ * <p>先写 Schema 消息，之后每满 batchRows 行写一个 RecordBatch 消息，最后写结束标记。
+ * 每条消息为 0xFFFFFFFF 续接标记 + 元数据长度 + FlatBuffer 元数据 + 消息体，元数据与各缓冲区均按8字节对齐。
+ * 内存中只保留一个批次。
+ *
+ * <p>启用 ZSTD 时各缓冲区单独压缩，前8字节为未压缩长度；压缩后不变小的缓冲区原样存放，长度记为 -1。
+ */
+public final class ArrowStreamWriter {
+
+    private static final int CONTINUATION = 0xFFFFFFFF;
+    private static final short METADATA_V5 = 4;
+    private static final int HEADER_SCHEMA = 1;
+    private static final int HEADER_RECORD_BATCH = 3;
+    private static final int CODEC_ZSTD = 1;
+    private static final byte[] PADDING = new byte[8];
+
+    private final OutputStream out;
+    private final List<ArrowColumn> columns;
+    private final int batchRows;
+    private final ZstdCompressor compressor;
+    private int rows;
+    private long totalRows;
+
+    /**
+     * @param out 输出流，写出器不会关闭它
+     * @param batchRows 每个记录批次的行数
+     * @param compression 缓冲区压缩方式
+     */
+    public ArrowStreamWriter(OutputStream out, List<ArrowColumn> columns, int batchRows, ArrowCompression compression)
+            throws IOException {
+        this.out = out;
+        this.columns = columns;
+        this.batchRows = Math.max(1, batchRows);
+        this.compressor = compression == ArrowCompression.ZSTD ? new ZstdCompressor() : null;
+        writeSchema();
+    }
+
+    /**
+     * @param values 与列定义顺序一致的取值
+     */
+    public void writeRow(Object[] values) throws IOException {
+        for (int i = 0; i < columns.size(); i++) {
+            columns.get(i).append(values[i]);
+        }
+        rows++;
+        totalRows++;
+        if (rows >= batchRows) {
+            flushBatch();
+        }
+    }
+
+    public long getRowCount() {
+        return totalRows;
+    }
+
+    /**
+     * 写出剩余的批次与结束标记，不关闭输出流
+     */
+    public void close() throws IOException {
+        if (rows > 0) flushBatch();
+        writeInt(CONTINUATION);
+        writeInt(0);
+    }
+
+    private void writeSchema() throws IOException {
+        List<FlatBufferWriter.Table> fields = new ArrayList<>(columns.size());
+        for (ArrowColumn c : columns) fields.add(c.field());
+        FlatBufferWriter.Table schema = new FlatBufferWriter.Table()
+                .addShort(0, 0)
+                .addTables(1, fields);
+        writeMessage(HEADER_SCHEMA, schema, new byte[0][], 0);
+    }
+
+    private void flushBatch() throws IOException {
+        long[] nodes = new long[columns.size() * 2];
+        List<byte[]> body = new ArrayList<>();
+        for (int i = 0; i < columns.size(); i++) {
+            ArrowColumn c = columns.get(i);
+            nodes[2 * i] = rows;
+            nodes[2 * i + 1] = c.getNullCount();
+            for (byte[] buffer : c.buffers()) {
+                body.add(compressor == null ? buffer : compress(buffer));
+            }
+            c.reset();
+        }
+        long[] buffers = new long[body.size() * 2];
+        long offset = 0;
+        for (int i = 0; i < body.size(); i++) {
+            buffers[2 * i] = offset;
+            buffers[2 * i + 1] = body.get(i).length;
+            offset += padded(body.get(i).length);
+        }
+        FlatBufferWriter.Table batch = new FlatBufferWriter.Table()
+                .addLong(0, rows)
+                .addLongPairs(1, nodes)
+                .addLongPairs(2, buffers);
+        if (compressor != null) {
+            batch.addTable(3, new FlatBufferWriter.Table().addByte(0, CODEC_ZSTD).addByte(1, 0));
+        }
+        writeMessage(HEADER_RECORD_BATCH, batch, body.toArray(new byte[0][]), offset);
+        rows = 0;
+    }
+
+    private void writeMessage(int headerType, FlatBufferWriter.Table header, byte[][] body, long bodyLength)
+            throws IOException {
+        FlatBufferWriter.Table message = new FlatBufferWriter.Table()
+                .addShort(0, METADATA_V5)
+                .addByte(1, headerType)
+                .addTable(2, header)
+                .addLong(3, bodyLength);
+        byte[] metadata = FlatBufferWriter.finish(message);
+        writeInt(CONTINUATION);
+        writeInt(metadata.length);
+        out.write(metadata);
+        for (byte[] buffer : body) {
+            out.write(buffer);
+            out.write(PADDING, 0, padded(buffer.length) - buffer.length);
+        }
+    }
+
+    private byte[] compress(byte[] buffer) {
+        if (buffer.length == 0) return buffer;
+        byte[] target = new byte[8 + compressor.maxCompressedLength(buffer.length)];
+        int size = compressor.compress(buffer, 0, buffer.length, target, 8, target.length - 8);
+        byte[] out;
+        long uncompressedLength;
+        if (size < buffer.length) {
+            out = Arrays.copyOf(target, 8 + size);
+            uncompressedLength = buffer.length;
+        } else {
+            out = new byte[8 + buffer.length];
+            System.arraycopy(buffer, 0, out, 8, buffer.length);
+            uncompressedLength = -1L;
+        }
+        for (int i = 0; i < 8; i++) out[i] = (byte) (uncompressedLength >>> (8 * i));
+        return out;
+    }
+
+    private static int padded(int length) {
+        return (length + 7) & ~7;
+    }
+
+    private void writeInt(int v) throws IOException {
+        out.write(v);
+        out.write(v >>> 8);
+        out.write(v >>> 16);
+        out.write(v >>> 24);
+    }
+}
@@ -0,0 +1,175 @@
+package io.github.sijiezhong.track.export.arrow;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 最小的 FlatBuffers 序列化，只覆盖 Arrow IPC 元数据用到的表、字符串、表向量与结构体向量
+ *
+ * <p>与官方从后向前构建的 builder 不同，这里从前向后写：先写表的内联部分并留出偏移占位，
+ * 再把子对象依次写在后面并回填偏移。uoffset 总是指向更高地址，vtable 紧贴在表前面
+ * （soffset 为正），两者都是格式允许的布局。
+ */
+final class FlatBufferWriter {
+
+    private byte[] buf = new byte[256];
+    private int pos;
+
+    /**
+     * 表：字段按 slot（schema 中的字段序号）登记，未登记的字段取默认值
+     */
+    static final class Table {
+        private final List<Field> fields = new ArrayList<>();
+
+        Table addByte(int slot, int v) { return add(slot, Kind.SCALAR, 1, (long) v); }
+        Table addBool(int slot, boolean v) { return add(slot, Kind.SCALAR, 1, v ? 1L : 0L); }
+        Table addShort(int slot, int v) { return add(slot, Kind.SCALAR, 2, (long) v); }
+        Table addInt(int slot, int v) { return add(slot, Kind.SCALAR, 4, (long) v); }
+        Table addLong(int slot, long v) { return add(slot, Kind.SCALAR, 8, v); }
+        Table addString(int slot, String v) { return add(slot, Kind.STRING, 4, v); }
+        Table addTable(int slot, Table v) { return add(slot, Kind.TABLE, 4, v); }
+        Table addTables(int slot, List<Table> v) { return add(slot, Kind.TABLES, 4, v); }
+
+        /**
+         * 由两个 long 组成的结构体向量（Arrow 的 FieldNode 与 Buffer）
+         */
+        Table addLongPairs(int slot, long[] pairs) { return add(slot, Kind.LONG_PAIRS, 4, pairs); }
+
+        private Table add(int slot, Kind kind, int size, Object value) {
+            fields.add(new Field(slot, kind, size, value));
+            return this;
+        }
+    }
+
+    private enum Kind { SCALAR, STRING, TABLE, TABLES, LONG_PAIRS }
+
+    private record Field(int slot, Kind kind, int size, Object value) {}
+
+    /**
+     * 序列化以 root 为根的 FlatBuffer，总长度补齐到8字节
+     */
+    static byte[] finish(Table root) {
+        FlatBufferWriter w = new FlatBufferWriter();
+        w.putInt(0);
+        int rootPos = w.writeTable(root);
+        w.patchOffset(0, rootPos);
+        w.align(8);
+        return Arrays.copyOf(w.buf, w.pos);
+    }
+
+    private int writeTable(Table table) {
+        int slots = 0;
+        for (Field f : table.fields) slots = Math.max(slots, f.slot + 1);
+        int vtableSize = 4 + 2 * slots;
+        // 表起始按8字节对齐，表内字段按自身大小对齐即可
+        while ((pos + vtableSize) % 8 != 0) putByte(0);
+        int vtablePos = pos;
+        for (int i = 0; i < vtableSize; i++) putByte(0);
+        int tablePos = pos;
+        putInt(tablePos - vtablePos);
+
+        int[] fieldPos = new int[table.fields.size()];
+        for (int i = 0; i < table.fields.size(); i++) {
+            Field f = table.fields.get(i);
+            align(f.size);
+            fieldPos[i] = pos;
+            if (f.kind == Kind.SCALAR) {
+                putScalar((Long) f.value, f.size);
+            } else {
+                putInt(0);
+            }
+            setShort(vtablePos + 4 + 2 * f.slot, fieldPos[i] - tablePos);
+        }
+        setShort(vtablePos, vtableSize);
+        setShort(vtablePos + 2, pos - tablePos);
+
+        for (int i = 0; i < table.fields.size(); i++) {
+            Field f = table.fields.get(i);
+            switch (f.kind) {
+                case STRING -> patchOffset(fieldPos[i], writeString((String) f.value));
+                case TABLE -> patchOffset(fieldPos[i], writeTable((Table) f.value));
+                case TABLES -> patchOffset(fieldPos[i], writeTables(castTables(f.value)));
+                case LONG_PAIRS -> patchOffset(fieldPos[i], writeLongPairs((long[]) f.value));
+                default -> { }
+            }
+        }
+        return tablePos;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Table> castTables(Object v) {
+        return (List<Table>) v;
+    }
+
+    private int writeString(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        align(4);
+        int start = pos;
+        putInt(bytes.length);
+        ensure(bytes.length + 1);
+        System.arraycopy(bytes, 0, buf, pos, bytes.length);
+        pos += bytes.length;
+        putByte(0);
+        return start;
+    }
+
+    private int writeTables(List<Table> tables) {
+        align(4);
+        int start = pos;
+        putInt(tables.size());
+        int first = pos;
+        for (int i = 0; i < tables.size(); i++) putInt(0);
+        for (int i = 0; i < tables.size(); i++) {
+            patchOffset(first + 4 * i, writeTable(tables.get(i)));
+        }
+        return start;
+    }
+
+    private int writeLongPairs(long[] pairs) {
+        // 元素按8字节对齐，长度前缀紧贴在元素之前
+        while ((pos + 4) % 8 != 0) putByte(0);
+        int start = pos;
+        putInt(pairs.length / 2);
+        for (long v : pairs) putScalar(v, 8);
+        return start;
+    }
+
+    private void patchOffset(int at, int target) {
+        setInt(at, target - at);
+    }
+
+    private void align(int n) {
+        while (pos % n != 0) putByte(0);
+    }
+
+    private void putByte(int v) {
+        ensure(1);
+        buf[pos++] = (byte) v;
+    }
+
+    private void putInt(int v) {
+        putScalar(v, 4);
+    }
+
+    private void putScalar(long v, int size) {
+        ensure(size);
+        for (int i = 0; i < size; i++) {
+            buf[pos++] = (byte) (v >>> (8 * i));
+        }
+    }
+
+    private void setShort(int at, int v) {
+        buf[at] = (byte) v;
+        buf[at + 1] = (byte) (v >>> 8);
+    }
+
+    private void setInt(int at, int v) {
+        for (int i = 0; i < 4; i++) buf[at + i] = (byte) (v >>> (8 * i));
+    }
+
+    private void ensure(int n) {
+        if (pos + n > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+    }
+}
@@ -0,0 +1,126 @@
+package io.github.sijiezhong.track.export.parquet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Thrift compact protocol 的最小写出实现，只覆盖 Parquet 元数据用到的类型
+ *
+ * <p>字段必须按 id 递增写出；嵌套结构体通过 {@link #structBegin()} / {@link #structEnd()} 维护字段 id 基准。
+ */
+final class CompactProtocolWriter {
+
+    static final int TYPE_BOOLEAN_TRUE = 1;
+    static final int TYPE_BOOLEAN_FALSE = 2;
+    static final int TYPE_I16 = 4;
+    static final int TYPE_I32 = 5;
+    static final int TYPE_I64 = 6;
+    static final int TYPE_BINARY = 8;
+    static final int TYPE_LIST = 9;
+    static final int TYPE_STRUCT = 12;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+    private final Deque<Integer> lastIds = new ArrayDeque<>();
+    private int lastId;
+
+    void structBegin() {
+        lastIds.push(lastId);
+        lastId = 0;
+    }
+
+    void structEnd() {
+        out.write(0);
+        lastId = lastIds.pop();
+    }
+
+    void fieldI16(int id, short v) {
+        fieldHeader(id, TYPE_I16);
+        i32(v);
+    }
+
+    void fieldI32(int id, int v) {
+        fieldHeader(id, TYPE_I32);
+        i32(v);
+    }
+
+    void fieldI64(int id, long v) {
+        fieldHeader(id, TYPE_I64);
+        varint(zigzag(v));
+    }
+
+    void fieldBool(int id, boolean v) {
+        fieldHeader(id, v ? TYPE_BOOLEAN_TRUE : TYPE_BOOLEAN_FALSE);
+    }
+
+    void fieldString(int id, String v) {
+        fieldBinary(id, v.getBytes(StandardCharsets.UTF_8));
+    }
+
+    void fieldBinary(int id, byte[] v) {
+        fieldHeader(id, TYPE_BINARY);
+        binary(v);
+    }
+
+    /**
+     * 结构体字段，之后写子字段并以 {@link #structEnd()} 结束
+     */
+    void fieldStructBegin(int id) {
+        fieldHeader(id, TYPE_STRUCT);
+        structBegin();
+    }
+
+    /**
+     * 列表字段，之后依次写 size 个元素
+     */
+    void fieldListBegin(int id, int elementType, int size) {
+        fieldHeader(id, TYPE_LIST);
+        if (size < 15) {
+            out.write((size << 4) | elementType);
+        } else {
+            out.write(0xF0 | elementType);
+            varint(size);
+        }
+    }
+
+    void i32(int v) {
+        varint(zigzag(v));
+    }
+
+    void string(String v) {
+        binary(v.getBytes(StandardCharsets.UTF_8));
+    }
+
+    byte[] toByteArray() {
+        return out.toByteArray();
+    }
+
+    private void binary(byte[] v) {
+        varint(v.length);
+        out.write(v, 0, v.length);
+    }
+
+    private void fieldHeader(int id, int type) {
+        int delta = id - lastId;
+        if (delta > 0 && delta <= 15) {
+            out.write((delta << 4) | type);
+        } else {
+            out.write(type);
+            varint(zigzag(id));
+        }
+        lastId = id;
+    }
+
+    private void varint(long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+}
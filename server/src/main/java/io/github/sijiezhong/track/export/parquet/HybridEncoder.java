@@ -0,0 +1,89 @@
+package io.github.sijiezhong.track.export.parquet;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Parquet RLE / bit-packing 混合编码，用于定义级别与字典下标
+ *
+ * <p>连续8个以上相同取值写为 RLE 段，其余按8个一组 bit-packing；末组不足8个时补0，
+ * 读取方按 num_values 截断。
+ */
+final class HybridEncoder {
+
+    private HybridEncoder() {
+    }
+
+    /**
+     * 编码 values[from, to)
+     *
+     * @param bitWidth 每个取值的位宽，1..32
+     */
+    static void encode(int[] values, int from, int to, int bitWidth, ByteArrayOutputStream out) {
+        int i = from;
+        while (i < to) {
+            int run = runLength(values, i, to);
+            if (run >= 8) {
+                varint((long) run << 1, out);
+                writeLittleEndian(values[i], (bitWidth + 7) / 8, out);
+                i += run;
+                continue;
+            }
+            int start = i;
+            int groups = 0;
+            do {
+                groups++;
+                i += 8;
+            } while (i < to && runLength(values, i, to) < 8);
+            varint(((long) groups << 1) | 1, out);
+            pack(values, start, Math.min(i, to), groups * 8, bitWidth, out);
+            i = Math.min(i, to);
+        }
+    }
+
+    /**
+     * 能表示 0..maxValue 的最小位宽，至少为1
+     */
+    static int bitWidth(int maxValue) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(maxValue));
+    }
+
+    private static int runLength(int[] values, int i, int to) {
+        int v = values[i];
+        int j = i + 1;
+        while (j < to && values[j] == v) j++;
+        return j - i;
+    }
+
+    private static void pack(int[] values, int from, int to, int count, int bitWidth, ByteArrayOutputStream out) {
+        long buffer = 0;
+        int bits = 0;
+        for (int k = 0; k < count; k++) {
+            int idx = from + k;
+            long v = idx < to ? values[idx] & 0xFFFFFFFFL : 0L;
+            buffer |= v << bits;
+            bits += bitWidth;
+            while (bits >= 8) {
+                out.write((int) (buffer & 0xFF));
+                buffer >>>= 8;
+                bits -= 8;
+            }
+        }
+        if (bits > 0) {
+            out.write((int) (buffer & 0xFF));
+        }
+    }
+
+    private static void writeLittleEndian(int v, int bytes, ByteArrayOutputStream out) {
+        for (int b = 0; b < bytes; b++) {
+            out.write((v >>> (8 * b)) & 0xFF);
+        }
+    }
+
+    private static void varint(long v, ByteArrayOutputStream out) {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+}
@@ -0,0 +1,54 @@
+package io.github.sijiezhong.track.export.parquet;
+
+import io.airlift.compress.Compressor;
+import io.airlift.compress.snappy.SnappyCompressor;
+import io.airlift.compress.zstd.ZstdCompressor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 页压缩方式，取值与 Parquet CompressionCodec 枚举一致
+ *
+ * <p>GZIP 使用 JDK 自带实现；SNAPPY（原始块格式）与 ZSTD（标准帧）使用纯 Java 的 aircompressor，不依赖原生库。
+ */
+public enum ParquetCodec {
+    UNCOMPRESSED(0),
+    SNAPPY(1),
+    GZIP(2),
+    ZSTD(6);
+
+    private final int thriftValue;
+
+    ParquetCodec(int thriftValue) {
+        this.thriftValue = thriftValue;
+    }
+
+    int thriftValue() {
+        return thriftValue;
+    }
+
+    byte[] compress(byte[] raw) throws IOException {
+        return switch (this) {
+            case UNCOMPRESSED -> raw;
+            // 压缩器内部有可复用的哈希表，不是线程安全的，每页新建
+            case SNAPPY -> compress(new SnappyCompressor(), raw);
+            case ZSTD -> compress(new ZstdCompressor(), raw);
+            case GZIP -> {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 3));
+                try (GZIPOutputStream gz = new GZIPOutputStream(out, 8192)) {
+                    gz.write(raw);
+                }
+                yield out.toByteArray();
+            }
+        };
+    }
+
+    private static byte[] compress(Compressor compressor, byte[] raw) {
+        byte[] target = new byte[compressor.maxCompressedLength(raw.length)];
+        int size = compressor.compress(raw, 0, raw.length, target, 0, target.length);
+        return Arrays.copyOf(target, size);
+    }
+}
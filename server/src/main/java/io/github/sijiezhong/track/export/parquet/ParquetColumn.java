@@ -0,0 +1,399 @@
+package io.github.sijiezhong.track.export.parquet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 单列的定义与当前行组的缓冲
+ *
+ * <p>行组写出后调用 {@link #reset()} 复用，内存占用以一个行组为上限。
+ * 字典列在行组内去重超过上限时改为 PLAIN 编码。
+ */
+public final class ParquetColumn {
+
+    /**
+     * 列的逻辑类型
+     */
+    public enum Kind {
+        INT32(1),
+        INT64(2),
+        /** INT64 微秒时间戳，LocalDateTime 按服务器时区换算为时刻 */
+        TIMESTAMP_MICROS(2),
+        /** UTF-8 字符串 */
+        STRING(6),
+        /** JSON 文本 */
+        JSON(6);
+
+        private final int physicalType;
+
+        Kind(int physicalType) {
+            this.physicalType = physicalType;
+        }
+
+        int physicalType() {
+            return physicalType;
+        }
+
+        boolean isBinary() {
+            return physicalType == 6;
+        }
+    }
+
+    static final int ENCODING_PLAIN = 0;
+    static final int ENCODING_PLAIN_DICTIONARY = 2;
+    static final int ENCODING_RLE = 3;
+
+    private static final int PAGE_DATA = 0;
+    private static final int PAGE_DICTIONARY = 2;
+
+    private final String name;
+    private final Kind kind;
+    private final boolean required;
+    private final boolean dictionaryEncoded;
+    private final int maxDictionaryEntries;
+
+    private int rows;
+    private byte[] defined = new byte[1024];
+    private int nonNull;
+    private int[] ints;
+    private long[] longs;
+    private List<byte[]> binaries;
+    private Map<String, Integer> dictionary;
+    private List<byte[]> dictionaryValues;
+    private int[] indices;
+    private long min;
+    private long max;
+    private long estimatedBytes;
+
+    private ParquetColumn(String name, Kind kind, boolean required, boolean dictionaryEncoded, int maxDictionaryEntries) {
+        this.name = name;
+        this.kind = kind;
+        this.required = required;
+        this.dictionaryEncoded = dictionaryEncoded && kind.isBinary();
+        this.maxDictionaryEntries = maxDictionaryEntries;
+        reset();
+    }
+
+    /**
+     * @param required 是否必填；必填列不写定义级别，写入 null 会报错
+     */
+    public static ParquetColumn of(String name, Kind kind, boolean required) {
+        return new ParquetColumn(name, kind, required, false, 0);
+    }
+
+    /**
+     * 字典编码的字符串列，适合低基数取值
+     */
+    public static ParquetColumn dictionary(String name, int maxDictionaryEntries) {
+        return new ParquetColumn(name, Kind.STRING, false, true, maxDictionaryEntries);
+    }
+
+    public String getName() { return name; }
+    public Kind getKind() { return kind; }
+    public boolean isRequired() { return required; }
+
+    int rows() { return rows; }
+
+    long estimatedBytes() { return estimatedBytes; }
+
+    /**
+     * 追加一个取值，null 表示空
+     */
+    public void add(Object value) {
+        if (rows == defined.length) {
+            defined = Arrays.copyOf(defined, rows * 2);
+        }
+        if (value == null) {
+            if (required) throw new IllegalArgumentException("null value for required column " + name);
+            defined[rows++] = 0;
+            estimatedBytes += 1;
+            return;
+        }
+        defined[rows++] = 1;
+        switch (kind) {
+            case INT32 -> {
+                int v = ((Number) value).intValue();
+                ensureInts();
+                ints[nonNull] = v;
+                track(v);
+                estimatedBytes += 4;
+            }
+            case INT64, TIMESTAMP_MICROS -> {
+                long v = kind == Kind.TIMESTAMP_MICROS ? toMicros(value) : ((Number) value).longValue();
+                ensureLongs();
+                longs[nonNull] = v;
+                track(v);
+                estimatedBytes += 8;
+            }
+            default -> addBinary(value.toString());
+        }
+        nonNull++;
+    }
+
+    /**
+     * 写出当前行组中本列的所有页
+     *
+     * @param out 文件输出
+     * @param position 当前文件偏移
+     * @param codec 压缩方式
+     * @param pageRows 每个数据页的最大行数
+     * @return 列块元数据
+     */
+    ChunkMeta writeChunk(ByteSink out, long position, ParquetCodec codec, int pageRows) throws IOException {
+        ChunkMeta meta = new ChunkMeta(this, codec, rows, rows - nonNull);
+        meta.encodings.add(ENCODING_RLE);
+        long pos = position;
+        boolean useDictionary = dictionary != null;
+        if (useDictionary) {
+            meta.dictionaryPageOffset = pos;
+            ByteArrayOutputStream dict = new ByteArrayOutputStream();
+            for (byte[] v : dictionaryValues) plainBinary(v, dict);
+            pos += writePage(out, meta, codec, PAGE_DICTIONARY, dict.toByteArray(), dictionaryValues.size(), ENCODING_PLAIN_DICTIONARY);
+            meta.encodings.add(ENCODING_PLAIN_DICTIONARY);
+        } else {
+            meta.encodings.add(ENCODING_PLAIN);
+        }
+        meta.dataPageOffset = pos;
+        int valueCursor = 0;
+        int step = Math.max(1, pageRows);
+        for (int start = 0; start < rows; start += step) {
+            int end = Math.min(rows, start + step);
+            ByteArrayOutputStream page = new ByteArrayOutputStream();
+            int present = end - start;
+            if (!required) {
+                int[] levels = new int[end - start];
+                present = 0;
+                for (int r = start; r < end; r++) {
+                    levels[r - start] = defined[r];
+                    present += defined[r];
+                }
+                ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+                HybridEncoder.encode(levels, 0, levels.length, 1, encoded);
+                writeIntLE(encoded.size(), page);
+                encoded.writeTo(page);
+            }
+            int encoding = useDictionary ? ENCODING_PLAIN_DICTIONARY : ENCODING_PLAIN;
+            encodeValues(valueCursor, valueCursor + present, useDictionary, page);
+            valueCursor += present;
+            pos += writePage(out, meta, codec, PAGE_DATA, page.toByteArray(), end - start, encoding);
+        }
+        return meta;
+    }
+
+    /**
+     * 清空缓冲，开始新的行组
+     */
+    void reset() {
+        rows = 0;
+        nonNull = 0;
+        estimatedBytes = 0;
+        min = Long.MAX_VALUE;
+        max = Long.MIN_VALUE;
+        ints = null;
+        longs = null;
+        binaries = null;
+        if (dictionaryEncoded) {
+            dictionary = new HashMap<>();
+            dictionaryValues = new ArrayList<>();
+            indices = new int[1024];
+        } else if (kind.isBinary()) {
+            binaries = new ArrayList<>();
+        }
+    }
+
+    boolean hasStatistics() {
+        return !kind.isBinary() && nonNull > 0;
+    }
+
+    byte[] minBytes() {
+        return statBytes(min);
+    }
+
+    byte[] maxBytes() {
+        return statBytes(max);
+    }
+
+    private byte[] statBytes(long v) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8);
+        if (kind == Kind.INT32) {
+            writeIntLE((int) v, out);
+        } else {
+            writeIntLE((int) v, out);
+            writeIntLE((int) (v >>> 32), out);
+        }
+        return out.toByteArray();
+    }
+
+    private void addBinary(String s) {
+        if (dictionary != null) {
+            Integer idx = dictionary.get(s);
+            if (idx == null) {
+                if (dictionary.size() >= maxDictionaryEntries) {
+                    fallBackToPlain();
+                    addBinary(s);
+                    return;
+                }
+                idx = dictionary.size();
+                dictionary.put(s, idx);
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                dictionaryValues.add(bytes);
+                estimatedBytes += bytes.length + 4;
+            }
+            if (nonNull == indices.length) indices = Arrays.copyOf(indices, nonNull * 2);
+            indices[nonNull] = idx;
+            estimatedBytes += 4;
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        binaries.add(bytes);
+        estimatedBytes += bytes.length + 4;
+    }
+
+    /**
+     * 字典超过上限：本行组改为 PLAIN，已缓冲的取值按下标还原
+     */
+    private void fallBackToPlain() {
+        List<byte[]> plain = new ArrayList<>(Math.max(16, nonNull * 2));
+        for (int i = 0; i < nonNull; i++) plain.add(dictionaryValues.get(indices[i]));
+        binaries = plain;
+        dictionary = null;
+        dictionaryValues = null;
+        indices = null;
+    }
+
+    private void encodeValues(int from, int to, boolean useDictionary, ByteArrayOutputStream page) {
+        if (useDictionary) {
+            int bitWidth = HybridEncoder.bitWidth(Math.max(0, dictionaryValues.size() - 1));
+            page.write(bitWidth);
+            HybridEncoder.encode(indices, from, to, bitWidth, page);
+            return;
+        }
+        switch (kind) {
+            case INT32 -> {
+                for (int i = from; i < to; i++) writeIntLE(ints[i], page);
+            }
+            case INT64, TIMESTAMP_MICROS -> {
+                for (int i = from; i < to; i++) {
+                    writeIntLE((int) longs[i], page);
+                    writeIntLE((int) (longs[i] >>> 32), page);
+                }
+            }
+            default -> {
+                for (int i = from; i < to; i++) plainBinary(binaries.get(i), page);
+            }
+        }
+    }
+
+    private int writePage(ByteSink out, ChunkMeta meta, ParquetCodec codec, int pageType, byte[] raw,
+                          int numValues, int encoding) throws IOException {
+        byte[] compressed = codec.compress(raw);
+        CompactProtocolWriter header = new CompactProtocolWriter();
+        header.structBegin();
+        header.fieldI32(1, pageType);
+        header.fieldI32(2, raw.length);
+        header.fieldI32(3, compressed.length);
+        if (pageType == PAGE_DATA) {
+            header.fieldStructBegin(5);
+            header.fieldI32(1, numValues);
+            header.fieldI32(2, encoding);
+            header.fieldI32(3, ENCODING_RLE);
+            header.fieldI32(4, ENCODING_RLE);
+            header.structEnd();
+        } else {
+            header.fieldStructBegin(7);
+            header.fieldI32(1, numValues);
+            header.fieldI32(2, encoding);
+            header.structEnd();
+        }
+        header.structEnd();
+        byte[] headerBytes = header.toByteArray();
+        out.write(headerBytes);
+        out.write(compressed);
+        meta.totalUncompressedSize += headerBytes.length + raw.length;
+        meta.totalCompressedSize += headerBytes.length + compressed.length;
+        return headerBytes.length + compressed.length;
+    }
+
+    private void ensureInts() {
+        if (ints == null) ints = new int[1024];
+        else if (nonNull == ints.length) ints = Arrays.copyOf(ints, nonNull * 2);
+    }
+
+    private void ensureLongs() {
+        if (longs == null) longs = new long[1024];
+        else if (nonNull == longs.length) longs = Arrays.copyOf(longs, nonNull * 2);
+    }
+
+    private void track(long v) {
+        if (v < min) min = v;
+        if (v > max) max = v;
+    }
+
+    private static long toMicros(Object value) {
+        if (value instanceof LocalDateTime t) {
+            Instant instant = t.atZone(ZoneId.systemDefault()).toInstant();
+            return instant.getEpochSecond() * 1_000_000L + instant.getNano() / 1_000;
+        }
+        return ((Number) value).longValue();
+    }
+
+    private static void plainBinary(byte[] v, ByteArrayOutputStream out) {
+        writeIntLE(v.length, out);
+        out.write(v, 0, v.length);
+    }
+
+    static void writeIntLE(int v, ByteArrayOutputStream out) {
+        out.write(v & 0xFF);
+        out.write((v >>> 8) & 0xFF);
+        out.write((v >>> 16) & 0xFF);
+        out.write((v >>> 24) & 0xFF);
+    }
+
+    /**
+     * 列块写出后的元数据，写入文件尾
+     */
+    static final class ChunkMeta {
+        final ParquetColumn column;
+        final ParquetCodec codec;
+        final long numValues;
+        final long nullCount;
+        final Set<Integer> encodings = new TreeSet<>();
+        final byte[] min;
+        final byte[] max;
+        long dataPageOffset;
+        long dictionaryPageOffset = -1;
+        long totalUncompressedSize;
+        long totalCompressedSize;
+
+        ChunkMeta(ParquetColumn column, ParquetCodec codec, long numValues, long nullCount) {
+            this.column = column;
+            this.codec = codec;
+            this.numValues = numValues;
+            this.nullCount = nullCount;
+            this.min = column.hasStatistics() ? column.minBytes() : null;
+            this.max = column.hasStatistics() ? column.maxBytes() : null;
+        }
+
+        long firstPageOffset() {
+            return dictionaryPageOffset >= 0 ? dictionaryPageOffset : dataPageOffset;
+        }
+    }
+
+    /**
+     * 文件输出
+     */
+    interface ByteSink {
+        void write(byte[] bytes) throws IOException;
+    }
+}
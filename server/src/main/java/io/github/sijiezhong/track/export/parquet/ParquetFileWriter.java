@@ -0,0 +1,225 @@
+package io.github.sijiezhong.track.export.parquet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 流式 Parquet 文件写出
+ *
+ * <p>按行追加，缓冲达到行组大小后把各列写为列块并清空缓冲；{@link #close()} 时写文件尾。
+ * 内存占用以一个行组为上限，行组之间直接写入输出流。
+ *
+ * <p>只支持扁平结构（无嵌套、无重复字段），页格式为 DataPage V1。
+ */
+public final class ParquetFileWriter {
+
+    private static final byte[] MAGIC = "PAR1".getBytes(StandardCharsets.US_ASCII);
+
+    private final OutputStream out;
+    private final List<ParquetColumn> columns;
+    private final ParquetCodec codec;
+    private final long rowGroupBytes;
+    private final int pageRows;
+    private final List<RowGroupMeta> rowGroups = new ArrayList<>();
+    private long position;
+    private long totalRows;
+    private boolean closed;
+
+    /**
+     * @param out 输出流，close 时不关闭
+     * @param columns 列定义
+     * @param codec 页压缩方式
+     * @param rowGroupBytes 行组缓冲大小上限（按未压缩的估计字节数）
+     * @param pageRows 每个数据页的最大行数
+     */
+    public ParquetFileWriter(OutputStream out, List<ParquetColumn> columns, ParquetCodec codec,
+                             long rowGroupBytes, int pageRows) throws IOException {
+        this.out = out;
+        this.columns = List.copyOf(columns);
+        this.codec = codec;
+        this.rowGroupBytes = rowGroupBytes;
+        this.pageRows = pageRows;
+        for (ParquetColumn c : this.columns) c.reset();
+        write(MAGIC);
+    }
+
+    /**
+     * 追加一行
+     *
+     * @param values 与列定义顺序一致的取值
+     */
+    public void writeRow(Object[] values) throws IOException {
+        long buffered = 0;
+        for (int i = 0; i < columns.size(); i++) {
+            ParquetColumn c = columns.get(i);
+            c.add(values[i]);
+            buffered += c.estimatedBytes();
+        }
+        totalRows++;
+        if (buffered >= rowGroupBytes) {
+            flushRowGroup();
+        }
+    }
+
+    public long getRowCount() {
+        return totalRows;
+    }
+
+    /**
+     * 写出剩余行组与文件尾
+     */
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        flushRowGroup();
+        byte[] footer = footer();
+        write(footer);
+        ByteArrayOutputStream tail = new ByteArrayOutputStream(8);
+        ParquetColumn.writeIntLE(footer.length, tail);
+        write(tail.toByteArray());
+        write(MAGIC);
+        out.flush();
+    }
+
+    private void flushRowGroup() throws IOException {
+        int rows = columns.isEmpty() ? 0 : columns.get(0).rows();
+        if (rows == 0) return;
+        RowGroupMeta group = new RowGroupMeta(rows);
+        for (ParquetColumn c : columns) {
+            ParquetColumn.ChunkMeta meta = c.writeChunk(this::write, position, codec, pageRows);
+            group.chunks.add(meta);
+            c.reset();
+        }
+        rowGroups.add(group);
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        out.write(bytes);
+        position += bytes.length;
+    }
+
+    private byte[] footer() {
+        CompactProtocolWriter w = new CompactProtocolWriter();
+        w.structBegin();
+        w.fieldI32(1, 1);
+        // schema：根节点 + 每列一个叶子节点
+        w.fieldListBegin(2, CompactProtocolWriter.TYPE_STRUCT, columns.size() + 1);
+        w.structBegin();
+        w.fieldString(4, "schema");
+        w.fieldI32(5, columns.size());
+        w.structEnd();
+        for (ParquetColumn c : columns) {
+            writeSchemaElement(w, c);
+        }
+        w.fieldI64(3, totalRows);
+        w.fieldListBegin(4, CompactProtocolWriter.TYPE_STRUCT, rowGroups.size());
+        for (int g = 0; g < rowGroups.size(); g++) {
+            writeRowGroup(w, rowGroups.get(g), g);
+        }
+        w.fieldString(6, "track event export");
+        // column_orders：按类型定义的排序，读取方据此信任 min/max 统计
+        w.fieldListBegin(7, CompactProtocolWriter.TYPE_STRUCT, columns.size());
+        for (int i = 0; i < columns.size(); i++) {
+            w.structBegin();
+            w.fieldStructBegin(1);
+            w.structEnd();
+            w.structEnd();
+        }
+        w.structEnd();
+        return w.toByteArray();
+    }
+
+    private static void writeSchemaElement(CompactProtocolWriter w, ParquetColumn c) {
+        w.structBegin();
+        w.fieldI32(1, c.getKind().physicalType());
+        w.fieldI32(3, c.isRequired() ? 0 : 1);
+        w.fieldString(4, c.getName());
+        switch (c.getKind()) {
+            case STRING -> {
+                w.fieldI32(6, 0); // UTF8
+                w.fieldStructBegin(10);
+                w.fieldStructBegin(1); // STRING
+                w.structEnd();
+                w.structEnd();
+            }
+            case JSON -> {
+                w.fieldI32(6, 19); // JSON
+                w.fieldStructBegin(10);
+                w.fieldStructBegin(12); // JSON
+                w.structEnd();
+                w.structEnd();
+            }
+            case TIMESTAMP_MICROS -> {
+                w.fieldI32(6, 10); // TIMESTAMP_MICROS
+                w.fieldStructBegin(10);
+                w.fieldStructBegin(8); // TIMESTAMP
+                w.fieldBool(1, true); // isAdjustedToUTC
+                w.fieldStructBegin(2); // unit
+                w.fieldStructBegin(2); // MICROS
+                w.structEnd();
+                w.structEnd();
+                w.structEnd();
+                w.structEnd();
+            }
+            default -> {
+                // 普通整数不加注解
+            }
+        }
+        w.structEnd();
+    }
+
+    private static void writeRowGroup(CompactProtocolWriter w, RowGroupMeta group, int ordinal) {
+        long uncompressed = 0;
+        long compressed = 0;
+        w.structBegin();
+        w.fieldListBegin(1, CompactProtocolWriter.TYPE_STRUCT, group.chunks.size());
+        for (ParquetColumn.ChunkMeta m : group.chunks) {
+            uncompressed += m.totalUncompressedSize;
+            compressed += m.totalCompressedSize;
+            w.structBegin();
+            w.fieldI64(2, m.firstPageOffset());
+            w.fieldStructBegin(3);
+            w.fieldI32(1, m.column.getKind().physicalType());
+            w.fieldListBegin(2, CompactProtocolWriter.TYPE_I32, m.encodings.size());
+            for (int e : m.encodings) w.i32(e);
+            w.fieldListBegin(3, CompactProtocolWriter.TYPE_BINARY, 1);
+            w.string(m.column.getName());
+            w.fieldI32(4, m.codec.thriftValue());
+            w.fieldI64(5, m.numValues);
+            w.fieldI64(6, m.totalUncompressedSize);
+            w.fieldI64(7, m.totalCompressedSize);
+            w.fieldI64(9, m.dataPageOffset);
+            if (m.dictionaryPageOffset >= 0) {
+                w.fieldI64(11, m.dictionaryPageOffset);
+            }
+            w.fieldStructBegin(12);
+            w.fieldI64(3, m.nullCount);
+            if (m.min != null) {
+                w.fieldBinary(5, m.max);
+                w.fieldBinary(6, m.min);
+            }
+            w.structEnd();
+            w.structEnd();
+            w.structEnd();
+        }
+        w.fieldI64(2, uncompressed);
+        w.fieldI64(3, group.rows);
+        w.fieldI64(5, group.chunks.get(0).firstPageOffset());
+        w.fieldI64(6, compressed);
+        w.fieldI16(7, (short) ordinal);
+        w.structEnd();
+    }
+
+    private static final class RowGroupMeta {
+        final long rows;
+        final List<ParquetColumn.ChunkMeta> chunks = new ArrayList<>();
+
+        RowGroupMeta(long rows) {
+            this.rows = rows;
+        }
+    }
+}
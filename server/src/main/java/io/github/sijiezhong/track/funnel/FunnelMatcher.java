@@ -0,0 +1,110 @@
+package io.github.sijiezhong.track.funnel;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 逐行计算漏斗：输入按 (会话, 时间) 排序的步骤事件，统计到达每一步的会话数
+ *
+ * <p>输入有序，因此只需在会话切换时结算上一个会话，状态只有当前会话的一组时间戳，
+ * 内存与行数、会话数都无关。
+ *
+ * <p>starts[k] 记录已到达第 k 步的链条中最晚的起点时间（第0步的时间）。起点越晚，
+ * 留给后续步骤的时间窗口越充裕，因此每一步只需保留最晚起点。同一事件名出现在多个步骤时
+ * 从后往前处理，保证一个事件只推进链条一步。
+ */
+public final class FunnelMatcher {
+
+    private static final long UNSET = Long.MIN_VALUE;
+    private static final int[] NO_STEPS = new int[0];
+
+    private final Map<String, int[]> stepsByName = new HashMap<>();
+    private final long window;
+    private final boolean strict;
+    private final long[] counts;
+    private long[] starts;
+    private long[] next;
+    private long session;
+    private boolean inSession;
+    private int reached = -1;
+
+    /**
+     * @param steps 漏斗步骤事件名
+     * @param window 转化窗口，从第0步到后续每一步的最大间隔，与事件时间单位相同，小于等于0表示不限制
+     * @param order 顺序约束
+     */
+    public FunnelMatcher(String[] steps, long window, FunnelOrder order) {
+        for (int k = steps.length - 1; k >= 0; k--) {
+            int[] prev = stepsByName.getOrDefault(steps[k], NO_STEPS);
+            int[] merged = Arrays.copyOf(prev, prev.length + 1);
+            merged[prev.length] = k;
+            stepsByName.put(steps[k], merged);
+        }
+        this.window = window;
+        this.strict = order == FunnelOrder.STRICT;
+        this.counts = new long[steps.length];
+        this.starts = new long[steps.length];
+        this.next = new long[steps.length];
+        Arrays.fill(starts, UNSET);
+    }
+
+    /**
+     * 处理一行事件
+     *
+     * @param sessionId 会话ID，必须非递减
+     * @param eventName 事件名，不属于任何步骤时忽略
+     * @param time 事件时间，同一会话内必须非递减
+     */
+    public void accept(long sessionId, String eventName, long time) {
+        if (!inSession || sessionId != session) {
+            settle();
+            session = sessionId;
+            inSession = true;
+        }
+        int[] ks = stepsByName.getOrDefault(eventName, NO_STEPS);
+        if (strict) {
+            Arrays.fill(next, UNSET);
+            for (int k : ks) {
+                next[k] = advance(k, time);
+            }
+            long[] t = starts;
+            starts = next;
+            next = t;
+        } else {
+            for (int k : ks) {
+                long s = advance(k, time);
+                if (s != UNSET && s > starts[k]) starts[k] = s;
+            }
+        }
+        for (int k : ks) {
+            if (starts[k] != UNSET && k > reached) reached = k;
+        }
+    }
+
+    /**
+     * 结算最后一个会话并返回 counts[i]，即到达第 i 步（含之前所有步骤）的会话数
+     */
+    public long[] finish() {
+        settle();
+        inSession = false;
+        return counts.clone();
+    }
+
+    /**
+     * 当前事件作为第 k 步时得到的链条起点，无法作为第 k 步时返回 UNSET
+     */
+    private long advance(int k, long time) {
+        if (k == 0) return time;
+        long start = starts[k - 1];
+        if (start == UNSET) return UNSET;
+        if (window > 0 && time - start > window) return UNSET;
+        return start;
+    }
+
+    private void settle() {
+        for (int k = 0; k <= reached; k++) counts[k]++;
+        reached = -1;
+        Arrays.fill(starts, UNSET);
+    }
+}
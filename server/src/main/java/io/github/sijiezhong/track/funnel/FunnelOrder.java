@@ -0,0 +1,29 @@
+package io.github.sijiezhong.track.funnel;
+
+import io.github.sijiezhong.track.exception.BusinessException;
+import io.github.sijiezhong.track.exception.ErrorCode;
+
+/**
+ * 漏斗步骤的顺序约束，只考虑会话中属于漏斗步骤的事件
+ */
+public enum FunnelOrder {
+    /** 步骤按顺序出现即可，中间允许夹杂其他步骤事件 */
+    LOOSE,
+    /** 步骤必须连续出现，中间出现其他步骤事件则链条中断 */
+    STRICT;
+
+    /**
+     * 解析查询参数，为空时返回 LOOSE
+     */
+    public static FunnelOrder from(String value) {
+        if (value == null || value.isBlank()) {
+            return LOOSE;
+        }
+        for (FunnelOrder o : values()) {
+            if (o.name().equalsIgnoreCase(value.trim())) {
+                return o;
+            }
+        }
+        throw new BusinessException(ErrorCode.BAD_REQUEST, "不支持的漏斗顺序: " + value);
+    }
+}
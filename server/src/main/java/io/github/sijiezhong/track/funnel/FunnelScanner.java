@@ -0,0 +1,99 @@
+package io.github.sijiezhong.track.funnel;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * 以服务端游标流式读取漏斗步骤事件并交给 {@link FunnelMatcher}
+ *
+ * <p>与导出相同，只有在只读事务中设置 fetchSize 且结果集为 forward-only 时驱动才分批拉取，
+ * 否则整个结果集会先读入内存。
+ */
+@Component
+public class FunnelScanner {
+
+    // 每次从游标拉取的行数
+    private static final int FETCH_SIZE = 5_000;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /** 漏斗输入事件的过滤条件，参数依次为 appId、步骤数组、起止时间，与 {@link FunnelPushdown} 共用 */
+    static final String WHERE = "where e.app_id = ? and e.event_name = any(?) and e.session_id is not null " +
+            "and e.event_time between coalesce(cast(? as timestamp), '-infinity'::timestamp) " +
+            "and coalesce(cast(? as timestamp), 'infinity'::timestamp)";
+
+    private static final String SQL = "select e.session_id, e.event_name, e.event_time from event e " + WHERE +
+            " order by e.session_id, e.event_time, e.id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTx;
+
+    public FunnelScanner(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+    }
+
+    /**
+     * 计算漏斗
+     *
+     * @param windowMicros 转化窗口（微秒，与数据库时间精度一致），小于等于0表示不限制
+     * @return counts[i] 为到达第 i 步的会话数
+     */
+    public long[] scan(Integer appId, String[] steps, LocalDateTime startTime, LocalDateTime endTime,
+                       long windowMicros, FunnelOrder order) {
+        FunnelMatcher matcher = new FunnelMatcher(steps, windowMicros, order);
+        PreparedStatementCreator psc = con -> {
+            PreparedStatement ps = con.prepareStatement(SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(FETCH_SIZE);
+            bind(con, ps, 1, appId, steps, startTime, endTime);
+            return ps;
+        };
+        readOnlyTx.executeWithoutResult(status -> jdbcTemplate.query(psc, rs -> {
+            LocalDateTime t = rs.getObject(3, LocalDateTime.class);
+            long micros = t.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + t.getNano() / 1_000;
+            matcher.accept(rs.getLong(1), rs.getString(2), micros);
+        }));
+        return matcher.finish();
+    }
+
+    /**
+     * 按执行计划估计漏斗输入行数，不扫描数据；估计失败时返回0
+     */
+    public long estimateRows(Integer appId, String[] steps, LocalDateTime startTime, LocalDateTime endTime) {
+        String plan = readOnlyTx.execute(status -> jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("EXPLAIN (FORMAT JSON) select 1 from event e " + WHERE);
+            bind(con, ps, 1, appId, steps, startTime, endTime);
+            return ps;
+        }, rs -> rs.next() ? rs.getString(1) : null));
+        if (plan == null) return 0L;
+        try {
+            JsonNode root = MAPPER.readTree(plan);
+            return Math.max(0L, root.path(0).path("Plan").path("Plan Rows").asLong());
+        } catch (Exception e) {
+            return 0L;
+        }
+    }
+
+    /**
+     * 从 index 开始绑定 {@link #WHERE} 的参数
+     */
+    static void bind(Connection con, PreparedStatement ps, int index, Integer appId, String[] steps,
+                     LocalDateTime startTime, LocalDateTime endTime) throws SQLException {
+        ps.setObject(index, appId);
+        ps.setArray(index + 1, con.createArrayOf("varchar", steps));
+        ps.setObject(index + 2, startTime);
+        ps.setObject(index + 3, endTime);
+    }
+}
@@ -0,0 +1,147 @@
+package io.github.sijiezhong.track.importer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RFC 4180 CSV 读取：首行为表头，字段可加双引号，引号内可含逗号、换行，两个引号表示一个引号
+ *
+ * <p>与导出 CSV 的写法互逆。空字段按缺失处理，空行跳过。
+ */
+final class CsvRecordReader implements ImportRecordReader {
+
+    private static final char BOM = '\uFEFF';
+
+    private final Reader in;
+    private final List<String> headers;
+    private final StringBuilder raw = new StringBuilder();
+    private final StringBuilder field = new StringBuilder();
+    private long line = 1;
+    private boolean unterminated;
+    private int pending = -2; // 预读的字符，-2 表示没有
+
+    /**
+     * @param in 字符输入，调用方负责缓冲
+     */
+    CsvRecordReader(Reader in) throws IOException {
+        this.in = in;
+        List<String> header = readFields();
+        List<String> names = new ArrayList<>();
+        if (header != null) {
+            for (String h : header) {
+                names.add(ImportRecord.normalize(!h.isEmpty() && h.charAt(0) == BOM ? h.substring(1) : h));
+            }
+        }
+        this.headers = names;
+    }
+
+    @Override
+    public ImportRecord next() throws IOException {
+        List<String> fields;
+        long start;
+        do {
+            start = line;
+            fields = readFields();
+            if (fields == null) return null;
+        } while (raw.length() == 0);
+        String text = raw.toString();
+        if (unterminated) {
+            return ImportRecord.malformed(start, text, "引号未闭合");
+        }
+        if (fields.size() != headers.size()) {
+            return ImportRecord.malformed(start, text, "列数与表头不一致: " + fields.size() + " != " + headers.size());
+        }
+        Map<String, Object> values = new HashMap<>(headers.size() * 2);
+        for (int i = 0; i < headers.size(); i++) {
+            String v = fields.get(i);
+            if (!v.isEmpty()) values.put(headers.get(i), v);
+        }
+        return new ImportRecord(start, text, values, null);
+    }
+
+    /**
+     * 读取一条记录的全部字段，原文（不含行尾）留在 raw 中；文件结束时返回 null
+     */
+    private List<String> readFields() throws IOException {
+        raw.setLength(0);
+        unterminated = false;
+        int c = read();
+        if (c < 0) return null;
+        List<String> fields = new ArrayList<>();
+        field.setLength(0);
+        boolean inQuotes = false;
+        boolean quoted = false;
+        while (true) {
+            if (inQuotes) {
+                if (c < 0) {
+                    unterminated = true;
+                    fields.add(field.toString());
+                    return fields;
+                }
+                if (c == '"') {
+                    int n = read();
+                    if (n != '"') {
+                        inQuotes = false;
+                        c = n;
+                        continue;
+                    }
+                    field.append('"');
+                } else {
+                    if (c == '\n') line++;
+                    field.append((char) c);
+                }
+            } else if (c < 0 || c == '\n' || c == '\r') {
+                if (c >= 0) {
+                    raw.setLength(raw.length() - 1);
+                    line++;
+                }
+                if (c == '\r') {
+                    int n = read();
+                    if (n == '\n') {
+                        raw.setLength(raw.length() - 1);
+                    } else {
+                        unread(n);
+                    }
+                }
+                fields.add(field.toString());
+                return fields;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+                quoted = false;
+            } else if (c == '"' && field.length() == 0 && !quoted) {
+                quoted = true;
+                inQuotes = true;
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    private int read() throws IOException {
+        int c;
+        if (pending != -2) {
+            c = pending;
+            pending = -2;
+        } else {
+            c = in.read();
+        }
+        if (c >= 0) raw.append((char) c);
+        return c;
+    }
+
+    private void unread(int c) {
+        if (c >= 0) raw.setLength(raw.length() - 1);
+        pending = c;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
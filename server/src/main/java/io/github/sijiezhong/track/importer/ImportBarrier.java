@@ -0,0 +1,35 @@
+package io.github.sijiezhong.track.importer;
+
+/**
+ * 批量导入合并与按 id 水位消费者之间的屏障（按应用的事务级咨询锁）
+ *
+ * <p>导入合并分块并行、各自一个事务，事务可能持续数秒到数十秒，create_time 取事务开始时间。
+ * 其间 id 更大的行（其他分块或实时上报）可能先提交，只靠沉淀窗口的水位会越过尚未提交的导入行且不再回头。
+ *
+ * <p>每个合并事务在分配 id 之前取得本应用的共享锁 ({@link #LOCK_CLASS}, app_id)，提交时释放。
+ * 消费者（增量变更、预聚合、用户数草图）不取锁，而是查询 pg_locks 中已授予的持有者，彼此之间不互斥，
+ * 也不阻塞合并。检查必须夹在两步之间：先确定本轮的 id 上界，再检查，最后用新的语句读取上界以内的行。
+ * id 由序列按时间顺序分配，上界以内的 id 在确定上界之前已经分配；分配它们的合并在检查时
+ * 要么仍持有锁而被发现，要么已经结束，提交的行对之后的语句可见（读已提交隔离级别）。
+ */
+public final class ImportBarrier {
+
+    /** 咨询锁的第一个键，取 "impt" 的 ASCII；第二个键为应用ID */
+    public static final int LOCK_CLASS = 0x696D7074;
+
+    /** 合并方：在当前事务内取本应用的共享锁，事务结束时释放；参数为应用ID */
+    public static final String ENTER_SQL = "select pg_advisory_xact_lock_shared(" + LOCK_CLASS + ", ?)";
+
+    private static final String HOLDERS =
+            "from pg_locks l where l.locktype = 'advisory' and l.classid = " + LOCK_CLASS
+                    + " and l.objsubid = 2 and l.granted";
+
+    /** 消费方：有合并在途的应用 */
+    public static final String MERGING_APPS_SQL = "select distinct l.objid::int " + HOLDERS;
+
+    /** 消费方：指定应用是否有合并在途；参数为应用ID */
+    public static final String MERGING_SQL = "select exists (select 1 " + HOLDERS + " and l.objid = ?::oid)";
+
+    private ImportBarrier() {
+    }
+}
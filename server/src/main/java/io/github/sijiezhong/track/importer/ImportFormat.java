@@ -0,0 +1,59 @@
+package io.github.sijiezhong.track.importer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * 导入文件格式，与对应导出格式的列名一致，导出文件可直接导入
+ */
+public enum ImportFormat {
+    CSV("csv") {
+        @Override
+        public ImportRecordReader open(InputStream in) throws IOException {
+            return new CsvRecordReader(reader(in));
+        }
+    },
+    NDJSON("ndjson") {
+        @Override
+        public ImportRecordReader open(InputStream in) {
+            return new NdjsonRecordReader(reader(in));
+        }
+    };
+
+    private static final int READ_BUFFER_CHARS = 64 * 1024;
+
+    private final String extension;
+
+    ImportFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * 打开记录读取器，输入按 UTF-8 解码
+     */
+    public abstract ImportRecordReader open(InputStream in) throws IOException;
+
+    /**
+     * 按扩展名或枚举名查找，未知格式返回 null
+     */
+    public static ImportFormat fromValue(String value) {
+        if (value == null) return null;
+        String v = value.trim().toLowerCase(Locale.ROOT);
+        for (ImportFormat f : values()) {
+            if (f.extension.equals(v)) return f;
+        }
+        return null;
+    }
+
+    private static BufferedReader reader(InputStream in) {
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), READ_BUFFER_CHARS);
+    }
+}
@@ -0,0 +1,135 @@
+package io.github.sijiezhong.track.importer;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 导入任务的状态与进度
+ *
+ * <p>计数器由解析线程、COPY 线程与合并线程累加，查询线程读取；状态迁移与导出任务相同使用 CAS。
+ */
+public final class ImportJob {
+
+    public enum Status {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED;
+
+        public boolean isTerminal() {
+            return this == SUCCEEDED || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    /**
+     * 执行阶段：解析并写入暂存表 → 批量建立会话 → 分块合并到 event 表
+     */
+    public enum Phase {
+        STAGING, SESSIONS, MERGING
+    }
+
+    private final String id;
+    private final Integer appId;
+    private final ImportFormat format;
+    private final boolean gzip;
+    private final Path upload;
+    private final Path rejects;
+    private final long bytesTotal;
+    private final Instant createdAt = Instant.now();
+
+    private final AtomicReference<Status> status = new AtomicReference<>(Status.QUEUED);
+    private volatile Phase phase;
+    private volatile boolean cancelRequested;
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong rowsRead = new AtomicLong();
+    private final AtomicLong rowsRejected = new AtomicLong();
+    private final AtomicLong rowsStaged = new AtomicLong();
+    private final AtomicLong rowsMerged = new AtomicLong();
+    private volatile long sessionsCreated;
+    private volatile long sessionsUpdated;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    ImportJob(String id, Integer appId, ImportFormat format, boolean gzip, Path upload, Path rejects, long bytesTotal) {
+        this.id = id;
+        this.appId = appId;
+        this.format = format;
+        this.gzip = gzip;
+        this.upload = upload;
+        this.rejects = rejects;
+        this.bytesTotal = bytesTotal;
+    }
+
+    public String getId() { return id; }
+    public Integer getAppId() { return appId; }
+    public ImportFormat getFormat() { return format; }
+    public boolean isGzip() { return gzip; }
+    public Status getStatus() { return status.get(); }
+    public Phase getPhase() { return phase; }
+    /** 上传文件大小（压缩时为压缩后大小） */
+    public long getBytesTotal() { return bytesTotal; }
+    /** 已解析的上传文件字节数 */
+    public long getBytesRead() { return bytesRead.get(); }
+    public long getRowsRead() { return rowsRead.get(); }
+    public long getRowsRejected() { return rowsRejected.get(); }
+    public long getRowsStaged() { return rowsStaged.get(); }
+    public long getRowsMerged() { return rowsMerged.get(); }
+    public long getSessionsCreated() { return sessionsCreated; }
+    public long getSessionsUpdated() { return sessionsUpdated; }
+    public Instant getCreatedAt() { return createdAt; }
+    public Instant getStartedAt() { return startedAt; }
+    public Instant getFinishedAt() { return finishedAt; }
+    public String getError() { return error; }
+
+    /**
+     * 拒绝行报告（NDJSON，每行含行号、原因与原文），有拒绝行时存在
+     */
+    public Path getRejectsFile() { return rejects; }
+
+    Path getUpload() { return upload; }
+    boolean isCancelRequested() { return cancelRequested; }
+
+    void setPhase(Phase phase) { this.phase = phase; }
+    void addBytesRead(long n) { bytesRead.addAndGet(n); }
+    void addRowsRead(long n) { rowsRead.addAndGet(n); }
+    long addRowsRejected(long n) { return rowsRejected.addAndGet(n); }
+    void addRowsStaged(long n) { rowsStaged.addAndGet(n); }
+    void addRowsMerged(long n) { rowsMerged.addAndGet(n); }
+
+    void setSessions(long created, long updated) {
+        this.sessionsCreated = created;
+        this.sessionsUpdated = updated;
+    }
+
+    boolean start() {
+        if (!status.compareAndSet(Status.QUEUED, Status.RUNNING)) return false;
+        startedAt = Instant.now();
+        return true;
+    }
+
+    /**
+     * 迁移到终态，只有第一次调用生效
+     */
+    boolean finish(Status terminal, String error) {
+        Status current = status.get();
+        while (!current.isTerminal()) {
+            if (status.compareAndSet(current, terminal)) {
+                this.error = error;
+                this.finishedAt = Instant.now();
+                return true;
+            }
+            current = status.get();
+        }
+        return false;
+    }
+
+    boolean cancelIfQueued() {
+        if (!status.compareAndSet(Status.QUEUED, Status.CANCELLED)) return false;
+        finishedAt = Instant.now();
+        return true;
+    }
+
+    void requestCancel() {
+        cancelRequested = true;
+    }
+}
@@ -0,0 +1,508 @@
+package io.github.sijiezhong.track.importer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.sijiezhong.track.config.ImportProperties;
+import io.github.sijiezhong.track.exception.BusinessException;
+import io.github.sijiezhong.track.exception.ErrorCode;
+import io.github.sijiezhong.track.exception.ResourceNotFoundException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 历史事件批量导入任务
+ *
+ * <p>上传文件先写入暂存目录，请求随即返回任务ID；后台依次执行：
+ * <ol>
+ *   <li>解析校验，不合法的行写入拒绝行报告，合法行按批以 COPY 并行写入无日志暂存表；</li>
+ *   <li>一条语句按会话标识聚合暂存表，批量建立或更新会话，取代逐条上报时的逐会话加锁；</li>
+ *   <li>按行号分块并行合并到 event 表，每块一个事务。</li>
+ * </ol>
+ * 拒绝行超过 {@code import.max-rejects} 时在合并前失败，不写入任何事件。合并阶段失败时已提交的分块不回滚，
+ * 任务错误信息中给出已合并行数。
+ *
+ * <p>导入的事件保留原始 eventTime，不触发 SSE 推送与 Webhook。任务状态只保存在本节点内存中，
+ * 与导出任务一样按保留时间清理。
+ */
+@Component
+public class ImportJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(ImportJobService.class);
+
+    private static final String UPLOAD_SUFFIX = ".upload";
+    private static final String REJECTS_SUFFIX = ".rejects.ndjson";
+    // 进度每隔多少行对外发布一次
+    private static final int PROGRESS_ROWS = 1024;
+    private static final int GZIP_BUFFER_BYTES = 64 * 1024;
+    // 拒绝行报告中原文的最大长度
+    private static final int REJECT_RAW_CHARS = 2000;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final ImportStagingStore store;
+    private final ImportProperties properties;
+    private final Path spoolDir;
+    private final Duration retention;
+    private final ThreadPoolExecutor workers;
+    // COPY 与合并线程在所有任务间共享，数量即各阶段同时占用的数据库连接数上限
+    private final ExecutorService copiers;
+    private final ExecutorService mergers;
+    private final ScheduledExecutorService cleaner;
+
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicInteger> activeByApp = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ImportJobService(ImportStagingStore store, ImportProperties properties,
+                            @Autowired(required = false) MeterRegistry meterRegistry) throws IOException {
+        this.store = store;
+        this.properties = properties;
+        this.spoolDir = Paths.get(properties.getSpoolDir()).toAbsolutePath();
+        Files.createDirectories(spoolDir);
+        this.retention = Duration.ofMinutes(Math.max(0L, properties.getRetentionMinutes()));
+
+        int threads = Math.max(1, properties.getWorkerThreads());
+        CustomizableThreadFactory workerFactory = new CustomizableThreadFactory("import-job-");
+        workerFactory.setDaemon(true);
+        this.workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, properties.getQueueCapacity())), workerFactory);
+
+        CustomizableThreadFactory copyFactory = new CustomizableThreadFactory("import-copy-");
+        copyFactory.setDaemon(true);
+        this.copiers = Executors.newFixedThreadPool(Math.max(1, properties.getCopyThreads()), copyFactory);
+
+        CustomizableThreadFactory mergeFactory = new CustomizableThreadFactory("import-merge-");
+        mergeFactory.setDaemon(true);
+        this.mergers = Executors.newFixedThreadPool(Math.max(1, properties.getMergeThreads()), mergeFactory);
+
+        CustomizableThreadFactory cleanerFactory = new CustomizableThreadFactory("import-spool-");
+        cleanerFactory.setDaemon(true);
+        this.cleaner = Executors.newSingleThreadScheduledExecutor(cleanerFactory);
+        long interval = Math.max(1000L, properties.getCleanupIntervalMs());
+        this.cleaner.scheduleWithFixedDelay(this::sweep, 0, interval, TimeUnit.MILLISECONDS);
+
+        if (meterRegistry != null) {
+            Gauge.builder("track.import.jobs.queued", workers, w -> w.getQueue().size()).register(meterRegistry);
+            Gauge.builder("track.import.jobs.running", workers, ThreadPoolExecutor::getActiveCount).register(meterRegistry);
+        }
+    }
+
+    /**
+     * 保存上传内容并提交导入任务
+     *
+     * @param body 上传内容，读到结束为止
+     * @throws BusinessException 上传内容为空（400）、应用的活动任务已达上限（429）或全局队列已满（503）
+     * @throws IOException 读取上传内容或写入暂存目录失败
+     */
+    public ImportJob submit(Integer appId, ImportFormat format, boolean gzip, InputStream body) throws IOException {
+        int limit = Math.max(1, properties.getMaxActivePerApp());
+        AtomicInteger active = activeByApp.computeIfAbsent(appId, k -> new AtomicInteger());
+        if (active.incrementAndGet() > limit) {
+            active.decrementAndGet();
+            throw new BusinessException(ErrorCode.TOO_MANY_REQUESTS, "该应用进行中的导入任务已达上限: " + limit);
+        }
+        String id = UUID.randomUUID().toString().replace("-", "");
+        Path upload = spoolDir.resolve(id + UPLOAD_SUFFIX);
+        long size;
+        try {
+            size = Files.copy(body, upload);
+        } catch (IOException | RuntimeException ex) {
+            active.decrementAndGet();
+            deleteQuietly(upload);
+            throw ex;
+        }
+        if (size == 0) {
+            active.decrementAndGet();
+            deleteQuietly(upload);
+            // 表单编码的请求体会被容器当作参数解析掉，到这里只剩空流
+            throw new BusinessException(ErrorCode.BAD_REQUEST, "上传内容为空，请以 application/octet-stream 等非表单类型发送文件");
+        }
+        ImportJob job = new ImportJob(id, appId, format, gzip, upload, spoolDir.resolve(id + REJECTS_SUFFIX), size);
+        jobs.put(id, job);
+        try {
+            workers.execute(() -> run(job));
+        } catch (RejectedExecutionException ex) {
+            jobs.remove(id);
+            active.decrementAndGet();
+            deleteQuietly(upload);
+            throw new BusinessException(ErrorCode.SERVICE_UNAVAILABLE, "导入队列已满，请稍后重试");
+        }
+        log.info("导入任务已提交: jobId={}, appId={}, format={}, gzip={}, bytes={}", id, appId, format, gzip, size);
+        return job;
+    }
+
+    /**
+     * 查询任务，不存在、已过期或不属于该应用时抛出 404
+     */
+    public ImportJob get(Integer appId, String id) {
+        ImportJob job = id == null ? null : jobs.get(id);
+        if (job == null || !job.getAppId().equals(appId)) {
+            throw new ResourceNotFoundException(ErrorCode.NOT_FOUND, "导入任务不存在或已过期: " + id);
+        }
+        return job;
+    }
+
+    /**
+     * 该应用的全部任务，按创建时间倒序
+     */
+    public List<ImportJob> list(Integer appId) {
+        List<ImportJob> result = new ArrayList<>();
+        for (ImportJob job : jobs.values()) {
+            if (job.getAppId().equals(appId)) result.add(job);
+        }
+        result.sort(Comparator.comparing(ImportJob::getCreatedAt).reversed());
+        return result;
+    }
+
+    /**
+     * 取消并删除任务：排队中的直接取消，执行中的在当前批次或分块结束后中止，已结束的删除报告
+     */
+    public void cancel(Integer appId, String id) {
+        ImportJob job = get(appId, id);
+        job.requestCancel();
+        if (job.cancelIfQueued()) {
+            release(job);
+            deleteQuietly(job.getUpload());
+        }
+        jobs.remove(id);
+        if (job.getStatus().isTerminal()) {
+            deleteQuietly(job.getRejectsFile());
+        }
+    }
+
+    void run(ImportJob job) {
+        if (!job.start()) return;
+        String table = ImportStagingStore.tableName(job.getId());
+        long start = System.currentTimeMillis();
+        boolean created = false;
+        try {
+            store.create(table);
+            created = true;
+            job.setPhase(ImportJob.Phase.STAGING);
+            if (!stage(job, table)) {
+                job.finish(ImportJob.Status.FAILED, "拒绝行数超过上限 " + properties.getMaxRejects() + "，未写入任何事件");
+                log.warn("导入任务拒绝行过多: jobId={}, appId={}, rowsRejected={}", job.getId(), job.getAppId(),
+                        job.getRowsRejected());
+                return;
+            }
+            store.prepareMerge(table);
+            checkCancelled(job);
+            job.setPhase(ImportJob.Phase.SESSIONS);
+            long[] sessions = store.upsertSessions(table, job.getAppId());
+            job.setSessions(sessions[0], sessions[1]);
+            checkCancelled(job);
+            job.setPhase(ImportJob.Phase.MERGING);
+            merge(job, table);
+            if (job.finish(ImportJob.Status.SUCCEEDED, null)) {
+                log.info("导入任务完成: jobId={}, appId={}, rowsRead={}, rowsRejected={}, rowsMerged={}, sessionsCreated={}, costMs={}",
+                        job.getId(), job.getAppId(), job.getRowsRead(), job.getRowsRejected(), job.getRowsMerged(),
+                        job.getSessionsCreated(), System.currentTimeMillis() - start);
+            }
+        } catch (IOException | SQLException | RuntimeException ex) {
+            if (job.isCancelRequested()) {
+                job.finish(ImportJob.Status.CANCELLED, null);
+                log.info("导入任务已取消: jobId={}, appId={}, rowsMerged={}", job.getId(), job.getAppId(), job.getRowsMerged());
+            } else {
+                String error = ex.getMessage() != null ? ex.getMessage() : ex.getClass().getSimpleName();
+                if (job.getRowsMerged() > 0) error = error + "（已合并 " + job.getRowsMerged() + " 行）";
+                job.finish(ImportJob.Status.FAILED, error);
+                log.error("导入任务失败: jobId={}, appId={}, phase={}", job.getId(), job.getAppId(), job.getPhase(), ex);
+            }
+        } finally {
+            if (created) dropQuietly(table);
+            deleteQuietly(job.getUpload());
+            if (!jobs.containsKey(job.getId())) deleteQuietly(job.getRejectsFile());
+            release(job);
+        }
+    }
+
+    /**
+     * 解析上传文件并以 COPY 并行写入暂存表
+     *
+     * <p>解析在任务线程中顺序进行，每满一批交给 COPY 线程；同时在途的批次数不超过 COPY 线程数，
+     * 内存占用以此为上限。
+     *
+     * @return 拒绝行超过上限时返回 false
+     */
+    private boolean stage(ImportJob job, String table) throws IOException, SQLException {
+        int batchRows = Math.max(1, properties.getCopyBatchRows());
+        int inFlight = Math.max(1, properties.getCopyThreads());
+        long maxRejects = properties.getMaxRejects();
+        Semaphore permits = new Semaphore(inFlight);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        try (InputStream file = new CountingInputStream(Files.newInputStream(job.getUpload()), job);
+             InputStream in = job.isGzip() ? new GZIPInputStream(file, GZIP_BUFFER_BYTES) : file;
+             ImportRecordReader reader = job.getFormat().open(in);
+             RejectWriter rejects = new RejectWriter(job.getRejectsFile())) {
+            StringBuilder batch = new StringBuilder();
+            int rows = 0;
+            long read = 0;
+            ImportRecord record;
+            try {
+                while ((record = reader.next()) != null) {
+                    if (job.isCancelRequested()) throw new InterruptedIOException("import job cancelled");
+                    rethrow(failure);
+                    if (++read % PROGRESS_ROWS == 0) job.addRowsRead(PROGRESS_ROWS);
+                    ImportRow row;
+                    try {
+                        row = ImportRow.from(record);
+                    } catch (IllegalArgumentException ex) {
+                        rejects.write(record, ex.getMessage());
+                        if (job.addRowsRejected(1) > maxRejects && maxRejects >= 0) return false;
+                        continue;
+                    }
+                    row.appendCopyCsv(record.getLine(), batch);
+                    if (++rows == batchRows) {
+                        submitCopy(job, table, batch, permits, failure);
+                        batch = new StringBuilder();
+                        rows = 0;
+                    }
+                }
+                job.addRowsRead(read % PROGRESS_ROWS);
+                if (rows > 0) submitCopy(job, table, batch, permits, failure);
+            } finally {
+                // 正常结束与提前退出都要等在途的 COPY 完成，之后才能合并或删除暂存表
+                permits.acquireUninterruptibly(inFlight);
+            }
+            rethrow(failure);
+            return true;
+        }
+    }
+
+    private void submitCopy(ImportJob job, String table, StringBuilder batch, Semaphore permits,
+                            AtomicReference<Exception> failure) throws InterruptedIOException {
+        byte[] csv = batch.toString().getBytes(StandardCharsets.UTF_8);
+        try {
+            permits.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("import job interrupted");
+        }
+        try {
+            copiers.execute(() -> {
+                try {
+                    if (failure.get() == null) job.addRowsStaged(store.copy(table, csv));
+                } catch (Exception ex) {
+                    failure.compareAndSet(null, ex);
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * 按行号分块并行合并，任一分块失败后其余未开始的分块跳过
+     */
+    private void merge(ImportJob job, String table) throws IOException {
+        long[] range = store.lineRange(table);
+        if (range == null) return;
+        long chunk = Math.max(1, properties.getMergeChunkRows());
+        AtomicBoolean abort = new AtomicBoolean();
+        List<Future<?>> futures = new ArrayList<>();
+        for (long from = range[0]; from <= range[1]; from += chunk) {
+            long lo = from;
+            long hi = Math.min(from + chunk, range[1] + 1);
+            futures.add(mergers.submit(() -> {
+                if (abort.get() || job.isCancelRequested()) return;
+                job.addRowsMerged(store.mergeChunk(table, job.getAppId(), lo, hi));
+            }));
+        }
+        try {
+            for (Future<?> f : futures) {
+                await(f);
+                checkCancelled(job);
+            }
+        } catch (IOException | RuntimeException ex) {
+            abort.set(true);
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (Exception ignored) {
+                    // 只等待其余分块结束，异常以第一个为准
+                }
+            }
+            throw ex;
+        }
+    }
+
+    private static void checkCancelled(ImportJob job) throws InterruptedIOException {
+        if (job.isCancelRequested()) throw new InterruptedIOException("import job cancelled");
+    }
+
+    private static void rethrow(AtomicReference<Exception> failure) throws IOException, SQLException {
+        Exception ex = failure.get();
+        if (ex == null) return;
+        if (ex instanceof IOException io) throw io;
+        if (ex instanceof SQLException sql) throw sql;
+        if (ex instanceof RuntimeException re) throw re;
+        throw new IOException(ex);
+    }
+
+    private static void await(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("import job interrupted");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof RuntimeException re) throw re;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * 删除过期任务的报告与暂存目录中无主的过期文件
+     */
+    void sweep() {
+        try {
+            Instant cutoff = Instant.now().minus(retention);
+            for (ImportJob job : jobs.values()) {
+                Instant finishedAt = job.getFinishedAt();
+                if (finishedAt != null && finishedAt.isBefore(cutoff) && jobs.remove(job.getId(), job)) {
+                    deleteQuietly(job.getRejectsFile());
+                    log.info("导入任务已过期删除: jobId={}, appId={}", job.getId(), job.getAppId());
+                }
+            }
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(spoolDir)) {
+                for (Path f : files) {
+                    String name = f.getFileName().toString();
+                    int dot = name.indexOf('.');
+                    String id = dot > 0 ? name.substring(0, dot) : name;
+                    if (!jobs.containsKey(id) && Files.getLastModifiedTime(f).toInstant().isBefore(cutoff)) {
+                        deleteQuietly(f);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            log.warn("清理导入暂存目录失败: dir={}, error={}", spoolDir, ex.getMessage());
+        }
+    }
+
+    private void release(ImportJob job) {
+        AtomicInteger active = activeByApp.get(job.getAppId());
+        if (active != null) active.decrementAndGet();
+    }
+
+    private void dropQuietly(String table) {
+        try {
+            store.drop(table);
+        } catch (RuntimeException ex) {
+            log.warn("删除导入暂存表失败，需手动清理: table={}, error={}", table, ex.getMessage());
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            log.warn("删除导入文件失败: file={}, error={}", file, ex.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cleaner.shutdownNow();
+        workers.shutdownNow();
+        copiers.shutdownNow();
+        mergers.shutdownNow();
+    }
+
+    /**
+     * 拒绝行报告，第一条拒绝行出现时才创建文件
+     */
+    private static final class RejectWriter implements AutoCloseable {
+        private final Path file;
+        private Writer out;
+
+        RejectWriter(Path file) {
+            this.file = file;
+        }
+
+        void write(ImportRecord record, String reason) throws IOException {
+            if (out == null) out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+            String raw = record.getRaw();
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("line", record.getLine());
+            line.put("reason", reason);
+            line.put("record", raw != null && raw.length() > REJECT_RAW_CHARS ? raw.substring(0, REJECT_RAW_CHARS) : raw);
+            out.write(MAPPER.writeValueAsString(line));
+            out.write('\n');
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (out != null) out.close();
+        }
+    }
+
+    /**
+     * 统计已读取的上传文件字节数作为解析进度
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private final ImportJob job;
+
+        CountingInputStream(InputStream in, ImportJob job) {
+            super(in);
+            this.job = job;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) job.addBytesRead(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) job.addBytesRead(n);
+            return n;
+        }
+    }
+}
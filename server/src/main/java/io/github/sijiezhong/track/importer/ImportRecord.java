@@ -0,0 +1,61 @@
+package io.github.sijiezhong.track.importer;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 导入文件中的一条原始记录
+ *
+ * <p>字段名按 {@link #normalize(String)} 归一化，eventTime、event_time、EventTime 视为同一列。
+ * 取值为字符串，NDJSON 中的 properties 保留为 JSON 节点。记录本身无法解析时 error 非空。
+ */
+public final class ImportRecord {
+
+    private final long line;
+    private final String raw;
+    private final Map<String, Object> values;
+    private final String error;
+
+    ImportRecord(long line, String raw, Map<String, Object> values, String error) {
+        this.line = line;
+        this.raw = raw;
+        this.values = values;
+        this.error = error;
+    }
+
+    static ImportRecord malformed(long line, String raw, String error) {
+        return new ImportRecord(line, raw, Map.of(), error);
+    }
+
+    /**
+     * 记录在文件中的起始行号，从1开始
+     */
+    public long getLine() {
+        return line;
+    }
+
+    /**
+     * 原始文本，用于拒绝行报告
+     */
+    public String getRaw() {
+        return raw;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * 按字段名取值，字段不存在时返回 null
+     */
+    public Object get(String name) {
+        return values.get(normalize(name));
+    }
+
+    /**
+     * 字段名归一化：去掉下划线并转小写
+     */
+    static String normalize(String name) {
+        return name.trim().replace("_", "").toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,17 @@
+package io.github.sijiezhong.track.importer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 顺序读取导入文件中的记录
+ */
+public interface ImportRecordReader extends Closeable {
+
+    /**
+     * 读取下一条记录
+     *
+     * @return 下一条记录，文件结束时返回 null；格式错误的记录以 {@link ImportRecord#getError()} 标记，不中止读取
+     */
+    ImportRecord next() throws IOException;
+}
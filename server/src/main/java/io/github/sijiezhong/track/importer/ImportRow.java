@@ -0,0 +1,184 @@
+package io.github.sijiezhong.track.importer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+
+/**
+ * 校验通过、可写入暂存表的一行事件
+ *
+ * <p>列名与上报接口、导出列一致：eventName、eventTime 必填，其余可选；sessionId 是客户端会话标识
+ * （与上报接口相同），导入时批量映射为会话主键。文件中的 id、appId 等其他列忽略，应用以请求头为准。
+ *
+ * <p>eventTime 支持 ISO 本地时间（按服务器时区）、带时区偏移的 ISO 时间与 epoch 时间戳
+ * （小于 10^11 按秒，否则按毫秒）。properties 不是 JSON 对象时与上报接口一样包装为 {"_raw": 原文}。
+ */
+final class ImportRow {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final long EPOCH_MILLIS_THRESHOLD = 100_000_000_000L;
+
+    final String eventName;
+    final Integer userId;
+    final String sessionKey;
+    final LocalDateTime eventTime;
+    final String properties;
+    final String ua;
+    final String referrer;
+    final String ip;
+    final String device;
+    final String os;
+    final String browser;
+    final String channel;
+    final String anonymousId;
+
+    private ImportRow(ImportRecord r) {
+        this.eventName = text(r, "eventName", 64);
+        if (eventName == null || eventName.isBlank()) {
+            throw new IllegalArgumentException("eventName 不能为空");
+        }
+        String time = text(r, "eventTime", Integer.MAX_VALUE);
+        if (time == null) {
+            throw new IllegalArgumentException("eventTime 不能为空");
+        }
+        this.eventTime = parseTime(time.trim());
+        String user = text(r, "userId", Integer.MAX_VALUE);
+        try {
+            this.userId = user == null ? null : Integer.valueOf(user.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("userId 不是整数: " + user);
+        }
+        this.sessionKey = blankToNull(text(r, "sessionId", 64));
+        this.properties = properties(r.get("properties"));
+        this.ua = text(r, "ua", 512);
+        this.referrer = text(r, "referrer", 1024);
+        this.ip = text(r, "ip", 64);
+        this.device = text(r, "device", 64);
+        this.os = text(r, "os", 128);
+        this.browser = text(r, "browser", 128);
+        this.channel = text(r, "channel", 64);
+        this.anonymousId = text(r, "anonymousId", 128);
+    }
+
+    /**
+     * 校验并转换一条记录
+     *
+     * @throws IllegalArgumentException 记录不合法，消息即拒绝原因
+     */
+    static ImportRow from(ImportRecord record) {
+        if (record.getError() != null) {
+            throw new IllegalArgumentException(record.getError());
+        }
+        return new ImportRow(record);
+    }
+
+    /**
+     * 追加为一行 COPY CSV：NULL 为不加引号的空字段，文本一律加引号，从而区分空串与 NULL
+     *
+     * @param line 行号，作为暂存表中的分块键
+     */
+    void appendCopyCsv(long line, StringBuilder out) {
+        out.append(line).append(',');
+        quote(eventName, out).append(',');
+        if (userId != null) out.append(userId.intValue());
+        out.append(',');
+        quote(sessionKey, out).append(',');
+        out.append(eventTime).append(',');
+        quote(properties, out).append(',');
+        quote(ua, out).append(',');
+        quote(referrer, out).append(',');
+        quote(ip, out).append(',');
+        quote(device, out).append(',');
+        quote(os, out).append(',');
+        quote(browser, out).append(',');
+        quote(channel, out).append(',');
+        quote(anonymousId, out).append('\n');
+    }
+
+    private static StringBuilder quote(String s, StringBuilder out) {
+        if (s == null) return out;
+        out.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"') out.append('"');
+            out.append(c);
+        }
+        return out.append('"');
+    }
+
+    private static String text(ImportRecord r, String name, int maxLength) {
+        Object v = r.get(name);
+        if (v == null) return null;
+        String s = v instanceof JsonNode node ? node.toString() : v.toString();
+        if (s.length() > maxLength) {
+            throw new IllegalArgumentException(name + " 超过长度上限 " + maxLength);
+        }
+        if (s.indexOf('\0') >= 0) {
+            throw new IllegalArgumentException(name + " 包含非法字符 \\u0000");
+        }
+        return s;
+    }
+
+    private static String blankToNull(String s) {
+        return s == null || s.isBlank() ? null : s;
+    }
+
+    static LocalDateTime parseTime(String s) {
+        try {
+            if (!s.isEmpty() && s.chars().allMatch(Character::isDigit)) {
+                long v = Long.parseLong(s);
+                Instant instant = v < EPOCH_MILLIS_THRESHOLD ? Instant.ofEpochSecond(v) : Instant.ofEpochMilli(v);
+                return LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
+            }
+            String iso = s.length() > 10 && s.charAt(10) == ' ' ? s.substring(0, 10) + 'T' + s.substring(11) : s;
+            char last = iso.charAt(iso.length() - 1);
+            if (last == 'Z' || iso.lastIndexOf('+') > 10 || iso.lastIndexOf('-') > 10) {
+                return OffsetDateTime.parse(iso).atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+            }
+            return LocalDateTime.parse(iso);
+        } catch (DateTimeParseException | NumberFormatException | StringIndexOutOfBoundsException ex) {
+            throw new IllegalArgumentException("eventTime 格式无效: " + s);
+        }
+    }
+
+    private static String properties(Object value) {
+        if (value == null) return null;
+        JsonNode node;
+        if (value instanceof JsonNode n) {
+            node = n;
+        } else {
+            String s = value.toString();
+            if (s.isBlank()) return null;
+            try {
+                node = MAPPER.readTree(s);
+            } catch (JsonProcessingException ex) {
+                node = null;
+            }
+            if (node == null || !node.isObject()) {
+                return wrapRaw(s);
+            }
+        }
+        if (node.isNull()) return null;
+        if (!node.isObject()) return wrapRaw(node.toString());
+        String json = node.toString();
+        // jsonb 不接受 \u0000
+        if (json.contains("\\u0000")) {
+            throw new IllegalArgumentException("properties 包含非法字符 \\u0000");
+        }
+        return json;
+    }
+
+    private static String wrapRaw(String s) {
+        ObjectNode raw = JsonNodeFactory.instance.objectNode();
+        raw.put("_raw", s.replace("\0", ""));
+        return raw.toString();
+    }
+}
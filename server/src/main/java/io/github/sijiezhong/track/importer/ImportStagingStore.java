@@ -0,0 +1,142 @@
+package io.github.sijiezhong.track.importer;
+
+import org.postgresql.PGConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * 导入暂存表与合并语句
+ *
+ * <p>每个导入任务一张无日志（UNLOGGED）暂存表，写入不产生 WAL，崩溃后内容丢失，任务结束即删除。
+ * COPY 每批一个事务，合并每个分块一个事务，均路由到主库。
+ * 合并事务先进入本应用的 {@link ImportBarrier}，按 id 水位的消费者在合并进行期间不越过该应用的导入行。
+ */
+@Component
+public class ImportStagingStore {
+
+    static final String COPY_COLUMNS = "line_no, event_name, user_id, session_key, event_time, properties, "
+            + "ua, referrer, ip, device, os, browser, channel, anonymous_id";
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate tx;
+
+    public ImportStagingStore(DataSource dataSource, JdbcTemplate jdbcTemplate,
+                              PlatformTransactionManager transactionManager) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+        this.tx = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * 暂存表名，任务ID只含十六进制字符，可直接拼入语句
+     */
+    static String tableName(String jobId) {
+        return "import_stage_" + jobId;
+    }
+
+    /**
+     * 创建暂存表；不建索引、关闭自动清理，写入阶段只有追加
+     */
+    public void create(String table) {
+        jdbcTemplate.execute("create unlogged table " + table + " ("
+                + "line_no bigint not null, event_name text not null, user_id integer, session_key text, "
+                + "event_time timestamp not null, properties jsonb, ua text, referrer text, ip text, "
+                + "device text, os text, browser text, channel text, anonymous_id text"
+                + ") with (autovacuum_enabled = false)");
+    }
+
+    /**
+     * 以 COPY 写入一批行
+     *
+     * @param csv {@link ImportRow#appendCopyCsv} 生成的 UTF-8 CSV
+     * @return 写入行数
+     */
+    public long copy(String table, byte[] csv) throws SQLException, IOException {
+        try (Connection c = dataSource.getConnection()) {
+            return c.unwrap(PGConnection.class).getCopyAPI()
+                    .copyIn("copy " + table + " (" + COPY_COLUMNS + ") from stdin with (format csv)",
+                            new ByteArrayInputStream(csv));
+        }
+    }
+
+    /**
+     * 写入完成后建立行号 BRIN 索引并收集统计信息
+     *
+     * <p>每批 COPY 覆盖一段连续行号，物理顺序与行号高度相关，BRIN 足以让按行号分块的合并只读所需的块。
+     */
+    public void prepareMerge(String table) {
+        jdbcTemplate.execute("create index on " + table + " using brin (line_no)");
+        jdbcTemplate.execute("analyze " + table);
+    }
+
+    /**
+     * 行号范围，暂存表为空时返回 null
+     */
+    public long[] lineRange(String table) {
+        return jdbcTemplate.queryForObject("select min(line_no), max(line_no) from " + table, (rs, i) -> {
+            long min = rs.getLong(1);
+            return rs.wasNull() ? null : new long[]{min, rs.getLong(2)};
+        });
+    }
+
+    /**
+     * 批量建立或更新会话
+     *
+     * <p>每个会话标识一行：开始、结束时间取该会话事件时间的最小、最大值，并与已有会话合并；
+     * 已有会话仍为匿名时回填最早出现的 userId，与上报接口的匿名转实名一致。
+     * 已属于其他应用的会话标识不修改，对应事件的会话置空。
+     *
+     * @return {新建会话数, 更新会话数}
+     */
+    public long[] upsertSessions(String table, Integer appId) {
+        String sql = "with up as ("
+                + "insert into session (session_id, user_id, app_id, start_time, end_time, create_time, update_time) "
+                + "select s.session_key, (array_agg(s.user_id order by s.event_time) filter (where s.user_id is not null))[1], "
+                + "?, min(s.event_time), max(s.event_time), now(), now() "
+                + "from " + table + " s where s.session_key is not null group by s.session_key "
+                + "on conflict (session_id) do update set "
+                + "start_time = least(session.start_time, excluded.start_time), "
+                + "end_time = greatest(session.end_time, excluded.end_time), "
+                + "user_id = coalesce(session.user_id, excluded.user_id), "
+                + "update_time = excluded.update_time "
+                + "where session.app_id = excluded.app_id "
+                + "returning (xmax = 0) as inserted) "
+                + "select count(*) filter (where inserted), count(*) filter (where not inserted) from up";
+        return jdbcTemplate.queryForObject(sql, (rs, i) -> new long[]{rs.getLong(1), rs.getLong(2)}, appId);
+    }
+
+    /**
+     * 合并一个行号分块到 event 表，分块内按事件时间排序写入，保持事件时间与物理顺序的相关性
+     *
+     * <p>分块事务在分配 id 之前取得本应用的 {@link ImportBarrier} 共享锁并持有到提交：分块耗时不受沉淀窗口约束，
+     * 预聚合等消费者在此期间暂缓该应用，不会越过尚未提交的导入行。
+     *
+     * @return 写入行数
+     */
+    public int mergeChunk(String table, Integer appId, long fromLine, long toLineExclusive) {
+        String sql = "insert into event (event_name, user_id, session_id, properties, app_id, event_time, "
+                + "create_time, update_time, ua, referrer, ip, device, os, browser, channel, anonymous_id) "
+                + "select s.event_name, s.user_id, ss.id, s.properties, ?, s.event_time, now(), now(), "
+                + "s.ua, s.referrer, s.ip, s.device, s.os, s.browser, s.channel, s.anonymous_id "
+                + "from " + table + " s left join session ss on ss.session_id = s.session_key and ss.app_id = ? "
+                + "where s.line_no >= ? and s.line_no < ? order by s.event_time";
+        Integer rows = tx.execute(status -> {
+            jdbcTemplate.queryForObject(ImportBarrier.ENTER_SQL, Object.class, appId);
+            return jdbcTemplate.update(sql, appId, appId, fromLine, toLineExclusive);
+        });
+        return rows == null ? 0 : rows;
+    }
+
+    public void drop(String table) {
+        jdbcTemplate.execute("drop table if exists " + table);
+    }
+}
@@ -0,0 +1,63 @@
+package io.github.sijiezhong.track.importer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * NDJSON 读取：每行一个 JSON 对象，空行跳过
+ *
+ * <p>标量字段转为文本，properties 保留为 JSON 节点，由 {@link ImportRow} 统一校验。
+ */
+final class NdjsonRecordReader implements ImportRecordReader {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String PROPERTIES = ImportRecord.normalize("properties");
+
+    private final BufferedReader in;
+    private long line;
+
+    NdjsonRecordReader(BufferedReader in) {
+        this.in = in;
+    }
+
+    @Override
+    public ImportRecord next() throws IOException {
+        String text;
+        do {
+            text = in.readLine();
+            if (text == null) return null;
+            line++;
+        } while (text.isBlank());
+        JsonNode node;
+        try {
+            node = MAPPER.readTree(text);
+        } catch (JsonProcessingException ex) {
+            return ImportRecord.malformed(line, text, "JSON 格式错误: " + ex.getOriginalMessage());
+        }
+        if (node == null || !node.isObject()) {
+            return ImportRecord.malformed(line, text, "每行必须是 JSON 对象");
+        }
+        Map<String, Object> values = new HashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> it = node.fields();
+        while (it.hasNext()) {
+            Map.Entry<String, JsonNode> e = it.next();
+            String key = ImportRecord.normalize(e.getKey());
+            JsonNode v = e.getValue();
+            if (v == null || v.isNull()) continue;
+            values.put(key, key.equals(PROPERTIES) || v.isContainerNode() ? v : v.asText());
+        }
+        return new ImportRecord(line, text, values, null);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
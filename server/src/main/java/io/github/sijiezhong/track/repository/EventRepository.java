@@ -12,7 +12,7 @@ import java.util.List;
 /**
  * 事件仓库
  */
-public interface EventRepository extends JpaRepository<Event, Long>, JpaSpecificationExecutor<Event> {
+public interface EventRepository extends JpaRepository<Event, Long>, JpaSpecificationExecutor<Event>, EventRepositoryCustom {
     @Query(value = "select date_trunc('day', event_time) as d, count(*) as c " +
             "from event e where e.app_id = :appId and e.event_name = :eventName " +
             "and e.event_time between coalesce(:startTime, '-infinity'::timestamp) and coalesce(:endTime, 'infinity'::timestamp) " +
@@ -0,0 +1,58 @@
+package io.github.sijiezhong.track.repository;
+
+import io.github.sijiezhong.track.domain.Event;
+import io.github.sijiezhong.track.dto.EventListItem;
+import jakarta.persistence.Tuple;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 事件仓库扩展：投影查询、不带 count 的分页与基于执行计划的总数估计
+ *
+ * <p>投影查询只 SELECT 需要的列，不加载 ua/referrer 等大字段，也不进入持久化上下文。
+ */
+public interface EventRepositoryCustom {
+
+    /**
+     * 按条件分页查询列表项但不统计总数，多取一行判断是否有下一页
+     */
+    Slice<EventListItem> findListItems(Specification<Event> spec, Pageable pageable);
+
+    /**
+     * 按条件分页查询列表项并统计总数
+     */
+    Page<EventListItem> findListItemPage(Specification<Event> spec, Pageable pageable);
+
+    /**
+     * 按条件查询指定属性列
+     *
+     * @param attributes 实体属性名，Tuple 中按同名别名取值
+     * @param limit 最多返回行数，小于等于0表示不限制
+     */
+    List<Tuple> findColumns(Specification<Event> spec, List<String> attributes, Sort sort, int limit);
+
+    /**
+     * 用执行计划估计满足条件的事件数，不扫描数据
+     *
+     * @return 规划器估计的行数
+     */
+    long estimateCount(Integer appId, String eventName, Long sessionId,
+                       LocalDateTime startTime, LocalDateTime endTime, PropertyFilter properties);
+
+    /**
+     * 按分组键统计事件数，按数量倒序
+     *
+     * @param column 内置列名（browser/device/os/referrer），与 propertyPath 二选一
+     * @param propertyPath 按属性分组时的属性路径
+     * @param properties 属性过滤条件
+     * @return [分组键, 数量]，分组键为空时记为 unknown
+     */
+    List<Object[]> segmentCount(Integer appId, String eventName, String column, String[] propertyPath,
+                                PropertyFilter properties);
+}
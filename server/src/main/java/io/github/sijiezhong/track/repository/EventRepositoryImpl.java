@@ -0,0 +1,195 @@
+package io.github.sijiezhong.track.repository;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.sijiezhong.track.domain.Event;
+import io.github.sijiezhong.track.dto.EventListItem;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@link EventRepositoryCustom} 实现
+ *
+ * <p>均为只读查询，启用副本路由时走只读副本。
+ */
+@Transactional(readOnly = true)
+public class EventRepositoryImpl implements EventRepositoryCustom {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Set<String> SEGMENT_COLUMNS = Set.of("browser", "device", "os", "referrer");
+
+    private final EntityManager entityManager;
+    private final JdbcTemplate jdbcTemplate;
+
+    public EventRepositoryImpl(EntityManager entityManager, JdbcTemplate jdbcTemplate) {
+        this.entityManager = entityManager;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public Slice<EventListItem> findListItems(Specification<Event> spec, Pageable pageable) {
+        List<EventListItem> rows = queryListItems(spec, pageable, true);
+        boolean hasNext = pageable.isPaged() && rows.size() > pageable.getPageSize();
+        if (hasNext) {
+            rows = rows.subList(0, pageable.getPageSize());
+        }
+        return new SliceImpl<>(rows, pageable, hasNext);
+    }
+
+    @Override
+    public Page<EventListItem> findListItemPage(Specification<Event> spec, Pageable pageable) {
+        List<EventListItem> rows = queryListItems(spec, pageable, false);
+        return PageableExecutionUtils.getPage(rows, pageable, () -> count(spec));
+    }
+
+    @Override
+    public List<Tuple> findColumns(Specification<Event> spec, List<String> attributes, Sort sort, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Event> root = query.from(Event.class);
+        applySpec(spec, root, query, cb);
+        List<Selection<?>> selections = new ArrayList<>();
+        for (String attribute : attributes.isEmpty() ? List.of("id") : attributes) {
+            selections.add(root.get(attribute).alias(attribute));
+        }
+        query.multiselect(selections);
+        if (sort != null && sort.isSorted()) {
+            query.orderBy(QueryUtils.toOrders(sort, root, cb));
+        }
+        TypedQuery<Tuple> typed = entityManager.createQuery(query);
+        if (limit > 0) {
+            typed.setMaxResults(limit);
+        }
+        return typed.getResultList();
+    }
+
+    @Override
+    public long estimateCount(Integer appId, String eventName, Long sessionId,
+                              LocalDateTime startTime, LocalDateTime endTime, PropertyFilter properties) {
+        StringBuilder sql = new StringBuilder("EXPLAIN (FORMAT JSON) select 1 from event e where e.app_id = ?");
+        List<Object> args = new ArrayList<>();
+        args.add(appId);
+        if (eventName != null && !eventName.isBlank()) {
+            sql.append(" and e.event_name = ?");
+            args.add(eventName);
+        }
+        if (sessionId != null) {
+            sql.append(" and e.session_id = ?");
+            args.add(sessionId);
+        }
+        if (startTime != null) {
+            sql.append(" and e.event_time >= ?");
+            args.add(startTime);
+        }
+        if (endTime != null) {
+            sql.append(" and e.event_time <= ?");
+            args.add(endTime);
+        }
+        if (properties != null) {
+            properties.appendSql("e", sql, args);
+        }
+        String plan = jdbcTemplate.queryForObject(sql.toString(), String.class, args.toArray());
+        try {
+            JsonNode root = MAPPER.readTree(plan);
+            return Math.max(0L, root.path(0).path("Plan").path("Plan Rows").asLong());
+        } catch (Exception e) {
+            return 0L;
+        }
+    }
+
+    @Override
+    public List<Object[]> segmentCount(Integer appId, String eventName, String column, String[] propertyPath,
+                                       PropertyFilter properties) {
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("select coalesce(");
+        if (propertyPath != null) {
+            sql.append("e.properties #>> ?::text[]");
+            args.add("{" + String.join(",", quotePath(propertyPath)) + "}");
+        } else if (SEGMENT_COLUMNS.contains(column)) {
+            sql.append("e.").append(column);
+        } else {
+            throw new IllegalArgumentException("unsupported segment column: " + column);
+        }
+        sql.append(", 'unknown') as key, count(*) as c from event e where e.app_id = ? and e.event_name = ?");
+        args.add(appId);
+        args.add(eventName);
+        if (properties != null) {
+            properties.appendSql("e", sql, args);
+        }
+        // 按位置分组：分组键带参数时，select 与 group by 中的参数占位符被视为不同表达式
+        sql.append(" group by 1 order by c desc");
+        return jdbcTemplate.query(sql.toString(),
+                (rs, i) -> new Object[]{rs.getString(1), rs.getLong(2)}, args.toArray());
+    }
+
+    /**
+     * 转为 text[] 字面量元素，属性名中的引号与反斜杠需要转义
+     */
+    private static List<String> quotePath(String[] path) {
+        List<String> out = new ArrayList<>(path.length);
+        for (String p : path) {
+            out.add('"' + p.replace("\\", "\\\\").replace("\"", "\\\"") + '"');
+        }
+        return out;
+    }
+
+    /**
+     * 构造 {@link EventListItem} 投影，extraRow 为 true 时多取一行用于判断 hasNext
+     */
+    private List<EventListItem> queryListItems(Specification<Event> spec, Pageable pageable, boolean extraRow) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<EventListItem> query = cb.createQuery(EventListItem.class);
+        Root<Event> root = query.from(Event.class);
+        applySpec(spec, root, query, cb);
+        query.select(cb.construct(EventListItem.class,
+                root.get("id"), root.get("eventName"), root.get("userId"), root.get("sessionId"),
+                root.get("appId"), root.get("eventTime"), root.get("properties")));
+        if (pageable.getSort().isSorted()) {
+            query.orderBy(QueryUtils.toOrders(pageable.getSort(), root, cb));
+        }
+        TypedQuery<EventListItem> typed = entityManager.createQuery(query);
+        if (pageable.isPaged()) {
+            typed.setFirstResult((int) pageable.getOffset());
+            typed.setMaxResults(pageable.getPageSize() + (extraRow ? 1 : 0));
+        }
+        return typed.getResultList();
+    }
+
+    private long count(Specification<Event> spec) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<Event> root = query.from(Event.class);
+        applySpec(spec, root, query, cb);
+        query.select(cb.count(root));
+        return entityManager.createQuery(query).getSingleResult();
+    }
+
+    private static void applySpec(Specification<Event> spec, Root<Event> root, CriteriaQuery<?> query, CriteriaBuilder cb) {
+        if (spec == null) return;
+        Predicate predicate = spec.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package io.github.sijiezhong.track.repository;
+
+import org.hibernate.boot.model.FunctionContributions;
+import org.hibernate.boot.model.FunctionContributor;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * 向 Hibernate 注册 jsonb 包含操作符
+ *
+ * <p>直接调用 PostgreSQL 的 jsonb_contains() 函数不会使用 GIN 索引，必须渲染为 {@code @>} 操作符。
+ * 通过 META-INF/services 注册。
+ */
+public class JsonbFunctionContributor implements FunctionContributor {
+
+    @Override
+    public void contributeFunctions(FunctionContributions functionContributions) {
+        functionContributions.getFunctionRegistry().registerPattern(
+                PropertyFilter.CONTAINS_FUNCTION,
+                "(?1 @> cast(?2 as jsonb))",
+                functionContributions.getTypeConfiguration().getBasicTypeRegistry()
+                        .resolve(StandardBasicTypes.BOOLEAN));
+    }
+}
@@ -0,0 +1,166 @@
+package io.github.sijiezhong.track.repository;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.github.sijiezhong.track.domain.Event;
+import io.github.sijiezhong.track.exception.BusinessException;
+import io.github.sijiezhong.track.exception.ErrorCode;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 事件属性等值过滤，写法与实时推送的 prop 参数一致：{@code key:value}，key 可用点号访问嵌套字段
+ *
+ * <p>每个条件翻译为 jsonb 包含判断 {@code properties @> '{"key":"value"}'}，可以命中
+ * properties 上的 GIN (jsonb_path_ops) 索引。取值按文本比较：形如数字或布尔的取值同时匹配
+ * 字符串和对应的 JSON 数字/布尔，与 {@code JsonNode.asText()} 的比较结果一致。
+ */
+public final class PropertyFilter {
+
+    /** 没有任何条件 */
+    public static final PropertyFilter NONE = new PropertyFilter(List.of());
+
+    /** HQL 中注册的 jsonb 包含函数名，见 {@link JsonbFunctionContributor} */
+    static final String CONTAINS_FUNCTION = "jsonb_contains_doc";
+
+    private final List<Condition> conditions;
+
+    private PropertyFilter(List<Condition> conditions) {
+        this.conditions = conditions;
+    }
+
+    /**
+     * 解析 prop 参数
+     *
+     * @param raws 属性条件列表，格式 key:value，可为空
+     * @return 过滤条件
+     */
+    public static PropertyFilter parse(Collection<String> raws) {
+        if (raws == null || raws.isEmpty()) return NONE;
+        Map<String, Condition> byKey = new LinkedHashMap<>();
+        for (String raw : raws) {
+            if (raw == null || raw.isBlank()) continue;
+            int idx = raw.indexOf(':');
+            if (idx <= 0) {
+                throw new BusinessException(ErrorCode.BAD_REQUEST, "属性条件格式应为 key:value: " + raw);
+            }
+            String key = raw.substring(0, idx).trim();
+            String value = raw.substring(idx + 1).trim();
+            String[] path = parsePath(key);
+            byKey.putIfAbsent(key + "\u0000" + value, new Condition(path, value));
+        }
+        return byKey.isEmpty() ? NONE : new PropertyFilter(List.copyOf(byKey.values()));
+    }
+
+    /**
+     * 解析以点号分隔的属性路径，用于过滤与按属性分组
+     */
+    public static String[] parsePath(String key) {
+        String[] path = key == null ? new String[0] : key.split("\\.", -1);
+        if (path.length == 0) {
+            throw new BusinessException(ErrorCode.BAD_REQUEST, "属性名不能为空");
+        }
+        for (String segment : path) {
+            if (segment.isBlank()) {
+                throw new BusinessException(ErrorCode.BAD_REQUEST, "无效的属性名: " + key);
+            }
+        }
+        return path;
+    }
+
+    public boolean isEmpty() {
+        return conditions.isEmpty();
+    }
+
+    /**
+     * 转为 JPA 查询条件
+     */
+    public Specification<Event> toSpecification() {
+        if (isEmpty()) return null;
+        return (root, query, cb) -> {
+            List<Predicate> all = new ArrayList<>(conditions.size());
+            for (Condition c : conditions) {
+                List<Predicate> any = new ArrayList<>(2);
+                for (String doc : c.documents()) {
+                    any.add(cb.isTrue(cb.function(CONTAINS_FUNCTION, Boolean.class,
+                            root.get("properties"), cb.literal(doc))));
+                }
+                all.add(any.size() == 1 ? any.get(0) : cb.or(any.toArray(new Predicate[0])));
+            }
+            return cb.and(all.toArray(new Predicate[0]));
+        };
+    }
+
+    /**
+     * 追加到原生 SQL 的 where 子句
+     *
+     * @param alias event 表别名
+     */
+    public void appendSql(String alias, StringBuilder sql, List<Object> args) {
+        for (Condition c : conditions) {
+            List<String> docs = c.documents();
+            sql.append(" and (");
+            for (int i = 0; i < docs.size(); i++) {
+                if (i > 0) sql.append(" or ");
+                sql.append(alias).append(".properties @> ?::jsonb");
+                args.add(docs.get(i));
+            }
+            sql.append(')');
+        }
+    }
+
+    private static final class Condition {
+        private final String[] path;
+        private final String value;
+
+        Condition(String[] path, String value) {
+            this.path = path;
+            this.value = value;
+        }
+
+        /**
+         * 满足任一包含文档即匹配
+         */
+        List<String> documents() {
+            List<String> docs = new ArrayList<>(2);
+            docs.add(document(JsonNodeFactory.instance.textNode(value)));
+            if ("true".equals(value) || "false".equals(value)) {
+                docs.add(document(JsonNodeFactory.instance.booleanNode(Boolean.parseBoolean(value))));
+            } else if (isCanonicalNumber(value)) {
+                docs.add(document(JsonNodeFactory.instance.numberNode(new BigDecimal(value))));
+            }
+            return Collections.unmodifiableList(docs);
+        }
+
+        private String document(JsonNode leaf) {
+            ObjectNode root = JsonNodeFactory.instance.objectNode();
+            ObjectNode node = root;
+            for (int i = 0; i < path.length - 1; i++) {
+                node = node.putObject(path[i]);
+            }
+            node.set(path[path.length - 1], leaf);
+            return root.toString();
+        }
+
+        /**
+         * 只有文本形式与 JSON 数字一致的取值才按数字匹配，避免 "01" 匹配到 1
+         */
+        private static boolean isCanonicalNumber(String v) {
+            if (v.isEmpty()) return false;
+            try {
+                return new BigDecimal(v).toString().equals(v);
+            } catch (NumberFormatException ex) {
+                return false;
+            }
+        }
+    }
+}
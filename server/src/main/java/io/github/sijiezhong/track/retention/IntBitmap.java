@@ -0,0 +1,238 @@
+package io.github.sijiezhong.track.retention;
+
+import java.util.Arrays;
+
+/**
+ * Roaring 风格的压缩整数集合
+ *
+ * <p>32位整数按高16位分桶，每个桶一个容器：元素不超过4096个时用有序 char 数组（每个元素2字节），
+ * 超过后转为 65536 位的位图（固定8KB）。稀疏与稠密的用户ID都能紧凑存放，
+ * 求交集基数按容器类型选择归并、查找或按字 AND 后数位。
+ *
+ * <p>整数按无符号处理。按升序添加时每次只追加到最后一个容器的末尾。非线程安全。
+ */
+public final class IntBitmap {
+
+    // 数组容器的元素上限，超过后 char 数组比位图更大
+    static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1 << 10;
+
+    private char[] keys = new char[4];
+    private Container[] containers = new Container[4];
+    private int size;
+
+    /**
+     * 添加元素，已存在时不变
+     */
+    public void add(int value) {
+        char key = (char) (value >>> 16);
+        char low = (char) value;
+        int i;
+        if (size > 0 && keys[size - 1] == key) {
+            i = size - 1;
+        } else {
+            i = indexOf(key);
+            if (i < 0) {
+                i = -i - 1;
+                insertContainer(i, key, new ArrayContainer());
+            }
+        }
+        containers[i] = containers[i].add(low);
+    }
+
+    public boolean contains(int value) {
+        int i = indexOf((char) (value >>> 16));
+        return i >= 0 && containers[i].contains((char) value);
+    }
+
+    /**
+     * 元素个数
+     */
+    public long cardinality() {
+        long n = 0;
+        for (int i = 0; i < size; i++) n += containers[i].cardinality();
+        return n;
+    }
+
+    /**
+     * 与另一个集合交集的元素个数，不生成交集
+     */
+    public long andCardinality(IntBitmap other) {
+        long n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            char a = keys[i];
+            char b = other.keys[j];
+            if (a < b) {
+                i++;
+            } else if (a > b) {
+                j++;
+            } else {
+                n += containers[i].andCardinality(other.containers[j]);
+                i++;
+                j++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * 容器占用的近似字节数，用于观察压缩效果
+     */
+    public long sizeInBytes() {
+        long bytes = size * 2L;
+        for (int i = 0; i < size; i++) bytes += containers[i].sizeInBytes();
+        return bytes;
+    }
+
+    private int indexOf(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insertContainer(int i, char key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(containers, i, containers, i + 1, size - i);
+        keys[i] = key;
+        containers[i] = container;
+        size++;
+    }
+
+    private abstract static sealed class Container permits ArrayContainer, BitmapContainer {
+        /** 添加元素，容器需要转换类型时返回新容器 */
+        abstract Container add(char low);
+
+        abstract boolean contains(char low);
+
+        abstract int cardinality();
+
+        abstract int andCardinality(Container other);
+
+        abstract long sizeInBytes();
+    }
+
+    private static final class ArrayContainer extends Container {
+        private char[] values = new char[4];
+        private int size;
+
+        @Override
+        Container add(char low) {
+            int i;
+            if (size == 0 || values[size - 1] < low) {
+                i = size;
+            } else {
+                i = Arrays.binarySearch(values, 0, size, low);
+                if (i >= 0) return this;
+                i = -i - 1;
+            }
+            if (size == ARRAY_MAX) {
+                return toBitmap().add(low);
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, size * 2));
+            }
+            System.arraycopy(values, i, values, i + 1, size - i);
+            values[i] = low;
+            size++;
+            return this;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return Arrays.binarySearch(values, 0, size, low) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return size;
+        }
+
+        @Override
+        int andCardinality(Container other) {
+            if (other instanceof BitmapContainer bitmap) {
+                int n = 0;
+                for (int i = 0; i < size; i++) {
+                    if (bitmap.contains(values[i])) n++;
+                }
+                return n;
+            }
+            ArrayContainer array = (ArrayContainer) other;
+            int n = 0;
+            int i = 0;
+            int j = 0;
+            while (i < size && j < array.size) {
+                char a = values[i];
+                char b = array.values[j];
+                if (a < b) {
+                    i++;
+                } else if (a > b) {
+                    j++;
+                } else {
+                    n++;
+                    i++;
+                    j++;
+                }
+            }
+            return n;
+        }
+
+        @Override
+        long sizeInBytes() {
+            return values.length * 2L;
+        }
+
+        private BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < size; i++) bitmap.add(values[i]);
+            return bitmap;
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        private final long[] words = new long[BITMAP_WORDS];
+        private int cardinality;
+
+        @Override
+        Container add(char low) {
+            int w = low >>> 6;
+            long bit = 1L << low;
+            if ((words[w] & bit) == 0) {
+                words[w] |= bit;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        int andCardinality(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.andCardinality(this);
+            }
+            long[] theirs = ((BitmapContainer) other).words;
+            int n = 0;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                n += Long.bitCount(words[w] & theirs[w]);
+            }
+            return n;
+        }
+
+        @Override
+        long sizeInBytes() {
+            return BITMAP_WORDS * 8L;
+        }
+    }
+}
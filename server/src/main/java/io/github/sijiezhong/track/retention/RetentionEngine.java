@@ -0,0 +1,104 @@
+package io.github.sijiezhong.track.retention;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 基于位图的留存计算
+ *
+ * <p>一次扫描取出 cohort 事件与回访事件按 (日期, 用户) 去重后的结果，在内存中为每天建立活跃用户位图，
+ * 再对每个 cohort 日与其后第 1..N 天的回访位图求交集基数，一次请求得到完整的 cohort × 天数矩阵。
+ * 代价是一次范围扫描加上 cohort 日数 × N 次位图求交，与天数 N 基本无关。
+ *
+ * <p>位图按请求临时建立，不持久化，结果始终反映当前数据。口径与按天偏移的自关联查询一致：
+ * cohort 为当天发生 cohort 事件的去重用户（事件时间在起止范围内），回访为第 k 天发生回访事件的用户，
+ * 回访事件不受结束时间限制；只有匿名事件的日期也会出现，cohort 为0。
+ */
+@Component
+public class RetentionEngine {
+
+    // 每次从游标拉取的行数
+    private static final int FETCH_SIZE = 10_000;
+
+    private static final String SQL = "select date_trunc('day', e.event_time) as d, e.user_id, " +
+            "bool_or(e.event_name = ? and e.event_time between coalesce(cast(? as timestamp), '-infinity'::timestamp) " +
+            "and coalesce(cast(? as timestamp), 'infinity'::timestamp)) as c, " +
+            "bool_or(e.event_name = ?) as r " +
+            "from event e where e.app_id = ? and e.event_name in (?, ?) " +
+            "and e.event_time >= coalesce(date_trunc('day', cast(? as timestamp)), '-infinity'::timestamp) " +
+            "and e.event_time < coalesce(date_trunc('day', cast(? as timestamp)), 'infinity'::timestamp) + ? * interval '1 day' " +
+            "group by 1, 2 order by 1, 2";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTx;
+
+    public RetentionEngine(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+    }
+
+    /**
+     * 计算留存矩阵
+     *
+     * @param days 回访天数 N，计算第 1..N 天
+     */
+    public RetentionMatrix compute(Integer appId, String cohortEvent, String returnEvent, int days,
+                                   LocalDateTime startTime, LocalDateTime endTime) {
+        TreeMap<LocalDate, IntBitmap> cohorts = new TreeMap<>();
+        Map<LocalDate, IntBitmap> returns = new TreeMap<>();
+        PreparedStatementCreator psc = con -> {
+            PreparedStatement ps = con.prepareStatement(SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(FETCH_SIZE);
+            ps.setString(1, cohortEvent);
+            ps.setObject(2, startTime);
+            ps.setObject(3, endTime);
+            ps.setString(4, returnEvent);
+            ps.setObject(5, appId);
+            ps.setString(6, cohortEvent);
+            ps.setString(7, returnEvent);
+            ps.setObject(8, startTime);
+            ps.setObject(9, endTime);
+            ps.setInt(10, days + 1);
+            return ps;
+        };
+        readOnlyTx.executeWithoutResult(status -> jdbcTemplate.query(psc, rs -> {
+            LocalDate day = rs.getObject(1, LocalDateTime.class).toLocalDate();
+            int userId = rs.getInt(2);
+            boolean anonymous = rs.wasNull();
+            if (rs.getBoolean(3)) {
+                IntBitmap cohort = cohorts.computeIfAbsent(day, d -> new IntBitmap());
+                if (!anonymous) cohort.add(userId);
+            }
+            if (rs.getBoolean(4) && !anonymous) {
+                returns.computeIfAbsent(day, d -> new IntBitmap()).add(userId);
+            }
+        }));
+
+        int n = cohorts.size();
+        long[] sizes = new long[n];
+        long[][] retained = new long[n][days];
+        int i = 0;
+        for (Map.Entry<LocalDate, IntBitmap> entry : cohorts.entrySet()) {
+            IntBitmap cohort = entry.getValue();
+            sizes[i] = cohort.cardinality();
+            for (int k = 1; k <= days; k++) {
+                IntBitmap back = returns.get(entry.getKey().plusDays(k));
+                retained[i][k - 1] = back == null ? 0 : cohort.andCardinality(back);
+            }
+            i++;
+        }
+        return new RetentionMatrix(new ArrayList<>(cohorts.keySet()), sizes, retained);
+    }
+}
@@ -0,0 +1,18 @@
+package io.github.sijiezhong.track.retention;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * 留存矩阵：每个 cohort 日一行，第 k 列为第 k+1 天回访的 cohort 用户数
+ *
+ * @param cohortDates cohort 日期，升序
+ * @param cohortSizes 每个 cohort 的用户数
+ * @param retained retained[i][k] 为 cohortDates[i] 的用户中在第 k+1 天回访的人数
+ */
+public record RetentionMatrix(List<LocalDate> cohortDates, long[] cohortSizes, long[][] retained) {
+
+    public int days() {
+        return retained.length == 0 ? 0 : retained[0].length;
+    }
+}
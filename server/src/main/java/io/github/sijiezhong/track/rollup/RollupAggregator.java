@@ -0,0 +1,239 @@
+package io.github.sijiezhong.track.rollup;
+
+import io.github.sijiezhong.track.config.RollupProperties;
+import io.github.sijiezhong.track.importer.ImportBarrier;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 后台聚合器：按 event.id 水位把新事件累加到 event_rollup_hourly
+ *
+ * <p>每个批次在一个事务中完成：取事务级咨询锁（多实例部署时只有一个实例在聚合，其余本轮跳过），
+ * 读水位，确定批次上界，按 (app_id, event_name, 维度, 小时) 分组后 upsert 累加，最后推进水位。
+ * 预聚合与水位同时提交，进程在任意时刻退出都不会重复或遗漏计数。
+ *
+ * <p>与增量变更接口相同，创建时间在沉淀窗口（rollup.settle-ms）内的事件留给下一轮，
+ * 超过窗口才提交的事件不会计入预聚合表。批量导入的合并事务可能远长于沉淀窗口，
+ * 因此确定批次上界后还要检查 {@link ImportBarrier}：有合并在途的应用被挂起，在 event_rollup_lag 中记下落后水位，
+ * 其余应用与全局水位照常推进。挂起应用的合并结束后，按 (app_id, id) 索引分批追赶到全局水位并删除落后水位；
+ * 查询按应用的有效水位（见 {@link #appWatermark}）由原始事件尾部补齐，停滞只影响正在导入的应用。
+ * 预聚合表假设事件只追加不删除，删除或清空 event 后需同时清空 event_rollup_hourly 与 event_rollup_state。
+ *
+ * <p>同一事务中还维护 event_history_version：批次内有事件时间早于当天的事件时推进该应用的历史版本，
+ * 分析结果缓存据此判断已缓存的历史结果是否仍然有效。
+ */
+@Component
+public class RollupAggregator {
+
+    private static final Logger log = LoggerFactory.getLogger(RollupAggregator.class);
+
+    /** event_rollup_state 中本聚合器的水位名 */
+    static final String STATE_NAME = "event_rollup_hourly";
+    // 聚合器的咨询锁键，取 "rollup" 的 ASCII
+    private static final long LOCK_KEY = 0x726F6C6C7570L;
+
+    /** 读取指定名称的水位，未聚合过时为0 */
+    public static final String WATERMARK_SQL =
+            "select coalesce((select s.last_event_id from event_rollup_state s where s.name = ?), 0)";
+
+    /** 水位之后最多 batch 行；遇到第一条仍在沉淀窗口内的行即截断，返回批次上界与行数 */
+    public static final String UPPER_BOUND_SQL =
+            "with cand as (select e.id, e.create_time from event e where e.id > ? order by e.id limit ?) " +
+            "select max(c.id), count(*) from cand c " +
+            "where c.id < coalesce((select min(s.id) from cand s where s.create_time > ?), 9223372036854775807)";
+
+    private static final String ROLLUP_SQL =
+            "insert into event_rollup_hourly (app_id, event_name, dim, dim_value, bucket, cnt) " +
+            "select e.app_id, e.event_name, d.dim, d.val, date_trunc('hour', e.event_time), count(*) " +
+            "from event e cross join lateral (values " +
+            "  ('all', ''), " +
+            "  ('browser', coalesce(e.browser, 'unknown')), " +
+            "  ('device', coalesce(e.device, 'unknown')), " +
+            "  ('os', coalesce(e.os, 'unknown')), " +
+            "  ('referrer', coalesce(e.referrer, 'unknown'))) d(dim, val) " +
+            "where %s " +
+            "group by 1, 2, 3, 4, 5 " +
+            "on conflict (app_id, event_name, dim, bucket, md5(dim_value)) " +
+            "do update set cnt = event_rollup_hourly.cnt + excluded.cnt";
+
+    // 批次中事件时间早于当天的应用，历史版本更新为批次内的最大 id
+    private static final String HISTORY_SQL =
+            "insert into event_history_version (app_id, version, update_time) " +
+            "select e.app_id, max(e.id), now() from event e " +
+            "where %s and e.event_time < ? group by e.app_id " +
+            "on conflict (app_id) do update set version = excluded.version, update_time = excluded.update_time";
+
+    /** 全局批次的范围条件：(from, to] 内未被挂起的应用；参数为 from、to、水位名 */
+    public static final String BATCH_RANGE = "e.id > ? and e.id <= ? and e.app_id is not null " +
+            "and not exists (select 1 from event_rollup_lag l where l.name = ? and l.app_id = e.app_id)";
+
+    /** 挂起应用追赶的范围条件；参数为应用ID、落后水位、本批上界 */
+    public static final String APP_RANGE = "e.app_id = ? and e.id > ? and e.id <= ?";
+
+    private static final String BATCH_ROLLUP_SQL = String.format(ROLLUP_SQL, BATCH_RANGE);
+    private static final String BATCH_HISTORY_SQL = String.format(HISTORY_SQL, BATCH_RANGE);
+    private static final String APP_ROLLUP_SQL = String.format(ROLLUP_SQL, APP_RANGE);
+    private static final String APP_HISTORY_SQL = String.format(HISTORY_SQL, APP_RANGE);
+
+    /** 挂起有合并在途的应用，落后水位取本批之前的全局水位；参数为水位名、应用ID、水位 */
+    public static final String HOLD_SQL =
+            "insert into event_rollup_lag (name, app_id, last_event_id) values (?, ?, ?) on conflict do nothing";
+
+    /** 被挂起的应用及其落后水位；参数为水位名 */
+    public static final String LAGGING_SQL =
+            "select l.app_id, l.last_event_id from event_rollup_lag l where l.name = ? order by l.app_id";
+
+    /** 挂起应用在 (落后水位, 全局水位] 内最多 batch 行，返回追赶上界与行数 */
+    public static final String APP_BOUND_SQL =
+            "select max(t.id), count(*) from (select e.id from event e " +
+            "where e.app_id = ? and e.id > ? and e.id <= ? order by e.id limit ?) t";
+
+    /** 推进挂起应用的落后水位 */
+    public static final String CATCH_UP_SQL =
+            "update event_rollup_lag set last_event_id = ?, update_time = now() where name = ? and app_id = ?";
+
+    /** 挂起应用追上全局水位 */
+    public static final String RELEASE_SQL = "delete from event_rollup_lag where name = ? and app_id = ?";
+
+    /** 推进指定名称的水位 */
+    public static final String ADVANCE_SQL =
+            "insert into event_rollup_state (name, last_event_id, update_time) values (?, ?, now()) " +
+            "on conflict (name) do update set last_event_id = excluded.last_event_id, update_time = excluded.update_time";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate tx;
+    private final RollupProperties properties;
+    private final Counter rolledUp;
+    private final ScheduledExecutorService scheduler;
+
+    @Autowired
+    public RollupAggregator(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                            RollupProperties properties, @Autowired(required = false) MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.properties = properties;
+        this.rolledUp = meterRegistry == null ? null : Counter.builder("track.rollup.events").register(meterRegistry);
+        if (properties.isEnabled()) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("event-rollup-");
+            threadFactory.setDaemon(true);
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            long interval = Math.max(100L, properties.getIntervalMs());
+            this.scheduler.scheduleWithFixedDelay(this::run, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    /**
+     * 聚合到追上沉淀窗口为止：批次满额说明还有积压，继续下一批
+     */
+    void run() {
+        int batchSize = Math.max(1, properties.getBatchSize());
+        try {
+            long rows;
+            do {
+                rows = aggregateBatch(batchSize);
+            } while (rows >= batchSize && !Thread.currentThread().isInterrupted());
+        } catch (RuntimeException ex) {
+            log.warn("事件预聚合失败，下一轮重试: error={}", ex.getMessage());
+        }
+    }
+
+    /**
+     * 聚合水位之后的一批事件，并让已结束合并的挂起应用追赶一批
+     *
+     * @return 全局水位越过与追赶处理的事件数；其他实例持有锁或没有可聚合的事件时为0
+     */
+    long aggregateBatch(int batchSize) {
+        Long rows = tx.execute(status -> {
+            Boolean locked = jdbcTemplate.queryForObject("select pg_try_advisory_xact_lock(?)", Boolean.class, LOCK_KEY);
+            if (!Boolean.TRUE.equals(locked)) return 0L;
+            long from = jdbcTemplate.queryForObject(WATERMARK_SQL, Long.class, STATE_NAME);
+            // create_time 由应用在写入时取本机时间，截止时间同样按应用时钟计算
+            LocalDateTime cutoff = LocalDateTime.now().minusNanos(properties.getSettleMs() * 1_000_000L);
+            long[] bound = jdbcTemplate.queryForObject(UPPER_BOUND_SQL,
+                    (rs, i) -> new long[]{rs.getLong(1), rs.getLong(2)}, from, batchSize, cutoff);
+            long to = bound == null || bound[1] == 0 ? from : bound[0];
+            // 上界确定之后再检查合并，见 ImportBarrier
+            List<Integer> merging = jdbcTemplate.queryForList(ImportBarrier.MERGING_APPS_SQL, Integer.class);
+            long n = 0;
+            if (to > from) {
+                for (Integer appId : merging) {
+                    jdbcTemplate.update(HOLD_SQL, STATE_NAME, appId, from);
+                }
+                LocalDateTime today = LocalDate.now().atStartOfDay();
+                jdbcTemplate.update(BATCH_ROLLUP_SQL, from, to, STATE_NAME);
+                jdbcTemplate.update(BATCH_HISTORY_SQL, from, to, STATE_NAME, today);
+                jdbcTemplate.update(ADVANCE_SQL, STATE_NAME, to);
+                log.debug("事件预聚合: from={}, to={}, rows={}, held={}", from, to, bound[1], merging);
+                n += bound[1];
+            }
+            return n + catchUp(to, merging, batchSize);
+        });
+        long n = rows == null ? 0 : rows;
+        if (rolledUp != null && n > 0) rolledUp.increment(n);
+        return n;
+    }
+
+    /**
+     * 没有合并在途的挂起应用各追赶一批，追到全局水位 to 时解除挂起
+     *
+     * <p>to 在检查合并之前确定，其以内的 id 都已分配；检查时没有合并在途，这些行对之后的语句都可见。
+     */
+    private long catchUp(long to, List<Integer> merging, int batchSize) {
+        List<long[]> lagging = jdbcTemplate.query(LAGGING_SQL,
+                (rs, i) -> new long[]{rs.getInt(1), rs.getLong(2)}, STATE_NAME);
+        long n = 0;
+        LocalDateTime today = LocalDate.now().atStartOfDay();
+        for (long[] lag : lagging) {
+            int appId = (int) lag[0];
+            if (merging.contains(appId)) continue;
+            long[] bound = jdbcTemplate.queryForObject(APP_BOUND_SQL,
+                    (rs, i) -> new long[]{rs.getLong(1), rs.getLong(2)}, appId, lag[1], to, batchSize);
+            if (bound != null && bound[1] > 0) {
+                jdbcTemplate.update(APP_ROLLUP_SQL, appId, lag[1], bound[0]);
+                jdbcTemplate.update(APP_HISTORY_SQL, appId, lag[1], bound[0], today);
+                n += bound[1];
+            }
+            if (bound == null || bound[1] < batchSize) {
+                jdbcTemplate.update(RELEASE_SQL, STATE_NAME, appId);
+            } else {
+                jdbcTemplate.update(CATCH_UP_SQL, bound[0], STATE_NAME, appId);
+            }
+            log.debug("挂起应用追赶预聚合: appId={}, from={}, rows={}", appId, lag[1], bound == null ? 0 : bound[1]);
+        }
+        return n;
+    }
+
+    /**
+     * 指定应用的有效水位：被挂起时取落后水位，否则取全局水位；片段内有一个应用ID参数
+     *
+     * @param name 水位名
+     */
+    public static String appWatermark(String name) {
+        return "coalesce((select l.last_event_id from event_rollup_lag l where l.name = '" + name
+                + "' and l.app_id = ?), (select s.last_event_id from event_rollup_state s where s.name = '" + name
+                + "'), 0)";
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) scheduler.shutdownNow();
+    }
+}
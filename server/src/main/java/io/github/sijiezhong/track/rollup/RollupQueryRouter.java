@@ -0,0 +1,151 @@
+package io.github.sijiezhong.track.rollup;
+
+import io.github.sijiezhong.track.config.RollupProperties;
+import io.github.sijiezhong.track.repository.EventRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分析查询路由：能由小时预聚合回答的趋势、热点与分群查询读 event_rollup_hourly，否则扫描原始事件
+ *
+ * <p>结果与原始扫描一致。一条语句内同时读取聚合水位与预聚合表，两者处于同一快照；
+ * 水位按应用取（导入合并期间被挂起的应用取其落后水位），水位之后尚未聚合的事件、以及时间范围两端不满一小时的部分直接扫描 event 补齐。
+ * 扫描量只与小时桶数和聚合延迟有关，不随历史总量增长。
+ *
+ * <p>返回的行与 {@link EventRepository} 中对应的原始查询形状相同。
+ */
+@Component
+public class RollupQueryRouter {
+
+    // 应用的有效聚合水位，带一个应用ID参数
+    private static final String WATERMARK = RollupAggregator.appWatermark(RollupAggregator.STATE_NAME);
+
+    private static final RowMapper<Object[]> PAIR = (rs, i) -> new Object[]{rs.getObject(1), rs.getLong(2)};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EventRepository eventRepository;
+    private final RollupProperties properties;
+
+    public RollupQueryRouter(JdbcTemplate jdbcTemplate, EventRepository eventRepository, RollupProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventRepository = eventRepository;
+        this.properties = properties;
+    }
+
+    /**
+     * 按天计数，时间范围为闭区间 [startTime, endTime]，两端可为空
+     *
+     * <p>范围内不含完整小时桶时预聚合帮不上忙，直接扫描原始事件。
+     */
+    public List<Object[]> aggregateDaily(Integer appId, String eventName, LocalDateTime startTime, LocalDateTime endTime) {
+        LocalDateTime lo = startTime == null ? null : ceilHour(startTime);
+        LocalDateTime hi = endTime == null ? null : endTime.truncatedTo(ChronoUnit.HOURS);
+        if (!properties.isEnabled() || (lo != null && hi != null && !lo.isBefore(hi))) {
+            return eventRepository.aggregateDaily(appId, eventName, startTime, endTime);
+        }
+        List<Object> args = new ArrayList<>();
+        String sql = dailySql(appId, eventName, startTime, endTime, lo, hi, args);
+        return jdbcTemplate.query(sql, PAIR, args.toArray());
+    }
+
+    /**
+     * 按一天中的小时（0..23）计数
+     */
+    public List<Object[]> aggregateByHour(Integer appId, String eventName) {
+        if (!properties.isEnabled()) {
+            return eventRepository.aggregateByHour(appId, eventName);
+        }
+        String sql = "select h, sum(c) from (" +
+                "select extract(hour from r.bucket)::int as h, sum(r.cnt) as c from event_rollup_hourly r " +
+                "where r.app_id = ? and r.event_name = ? and r.dim = 'all' group by 1 " +
+                "union all " +
+                "select extract(hour from e.event_time)::int, count(*) from event e " +
+                "where e.app_id = ? and e.id > " + WATERMARK + " and e.event_name = ? group by 1" +
+                ") t group by h order by h";
+        return jdbcTemplate.query(sql, PAIR, appId, eventName, appId, appId, eventName);
+    }
+
+    /**
+     * 按内置维度分组计数，维度为空记为 unknown
+     *
+     * @param column 已校验的列名 browser|device|os|referrer
+     */
+    public List<Object[]> segmentCountByColumn(Integer appId, String eventName, String column) {
+        if (!properties.isEnabled()) {
+            return eventRepository.segmentCountByColumn(appId, eventName, column);
+        }
+        String sql = "select k, sum(c) as total from (" +
+                "select r.dim_value as k, sum(r.cnt) as c from event_rollup_hourly r " +
+                "where r.app_id = ? and r.event_name = ? and r.dim = ? group by 1 " +
+                "union all " +
+                "select coalesce(e." + column + ", 'unknown'), count(*) from event e " +
+                "where e.app_id = ? and e.id > " + WATERMARK + " and e.event_name = ? group by 1" +
+                ") t group by k order by total desc";
+        return jdbcTemplate.query(sql, PAIR, appId, eventName, column, appId, appId, eventName);
+    }
+
+    /**
+     * 生成按天计数语句
+     *
+     * <p>[lo, hi) 内的完整小时桶读预聚合，再补上三部分原始事件：[startTime, lo)、[hi, endTime]，
+     * 以及 [lo, hi) 内水位之后的事件。各部分互不重叠，合起来正好是 [startTime, endTime]。
+     *
+     * @param lo 不早于 startTime 的第一个整点，startTime 为空时为空
+     * @param hi 不晚于 endTime 的最后一个整点，endTime 为空时为空
+     */
+    static String dailySql(Integer appId, String eventName, LocalDateTime startTime, LocalDateTime endTime,
+                           LocalDateTime lo, LocalDateTime hi, List<Object> args) {
+        StringBuilder sql = new StringBuilder("select d, sum(c) from (");
+        sql.append("select date_trunc('day', r.bucket) as d, sum(r.cnt) as c from event_rollup_hourly r ")
+                .append("where r.app_id = ? and r.event_name = ? and r.dim = 'all'");
+        args.add(appId);
+        args.add(eventName);
+        if (lo != null) {
+            sql.append(" and r.bucket >= ?");
+            args.add(lo);
+        }
+        if (hi != null) {
+            sql.append(" and r.bucket < ?");
+            args.add(hi);
+        }
+        sql.append(" group by 1");
+        if (startTime != null) {
+            appendRawDaily(sql, "e.event_time >= ? and e.event_time < ?", appId, eventName, args);
+            args.add(startTime);
+            args.add(lo);
+        }
+        if (endTime != null) {
+            appendRawDaily(sql, "e.event_time >= ? and e.event_time <= ?", appId, eventName, args);
+            args.add(hi);
+            args.add(endTime);
+        }
+        StringBuilder tail = new StringBuilder("e.id > ").append(WATERMARK);
+        if (lo != null) tail.append(" and e.event_time >= ?");
+        if (hi != null) tail.append(" and e.event_time < ?");
+        appendRawDaily(sql, tail.toString(), appId, eventName, args);
+        args.add(appId);
+        if (lo != null) args.add(lo);
+        if (hi != null) args.add(hi);
+        sql.append(") t group by d order by d");
+        return sql.toString();
+    }
+
+    private static void appendRawDaily(StringBuilder sql, String condition, Integer appId, String eventName,
+                                       List<Object> args) {
+        sql.append(" union all select date_trunc('day', e.event_time), count(*) from event e ")
+                .append("where e.app_id = ? and e.event_name = ? and ").append(condition).append(" group by 1");
+        args.add(appId);
+        args.add(eventName);
+    }
+
+    static LocalDateTime ceilHour(LocalDateTime t) {
+        LocalDateTime floor = t.truncatedTo(ChronoUnit.HOURS);
+        return floor.equals(t) ? t : floor.plusHours(1);
+    }
+}
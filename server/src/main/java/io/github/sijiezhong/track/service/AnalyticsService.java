@@ -1,43 +1,70 @@
 package io.github.sijiezhong.track.service;
 
+import io.github.sijiezhong.track.config.FunnelProperties;
 import io.github.sijiezhong.track.constants.BusinessConstants;
 import io.github.sijiezhong.track.exception.BusinessException;
 import io.github.sijiezhong.track.exception.ErrorCode;
+import io.github.sijiezhong.track.funnel.FunnelOrder;
+import io.github.sijiezhong.track.funnel.FunnelPushdown;
+import io.github.sijiezhong.track.funnel.FunnelScanner;
 import io.github.sijiezhong.track.repository.EventRepository;
+import io.github.sijiezhong.track.repository.PropertyFilter;
+import io.github.sijiezhong.track.retention.RetentionEngine;
+import io.github.sijiezhong.track.retention.RetentionMatrix;
+import io.github.sijiezhong.track.rollup.RollupQueryRouter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 数据分析服务
  * 
  * <p>
  * 提供事件数据的统计分析功能，包括趋势、路径、留存、漏斗、分群和热点分析。
+ * 趋势、热点与不带属性条件的内置维度分群经 {@link RollupQueryRouter} 优先读取小时预聚合。
  * 
  * @author sijie
  */
 @Service
+@Transactional(readOnly = true)
 public class AnalyticsService {
 
     private static final Logger log = LoggerFactory.getLogger(AnalyticsService.class);
 
+    /** 按属性分组的维度前缀，如 properties.plan */
+    private static final String PROPERTY_SEGMENT_PREFIX = "properties.";
+
     private final EventRepository eventRepository;
+    private final RollupQueryRouter rollupQueryRouter;
+    private final FunnelScanner funnelScanner;
+    private final FunnelPushdown funnelPushdown;
+    private final FunnelProperties funnelProperties;
+    private final RetentionEngine retentionEngine;
 
-    public AnalyticsService(EventRepository eventRepository) {
+    public AnalyticsService(EventRepository eventRepository, RollupQueryRouter rollupQueryRouter,
+            FunnelScanner funnelScanner, FunnelPushdown funnelPushdown, FunnelProperties funnelProperties,
+            RetentionEngine retentionEngine) {
         this.eventRepository = eventRepository;
+        this.rollupQueryRouter = rollupQueryRouter;
+        this.funnelScanner = funnelScanner;
+        this.funnelPushdown = funnelPushdown;
+        this.funnelProperties = funnelProperties;
+        this.retentionEngine = retentionEngine;
     }
 
     public List<Map<String, Object>> trendDaily(Integer appId, String eventName, LocalDateTime start,
             LocalDateTime end) {
-        List<Object[]> rows = eventRepository.aggregateDaily(appId, eventName, start, end);
+        List<Object[]> rows = rollupQueryRouter.aggregateDaily(appId, eventName, start, end);
         List<Map<String, Object>> result = new ArrayList<>();
         for (Object[] r : rows) {
             Map<String, Object> m = new HashMap<>();
@@ -61,11 +88,30 @@ public class AnalyticsService {
         return result;
     }
 
+    /**
+     * 按天留存，只计算第 day 天
+     *
+     * <p>day 大于等于1时由位图引擎计算，否则沿用自关联查询。
+     */
     public List<Map<String, Object>> retentionDaily(Integer appId, String cohortEvent, String returnEvent,
             Integer day, LocalDateTime start, LocalDateTime end) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        if (day != null && day >= 1) {
+            RetentionMatrix matrix = retentionEngine.compute(appId, cohortEvent, returnEvent, day, start, end);
+            for (int i = 0; i < matrix.cohortDates().size(); i++) {
+                long cohort = matrix.cohortSizes()[i];
+                long retained = matrix.retained()[i][day - 1];
+                Map<String, Object> m = new HashMap<>();
+                m.put("cohortDate", formatDay(matrix.cohortDates().get(i)));
+                m.put("cohort", cohort);
+                m.put("retained", retained);
+                m.put("rate", cohort == 0 ? 0.0 : (retained * 1.0 / cohort));
+                result.add(m);
+            }
+            return result;
+        }
         List<Object[]> rows = eventRepository.aggregateDailyRetention(appId, cohortEvent, returnEvent, day, start,
                 end);
-        List<Map<String, Object>> result = new ArrayList<>();
         for (Object[] r : rows) {
             Map<String, Object> m = new HashMap<>();
             long cohort = ((Number) r[1]).longValue();
@@ -79,45 +125,77 @@ public class AnalyticsService {
         return result;
     }
 
+    /**
+     * 留存矩阵：每个 cohort 日一行，给出第 1..days 天的回访人数与留存率
+     */
+    public List<Map<String, Object>> retentionMatrix(Integer appId, String cohortEvent, String returnEvent,
+            int days, LocalDateTime start, LocalDateTime end) {
+        RetentionMatrix matrix = retentionEngine.compute(appId, cohortEvent, returnEvent, days, start, end);
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (int i = 0; i < matrix.cohortDates().size(); i++) {
+            long cohort = matrix.cohortSizes()[i];
+            List<Long> retained = new ArrayList<>(days);
+            List<Double> rates = new ArrayList<>(days);
+            for (long r : matrix.retained()[i]) {
+                retained.add(r);
+                rates.add(cohort == 0 ? 0.0 : (r * 1.0 / cohort));
+            }
+            Map<String, Object> m = new HashMap<>();
+            m.put("cohortDate", formatDay(matrix.cohortDates().get(i)));
+            m.put("cohort", cohort);
+            m.put("retained", retained);
+            m.put("rates", rates);
+            result.add(m);
+        }
+        return result;
+    }
+
+    /**
+     * 与 date_trunc 结果的字符串形式保持一致
+     */
+    private static String formatDay(LocalDate day) {
+        return Timestamp.valueOf(day.atStartOfDay()).toString();
+    }
+
     public Map<String, Object> funnel(Integer appId, List<String> steps, LocalDateTime start, LocalDateTime end) {
-        log.debug("执行漏斗分析: appId={}, steps={}", appId, steps);
+        return funnel(appId, steps, start, end, null, FunnelOrder.LOOSE);
+    }
+
+    /**
+     * 漏斗分析
+     *
+     * <p>估计输入行数不小于 funnel.pushdown-min-rows 时在数据库内按会话匹配，只传回每步计数；
+     * 否则按 (会话, 时间) 顺序流式扫描步骤事件在应用内匹配。两种方式结果一致，内存占用都与行数无关。
+     *
+     * @param windowDays 转化窗口天数，从第一步开始计算，为空表示不限制
+     * @param order 步骤顺序约束
+     */
+    public Map<String, Object> funnel(Integer appId, List<String> steps, LocalDateTime start, LocalDateTime end,
+            Integer windowDays, FunnelOrder order) {
+        log.debug("执行漏斗分析: appId={}, steps={}, windowDays={}, order={}", appId, steps, windowDays, order);
 
         if (steps == null || steps.size() < BusinessConstants.MIN_FUNNEL_STEPS) {
             throw new BusinessException(ErrorCode.FUNNEL_STEPS_INVALID,
                     String.format("漏斗步骤数量必须大于等于%d", BusinessConstants.MIN_FUNNEL_STEPS));
         }
+        if (windowDays != null && windowDays < 1) {
+            throw new BusinessException(ErrorCode.BAD_REQUEST, "窗口天数必须大于等于1");
+        }
         String[] stepArray = steps.toArray(new String[0]);
-        List<Object[]> rows = eventRepository.findEventsForFunnel(appId, stepArray, start, end);
+        long windowMicros = windowDays == null ? 0 : TimeUnit.DAYS.toMicros(windowDays);
+        long threshold = funnelProperties.getPushdownMinRows();
+        boolean pushdown = threshold >= 0
+                && (threshold == 0 || funnelScanner.estimateRows(appId, stepArray, start, end) >= threshold);
+        log.debug("漏斗执行方式: appId={}, pushdown={}", appId, pushdown);
+        long[] reached = pushdown
+                ? funnelPushdown.count(appId, stepArray, start, end, windowMicros, order)
+                : funnelScanner.scan(appId, stepArray, start, end, windowMicros, order);
 
         // counts[i] 表示到达第 i 步（包含顺序约束）的会话数
         int n = stepArray.length;
         int[] counts = new int[n];
-
-        // sessionId -> 当前已达成的步骤索引（-1 初始，达成第0步则为0 ...）
-        Map<Long, Integer> sessionProgress = new LinkedHashMap<>();
-
-        for (Object[] r : rows) {
-            Long sessionId = r[0] == null ? null : ((Number) r[0]).longValue();
-            String eventName = Objects.toString(r[1], null);
-            if (sessionId == null || eventName == null)
-                continue;
-            Integer progress = sessionProgress.getOrDefault(sessionId, -1);
-
-            // 下一个目标步骤索引
-            int next = progress + 1;
-            if (next < n && stepArray[next].equals(eventName)) {
-                // 达成下一步
-                sessionProgress.put(sessionId, next);
-            }
-        }
-
-        // 统计每个会话最终达成的最高步骤，并累计各步数量（达到第k步意味着也必然达成[0..k]步）
-        for (Integer p : sessionProgress.values()) {
-            if (p >= 0) {
-                for (int i = 0; i <= p; i++)
-                    counts[i]++;
-            }
-        }
+        for (int i = 0; i < n; i++)
+            counts[i] = Math.toIntExact(reached[i]);
 
         double[] rates = new double[n];
         if (counts[0] > 0) {
@@ -141,8 +219,42 @@ public class AnalyticsService {
     }
 
     public Map<String, Object> segmentation(Integer appId, String eventName, String by) {
+        return segmentation(appId, eventName, by, PropertyFilter.NONE);
+    }
+
+    /**
+     * 分群统计
+     *
+     * @param by 内置维度 browser|device|os|referrer，或 properties.属性名 按属性值分组
+     * @param properties 属性过滤条件
+     */
+    public Map<String, Object> segmentation(Integer appId, String eventName, String by, PropertyFilter properties) {
+        List<Object[]> rows;
+        if (by != null && by.startsWith(PROPERTY_SEGMENT_PREFIX)) {
+            String[] path = PropertyFilter.parsePath(by.substring(PROPERTY_SEGMENT_PREFIX.length()));
+            rows = eventRepository.segmentCount(appId, eventName, null, path, properties);
+        } else {
+            String column = segmentColumn(by);
+            rows = properties.isEmpty()
+                    ? rollupQueryRouter.segmentCountByColumn(appId, eventName, column)
+                    : eventRepository.segmentCount(appId, eventName, column, null, properties);
+        }
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (Object[] r : rows) {
+            Map<String, Object> m = new HashMap<>();
+            m.put("key", r[0]);
+            m.put("count", ((Number) r[1]).longValue());
+            items.add(m);
+        }
+        Map<String, Object> out = new HashMap<>();
+        out.put("by", by);
+        out.put("items", items);
+        return out;
+    }
+
+    private static String segmentColumn(String by) {
         String column;
-        switch (by) {
+        switch (by == null ? "" : by) {
             case "browser":
                 column = "browser";
                 break;
@@ -158,18 +270,7 @@ public class AnalyticsService {
             default:
                 throw new BusinessException(ErrorCode.SEGMENTATION_BY_INVALID, "不支持的分组维度: " + by);
         }
-        List<Object[]> rows = eventRepository.segmentCountByColumn(appId, eventName, column);
-        List<Map<String, Object>> items = new ArrayList<>();
-        for (Object[] r : rows) {
-            Map<String, Object> m = new HashMap<>();
-            m.put("key", r[0]);
-            m.put("count", ((Number) r[1]).longValue());
-            items.add(m);
-        }
-        Map<String, Object> out = new HashMap<>();
-        out.put("by", by);
-        out.put("items", items);
-        return out;
+        return column;
     }
 
     public Map<String, Object> heatmap(Integer appId, String eventName, String bucket) {
@@ -178,7 +279,7 @@ public class AnalyticsService {
         if (!"hour".equalsIgnoreCase(bucket)) {
             throw new BusinessException(ErrorCode.BAD_REQUEST, "目前仅支持hour粒度");
         }
-        List<Object[]> rows = eventRepository.aggregateByHour(appId, eventName);
+        List<Object[]> rows = rollupQueryRouter.aggregateByHour(appId, eventName);
         long[] buckets = new long[24];
         for (Object[] r : rows) {
             int hour = ((Number) r[0]).intValue();
@@ -95,7 +95,7 @@ public class EventService {
         e.setUserId(req.getUserId());
         e.setAppId(req.getAppId());
         e.setSessionId(sessionPk);
-        e.setProperties(req.getProperties() == null ? null : req.getProperties().toString());
+        e.setPropertiesNode(req.getProperties());
         // 结构化字段
         e.setUa(req.getUa());
         e.setReferrer(req.getReferrer());
@@ -1,14 +1,21 @@
 package io.github.sijiezhong.track.service;
 
 import io.github.sijiezhong.track.dto.EventStatsResponse;
+import io.github.sijiezhong.track.exception.BusinessException;
+import io.github.sijiezhong.track.exception.ErrorCode;
 import io.github.sijiezhong.track.repository.EventRepository;
+import io.github.sijiezhong.track.sketch.HyperLogLog;
+import io.github.sijiezhong.track.sketch.UserSketchService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * 统计服务
@@ -18,14 +25,17 @@ import java.time.LocalTime;
  * @author sijie
  */
 @Service
+@Transactional(readOnly = true)
 public class StatsService {
     
     private static final Logger log = LoggerFactory.getLogger(StatsService.class);
     
     private final EventRepository eventRepository;
+    private final UserSketchService userSketchService;
     
-    public StatsService(EventRepository eventRepository) {
+    public StatsService(EventRepository eventRepository, UserSketchService userSketchService) {
         this.eventRepository = eventRepository;
+        this.userSketchService = userSketchService;
     }
     
     /**
@@ -63,11 +73,13 @@ public class StatsService {
             stats.setTodayVsYesterdayPercent(0.0);
         }
         
-        // 独立用户数
-        Long uniqueUsers = eventRepository.countDistinctUsersByTenantId(appId);
+        // 独立用户数：草图启用时读取不限日期的草图并补上水位之后的事件，为估计值，误差约0.8%
+        Long uniqueUsers = userSketchService.isEnabled()
+                ? userSketchService.estimate(appId, null, null, null, null, null)
+                : eventRepository.countDistinctUsersByTenantId(appId);
         stats.setUniqueUsers(uniqueUsers);
         
-        // 在线用户数（最近1分钟活跃）
+        // 在线用户数（最近1分钟活跃），窗口小于草图的按天粒度，按时间索引精确去重
         LocalDateTime oneMinuteAgo = LocalDateTime.now().minusMinutes(1);
         Long onlineUsers = eventRepository.countOnlineUsers(appId, oneMinuteAgo);
         stats.setOnlineUsers(onlineUsers);
@@ -85,5 +97,36 @@ public class StatsService {
         
         return stats;
     }
+    
+    /**
+     * 估计日期范围内的独立用户数
+     * 
+     * <p>由按天的独立用户草图合并得到；草图未启用时精确去重。
+     * 
+     * @param appId 应用ID
+     * @param startDay 起始日期（含，可选）
+     * @param endDay 结束日期（含，可选）
+     * @param eventName 事件名（可选）
+     * @param dim 维度 browser|device|os（可选）
+     * @param dimValue 维度取值，指定维度时必填
+     * @return {uniqueUsers, relativeError}，精确去重时误差为0
+     */
+    public Map<String, Object> uniqueUsers(Integer appId, LocalDate startDay, LocalDate endDay,
+                                           String eventName, String dim, String dimValue) {
+        log.debug("估计独立用户数: appId={}, startDay={}, endDay={}, eventName={}, dim={}, value={}",
+            appId, startDay, endDay, eventName, dim, dimValue);
+        if (startDay != null && endDay != null && startDay.isAfter(endDay)) {
+            throw new BusinessException(ErrorCode.BAD_REQUEST, "起始日期不能晚于结束日期");
+        }
+        
+        Map<String, Object> result = new LinkedHashMap<>();
+        if (userSketchService.isEnabled()) {
+            result.put("uniqueUsers", userSketchService.estimate(appId, startDay, endDay, eventName, dim, dimValue));
+            result.put("relativeError", HyperLogLog.relativeStandardError());
+        } else {
+            result.put("uniqueUsers", userSketchService.countExact(appId, startDay, endDay, eventName, dim, dimValue));
+            result.put("relativeError", 0.0);
+        }
+        return result;
+    }
 }
-
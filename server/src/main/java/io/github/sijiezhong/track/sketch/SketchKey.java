@@ -0,0 +1,13 @@
+package io.github.sijiezhong.track.sketch;
+
+import java.time.LocalDate;
+
+/**
+ * 草图的主键，对应 event_user_sketch 的一行；day 为空时对应 event_user_sketch_total 的一行
+ *
+ * @param eventName 事件名，空串表示不分事件
+ * @param dim all|browser|device|os
+ * @param dimValue 维度取值，dim 为 all 时为空串
+ */
+public record SketchKey(Integer appId, String eventName, String dim, String dimValue, LocalDate day) {
+}
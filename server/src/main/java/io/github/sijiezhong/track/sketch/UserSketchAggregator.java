@@ -0,0 +1,321 @@
+package io.github.sijiezhong.track.sketch;
+
+import io.github.sijiezhong.track.config.SketchProperties;
+import io.github.sijiezhong.track.importer.ImportBarrier;
+import io.github.sijiezhong.track.rollup.RollupAggregator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * 后台聚合器：按 event.id 水位把新事件的用户并入 event_user_sketch
+ *
+ * <p>每个批次在一个事务中完成：取事务级咨询锁，读水位，确定批次上界，取出批次内去重后的
+ * (应用, 事件, 维度, 日期, 用户)，在内存中为每个草图键建立增量草图，与库中已有草图合并后 upsert，
+ * 最后推进水位。草图合并幂等，即使同一批事件被重复并入也不会改变估计值。
+ *
+ * <p>同一事务中维护 event_user_sketch_total 中不限日期的草图。某个键首次写入时先合并该键已有的
+ * 全部按天草图，此后只并入增量，不限日期的估计因此不必逐天合并。
+ *
+ * <p>每个事件写入 8 个草图：具体事件名与不分事件（空串）各一份，各自再分 all/browser/device/os 四个维度。
+ * referrer 取值过于分散，不维护草图。水位、沉淀窗口与 {@link ImportBarrier} 的处理与 {@link RollupAggregator} 相同：
+ * 有合并在途的应用被挂起并记下落后水位，其余应用照常推进，合并结束后挂起应用分批追赶到全局水位。
+ */
+@Component
+public class UserSketchAggregator {
+
+    private static final Logger log = LoggerFactory.getLogger(UserSketchAggregator.class);
+
+    /** event_rollup_state 中本聚合器的水位名 */
+    static final String STATE_NAME = "event_user_sketch";
+    // 聚合器的咨询锁键，取 "sketch" 的 ASCII
+    private static final long LOCK_KEY = 0x736B65746368L;
+
+    private static final String[] DIMS = {"all", "browser", "device", "os"};
+
+    private static final String BATCH_SQL =
+            "select e.app_id, e.event_name, coalesce(e.browser, 'unknown'), coalesce(e.device, 'unknown'), " +
+            "coalesce(e.os, 'unknown'), date_trunc('day', e.event_time)::date, e.user_id " +
+            "from event e where %s and e.user_id is not null " +
+            "group by 1, 2, 3, 4, 5, 6, 7";
+
+    private static final String BATCH_USERS_SQL = String.format(BATCH_SQL, RollupAggregator.BATCH_RANGE);
+    private static final String APP_USERS_SQL = String.format(BATCH_SQL, RollupAggregator.APP_RANGE);
+
+    private static final String LOAD_SQL =
+            "select s.app_id, s.event_name, s.dim, s.dim_value, s.day, s.sketch from event_user_sketch s " +
+            "join unnest(?::int[], ?::text[], ?::text[], ?::text[], ?::date[]) k(app_id, event_name, dim, dim_value, day) " +
+            "on s.app_id = k.app_id and s.event_name = k.event_name and s.dim = k.dim " +
+            "and s.dim_value = k.dim_value and s.day = k.day";
+
+    private static final String UPSERT_SQL =
+            "insert into event_user_sketch (app_id, event_name, dim, dim_value, day, version, sketch) " +
+            "values (?, ?, ?, ?, ?, ?, ?) " +
+            "on conflict (app_id, event_name, dim, dim_value, day) " +
+            "do update set version = excluded.version, sketch = excluded.sketch";
+
+    private static final String KEYS =
+            "unnest(?::int[], ?::text[], ?::text[], ?::text[]) k(app_id, event_name, dim, dim_value) " +
+            "on s.app_id = k.app_id and s.event_name = k.event_name and s.dim = k.dim and s.dim_value = k.dim_value";
+
+    private static final String LOAD_TOTAL_SQL =
+            "select s.app_id, s.event_name, s.dim, s.dim_value, s.sketch from event_user_sketch_total s join " + KEYS;
+
+    // 尚无不限日期草图的键，取该键已有的全部按天草图
+    private static final String SEED_TOTAL_SQL =
+            "select s.app_id, s.event_name, s.dim, s.dim_value, s.sketch from event_user_sketch s join " + KEYS;
+
+    private static final String UPSERT_TOTAL_SQL =
+            "insert into event_user_sketch_total (app_id, event_name, dim, dim_value, version, sketch) " +
+            "values (?, ?, ?, ?, ?, ?) " +
+            "on conflict (app_id, event_name, dim, dim_value) " +
+            "do update set version = excluded.version, sketch = excluded.sketch";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate tx;
+    private final SketchProperties properties;
+    private final Counter sketched;
+    private final ScheduledExecutorService scheduler;
+
+    @Autowired
+    public UserSketchAggregator(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                SketchProperties properties, @Autowired(required = false) MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.properties = properties;
+        this.sketched = meterRegistry == null ? null : Counter.builder("track.sketch.events").register(meterRegistry);
+        if (properties.isEnabled()) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("user-sketch-");
+            threadFactory.setDaemon(true);
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            long interval = Math.max(100L, properties.getIntervalMs());
+            this.scheduler.scheduleWithFixedDelay(this::run, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    /**
+     * 聚合到追上沉淀窗口为止
+     */
+    void run() {
+        int batchSize = Math.max(1, properties.getBatchSize());
+        try {
+            long rows;
+            do {
+                rows = aggregateBatch(batchSize);
+            } while (rows >= batchSize && !Thread.currentThread().isInterrupted());
+        } catch (RuntimeException ex) {
+            log.warn("独立用户草图聚合失败，下一轮重试: error={}", ex.getMessage());
+        }
+    }
+
+    /**
+     * 把水位之后的一批事件并入草图，并让已结束合并的挂起应用追赶一批
+     *
+     * @return 全局水位越过与追赶处理的事件数；其他实例持有锁或没有可聚合的事件时为0
+     */
+    long aggregateBatch(int batchSize) {
+        Long rows = tx.execute(status -> {
+            Boolean locked = jdbcTemplate.queryForObject("select pg_try_advisory_xact_lock(?)", Boolean.class, LOCK_KEY);
+            if (!Boolean.TRUE.equals(locked)) return 0L;
+            long from = jdbcTemplate.queryForObject(RollupAggregator.WATERMARK_SQL, Long.class, STATE_NAME);
+            LocalDateTime cutoff = LocalDateTime.now().minusNanos(properties.getSettleMs() * 1_000_000L);
+            long[] bound = jdbcTemplate.queryForObject(RollupAggregator.UPPER_BOUND_SQL,
+                    (rs, i) -> new long[]{rs.getLong(1), rs.getLong(2)}, from, batchSize, cutoff);
+            long to = bound == null || bound[1] == 0 ? from : bound[0];
+            // 上界确定之后再检查合并，见 ImportBarrier
+            List<Integer> merging = jdbcTemplate.queryForList(ImportBarrier.MERGING_APPS_SQL, Integer.class);
+            long n = 0;
+            if (to > from) {
+                for (Integer appId : merging) {
+                    jdbcTemplate.update(RollupAggregator.HOLD_SQL, STATE_NAME, appId, from);
+                }
+                int sketches = sketch(BATCH_USERS_SQL, to, from, to, STATE_NAME);
+                jdbcTemplate.update(RollupAggregator.ADVANCE_SQL, STATE_NAME, to);
+                log.debug("独立用户草图聚合: from={}, to={}, rows={}, sketches={}, held={}",
+                        from, to, bound[1], sketches, merging);
+                n += bound[1];
+            }
+            return n + catchUp(to, merging, batchSize);
+        });
+        long n = rows == null ? 0 : rows;
+        if (sketched != null && n > 0) sketched.increment(n);
+        return n;
+    }
+
+    /**
+     * 没有合并在途的挂起应用各追赶一批，追到全局水位 to 时解除挂起，约束同 {@link RollupAggregator}
+     */
+    private long catchUp(long to, List<Integer> merging, int batchSize) {
+        List<long[]> lagging = jdbcTemplate.query(RollupAggregator.LAGGING_SQL,
+                (rs, i) -> new long[]{rs.getInt(1), rs.getLong(2)}, STATE_NAME);
+        long n = 0;
+        for (long[] lag : lagging) {
+            int appId = (int) lag[0];
+            if (merging.contains(appId)) continue;
+            long[] bound = jdbcTemplate.queryForObject(RollupAggregator.APP_BOUND_SQL,
+                    (rs, i) -> new long[]{rs.getLong(1), rs.getLong(2)}, appId, lag[1], to, batchSize);
+            if (bound != null && bound[1] > 0) {
+                sketch(APP_USERS_SQL, bound[0], appId, lag[1], bound[0]);
+                n += bound[1];
+            }
+            if (bound == null || bound[1] < batchSize) {
+                jdbcTemplate.update(RollupAggregator.RELEASE_SQL, STATE_NAME, appId);
+            } else {
+                jdbcTemplate.update(RollupAggregator.CATCH_UP_SQL, bound[0], STATE_NAME, appId);
+            }
+            log.debug("挂起应用追赶用户草图: appId={}, from={}, rows={}", appId, lag[1], bound == null ? 0 : bound[1]);
+        }
+        return n;
+    }
+
+    /**
+     * 把范围内事件的用户并入按天与不限日期的草图
+     *
+     * @param version 写入草图的版本号，即范围的上界
+     * @return 更新的按天草图数
+     */
+    private int sketch(String sql, long version, Object... args) {
+        Map<SketchKey, HyperLogLog> delta = new HashMap<>();
+        Map<SketchKey, HyperLogLog> totals = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            Integer appId = rs.getInt(1);
+            String eventName = rs.getString(2);
+            String[] values = {"", rs.getString(3), rs.getString(4), rs.getString(5)};
+            LocalDate day = rs.getObject(6, LocalDate.class);
+            int userId = rs.getInt(7);
+            for (String name : new String[]{eventName, ""}) {
+                for (int d = 0; d < DIMS.length; d++) {
+                    delta.computeIfAbsent(new SketchKey(appId, name, DIMS[d], values[d], day),
+                            k -> new HyperLogLog()).add(userId);
+                    totals.computeIfAbsent(new SketchKey(appId, name, DIMS[d], values[d], null),
+                            k -> new HyperLogLog()).add(userId);
+                }
+            }
+        }, args);
+        if (delta.isEmpty()) return 0;
+        mergeExisting(delta);
+        List<Object[]> dayArgs = new ArrayList<>(delta.size());
+        for (Map.Entry<SketchKey, HyperLogLog> entry : delta.entrySet()) {
+            SketchKey k = entry.getKey();
+            dayArgs.add(new Object[]{k.appId(), k.eventName(), k.dim(), k.dimValue(), k.day(),
+                    version, entry.getValue().toBytes()});
+        }
+        jdbcTemplate.batchUpdate(UPSERT_SQL, dayArgs);
+        mergeExistingTotals(totals);
+        List<Object[]> totalArgs = new ArrayList<>(totals.size());
+        for (Map.Entry<SketchKey, HyperLogLog> entry : totals.entrySet()) {
+            SketchKey k = entry.getKey();
+            totalArgs.add(new Object[]{k.appId(), k.eventName(), k.dim(), k.dimValue(),
+                    version, entry.getValue().toBytes()});
+        }
+        jdbcTemplate.batchUpdate(UPSERT_TOTAL_SQL, totalArgs);
+        return delta.size();
+    }
+
+    /**
+     * 把库中已有的草图并入本批增量，持有咨询锁期间没有其他写入方
+     */
+    private void mergeExisting(Map<SketchKey, HyperLogLog> delta) {
+        int n = delta.size();
+        Integer[] apps = new Integer[n];
+        String[] names = new String[n];
+        String[] dims = new String[n];
+        String[] values = new String[n];
+        String[] days = new String[n];
+        int i = 0;
+        for (SketchKey k : delta.keySet()) {
+            apps[i] = k.appId();
+            names[i] = k.eventName();
+            dims[i] = k.dim();
+            values[i] = k.dimValue();
+            days[i] = k.day().toString();
+            i++;
+        }
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(LOAD_SQL);
+            ps.setArray(1, con.createArrayOf("integer", apps));
+            ps.setArray(2, con.createArrayOf("text", names));
+            ps.setArray(3, con.createArrayOf("text", dims));
+            ps.setArray(4, con.createArrayOf("text", values));
+            ps.setArray(5, con.createArrayOf("text", days));
+            return ps;
+        }, rs -> {
+            SketchKey key = new SketchKey(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4),
+                    rs.getObject(5, LocalDate.class));
+            HyperLogLog sketch = delta.get(key);
+            if (sketch != null) sketch.merge(HyperLogLog.fromBytes(rs.getBytes(6)));
+        });
+    }
+
+    /**
+     * 把库中已有的不限日期草图并入本批增量；没有的键改为合并该键的全部按天草图
+     *
+     * <p>按天草图此时已包含本批，重复并入不影响结果。
+     */
+    private void mergeExistingTotals(Map<SketchKey, HyperLogLog> totals) {
+        Set<SketchKey> missing = new HashSet<>(totals.keySet());
+        queryTotals(LOAD_TOTAL_SQL, totals.keySet(), (key, sketch) -> {
+            totals.get(key).merge(sketch);
+            missing.remove(key);
+        });
+        if (!missing.isEmpty()) {
+            queryTotals(SEED_TOTAL_SQL, missing, (key, sketch) -> totals.get(key).merge(sketch));
+        }
+    }
+
+    private void queryTotals(String sql, Set<SketchKey> keys, BiConsumer<SketchKey, HyperLogLog> consumer) {
+        int n = keys.size();
+        Integer[] apps = new Integer[n];
+        String[] names = new String[n];
+        String[] dims = new String[n];
+        String[] values = new String[n];
+        int i = 0;
+        for (SketchKey k : keys) {
+            apps[i] = k.appId();
+            names[i] = k.eventName();
+            dims[i] = k.dim();
+            values[i] = k.dimValue();
+            i++;
+        }
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            ps.setArray(1, con.createArrayOf("integer", apps));
+            ps.setArray(2, con.createArrayOf("text", names));
+            ps.setArray(3, con.createArrayOf("text", dims));
+            ps.setArray(4, con.createArrayOf("text", values));
+            return ps;
+        }, rs -> {
+            consumer.accept(new SketchKey(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4), null),
+                    HyperLogLog.fromBytes(rs.getBytes(5)));
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,248 @@
+package io.github.sijiezhong.track.sketch;
+
+import io.github.sijiezhong.track.config.SketchProperties;
+import io.github.sijiezhong.track.exception.BusinessException;
+import io.github.sijiezhong.track.exception.ErrorCode;
+import io.github.sijiezhong.track.rollup.RollupAggregator;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 独立用户数估计：合并日期范围内的按天草图，再并入水位之后尚未聚合的原始事件
+ *
+ * <p>一条语句同时读取本应用的聚合水位（导入合并期间被挂起时为其落后水位）与范围内每天草图的版本号。内存缓存中版本号一致的草图直接复用，
+ * 其余按天批量读取并更新缓存；草图只会被合并变大，后读到的版本只多不少。
+ * 水位之后的事件在同一日期与过滤条件下直接扫描，用户ID加入结果草图。
+ * 合并幂等，水位前后的用户有重叠也不会重复计数，结果误差约为 {@link HyperLogLog#relativeStandardError()}。
+ *
+ * <p>不限日期时改读 event_user_sketch_total 中的一份草图，代价与天数无关；
+ * 该键尚未生成不限日期草图（升级后还没有新事件）时仍按天合并。
+ *
+ * <p>缓存的草图发布后只读，多个请求可以同时合并。
+ */
+@Component
+public class UserSketchService {
+
+    /** 支持作为过滤条件的维度 */
+    public static final Set<String> DIMENSIONS = Set.of("browser", "device", "os");
+
+    // 应用的有效聚合水位，带一个应用ID参数
+    private static final String WATERMARK = RollupAggregator.appWatermark(UserSketchAggregator.STATE_NAME);
+
+    private static final String KEY_FILTER =
+            "s.app_id = ? and s.event_name = ? and s.dim = ? and s.dim_value = ? " +
+            "and s.day >= coalesce(cast(? as date), '-infinity'::date) " +
+            "and s.day <= coalesce(cast(? as date), 'infinity'::date)";
+
+    private static final String VERSIONS_SQL =
+            "select w.v, s.day, s.version from (select " + WATERMARK + " as v) w " +
+            "left join event_user_sketch s on " + KEY_FILTER;
+
+    private static final String LOAD_SQL =
+            "select s.day, s.version, s.sketch from event_user_sketch s " +
+            "where s.app_id = ? and s.event_name = ? and s.dim = ? and s.dim_value = ? and s.day = any(?::date[])";
+
+    // 缓存的版本号不低于库中版本时不传输草图内容
+    private static final String TOTAL_SQL =
+            "select w.v, s.version, case when s.version > ? then s.sketch end from (select " + WATERMARK + " as v) w " +
+            "left join event_user_sketch_total s on s.app_id = ? and s.event_name = ? and s.dim = ? and s.dim_value = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SketchProperties properties;
+    private final Map<SketchKey, Versioned> cache;
+
+    public UserSketchService(JdbcTemplate jdbcTemplate, SketchProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.properties = properties;
+        int maxEntries = Math.max(1, properties.getCacheMaxEntries());
+        this.cache = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<SketchKey, Versioned> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 估计日期范围内的独立用户数
+     *
+     * @param startDay 起始日期（含），为空时不限
+     * @param endDay 结束日期（含），为空时不限
+     * @param eventName 事件名，为空时不分事件
+     * @param dim 维度过滤 browser|device|os，为空时不过滤
+     * @param dimValue 维度取值，维度为空时忽略；原始数据中为空的取值记为 unknown
+     */
+    public long estimate(Integer appId, LocalDate startDay, LocalDate endDay, String eventName, String dim, String dimValue) {
+        validate(dim, dimValue);
+        String name = eventName == null ? "" : eventName;
+        String d = dim == null ? "all" : dim;
+        String v = dim == null ? "" : dimValue;
+
+        HyperLogLog result = new HyperLogLog();
+        Long watermark = startDay == null && endDay == null ? mergeTotal(appId, name, d, v, result) : null;
+        if (watermark == null) watermark = mergeDays(appId, startDay, endDay, name, d, v, result);
+
+        List<Object> args = new ArrayList<>();
+        String tail = tailSql(appId, watermark, startDay, endDay, eventName, dim, dimValue, args);
+        jdbcTemplate.query(tail, rs -> {
+            result.add(rs.getInt(1));
+        }, args.toArray());
+        return result.estimate();
+    }
+
+    /**
+     * 合并日期范围内的按天草图
+     *
+     * @return 读取版本号时的聚合水位
+     */
+    private long mergeDays(Integer appId, LocalDate startDay, LocalDate endDay, String name, String d, String v,
+                           HyperLogLog result) {
+        List<long[]> versions = new ArrayList<>();
+        long[] watermark = new long[1];
+        jdbcTemplate.query(VERSIONS_SQL, rs -> {
+            watermark[0] = rs.getLong(1);
+            LocalDate day = rs.getObject(2, LocalDate.class);
+            if (day != null) versions.add(new long[]{day.toEpochDay(), rs.getLong(3)});
+        }, appId, appId, name, d, v, startDay, endDay);
+
+        List<String> stale = new ArrayList<>();
+        for (long[] entry : versions) {
+            LocalDate day = LocalDate.ofEpochDay(entry[0]);
+            Versioned cached = cached(new SketchKey(appId, name, d, v, day));
+            if (cached != null && cached.version() >= entry[1]) {
+                result.merge(cached.sketch());
+            } else {
+                stale.add(day.toString());
+            }
+        }
+        if (!stale.isEmpty()) {
+            jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(LOAD_SQL);
+                ps.setObject(1, appId);
+                ps.setString(2, name);
+                ps.setString(3, d);
+                ps.setString(4, v);
+                ps.setArray(5, con.createArrayOf("text", stale.toArray()));
+                return ps;
+            }, rs -> {
+                HyperLogLog sketch = HyperLogLog.fromBytes(rs.getBytes(3));
+                store(new SketchKey(appId, name, d, v, rs.getObject(1, LocalDate.class)),
+                        new Versioned(rs.getLong(2), sketch));
+                result.merge(sketch);
+            });
+        }
+        return watermark[0];
+    }
+
+    /**
+     * 合并不限日期的草图
+     *
+     * @return 读取草图时的聚合水位；该键还没有不限日期草图时为 null
+     */
+    private Long mergeTotal(Integer appId, String name, String d, String v, HyperLogLog result) {
+        SketchKey key = new SketchKey(appId, name, d, v, null);
+        Versioned cached = cached(key);
+        long cachedVersion = cached == null ? -1 : cached.version();
+        Long[] watermark = new Long[1];
+        jdbcTemplate.query(TOTAL_SQL, rs -> {
+            long version = rs.getLong(2);
+            if (rs.wasNull()) return;
+            byte[] bytes = rs.getBytes(3);
+            if (bytes == null) {
+                result.merge(cached.sketch());
+            } else {
+                HyperLogLog sketch = HyperLogLog.fromBytes(bytes);
+                store(key, new Versioned(version, sketch));
+                result.merge(sketch);
+            }
+            watermark[0] = rs.getLong(1);
+        }, cachedVersion, appId, appId, name, d, v);
+        return watermark[0];
+    }
+
+    /**
+     * 精确去重计数，草图未启用时使用，参数含义与 {@link #estimate} 相同
+     */
+    public long countExact(Integer appId, LocalDate startDay, LocalDate endDay, String eventName, String dim, String dimValue) {
+        validate(dim, dimValue);
+        List<Object> args = new ArrayList<>();
+        String sql = "select count(*) from (" + tailSql(appId, 0L, startDay, endDay, eventName, dim, dimValue, args) + ") t";
+        Long count = jdbcTemplate.queryForObject(sql, Long.class, args.toArray());
+        return count == null ? 0 : count;
+    }
+
+    private static void validate(String dim, String dimValue) {
+        if (dim != null && !DIMENSIONS.contains(dim)) {
+            throw new BusinessException(ErrorCode.BAD_REQUEST, "维度仅支持 browser|device|os");
+        }
+        if (dim != null && (dimValue == null || dimValue.isEmpty())) {
+            throw new BusinessException(ErrorCode.BAD_REQUEST, "按维度过滤时必须指定取值");
+        }
+    }
+
+    /**
+     * 水位之后、日期范围与过滤条件内的去重用户
+     */
+    static String tailSql(Integer appId, long watermark, LocalDate startDay, LocalDate endDay,
+                          String eventName, String dim, String dimValue, List<Object> args) {
+        StringBuilder sql = new StringBuilder("select distinct e.user_id from event e ")
+                .append("where e.app_id = ? and e.id > ? and e.user_id is not null");
+        args.add(appId);
+        args.add(watermark);
+        if (startDay != null) {
+            sql.append(" and e.event_time >= ?");
+            args.add(startDay.atStartOfDay());
+        }
+        if (endDay != null) {
+            sql.append(" and e.event_time < ?");
+            args.add(endDay.plusDays(1).atStartOfDay());
+        }
+        if (eventName != null) {
+            sql.append(" and e.event_name = ?");
+            args.add(eventName);
+        }
+        if (dim != null) {
+            // dim 已按白名单校验
+            sql.append(" and coalesce(e.").append(dim).append(", 'unknown') = ?");
+            args.add(dimValue);
+        }
+        return sql.toString();
+    }
+
+    /**
+     * 清空内存中的草图缓存；草图表被清空重建后版本号会回退，须同时调用
+     */
+    void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    private Versioned cached(SketchKey key) {
+        synchronized (cache) {
+            return cache.get(key);
+        }
+    }
+
+    private void store(SketchKey key, Versioned value) {
+        synchronized (cache) {
+            Versioned current = cache.get(key);
+            if (current == null || current.version() < value.version()) cache.put(key, value);
+        }
+    }
+
+    private record Versioned(long version, HyperLogLog sketch) {
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.sijiezhong.track.stream;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 单个应用的订阅分组集合、实时指标订阅者及重放缓冲
+ */
+final class AppChannel {
+
+    private final Map<String, SubscriberGroup> groups = new ConcurrentHashMap<>();
+    // 实时指标订阅者，不参与事件分组
+    private final List<StreamSubscriber> metricsSubscribers = new CopyOnWriteArrayList<>();
+    private final ReplayBuffer replay;
+
+    AppChannel(int replayCapacity) {
+        this.replay = new ReplayBuffer(replayCapacity);
+    }
+
+    ReplayBuffer getReplay() {
+        return replay;
+    }
+
+    Iterable<SubscriberGroup> groups() {
+        return groups.values();
+    }
+
+    int groupCount() {
+        return groups.size();
+    }
+
+    List<StreamSubscriber> metricsSubscribers() {
+        return metricsSubscribers;
+    }
+
+    void addMetrics(StreamSubscriber subscriber) {
+        metricsSubscribers.add(subscriber);
+    }
+
+    void add(StreamSubscriber subscriber) {
+        String key = SubscriberGroup.keyOf(subscriber.getFilter(), subscriber.getMode());
+        groups.compute(key, (k, g) -> {
+            SubscriberGroup group = g == null ? new SubscriberGroup(subscriber.getFilter(), subscriber.getMode()) : g;
+            group.getSubscribers().add(subscriber);
+            return group;
+        });
+    }
+
+    void remove(StreamSubscriber subscriber) {
+        if (metricsSubscribers.remove(subscriber)) {
+            return;
+        }
+        String key = SubscriberGroup.keyOf(subscriber.getFilter(), subscriber.getMode());
+        groups.computeIfPresent(key, (k, g) -> {
+            g.getSubscribers().remove(subscriber);
+            return g.isEmpty() ? null : g;
+        });
+    }
+
+    int subscriberCount() {
+        int n = metricsSubscribers.size();
+        for (SubscriberGroup g : groups.values()) n += g.getSubscribers().size();
+        return n;
+    }
+
+    int pendingFrames() {
+        int n = 0;
+        for (StreamSubscriber s : metricsSubscribers) n += s.pending();
+        for (SubscriberGroup g : groups.values()) {
+            for (StreamSubscriber s : g.getSubscribers()) n += s.pending();
+        }
+        return n;
+    }
+
+    long maxHeadAgeNanos(long now) {
+        long max = 0L;
+        for (StreamSubscriber s : metricsSubscribers) max = Math.max(max, s.headAgeNanos(now));
+        for (SubscriberGroup g : groups.values()) {
+            for (StreamSubscriber s : g.getSubscribers()) max = Math.max(max, s.headAgeNanos(now));
+        }
+        return max;
+    }
+}
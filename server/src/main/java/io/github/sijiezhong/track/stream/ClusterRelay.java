@@ -0,0 +1,199 @@
+package io.github.sijiezhong.track.stream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.github.sijiezhong.track.config.SseProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * 跨节点转发：本节点上报的事件按应用攒批发布到总线，收到其他节点的消息后交给本地分发
+ *
+ * <p>消息格式为 {@code {"n":节点ID,"e":[事件...]}}，节点忽略自己发出的消息；
+ * 单条消息受事件数与总线字节上限约束，超出时拆分。
+ *
+ * <p>待发布事件总数受 {@code outboxCapacity} 限制，总线发布变慢时丢弃新事件而不是无限堆积，
+ * 丢弃与超出单条消息上限而未转发的事件分别计数。
+ */
+final class ClusterRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterRelay.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final EventStreamBus bus;
+    private final String nodeId = UUID.randomUUID().toString().substring(0, 8);
+    private final int maxBatchEvents;
+    private final int outboxCapacity;
+    private final Map<Integer, Queue<StreamEvent>> outbox = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Set<Integer> listening = new HashSet<>();
+    private final Counter publishedCounter;
+    private final Counter receivedCounter;
+    private final Counter droppedCounter;
+    private final Counter oversizeCounter;
+
+    ClusterRelay(EventStreamBus bus, SseProperties.Cluster cluster, MeterRegistry meterRegistry) {
+        this.bus = bus;
+        this.maxBatchEvents = Math.max(1, cluster.getMaxBatchEvents());
+        this.outboxCapacity = Math.max(1, cluster.getOutboxCapacity());
+        if (meterRegistry != null) {
+            this.publishedCounter = Counter.builder("track.sse.cluster.messages.published")
+                    .description("Messages published to the SSE cluster bus")
+                    .register(meterRegistry);
+            this.receivedCounter = Counter.builder("track.sse.cluster.messages.received")
+                    .description("Messages received from other nodes on the SSE cluster bus")
+                    .register(meterRegistry);
+            this.droppedCounter = Counter.builder("track.sse.cluster.events.dropped")
+                    .description("Events not relayed to other nodes because the cluster outbox was full")
+                    .register(meterRegistry);
+            this.oversizeCounter = Counter.builder("track.sse.cluster.events.oversize")
+                    .description("Events not relayed to other nodes because they exceed the bus message size limit")
+                    .register(meterRegistry);
+        } else {
+            this.publishedCounter = null;
+            this.receivedCounter = null;
+            this.droppedCounter = null;
+            this.oversizeCounter = null;
+        }
+    }
+
+    /**
+     * 启动总线，remoteHandler 接收其他节点转发来的事件
+     */
+    void start(BiConsumer<Integer, StreamEvent> remoteHandler) {
+        bus.start((appId, message) -> receive(appId, message, remoteHandler));
+    }
+
+    void stop() {
+        bus.stop();
+    }
+
+    /**
+     * 登记待发布事件，由 {@link #flush()} 定期批量发布；待发布事件已满时丢弃并返回 false
+     */
+    boolean offer(int appId, StreamEvent event) {
+        if (pending.incrementAndGet() > outboxCapacity) {
+            pending.decrementAndGet();
+            if (droppedCounter != null) droppedCounter.increment();
+            return false;
+        }
+        outbox.computeIfAbsent(appId, k -> new ConcurrentLinkedQueue<>()).add(event);
+        return true;
+    }
+
+    /**
+     * 当前待发布事件数
+     */
+    int pendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * 本地是否有订阅者变化时调用，只监听有本地订阅者的应用
+     */
+    synchronized void updateListening(int appId, boolean hasLocalSubscribers) {
+        if (hasLocalSubscribers && listening.add(appId)) {
+            bus.listen(appId);
+        } else if (!hasLocalSubscribers && listening.remove(appId)) {
+            bus.unlisten(appId);
+        }
+    }
+
+    void flush() {
+        int maxBytes = bus.maxMessageBytes();
+        for (Map.Entry<Integer, Queue<StreamEvent>> entry : outbox.entrySet()) {
+            Queue<StreamEvent> queue = entry.getValue();
+            if (queue.isEmpty()) continue;
+            List<String> encoded = new ArrayList<>();
+            int bytes = 0;
+            StreamEvent e;
+            while ((e = queue.poll()) != null) {
+                pending.decrementAndGet();
+                String json = encode(e);
+                int size = json.getBytes(StandardCharsets.UTF_8).length + 1;
+                if (size + 32 > maxBytes) {
+                    if (oversizeCounter != null) oversizeCounter.increment();
+                    log.warn("事件超出总线消息上限，跳过跨节点转发: appId={}, id={}", entry.getKey(), e.getId());
+                    continue;
+                }
+                if (!encoded.isEmpty() && (encoded.size() >= maxBatchEvents || bytes + size + 32 > maxBytes)) {
+                    publish(entry.getKey(), encoded);
+                    encoded.clear();
+                    bytes = 0;
+                }
+                encoded.add(json);
+                bytes += size;
+            }
+            if (!encoded.isEmpty()) {
+                publish(entry.getKey(), encoded);
+            }
+        }
+    }
+
+    private void publish(int appId, List<String> events) {
+        String message = "{\"n\":\"" + nodeId + "\",\"e\":[" + String.join(",", events) + "]}";
+        try {
+            bus.publish(appId, message);
+            if (publishedCounter != null) publishedCounter.increment();
+        } catch (RuntimeException ex) {
+            log.warn("发布跨节点推送消息失败: appId={}, events={}", appId, events.size(), ex);
+        }
+    }
+
+    private void receive(int appId, String message, BiConsumer<Integer, StreamEvent> remoteHandler) {
+        try {
+            JsonNode root = MAPPER.readTree(message);
+            if (nodeId.equals(root.path("n").asText())) {
+                return;
+            }
+            if (receivedCounter != null) receivedCounter.increment();
+            for (JsonNode node : root.path("e")) {
+                remoteHandler.accept(appId, decode(node));
+            }
+        } catch (Exception e) {
+            log.warn("解析跨节点推送消息失败: appId={}", appId, e);
+        }
+    }
+
+    static String encode(StreamEvent e) {
+        ObjectNode node = MAPPER.createObjectNode();
+        if (e.getId() != null) node.put("id", e.getId());
+        if (e.getEventName() != null) node.put("eventName", e.getEventName());
+        if (e.getDevice() != null) node.put("device", e.getDevice());
+        if (e.getOs() != null) node.put("os", e.getOs());
+        if (e.getBrowser() != null) node.put("browser", e.getBrowser());
+        if (e.getUserId() != null) node.put("userId", e.getUserId());
+        if (e.getProperties() != null) node.put("properties", e.getProperties());
+        node.put("payload", e.getPayload());
+        return node.toString();
+    }
+
+    static StreamEvent decode(JsonNode node) {
+        return new StreamEvent(
+                node.hasNonNull("id") ? node.get("id").asLong() : null,
+                text(node, "eventName"), text(node, "device"), text(node, "os"), text(node, "browser"),
+                node.hasNonNull("userId") ? node.get("userId").asInt() : null,
+                text(node, "properties"), text(node, "payload"), 0L);
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode v = node.get(field);
+        return v == null || v.isNull() ? null : v.asText();
+    }
+}
@@ -1,47 +1,252 @@
 package io.github.sijiezhong.track.stream;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.github.sijiezhong.track.config.SseProperties;
 import io.github.sijiezhong.track.domain.Event;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
-import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * 事件 SSE 广播器
+ *
+ * <p>上报线程调用 {@link #broadcastEvent} 时只做一次序列化并把帧放入各订阅者的有界队列，
+ * 实际写出由分发线程池完成，因此上报耗时与在线看板数量无关。
+ * 队列满时按 {@link SseProperties.OverflowPolicy} 丢弃最旧消息或断开慢消费者。
+ *
+ * <p>{@link StreamMode#BATCH} 订阅者不逐条接收，事件先进入分组合并缓冲，
+ * 每个合并窗口序列化一次为 {@code events} 数组帧，再共享给组内所有订阅者。
+ *
+ * <p>订阅者按（过滤条件, 推送模式）分组，过滤判定与采样在组级别完成，条件相同的订阅者共享计算。
+ *
+ * <p>每条推送都带 {@code <epoch>-<seq>} 形式的事件ID，epoch 区分广播器实例，seq 为应用内单调序号。
+ * 各应用保留最近若干事件的重放缓冲，客户端携带 Last-Event-ID 重连时从缓冲补发；
+ * 若该ID已被覆盖、来自其他实例或补发量超出队列容量，则推送 {@code gap} 事件，由客户端自行回补。
+ *
+ * <p>配置了 {@link EventStreamBus} 时，本节点上报的事件在本地立即分发，同时按应用攒批发布到总线；
+ * 其他节点转发来的事件走同一分发路径。事件ID由各节点独立分配，重连到其他节点时按 gap 处理。
+ * 总线发布在独立线程上执行，总线变慢不会拖慢合并推送与实时指标。
+ *
+ * <p>分发路径同时累计进程内实时指标（{@link LiveMetricsAggregator}），
+ * 指标订阅者每秒收到一次 {@code metrics} 快照，不查询数据库。
+ */
 @Component
 public class EventStreamBroadcaster {
 
-    private static final long DEFAULT_TIMEOUT_MS = Duration.ofMinutes(30).toMillis();
+    private static final Logger log = LoggerFactory.getLogger(EventStreamBroadcaster.class);
+    private static final long METRICS_INTERVAL_MS = 1000L;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
 
-    private final Map<Integer, List<SseEmitter>> appEmitters = new ConcurrentHashMap<>();
+    private final SseProperties properties;
+    private final MeterRegistry meterRegistry; // 可能为 null（单元测试场景）
+    private final ExecutorService dispatcher;
+    private final ScheduledExecutorService coalescer;
+    private final ClusterRelay relay; // 未配置跨节点总线时为 null
+    private final ScheduledExecutorService relayExecutor; // 未配置跨节点总线时为 null
+
+    private final Map<Integer, AppChannel> channels = new ConcurrentHashMap<>();
     private final Map<Integer, String> lastMessageByApp = new ConcurrentHashMap<>();
+    private final LiveMetricsAggregator liveMetrics = new LiveMetricsAggregator();
+    // 本实例的事件ID前缀，重启后变化，旧ID视为断档
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    private final Counter droppedCounter;
+    private final Counter slowDisconnectCounter;
+    private final Timer dispatchLagTimer;
+
+    public EventStreamBroadcaster() {
+        this(new SseProperties(), null);
+    }
+
+    public EventStreamBroadcaster(SseProperties properties, MeterRegistry meterRegistry) {
+        this(properties, meterRegistry, null);
+    }
+
+    @Autowired
+    public EventStreamBroadcaster(SseProperties properties, MeterRegistry meterRegistry,
+                                  @Autowired(required = false) EventStreamBus bus) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("sse-dispatch-");
+        threadFactory.setDaemon(true);
+        this.dispatcher = Executors.newFixedThreadPool(Math.max(1, properties.getDispatcherThreads()), threadFactory);
+        CustomizableThreadFactory coalesceThreadFactory = new CustomizableThreadFactory("sse-coalesce-");
+        coalesceThreadFactory.setDaemon(true);
+        this.coalescer = Executors.newSingleThreadScheduledExecutor(coalesceThreadFactory);
+        long windowMs = Math.max(1L, properties.getCoalesceWindowMs());
+        this.coalescer.scheduleAtFixedRate(this::flushCoalesced, windowMs, windowMs, TimeUnit.MILLISECONDS);
+        this.coalescer.scheduleAtFixedRate(this::publishMetrics, METRICS_INTERVAL_MS, METRICS_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        if (bus != null) {
+            this.relay = new ClusterRelay(bus, properties.getCluster(), meterRegistry);
+            this.relay.start(this::deliver);
+            CustomizableThreadFactory relayThreadFactory = new CustomizableThreadFactory("sse-relay-");
+            relayThreadFactory.setDaemon(true);
+            this.relayExecutor = Executors.newSingleThreadScheduledExecutor(relayThreadFactory);
+            long flushMs = Math.max(1L, properties.getCluster().getFlushIntervalMs());
+            this.relayExecutor.scheduleWithFixedDelay(this::flushRelay, flushMs, flushMs, TimeUnit.MILLISECONDS);
+        } else {
+            this.relay = null;
+            this.relayExecutor = null;
+        }
+        if (meterRegistry != null) {
+            this.droppedCounter = Counter.builder("track.sse.frames.dropped")
+                    .description("SSE frames dropped because a subscriber queue was full")
+                    .register(meterRegistry);
+            this.slowDisconnectCounter = Counter.builder("track.sse.slow.disconnects")
+                    .description("SSE subscribers disconnected because their queue was full")
+                    .register(meterRegistry);
+            this.dispatchLagTimer = Timer.builder("track.sse.dispatch.lag")
+                    .description("Time from enqueue to write for SSE frames")
+                    .register(meterRegistry);
+        } else {
+            this.droppedCounter = null;
+            this.slowDisconnectCounter = null;
+            this.dispatchLagTimer = null;
+        }
+    }
 
     public SseEmitter subscribe(int appId) {
-        SseEmitter emitter = new SseEmitter(DEFAULT_TIMEOUT_MS);
-        appEmitters.computeIfAbsent(appId, k -> new CopyOnWriteArrayList<>()).add(emitter);
-        emitter.onCompletion(() -> removeEmitter(appId, emitter));
-        emitter.onTimeout(() -> removeEmitter(appId, emitter));
-        emitter.onError(e -> removeEmitter(appId, emitter));
+        return subscribe(appId, StreamMode.RAW);
+    }
+
+    public SseEmitter subscribe(int appId, StreamMode mode) {
+        return subscribe(appId, mode, StreamFilter.none());
+    }
+
+    public SseEmitter subscribe(int appId, StreamMode mode, StreamFilter filter) {
+        return subscribe(appId, mode, filter, (String) null);
+    }
+
+    /**
+     * 订阅事件流，lastEventId 非空时先补发该ID之后的事件
+     */
+    public SseEmitter subscribe(int appId, StreamMode mode, StreamFilter filter, String lastEventId) {
+        return subscribe(appId, mode, filter, lastEventId, new SseEmitter(properties.getTimeoutMs()));
+    }
+
+    SseEmitter subscribe(int appId, SseEmitter emitter) {
+        return subscribe(appId, StreamMode.RAW, StreamFilter.none(), emitter);
+    }
+
+    SseEmitter subscribe(int appId, StreamMode mode, SseEmitter emitter) {
+        return subscribe(appId, mode, StreamFilter.none(), emitter);
+    }
+
+    SseEmitter subscribe(int appId, StreamMode mode, StreamFilter filter, SseEmitter emitter) {
+        return subscribe(appId, mode, filter, null, emitter);
+    }
+
+    SseEmitter subscribe(int appId, StreamMode mode, StreamFilter filter, String lastEventId, SseEmitter emitter) {
+        StreamSubscriber subscriber = new StreamSubscriber(appId, mode, filter, emitter, properties.getQueueCapacity());
+        emitter.onCompletion(() -> removeSubscriber(subscriber));
+        emitter.onTimeout(() -> removeSubscriber(subscriber));
+        emitter.onError(e -> removeSubscriber(subscriber));
+        try {
+            emitter.send(SseEmitter.event().name("init").data("ok"));
+        } catch (IOException ignored) {
+        }
+        AppChannel channel = channelOf(appId);
+        // 与 deliver 的序号分配互斥：补发内容先于任何实时消息入队，且两者不重叠
+        synchronized (channel.getReplay()) {
+            if (lastEventId != null && !lastEventId.isBlank()) {
+                resume(subscriber, channel.getReplay(), lastEventId.trim());
+            }
+            if (!subscriber.isClosed()) {
+                channel.add(subscriber);
+            }
+        }
+        if (relay != null) {
+            relay.updateListening(appId, channel.subscriberCount() > 0);
+        }
+        return emitter;
+    }
+
+    /**
+     * 订阅应用的实时指标，每秒推送一次 metrics 快照
+     */
+    public SseEmitter subscribeMetrics(int appId) {
+        return subscribeMetrics(appId, new SseEmitter(properties.getTimeoutMs()));
+    }
+
+    SseEmitter subscribeMetrics(int appId, SseEmitter emitter) {
+        // 快照每秒覆盖一次，积压意义不大，队列保持很小
+        StreamSubscriber subscriber = new StreamSubscriber(appId, StreamMode.RAW, StreamFilter.none(), emitter, 4);
+        emitter.onCompletion(() -> removeSubscriber(subscriber));
+        emitter.onTimeout(() -> removeSubscriber(subscriber));
+        emitter.onError(e -> removeSubscriber(subscriber));
         try {
             emitter.send(SseEmitter.event().name("init").data("ok"));
         } catch (IOException ignored) {
         }
+        AppChannel channel = channelOf(appId);
+        channel.addMetrics(subscriber);
+        if (relay != null) {
+            relay.updateListening(appId, true);
+        }
         return emitter;
     }
 
     public void broadcastEvent(Integer appId, Event event) {
         if (appId == null) return;
-        String payload = toPayload(event);
-        lastMessageByApp.put(appId, payload);
-        List<SseEmitter> emitters = appEmitters.getOrDefault(appId, List.of());
-        for (SseEmitter emitter : emitters) {
-            try {
-                emitter.send(SseEmitter.event().name("event").data(payload));
-            } catch (IOException e) {
-                removeEmitter(appId, emitter);
+        StreamEvent streamEvent = StreamEvent.from(event);
+        if (relay != null) {
+            relay.offer(appId, streamEvent);
+        }
+        deliver(appId, streamEvent);
+    }
+
+    /**
+     * 分发到本节点订阅者：本地上报与其他节点转发的事件共用
+     */
+    private void deliver(int appId, StreamEvent streamEvent) {
+        lastMessageByApp.put(appId, streamEvent.getPayload());
+        liveMetrics.record(appId, streamEvent, System.currentTimeMillis());
+        AppChannel channel = channels.get(appId);
+        if (channel == null) {
+            return;
+        }
+        // 序号分配与入队在同一把通道锁内完成，并发上报时各订阅者队列与合并缓冲中的顺序与序号一致
+        synchronized (channel.getReplay()) {
+            streamEvent = channel.getReplay().append(streamEvent);
+            long seq = streamEvent.getSeq();
+            SseFrame frame = null;
+            for (SubscriberGroup group : channel.groups()) {
+                if (group.isEmpty() || !group.getFilter().matches(streamEvent)) {
+                    continue;
+                }
+                if (group.getMode() == StreamMode.BATCH) {
+                    group.getCoalesceBuffer().add(streamEvent);
+                    continue;
+                }
+                if (frame == null) {
+                    frame = SseFrame.of("event", eventId(seq), streamEvent.getPayload());
+                }
+                for (StreamSubscriber subscriber : group.getSubscribers()) {
+                    if (seq > subscriber.getResumedThrough()) {
+                        enqueue(subscriber, frame);
+                    }
+                }
             }
         }
     }
@@ -50,23 +255,270 @@ public class EventStreamBroadcaster {
         return lastMessageByApp.get(appId);
     }
 
-    private void removeEmitter(Integer appId, SseEmitter emitter) {
-        List<SseEmitter> list = appEmitters.get(appId);
-        if (list != null) {
-            list.remove(emitter);
+    /**
+     * 当前应用的在线订阅数
+     */
+    public int getSubscriberCount(Integer appId) {
+        AppChannel channel = channels.get(appId);
+        return channel == null ? 0 : channel.subscriberCount();
+    }
+
+    /**
+     * 当前应用的订阅分组数（条件相同的订阅者共享一个分组）
+     */
+    int getGroupCount(Integer appId) {
+        AppChannel channel = channels.get(appId);
+        return channel == null ? 0 : channel.groupCount();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        coalescer.shutdownNow();
+        if (relay != null) {
+            relayExecutor.shutdownNow();
+            relay.flush();
+            relay.stop();
+        }
+        dispatcher.shutdown();
+        try {
+            if (!dispatcher.awaitTermination(2, TimeUnit.SECONDS)) {
+                dispatcher.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            dispatcher.shutdownNow();
+            Thread.currentThread().interrupt();
         }
     }
 
-    private String toPayload(Event e) {
-        String name = e.getEventName();
-        Long id = e.getId();
-        String t = e.getEventTime() == null ? null : e.getEventTime().toString();
-        return "{" +
-                "\"id\":" + id + "," +
-                "\"eventName\":\"" + (name == null ? "" : name) + "\"," +
-                "\"eventTime\":\"" + (t == null ? "" : t) + "\"" +
-                "}";
+    /**
+     * 合并窗口到期：每个分组的缓冲只序列化一次，共享给组内所有订阅者
+     */
+    void flushCoalesced() {
+        try {
+            int max = Math.max(1, properties.getCoalesceMaxEvents());
+            for (AppChannel channel : channels.values()) {
+                for (SubscriberGroup group : channel.groups()) {
+                    if (group.getMode() != StreamMode.BATCH) continue;
+                    Queue<StreamEvent> buffer = group.getCoalesceBuffer();
+                    List<StreamEvent> chunk = new ArrayList<>();
+                    StreamEvent e;
+                    while ((e = buffer.poll()) != null) {
+                        chunk.add(e);
+                        if (chunk.size() >= max || buffer.isEmpty()) {
+                            long lastSeq = chunk.get(chunk.size() - 1).getSeq();
+                            SseFrame frame = batchFrame(chunk);
+                            chunk.clear();
+                            for (StreamSubscriber subscriber : group.getSubscribers()) {
+                                // 补发已覆盖整帧时跳过；部分重叠时客户端可按事件 id 去重
+                                if (lastSeq > subscriber.getResumedThrough()) {
+                                    enqueue(subscriber, frame);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            // 定时任务抛出异常会被取消，这里兜底记录
+            log.warn("SSE合并推送失败", e);
+        }
+    }
+
+    /**
+     * 按 Last-Event-ID 补发缓冲中的事件，无法补发时推送 gap 事件
+     */
+    private void resume(StreamSubscriber subscriber, ReplayBuffer replay, String lastEventId) {
+        long current = replay.lastSeq();
+        subscriber.setResumedThrough(current);
+        long after = parseSeq(lastEventId);
+        List<StreamEvent> missed = after < 0 ? null : replay.since(after);
+        List<StreamEvent> matched = new ArrayList<>();
+        if (missed != null) {
+            for (StreamEvent e : missed) {
+                if (subscriber.getFilter().matches(e)) matched.add(e);
+            }
+        }
+        int max = Math.max(1, properties.getCoalesceMaxEvents());
+        int frames = subscriber.getMode() == StreamMode.BATCH ? (matched.size() + max - 1) / max : matched.size();
+        if (missed == null || frames > properties.getQueueCapacity()) {
+            // Last-Event-ID 来自客户端，交给 Jackson 转义
+            ObjectNode payload = MAPPER.createObjectNode();
+            payload.put("lastEventId", lastEventId);
+            payload.put("currentEventId", eventId(current));
+            enqueue(subscriber, SseFrame.of("gap", eventId(current), payload.toString()));
+            return;
+        }
+        if (subscriber.getMode() == StreamMode.BATCH) {
+            for (int i = 0; i < matched.size(); i += max) {
+                enqueue(subscriber, batchFrame(matched.subList(i, Math.min(matched.size(), i + max))));
+            }
+        } else {
+            for (StreamEvent e : matched) {
+                enqueue(subscriber, SseFrame.of("event", eventId(e.getSeq()), e.getPayload()));
+            }
+        }
+    }
+
+    private SseFrame batchFrame(List<StreamEvent> events) {
+        StringBuilder sb = new StringBuilder(events.size() * 96).append('[');
+        for (int i = 0; i < events.size(); i++) {
+            if (i > 0) sb.append(',');
+            sb.append(events.get(i).getPayload());
+        }
+        sb.append(']');
+        return SseFrame.of("events", eventId(events.get(events.size() - 1).getSeq()), sb.toString());
+    }
+
+    private String eventId(long seq) {
+        return epoch + "-" + seq;
+    }
+
+    /**
+     * 解析本实例签发的事件ID，格式错误或来自其他实例时返回 -1
+     */
+    private long parseSeq(String lastEventId) {
+        int idx = lastEventId.lastIndexOf('-');
+        if (idx <= 0 || !epoch.equals(lastEventId.substring(0, idx))) {
+            return -1L;
+        }
+        try {
+            return Long.parseLong(lastEventId.substring(idx + 1));
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * 每秒为有指标订阅者的应用生成一次快照，同一应用的订阅者共享同一帧
+     */
+    void publishMetrics() {
+        try {
+            long now = System.currentTimeMillis();
+            liveMetrics.prune(now);
+            for (Map.Entry<Integer, AppChannel> entry : channels.entrySet()) {
+                List<StreamSubscriber> subscribers = entry.getValue().metricsSubscribers();
+                if (subscribers.isEmpty()) continue;
+                SseFrame frame = SseFrame.of("metrics", liveMetrics.snapshot(entry.getKey(), now));
+                for (StreamSubscriber subscriber : subscribers) {
+                    enqueue(subscriber, frame);
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("SSE实时指标推送失败", e);
+        }
+    }
+
+    private void flushRelay() {
+        try {
+            relay.flush();
+        } catch (RuntimeException e) {
+            log.warn("SSE跨节点发布失败", e);
+        }
+    }
+
+    private AppChannel channelOf(int appId) {
+        return channels.computeIfAbsent(appId, k -> {
+            AppChannel channel = new AppChannel(properties.getReplayBufferSize());
+            registerAppGauges(k, channel);
+            return channel;
+        });
+    }
+
+    private void registerAppGauges(int appId, AppChannel channel) {
+        if (meterRegistry == null) return;
+        String tag = String.valueOf(appId);
+        Gauge.builder("track.sse.connections", channel, AppChannel::subscriberCount)
+                .description("Open SSE connections per app")
+                .tag("appId", tag)
+                .register(meterRegistry);
+        Gauge.builder("track.sse.queue.depth", channel, AppChannel::pendingFrames)
+                .description("Frames waiting in SSE subscriber queues per app")
+                .tag("appId", tag)
+                .register(meterRegistry);
+        Gauge.builder("track.sse.queue.lag", channel, c -> c.maxHeadAgeNanos(System.nanoTime()) / 1_000_000_000.0)
+                .description("Age of the oldest undelivered SSE frame per app")
+                .baseUnit("seconds")
+                .tag("appId", tag)
+                .register(meterRegistry);
+    }
+
+    private void enqueue(StreamSubscriber subscriber, SseFrame frame) {
+        if (subscriber.isClosed()) return;
+        if (!subscriber.offer(frame)) {
+            if (properties.getOverflowPolicy() == SseProperties.OverflowPolicy.DISCONNECT) {
+                if (slowDisconnectCounter != null) slowDisconnectCounter.increment();
+                log.debug("SSE订阅者队列已满，断开慢消费者: appId={}", subscriber.getAppId());
+                disconnect(subscriber);
+                return;
+            }
+            // DROP_OLDEST：腾出空间后重试，期间分发线程也可能在消费
+            while (!subscriber.offer(frame)) {
+                if (subscriber.poll() != null && droppedCounter != null) {
+                    droppedCounter.increment();
+                }
+            }
+        }
+        schedule(subscriber);
     }
-}
 
+    private void schedule(StreamSubscriber subscriber) {
+        if (!subscriber.tryMarkScheduled()) return;
+        try {
+            dispatcher.execute(() -> drain(subscriber));
+        } catch (RejectedExecutionException e) {
+            // 正在关闭
+            subscriber.clearScheduled();
+        }
+    }
 
+    private void drain(StreamSubscriber subscriber) {
+        try {
+            int budget = Math.max(1, properties.getDrainBatch());
+            SseFrame frame;
+            while (budget-- > 0 && !subscriber.isClosed() && (frame = subscriber.poll()) != null) {
+                try {
+                    subscriber.getEmitter().send(frame.data());
+                } catch (IOException | IllegalStateException e) {
+                    removeSubscriber(subscriber);
+                    return;
+                }
+                if (dispatchLagTimer != null) {
+                    dispatchLagTimer.record(System.nanoTime() - frame.createdNanos(), TimeUnit.NANOSECONDS);
+                }
+            }
+        } finally {
+            subscriber.clearScheduled();
+            if (!subscriber.isClosed() && subscriber.pending() > 0) {
+                schedule(subscriber);
+            }
+        }
+    }
+
+    /**
+     * 断开订阅者。complete() 与 send() 共用发射器锁，
+     * 因此交给分发线程执行，避免上报线程被正在写慢连接的线程阻塞。
+     */
+    private void disconnect(StreamSubscriber subscriber) {
+        if (!subscriber.close()) return;
+        detach(subscriber);
+        try {
+            dispatcher.execute(() -> subscriber.getEmitter().complete());
+        } catch (RejectedExecutionException ignored) {
+        }
+    }
+
+    private void removeSubscriber(StreamSubscriber subscriber) {
+        subscriber.close();
+        detach(subscriber);
+    }
+
+    private void detach(StreamSubscriber subscriber) {
+        AppChannel channel = channels.get(subscriber.getAppId());
+        if (channel != null) {
+            channel.remove(subscriber);
+            if (relay != null) {
+                relay.updateListening(subscriber.getAppId(), channel.subscriberCount() > 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package io.github.sijiezhong.track.stream;
+
+import java.util.function.BiConsumer;
+
+/**
+ * 跨节点事件推送总线
+ *
+ * <p>每个应用对应一个频道；节点只监听有本地订阅者的应用频道。
+ * 消息内容由 {@link EventStreamBroadcaster} 编码，总线只负责按频道收发文本。
+ */
+public interface EventStreamBus {
+
+    /**
+     * 注册消息回调，参数为应用ID与消息内容；回调在总线自身的线程上执行，须快速返回
+     */
+    void start(BiConsumer<Integer, String> handler);
+
+    /**
+     * 向应用频道发布一条消息
+     */
+    void publish(int appId, String message);
+
+    /**
+     * 开始监听应用频道
+     */
+    void listen(int appId);
+
+    /**
+     * 停止监听应用频道
+     */
+    void unlisten(int appId);
+
+    /**
+     * 单条消息的最大字节数，超出时由调用方拆分
+     */
+    int maxMessageBytes();
+
+    void stop();
+}
@@ -0,0 +1,129 @@
+package io.github.sijiezhong.track.stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 进程内实时指标聚合
+ *
+ * <p>从推送分发路径增量累计，不查询数据库：每个应用维护最近61个秒级桶（60个完整秒加上正在累计的当前秒），
+ * 桶内用 {@link LongAdder} 分段计数，写入无锁；秒级桶按时间戳惰性轮换。
+ * 活跃用户记录最近一次出现时间，快照时清理一分钟前的记录。
+ */
+final class LiveMetricsAggregator {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    // 分钟窗口包含的完整秒数；环形缓冲多留一个桶给当前秒，写入当前秒不会覆盖窗口内最早的一秒
+    private static final int WINDOW_SECONDS = 60;
+    private static final int SECONDS = WINDOW_SECONDS + 1;
+    private static final long ACTIVE_WINDOW_MS = 60_000L;
+
+    private final Map<Integer, AppMetrics> apps = new ConcurrentHashMap<>();
+
+    void record(int appId, StreamEvent event, long nowMillis) {
+        apps.computeIfAbsent(appId, k -> new AppMetrics()).record(event, nowMillis);
+    }
+
+    /**
+     * 生成应用的指标快照（JSON）
+     *
+     * <p>second 为上一个完整秒，minute 为截至上一个完整秒的最近60个完整秒（滑动窗口，每秒前移一秒，
+     * 不在自然分钟边界清零），activeUsers 为最近一分钟内出现过的去重用户数。
+     */
+    String snapshot(int appId, long nowMillis) {
+        AppMetrics m = apps.get(appId);
+        long currentSec = nowMillis / 1000;
+        long lastSec = currentSec - 1;
+        long minuteStart = currentSec - WINDOW_SECONDS;
+        long secondTotal = 0;
+        Map<String, Long> secondByName = new HashMap<>();
+        long minuteTotal = 0;
+        Map<String, Long> minuteByName = new HashMap<>();
+        int activeUsers = 0;
+        if (m != null) {
+            for (int i = 0; i < SECONDS; i++) {
+                Bucket b = m.buckets.get(i);
+                if (b == null || b.second >= currentSec || b.second < minuteStart) continue;
+                long total = b.total.sum();
+                if (b.second == lastSec) {
+                    secondTotal = total;
+                    b.byName.forEach((k, v) -> secondByName.put(k, v.sum()));
+                }
+                minuteTotal += total;
+                b.byName.forEach((k, v) -> minuteByName.merge(k, v.sum(), Long::sum));
+            }
+            long cutoff = nowMillis - ACTIVE_WINDOW_MS;
+            m.activeUsers.values().removeIf(t -> t < cutoff);
+            activeUsers = m.activeUsers.size();
+        }
+        ObjectNode root = MAPPER.createObjectNode();
+        root.put("appId", appId);
+        root.put("ts", Instant.ofEpochMilli(nowMillis).toString());
+        root.put("eventsPerSecond", secondTotal);
+        ObjectNode second = root.putObject("second");
+        second.put("start", Instant.ofEpochSecond(lastSec).toString());
+        second.put("total", secondTotal);
+        ObjectNode secondNames = second.putObject("byEventName");
+        secondByName.forEach(secondNames::put);
+        ObjectNode minute = root.putObject("minute");
+        minute.put("start", Instant.ofEpochSecond(minuteStart).toString());
+        minute.put("total", minuteTotal);
+        ObjectNode minuteNames = minute.putObject("byEventName");
+        minuteByName.forEach(minuteNames::put);
+        root.put("activeUsers", activeUsers);
+        return root.toString();
+    }
+
+    /**
+     * 清理各应用过期的活跃用户记录，避免无人订阅指标的应用持续累积
+     */
+    void prune(long nowMillis) {
+        long cutoff = nowMillis - ACTIVE_WINDOW_MS;
+        for (AppMetrics m : apps.values()) {
+            m.activeUsers.values().removeIf(t -> t < cutoff);
+        }
+    }
+
+    private static final class AppMetrics {
+        private final AtomicReferenceArray<Bucket> buckets = new AtomicReferenceArray<>(SECONDS);
+        private final Map<Integer, Long> activeUsers = new ConcurrentHashMap<>();
+
+        void record(StreamEvent event, long nowMillis) {
+            Bucket b = bucketFor(nowMillis / 1000);
+            b.total.increment();
+            String name = event.getEventName() == null ? "" : event.getEventName();
+            b.byName.computeIfAbsent(name, k -> new LongAdder()).increment();
+            if (event.getUserId() != null) {
+                activeUsers.put(event.getUserId(), nowMillis);
+            }
+        }
+
+        private Bucket bucketFor(long second) {
+            int idx = (int) (second % SECONDS);
+            while (true) {
+                Bucket b = buckets.get(idx);
+                if (b != null && b.second == second) return b;
+                if (b != null && b.second > second) return b; // 时钟回拨时计入较新的桶
+                Bucket fresh = new Bucket(second);
+                if (buckets.compareAndSet(idx, b, fresh)) return fresh;
+            }
+        }
+    }
+
+    private static final class Bucket {
+        private final long second;
+        private final LongAdder total = new LongAdder();
+        private final Map<String, LongAdder> byName = new ConcurrentHashMap<>();
+
+        Bucket(long second) {
+            this.second = second;
+        }
+    }
+}
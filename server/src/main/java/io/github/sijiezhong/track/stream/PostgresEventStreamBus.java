@@ -0,0 +1,155 @@
+package io.github.sijiezhong.track.stream;
+
+import io.github.sijiezhong.track.config.SseProperties;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BiConsumer;
+
+/**
+ * 基于 PostgreSQL LISTEN/NOTIFY 的跨节点推送总线
+ * 仅在 sse.cluster.bus=postgres 时创建
+ *
+ * <p>监听使用一条独立于连接池的长连接，由单个后台线程轮询通知并执行 LISTEN/UNLISTEN；
+ * 连接断开后自动重连并恢复监听。发布走连接池，通过 pg_notify 发送。
+ * NOTIFY 负载上限约 8000 字节，超出部分由调用方拆分。
+ */
+@Component
+@ConditionalOnProperty(prefix = "sse.cluster", name = "bus", havingValue = "postgres")
+public class PostgresEventStreamBus implements EventStreamBus {
+
+    private static final Logger log = LoggerFactory.getLogger(PostgresEventStreamBus.class);
+
+    // NOTIFY 负载上限为 8000 字节，预留余量
+    private static final int MAX_MESSAGE_BYTES = 7900;
+    private static final int POLL_TIMEOUT_MS = 500;
+    private static final long RECONNECT_DELAY_MS = 2000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSourceProperties dataSourceProperties;
+    private final String prefix;
+    // 期望监听的应用；监听线程据此在重连后恢复
+    private final Set<Integer> listening = ConcurrentHashMap.newKeySet();
+    // 待在监听连接上执行的命令，JDBC 连接不是线程安全的，只能由监听线程使用
+    private final ConcurrentLinkedQueue<String> pendingCommands = new ConcurrentLinkedQueue<>();
+    private volatile BiConsumer<Integer, String> handler;
+    private volatile boolean running;
+    private Thread listenerThread;
+
+    public PostgresEventStreamBus(JdbcTemplate jdbcTemplate, DataSourceProperties dataSourceProperties, SseProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSourceProperties = dataSourceProperties;
+        // 未加引号的频道名会被折叠为小写，这里统一小写保证 LISTEN 与 pg_notify 一致
+        this.prefix = properties.getCluster().getChannelPrefix().toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public synchronized void start(BiConsumer<Integer, String> handler) {
+        this.handler = handler;
+        this.running = true;
+        this.listenerThread = new Thread(this::listenLoop, "sse-pg-listen");
+        this.listenerThread.setDaemon(true);
+        this.listenerThread.start();
+    }
+
+    @Override
+    public void publish(int appId, String message) {
+        jdbcTemplate.queryForObject("select pg_notify(?, ?)", Object.class, channel(appId), message);
+    }
+
+    @Override
+    public void listen(int appId) {
+        if (listening.add(appId)) {
+            pendingCommands.add("LISTEN " + channel(appId));
+        }
+    }
+
+    @Override
+    public void unlisten(int appId) {
+        if (listening.remove(appId)) {
+            pendingCommands.add("UNLISTEN " + channel(appId));
+        }
+    }
+
+    @Override
+    public int maxMessageBytes() {
+        return MAX_MESSAGE_BYTES;
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+    }
+
+    private String channel(int appId) {
+        // 频道名只含前缀与数字，可直接拼入 LISTEN 语句
+        return prefix + appId;
+    }
+
+    private void listenLoop() {
+        while (running) {
+            try (Connection conn = DriverManager.getConnection(dataSourceProperties.determineUrl(),
+                    dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword())) {
+                conn.setAutoCommit(true);
+                PGConnection pg = conn.unwrap(PGConnection.class);
+                pendingCommands.clear();
+                try (Statement st = conn.createStatement()) {
+                    for (Integer appId : listening) {
+                        st.execute("LISTEN " + channel(appId));
+                    }
+                }
+                while (running) {
+                    String cmd;
+                    while ((cmd = pendingCommands.poll()) != null) {
+                        try (Statement st = conn.createStatement()) {
+                            st.execute(cmd);
+                        }
+                    }
+                    PGNotification[] notifications = pg.getNotifications(POLL_TIMEOUT_MS);
+                    if (notifications == null) continue;
+                    for (PGNotification n : notifications) {
+                        dispatch(n);
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) break;
+                log.warn("PostgreSQL 推送总线连接异常，{}ms 后重连: {}", RECONNECT_DELAY_MS, e.getMessage());
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    private void dispatch(PGNotification n) {
+        BiConsumer<Integer, String> h = handler;
+        String name = n.getName();
+        if (h == null || name == null || !name.startsWith(prefix)) return;
+        try {
+            h.accept(Integer.parseInt(name.substring(prefix.length())), n.getParameter());
+        } catch (NumberFormatException ignored) {
+        } catch (RuntimeException e) {
+            log.warn("处理推送总线消息失败: channel={}", name, e);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package io.github.sijiezhong.track.stream;
+
+import io.github.sijiezhong.track.config.SseProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.BiConsumer;
+
+/**
+ * 基于 Redis pub/sub 的跨节点推送总线
+ * 仅在 sse.cluster.bus=redis 时创建
+ */
+@Component
+@ConditionalOnProperty(prefix = "sse.cluster", name = "bus", havingValue = "redis")
+public class RedisEventStreamBus implements EventStreamBus, MessageListener {
+
+    // 单条消息上限，远小于 Redis 限制，避免大消息阻塞订阅连接
+    private static final int MAX_MESSAGE_BYTES = 256 * 1024;
+
+    private final StringRedisTemplate redis;
+    private final RedisMessageListenerContainer container;
+    private final String prefix;
+    private volatile BiConsumer<Integer, String> handler;
+
+    public RedisEventStreamBus(StringRedisTemplate redis, RedisConnectionFactory connectionFactory, SseProperties properties) {
+        this.redis = redis;
+        this.prefix = properties.getCluster().getChannelPrefix();
+        this.container = new RedisMessageListenerContainer();
+        this.container.setConnectionFactory(connectionFactory);
+    }
+
+    @Override
+    public void start(BiConsumer<Integer, String> handler) {
+        this.handler = handler;
+        container.afterPropertiesSet();
+        container.start();
+    }
+
+    @Override
+    public void publish(int appId, String message) {
+        redis.convertAndSend(prefix + appId, message);
+    }
+
+    @Override
+    public void listen(int appId) {
+        container.addMessageListener(this, new ChannelTopic(prefix + appId));
+    }
+
+    @Override
+    public void unlisten(int appId) {
+        container.removeMessageListener(this, new ChannelTopic(prefix + appId));
+    }
+
+    @Override
+    public int maxMessageBytes() {
+        return MAX_MESSAGE_BYTES;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        BiConsumer<Integer, String> h = handler;
+        if (h == null) return;
+        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+        if (!channel.startsWith(prefix)) return;
+        try {
+            int appId = Integer.parseInt(channel.substring(prefix.length()));
+            h.accept(appId, new String(message.getBody(), StandardCharsets.UTF_8));
+        } catch (NumberFormatException ignored) {
+        }
+    }
+
+    @Override
+    public void stop() {
+        try {
+            container.stop();
+            container.destroy();
+        } catch (Exception ignored) {
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package io.github.sijiezhong.track.stream;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 单个应用的推送重放环形缓冲
+ *
+ * <p>为每个推送事件分配应用内单调递增的序号，并保留最近 capacity 个事件，
+ * 供断线重连的客户端按 Last-Event-ID 补发。容量为0时只分配序号、不保留事件。
+ */
+final class ReplayBuffer {
+
+    private final StreamEvent[] ring;
+    private long lastSeq;
+
+    ReplayBuffer(int capacity) {
+        this.ring = new StreamEvent[Math.max(0, capacity)];
+    }
+
+    /**
+     * 分配序号并写入缓冲
+     *
+     * @return 带序号的事件视图
+     */
+    synchronized StreamEvent append(StreamEvent event) {
+        StreamEvent sequenced = event.withSeq(++lastSeq);
+        if (ring.length > 0) {
+            ring[(int) (lastSeq % ring.length)] = sequenced;
+        }
+        return sequenced;
+    }
+
+    synchronized long lastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * 读取序号大于 after 的全部事件
+     *
+     * @return 按序号升序的事件；若其中一部分已被覆盖则返回 null
+     */
+    synchronized List<StreamEvent> since(long after) {
+        if (after >= lastSeq) {
+            return List.of();
+        }
+        long oldest = Math.max(1L, lastSeq - ring.length + 1);
+        if (after + 1 < oldest || ring.length == 0) {
+            return null;
+        }
+        List<StreamEvent> out = new ArrayList<>((int) (lastSeq - after));
+        for (long seq = after + 1; seq <= lastSeq; seq++) {
+            out.add(ring[(int) (seq % ring.length)]);
+        }
+        return out;
+    }
+}
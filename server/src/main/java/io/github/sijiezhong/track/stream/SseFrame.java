@@ -0,0 +1,39 @@
+package io.github.sijiezhong.track.stream;
+
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Set;
+
+/**
+ * 已构建好的 SSE 帧
+ *
+ * <p>帧内容只构建一次，所有订阅者共享同一实例入队；
+ * createdNanos 用于统计从入队到写出的延迟。
+ */
+final class SseFrame {
+
+    private final Set<ResponseBodyEmitter.DataWithMediaType> data;
+    private final long createdNanos;
+
+    private SseFrame(Set<ResponseBodyEmitter.DataWithMediaType> data) {
+        this.data = data;
+        this.createdNanos = System.nanoTime();
+    }
+
+    static SseFrame of(String name, String payload) {
+        return new SseFrame(SseEmitter.event().name(name).data(payload).build());
+    }
+
+    static SseFrame of(String name, String id, String payload) {
+        return new SseFrame(SseEmitter.event().id(id).name(name).data(payload).build());
+    }
+
+    Set<ResponseBodyEmitter.DataWithMediaType> data() {
+        return data;
+    }
+
+    long createdNanos() {
+        return createdNanos;
+    }
+}
@@ -0,0 +1,97 @@
+package io.github.sijiezhong.track.stream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.sijiezhong.track.domain.Event;
+
+/**
+ * 广播用的事件视图
+ *
+ * <p>保存过滤所需的字段和已序列化的推送内容；properties 仅在有属性过滤时解析，且每个事件最多解析一次。
+ * seq 是应用内单调递增的推送序号，进入重放缓冲时分配，未分配时为0。
+ */
+final class StreamEvent {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Object UNPARSED = new Object();
+
+    private final Long id;
+    private final String eventName;
+    private final String device;
+    private final String os;
+    private final String browser;
+    private final Integer userId;
+    private final String properties;
+    private final String payload;
+    private final long seq;
+    // 重放时可能被订阅线程与上报线程同时读取，用 volatile 保证看到完整的解析结果
+    private volatile Object parsedProperties = UNPARSED;
+
+    StreamEvent(Long id, String eventName, String device, String os, String browser, Integer userId,
+                String properties, String payload, long seq) {
+        this.id = id;
+        this.eventName = eventName;
+        this.device = device;
+        this.os = os;
+        this.browser = browser;
+        this.userId = userId;
+        this.properties = properties;
+        this.payload = payload;
+        this.seq = seq;
+    }
+
+    static StreamEvent from(Event e) {
+        StreamEvent view = new StreamEvent(e.getId(), e.getEventName(), e.getDevice(), e.getOs(), e.getBrowser(),
+                e.getUserId(), e.getProperties(), toPayload(e), 0L);
+        // 实体中已是解析好的节点，不必再从文本解析
+        view.parsedProperties = e.getPropertiesNode();
+        return view;
+    }
+
+    /**
+     * 复制一份带推送序号的视图，序列化内容共享
+     */
+    StreamEvent withSeq(long seq) {
+        return new StreamEvent(id, eventName, device, os, browser, userId, properties, payload, seq);
+    }
+
+    Long getId() { return id; }
+    String getEventName() { return eventName; }
+    String getDevice() { return device; }
+    String getOs() { return os; }
+    String getBrowser() { return browser; }
+    Integer getUserId() { return userId; }
+    String getProperties() { return properties; }
+    String getPayload() { return payload; }
+    long getSeq() { return seq; }
+
+    /**
+     * 解析后的 properties，无法解析或为空时返回 null
+     */
+    JsonNode getPropertiesNode() {
+        Object parsed = parsedProperties;
+        if (parsed == UNPARSED) {
+            parsed = null;
+            if (properties != null && !properties.isBlank()) {
+                try {
+                    parsed = MAPPER.readTree(properties);
+                } catch (Exception ignored) {
+                    parsed = null;
+                }
+            }
+            parsedProperties = parsed;
+        }
+        return (JsonNode) parsed;
+    }
+
+    private static String toPayload(Event e) {
+        String name = e.getEventName();
+        Long id = e.getId();
+        String t = e.getEventTime() == null ? null : e.getEventTime().toString();
+        return "{" +
+                "\"id\":" + id + "," +
+                "\"eventName\":\"" + (name == null ? "" : name) + "\"," +
+                "\"eventTime\":\"" + (t == null ? "" : t) + "\"" +
+                "}";
+    }
+}
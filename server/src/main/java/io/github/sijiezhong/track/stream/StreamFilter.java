@@ -0,0 +1,180 @@
+package io.github.sijiezhong.track.stream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.sijiezhong.track.exception.BusinessException;
+import io.github.sijiezhong.track.exception.ErrorCode;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * 订阅端事件过滤条件（预编译）
+ *
+ * <p>同一维度内为 OR，不同维度之间为 AND；属性条件形如 {@code plan:pro}，支持以点号访问嵌套字段。
+ * {@link #key()} 是规范化后的条件签名，条件相同的订阅者共享同一个分组，每个事件每组只判定一次。
+ * 采样按事件ID哈希确定，同一事件在各节点、各次重连中的采样结果一致。
+ */
+public final class StreamFilter {
+
+    private static final StreamFilter NONE = new StreamFilter(Set.of(), Set.of(), Set.of(), Set.of(), List.of(), 1.0);
+
+    private final Set<String> eventNames;
+    private final Set<String> devices;
+    private final Set<String> oses;
+    private final Set<String> browsers;
+    private final List<PropertyPredicate> propertyPredicates;
+    private final double sampleRate;
+    private final long sampleThreshold;
+    private final String key;
+
+    private StreamFilter(Set<String> eventNames, Set<String> devices, Set<String> oses, Set<String> browsers,
+                         List<PropertyPredicate> propertyPredicates, double sampleRate) {
+        this.eventNames = eventNames;
+        this.devices = devices;
+        this.oses = oses;
+        this.browsers = browsers;
+        this.propertyPredicates = propertyPredicates;
+        this.sampleRate = sampleRate;
+        this.sampleThreshold = (long) (sampleRate * (1L << 24));
+        this.key = buildKey();
+    }
+
+    /**
+     * 不过滤、不采样
+     */
+    public static StreamFilter none() {
+        return NONE;
+    }
+
+    /**
+     * 由请求参数构建过滤条件，参数均可为空；除属性条件外，单个参数值内允许逗号分隔多个取值
+     *
+     * @param eventNames 事件名列表
+     * @param devices 设备类型列表
+     * @param oses 操作系统列表
+     * @param browsers 浏览器列表
+     * @param properties 属性条件列表，格式 key:value
+     * @param sampleRate 采样率 (0,1]，为空表示不采样
+     * @return 过滤条件
+     */
+    public static StreamFilter of(Collection<String> eventNames, Collection<String> devices, Collection<String> oses,
+                                  Collection<String> browsers, Collection<String> properties, Double sampleRate) {
+        double rate = sampleRate == null ? 1.0 : sampleRate;
+        if (!(rate > 0.0 && rate <= 1.0)) {
+            throw new BusinessException(ErrorCode.BAD_REQUEST, "采样率必须在(0,1]之间: " + sampleRate);
+        }
+        TreeMap<String, PropertyPredicate> predicates = new TreeMap<>();
+        for (String raw : properties == null ? List.<String>of() : properties) {
+            if (raw == null || raw.isBlank()) continue;
+            int idx = raw.indexOf(':');
+            if (idx <= 0) {
+                throw new BusinessException(ErrorCode.BAD_REQUEST, "属性条件格式应为 key:value: " + raw);
+            }
+            String k = raw.substring(0, idx).trim();
+            String v = raw.substring(idx + 1).trim();
+            predicates.put(k + "\u0000" + v, new PropertyPredicate(k, v));
+        }
+        StreamFilter filter = new StreamFilter(
+                Collections.unmodifiableSet(split(eventNames, false)),
+                Collections.unmodifiableSet(split(devices, true)),
+                Collections.unmodifiableSet(split(oses, true)),
+                Collections.unmodifiableSet(split(browsers, true)),
+                List.copyOf(predicates.values()),
+                rate);
+        return filter.isPassThrough() ? NONE : filter;
+    }
+
+    /**
+     * 规范化签名：取值排序、大小写归一，语义相同的条件得到相同的签名
+     */
+    public String key() {
+        return key;
+    }
+
+    public boolean isPassThrough() {
+        return eventNames.isEmpty() && devices.isEmpty() && oses.isEmpty() && browsers.isEmpty()
+                && propertyPredicates.isEmpty() && sampleRate >= 1.0;
+    }
+
+    boolean matches(StreamEvent e) {
+        if (!eventNames.isEmpty() && (e.getEventName() == null || !eventNames.contains(e.getEventName()))) return false;
+        if (!devices.isEmpty() && !containsIgnoreCase(devices, e.getDevice())) return false;
+        if (!oses.isEmpty() && !containsIgnoreCase(oses, e.getOs())) return false;
+        if (!browsers.isEmpty() && !containsIgnoreCase(browsers, e.getBrowser())) return false;
+        if (!propertyPredicates.isEmpty()) {
+            JsonNode props = e.getPropertiesNode();
+            if (props == null) return false;
+            for (PropertyPredicate p : propertyPredicates) {
+                if (!p.test(props)) return false;
+            }
+        }
+        return sampleRate >= 1.0 || sampled(e.getId());
+    }
+
+    private boolean sampled(Long eventId) {
+        if (eventId == null) return true;
+        long h = eventId * 0x9E3779B97F4A7C15L;
+        h ^= (h >>> 31);
+        return (h >>> 40) < sampleThreshold;
+    }
+
+    private static boolean containsIgnoreCase(Set<String> set, String value) {
+        return value != null && set.contains(value.toLowerCase(Locale.ROOT));
+    }
+
+    private static Set<String> split(Collection<String> values, boolean lowerCase) {
+        Set<String> out = new TreeSet<>();
+        if (values == null) return out;
+        for (String v : values) {
+            if (v == null) continue;
+            for (String part : v.split(",")) {
+                String t = part.trim();
+                if (!t.isEmpty()) {
+                    out.add(lowerCase ? t.toLowerCase(Locale.ROOT) : t);
+                }
+            }
+        }
+        return out;
+    }
+
+    private String buildKey() {
+        List<String> parts = new ArrayList<>();
+        if (!eventNames.isEmpty()) parts.add("e=" + String.join(",", eventNames));
+        if (!devices.isEmpty()) parts.add("d=" + String.join(",", devices));
+        if (!oses.isEmpty()) parts.add("o=" + String.join(",", oses));
+        if (!browsers.isEmpty()) parts.add("b=" + String.join(",", browsers));
+        for (PropertyPredicate p : propertyPredicates) parts.add("p=" + p.path + ":" + p.expected);
+        if (sampleRate < 1.0) parts.add("s=" + sampleRate);
+        return parts.isEmpty() ? "*" : String.join("&", parts);
+    }
+
+    /**
+     * 属性等值条件：按文本值比较，支持以点号访问嵌套字段
+     */
+    private static final class PropertyPredicate {
+        private final String path;
+        private final String[] segments;
+        private final String expected;
+
+        PropertyPredicate(String path, String expected) {
+            this.path = path;
+            this.segments = path.split("\\.");
+            this.expected = expected;
+        }
+
+        boolean test(JsonNode root) {
+            JsonNode node = root;
+            for (String s : segments) {
+                node = node.get(s);
+                if (node == null) return false;
+            }
+            return !node.isContainerNode() && expected.equals(node.asText());
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package io.github.sijiezhong.track.stream;
+
+import io.github.sijiezhong.track.exception.BusinessException;
+import io.github.sijiezhong.track.exception.ErrorCode;
+
+/**
+ * SSE 推送模式
+ */
+public enum StreamMode {
+    /** 每个事件单独一帧（event: event） */
+    RAW,
+    /** 按应用在短窗口内合并为一帧数组（event: events） */
+    BATCH;
+
+    /**
+     * 解析查询参数，为空时默认 RAW
+     */
+    public static StreamMode from(String value) {
+        if (value == null || value.isBlank()) {
+            return RAW;
+        }
+        for (StreamMode m : values()) {
+            if (m.name().equalsIgnoreCase(value.trim())) {
+                return m;
+            }
+        }
+        throw new BusinessException(ErrorCode.BAD_REQUEST, "不支持的推送模式: " + value);
+    }
+}
@@ -0,0 +1,102 @@
+package io.github.sijiezhong.track.stream;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 单个 SSE 订阅者：持有发射器与有界待发送队列
+ *
+ * <p>scheduled 标记保证同一订阅者同一时刻最多只有一个分发任务在写，
+ * 从而保持消息顺序，且无需对发射器额外加锁。
+ */
+final class StreamSubscriber {
+
+    private final int appId;
+    private final StreamMode mode;
+    private final StreamFilter filter;
+    private final SseEmitter emitter;
+    private final ArrayBlockingQueue<SseFrame> queue;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    // 重连补发已覆盖到的序号，序号不大于它的实时消息不再重复入队
+    private volatile long resumedThrough;
+
+    StreamSubscriber(int appId, StreamMode mode, StreamFilter filter, SseEmitter emitter, int capacity) {
+        this.appId = appId;
+        this.mode = mode;
+        this.filter = filter;
+        this.emitter = emitter;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+    }
+
+    int getAppId() {
+        return appId;
+    }
+
+    StreamMode getMode() {
+        return mode;
+    }
+
+    StreamFilter getFilter() {
+        return filter;
+    }
+
+    SseEmitter getEmitter() {
+        return emitter;
+    }
+
+    long getResumedThrough() {
+        return resumedThrough;
+    }
+
+    void setResumedThrough(long resumedThrough) {
+        this.resumedThrough = resumedThrough;
+    }
+
+    boolean offer(SseFrame frame) {
+        return queue.offer(frame);
+    }
+
+    SseFrame poll() {
+        return queue.poll();
+    }
+
+    int pending() {
+        return queue.size();
+    }
+
+    /**
+     * 队首消息已等待的纳秒数，队列为空时返回0
+     */
+    long headAgeNanos(long now) {
+        SseFrame head = queue.peek();
+        return head == null ? 0L : Math.max(0L, now - head.createdNanos());
+    }
+
+    boolean tryMarkScheduled() {
+        return scheduled.compareAndSet(false, true);
+    }
+
+    void clearScheduled() {
+        scheduled.set(false);
+    }
+
+    boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * 标记关闭并清空队列
+     *
+     * @return 是否由本次调用完成关闭
+     */
+    boolean close() {
+        if (!closed.compareAndSet(false, true)) {
+            return false;
+        }
+        queue.clear();
+        return true;
+    }
+}
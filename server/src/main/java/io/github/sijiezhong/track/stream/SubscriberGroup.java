@@ -0,0 +1,48 @@
+package io.github.sijiezhong.track.stream;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 过滤条件与推送模式都相同的一组订阅者
+ *
+ * <p>每个事件每组只做一次过滤判定；合并模式下每组维护自己的待合并缓冲。
+ */
+final class SubscriberGroup {
+
+    private final StreamFilter filter;
+    private final StreamMode mode;
+    private final List<StreamSubscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final Queue<StreamEvent> coalesceBuffer = new ConcurrentLinkedQueue<>();
+
+    SubscriberGroup(StreamFilter filter, StreamMode mode) {
+        this.filter = filter;
+        this.mode = mode;
+    }
+
+    static String keyOf(StreamFilter filter, StreamMode mode) {
+        return mode.name() + "|" + filter.key();
+    }
+
+    StreamFilter getFilter() {
+        return filter;
+    }
+
+    StreamMode getMode() {
+        return mode;
+    }
+
+    List<StreamSubscriber> getSubscribers() {
+        return subscribers;
+    }
+
+    Queue<StreamEvent> getCoalesceBuffer() {
+        return coalesceBuffer;
+    }
+
+    boolean isEmpty() {
+        return subscribers.isEmpty();
+    }
+}
@@ -0,0 +1,3 @@
+-- properties 上的 GIN 索引，服务于 properties @> '{"key":"value"}' 形式的属性过滤
+-- jsonb_path_ops 只支持 @> 但体积更小、查找更快；使用 CONCURRENTLY 避免阻塞上报写入（见同名 .conf）
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_event_properties_gin ON event USING gin (properties jsonb_path_ops);
@@ -0,0 +1,3 @@
+-- 增量变更订阅按 (app_id, id > 水位) 顺序读取，每次轮询都是一次索引范围扫描
+-- 使用 CONCURRENTLY 避免阻塞上报写入（见同名 .conf）
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_event_app_id ON event (app_id, id);
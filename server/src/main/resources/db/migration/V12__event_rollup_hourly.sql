@@ -0,0 +1,21 @@
+-- 按小时预聚合的事件计数，由后台聚合器按 event.id 水位增量维护
+-- dim 为 all（不分维度，dim_value 为空串）或 browser/device/os/referrer，维度为空时取值记为 unknown
+CREATE TABLE IF NOT EXISTS event_rollup_hourly (
+    app_id INTEGER NOT NULL,
+    event_name VARCHAR(64) NOT NULL,
+    dim VARCHAR(16) NOT NULL,
+    dim_value VARCHAR(1024) NOT NULL,
+    bucket TIMESTAMP NOT NULL,
+    cnt BIGINT NOT NULL
+);
+
+-- 查询按 (app_id, event_name, dim) 定位再按 bucket 取范围；referrer 可能超过 btree 单项上限，取值部分用 md5
+CREATE UNIQUE INDEX IF NOT EXISTS ux_event_rollup_hourly
+    ON event_rollup_hourly (app_id, event_name, dim, bucket, md5(dim_value));
+
+-- 聚合水位：id 不大于 last_event_id 的事件都已计入预聚合表
+CREATE TABLE IF NOT EXISTS event_rollup_state (
+    name VARCHAR(64) PRIMARY KEY,
+    last_event_id BIGINT NOT NULL,
+    update_time TIMESTAMP NOT NULL DEFAULT NOW()
+);
@@ -0,0 +1,43 @@
+-- 漏斗匹配：输入一个会话内按 (时间, id) 排序的步骤事件名与时间，返回到达的最高步骤（从0开始），未到达第0步返回 -1
+-- 规则与应用内 FunnelMatcher 相同：starts[k] 为到达第 k 步的链条中最晚的起点；同名步骤从后往前处理，一个事件只推进一步
+-- window_micros <= 0 表示不限制转化窗口；strict_order 为真时链条中间出现其他步骤事件即中断
+CREATE OR REPLACE FUNCTION funnel_reach(names text[], times timestamp[], steps text[],
+                                        window_micros bigint, strict_order boolean)
+RETURNS integer
+LANGUAGE plpgsql IMMUTABLE PARALLEL SAFE AS $$
+DECLARE
+    n integer := cardinality(steps);
+    win interval := CASE WHEN window_micros > 0 THEN window_micros * interval '1 microsecond' END;
+    starts timestamp[] := array_fill(NULL::timestamp, ARRAY[n]);
+    nxt timestamp[];
+    s timestamp;
+    reached integer := -1;
+BEGIN
+    FOR i IN 1 .. coalesce(cardinality(names), 0) LOOP
+        IF NOT names[i] = ANY(steps) THEN
+            CONTINUE;
+        END IF;
+        nxt := CASE WHEN strict_order THEN array_fill(NULL::timestamp, ARRAY[n]) ELSE starts END;
+        FOR k IN REVERSE n .. 1 LOOP
+            IF steps[k] = names[i] THEN
+                IF k = 1 THEN
+                    s := times[i];
+                ELSE
+                    s := starts[k - 1];
+                    IF s IS NOT NULL AND win IS NOT NULL AND times[i] - s > win THEN
+                        s := NULL;
+                    END IF;
+                END IF;
+                IF s IS NOT NULL AND (nxt[k] IS NULL OR s > nxt[k]) THEN
+                    nxt[k] := s;
+                END IF;
+                IF nxt[k] IS NOT NULL AND k - 1 > reached THEN
+                    reached := k - 1;
+                END IF;
+            END IF;
+        END LOOP;
+        starts := nxt;
+    END LOOP;
+    RETURN reached;
+END
+$$;
@@ -0,0 +1,13 @@
+-- 独立用户 HyperLogLog 草图，按 (应用, 事件名, 维度, 日期) 各一份，由后台聚合器按 event.id 水位增量合并
+-- event_name 为空串表示不分事件；dim 为 all（dim_value 为空串）或 browser/device/os，维度为空时取值记为 unknown
+-- version 为最近一次合并时的批次上界，读取方据此判断内存中的草图是否过期
+CREATE TABLE IF NOT EXISTS event_user_sketch (
+    app_id INTEGER NOT NULL,
+    event_name VARCHAR(64) NOT NULL,
+    dim VARCHAR(16) NOT NULL,
+    dim_value VARCHAR(128) NOT NULL,
+    day DATE NOT NULL,
+    version BIGINT NOT NULL,
+    sketch BYTEA NOT NULL,
+    PRIMARY KEY (app_id, event_name, dim, dim_value, day)
+);
@@ -0,0 +1,7 @@
+-- 每个应用历史数据的版本：预聚合器处理到事件时间早于当天的事件（迟到数据、历史导入）时更新为该批次内的最大 id
+-- 分析结果缓存把版本号纳入历史查询的缓存键，版本变化后已缓存的历史结果自然失效
+CREATE TABLE IF NOT EXISTS event_history_version (
+    app_id INTEGER PRIMARY KEY,
+    version BIGINT NOT NULL,
+    update_time TIMESTAMP NOT NULL DEFAULT NOW()
+);
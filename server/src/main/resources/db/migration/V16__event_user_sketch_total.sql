@@ -0,0 +1,11 @@
+-- 不限日期的独立用户草图，按 (应用, 事件名, 维度) 各一份，与 event_user_sketch 由同一聚合器在同一事务中维护
+-- 不限日期的估计只读这一份草图，不必合并每天的草图；首次写入某个键时由已有的按天草图合并得到
+CREATE TABLE IF NOT EXISTS event_user_sketch_total (
+    app_id INTEGER NOT NULL,
+    event_name VARCHAR(64) NOT NULL,
+    dim VARCHAR(16) NOT NULL,
+    dim_value VARCHAR(128) NOT NULL,
+    version BIGINT NOT NULL,
+    sketch BYTEA NOT NULL,
+    PRIMARY KEY (app_id, event_name, dim, dim_value)
+);
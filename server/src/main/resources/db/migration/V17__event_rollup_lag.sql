@@ -0,0 +1,9 @@
+-- 按 event.id 水位聚合时被导入合并挂起的应用：全局水位照常推进，挂起应用单独记录落后水位，
+-- id 不大于 last_event_id 的该应用事件已聚合，落后水位到全局水位之间的事件由聚合器随后追赶，追上后删除此行
+CREATE TABLE IF NOT EXISTS event_rollup_lag (
+    name VARCHAR(64) NOT NULL,
+    app_id INTEGER NOT NULL,
+    last_event_id BIGINT NOT NULL,
+    update_time TIMESTAMP NOT NULL DEFAULT NOW(),
+    PRIMARY KEY (name, app_id)
+);
@@ -0,0 +1,21 @@
+-- event 表按查询路径重建索引
+-- 所有查询都以 app_id 开头，再按 event_name 和/或 event_time 过滤、排序
+-- 使用 CONCURRENTLY 避免建索引期间阻塞上报写入（见同名 .conf，本迁移不在事务中执行）
+
+-- 按事件名 + 时间范围：趋势、漏斗、分群、按小时分布、事件名计数
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_event_app_name_time ON event (app_id, event_name, event_time);
+
+-- 按时间倒序分页（含游标分页）、应用计数、时间范围计数、最新事件、路径分析
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_event_app_time_id ON event (app_id, event_time DESC, id DESC);
+
+-- 用户维度：留存回访关联、独立用户数、在线用户数；匿名事件不入索引
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_event_app_user_time ON event (app_id, user_id, event_time) WHERE user_id IS NOT NULL;
+
+-- 追加写入的表中 event_time 与物理顺序高度相关，BRIN 体积极小，供不带 app_id 的时间范围扫描使用
+CREATE INDEX CONCURRENTLY IF NOT EXISTS brin_event_event_time ON event USING brin (event_time);
+
+-- 以下单列索引已被上面的复合索引覆盖，删除以降低写放大
+-- ix_event_tenant_id 在 V7 重命名字段后实际作用于 app_id
+DROP INDEX CONCURRENTLY IF EXISTS ix_event_tenant_id;
+DROP INDEX CONCURRENTLY IF EXISTS ix_event_event_name;
+DROP INDEX CONCURRENTLY IF EXISTS ix_event_event_time;
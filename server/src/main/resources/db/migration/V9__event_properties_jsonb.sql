@@ -0,0 +1,77 @@
+-- event.properties 由 text 改为 jsonb，支持在数据库中按属性过滤与分组
+-- 历史数据中无法解析为 JSON 的文本包装为 {"_raw": 原文}，与上报接口对非对象属性的处理一致；空白文本置为 NULL
+--
+-- 不直接 ALTER COLUMN TYPE：那会在 ACCESS EXCLUSIVE 锁下重写整张表，期间读写全部阻塞。改为：
+-- 1. 新增可空列 properties_jsonb（只改元数据），触发器同步迁移期间写入或修改的行
+-- 2. 按 id 区间分批回填，每批单独提交。PG16+ 用 pg_input_is_valid 在 SQL 中判定合法性；
+--    更早的版本整批直接转换，只有含非法 JSON 的批次才逐行兜底
+-- 3. 短暂持有 ACCESS EXCLUSIVE 锁删除旧列、新列改名（只改元数据）
+-- 脚本不在事务中执行（见 .conf），失败后修复迁移记录即可重跑。回填产生的旧版本行由 autovacuum 回收；
+-- 被删除的旧列数据留在原有行内，直到行被更新或执行 VACUUM FULL / pg_repack。
+
+ALTER TABLE event ADD COLUMN IF NOT EXISTS properties_jsonb jsonb;
+
+CREATE OR REPLACE FUNCTION track_properties_to_jsonb(t text) RETURNS jsonb AS $$
+BEGIN
+    IF t IS NULL OR btrim(t) = '' THEN
+        RETURN NULL;
+    END IF;
+    RETURN t::jsonb;
+EXCEPTION WHEN others THEN
+    RETURN jsonb_build_object('_raw', t);
+END;
+$$ LANGUAGE plpgsql IMMUTABLE;
+
+CREATE OR REPLACE FUNCTION track_event_properties_sync() RETURNS trigger AS $$
+BEGIN
+    NEW.properties_jsonb := track_properties_to_jsonb(NEW.properties);
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 创建触发器需等待在途写事务结束，之后读取的 max(id) 覆盖所有触发器之前写入的行
+DROP TRIGGER IF EXISTS track_event_properties_sync ON event;
+CREATE TRIGGER track_event_properties_sync BEFORE INSERT OR UPDATE OF properties ON event
+    FOR EACH ROW EXECUTE FUNCTION track_event_properties_sync();
+
+DO $$
+DECLARE
+    batch CONSTANT bigint := 10000;
+    has_validator CONSTANT boolean := current_setting('server_version_num')::int >= 160000;
+    lo bigint;
+    hi bigint;
+BEGIN
+    SELECT min(id), max(id) INTO lo, hi FROM event;
+    WHILE lo <= hi LOOP
+        IF has_validator THEN
+            UPDATE event
+               SET properties_jsonb = CASE WHEN pg_input_is_valid(properties, 'jsonb') THEN properties::jsonb
+                                           ELSE jsonb_build_object('_raw', properties) END
+             WHERE id >= lo AND id < lo + batch AND btrim(properties) <> '';
+        ELSE
+            BEGIN
+                UPDATE event SET properties_jsonb = properties::jsonb
+                 WHERE id >= lo AND id < lo + batch AND btrim(properties) <> '';
+            EXCEPTION WHEN others THEN
+                UPDATE event SET properties_jsonb = track_properties_to_jsonb(properties)
+                 WHERE id >= lo AND id < lo + batch AND btrim(properties) <> '';
+            END;
+        END IF;
+        lo := lo + batch;
+        COMMIT;
+    END LOOP;
+END
+$$;
+
+DO $$
+BEGIN
+    PERFORM set_config('lock_timeout', '30s', true);
+    LOCK TABLE event IN ACCESS EXCLUSIVE MODE;
+    DROP TRIGGER track_event_properties_sync ON event;
+    ALTER TABLE event DROP COLUMN properties;
+    ALTER TABLE event RENAME COLUMN properties_jsonb TO properties;
+END
+$$;
+
+DROP FUNCTION track_event_properties_sync();
+DROP FUNCTION track_properties_to_jsonb(text);
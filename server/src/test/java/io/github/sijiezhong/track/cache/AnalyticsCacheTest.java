@@ -0,0 +1,162 @@
+package io.github.sijiezhong.track.cache;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.sijiezhong.track.config.AnalyticsCacheProperties;
+import io.github.sijiezhong.track.config.RollupProperties;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class AnalyticsCacheTest {
+
+    private static final TypeReference<Map<String, Object>> TYPE = new TypeReference<>() {};
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+
+    @Test
+    @DisplayName("Should compute a result once for concurrent identical queries")
+    void should_LoadOnce_ForConcurrentMisses() throws Exception {
+        AnalyticsCache cache = newCache();
+        when(jdbcTemplate.queryForObject(any(String.class), eq(Long.class), any())).thenReturn(0L);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        QuerySignature signature = QuerySignature.of("funnel", 1).with("steps", List.of("a", "b"));
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<CachedResult<Map<String, Object>>>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(pool.submit(() -> cache.get(signature, true, TYPE, () -> {
+                loads.incrementAndGet();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return Map.of("counts", List.of(3, 2));
+            })));
+        }
+        Thread.sleep(200);
+        release.countDown();
+        String etag = null;
+        for (Future<CachedResult<Map<String, Object>>> f : futures) {
+            CachedResult<Map<String, Object>> r = f.get(5, TimeUnit.SECONDS);
+            if (etag == null) etag = r.etag();
+            assertThat(r.etag()).isEqualTo(etag);
+        }
+        pool.shutdown();
+
+        assertThat(loads).hasValue(1);
+        cache.get(signature, true, TYPE, () -> Map.of("counts", List.of(9)));
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("Should recompute historical results after the app history version moves")
+    void should_Recompute_WhenHistoryVersionChanges() {
+        AnalyticsCache cache = newCache();
+        when(jdbcTemplate.queryForObject(any(String.class), eq(Long.class), any())).thenReturn(10L, 10L, 42L);
+        QuerySignature signature = QuerySignature.of("path", 1).with("end", LocalDateTime.of(2024, 1, 31, 0, 0));
+
+        CachedResult<Map<String, Object>> first = cache.get(signature, true, TYPE, () -> Map.of("count", 1));
+        CachedResult<Map<String, Object>> cached = cache.get(signature, true, TYPE, () -> Map.of("count", 2));
+        CachedResult<Map<String, Object>> fresh = cache.get(signature, true, TYPE, () -> Map.of("count", 3));
+
+        assertThat(cached.value()).containsEntry("count", 1);
+        assertThat(cached.etag()).isEqualTo(first.etag());
+        assertThat(fresh.value()).containsEntry("count", 3);
+        assertThat(fresh.etag()).isNotEqualTo(first.etag());
+    }
+
+    @Test
+    @DisplayName("Should treat historical results as today's when the rollup aggregator is disabled")
+    void should_IgnoreHistoryVersion_WhenRollupDisabled() throws Exception {
+        AnalyticsCacheProperties properties = new AnalyticsCacheProperties();
+        properties.setTodayTtlSeconds(1);
+        RollupProperties rollup = new RollupProperties();
+        rollup.setEnabled(false);
+        AnalyticsCache cache = new AnalyticsCache(properties, rollup, jdbcTemplate, transactionManager, new ObjectMapper(), null, null);
+        QuerySignature signature = QuerySignature.of("path", 1).with("end", LocalDateTime.of(2024, 1, 31, 0, 0));
+
+        CachedResult<Map<String, Object>> first = cache.get(signature, true, TYPE, () -> Map.of("count", 1));
+        CachedResult<Map<String, Object>> cached = cache.get(signature, true, TYPE, () -> Map.of("count", 2));
+        Thread.sleep(1100);
+        CachedResult<Map<String, Object>> expired = cache.get(signature, true, TYPE, () -> Map.of("count", 3));
+
+        assertThat(cached.value()).containsEntry("count", 1);
+        assertThat(expired.value()).containsEntry("count", 3);
+        verifyNoInteractions(jdbcTemplate, transactionManager);
+    }
+
+    @Test
+    @DisplayName("Should read the history version and compute a miss in one read-only repeatable-read transaction")
+    void should_ReadVersionAndLoad_InOneSnapshot() {
+        AnalyticsCache cache = newCache();
+        AtomicBoolean committed = new AtomicBoolean();
+        doAnswer(inv -> {
+            committed.set(true);
+            return null;
+        }).when(transactionManager).commit(any());
+        when(jdbcTemplate.queryForObject(any(String.class), eq(Long.class), any())).thenReturn(10L);
+        QuerySignature signature = QuerySignature.of("path", 1).with("end", LocalDateTime.of(2024, 1, 31, 0, 0));
+        AtomicBoolean loadedInside = new AtomicBoolean();
+
+        cache.get(signature, true, TYPE, () -> {
+            loadedInside.set(!committed.get());
+            return Map.of("count", 1);
+        });
+
+        ArgumentCaptor<TransactionDefinition> definition = ArgumentCaptor.forClass(TransactionDefinition.class);
+        InOrder order = inOrder(transactionManager, jdbcTemplate);
+        order.verify(transactionManager).getTransaction(definition.capture());
+        order.verify(jdbcTemplate).queryForObject(any(String.class), eq(Long.class), any());
+        order.verify(transactionManager).commit(any());
+        assertThat(loadedInside).isTrue();
+        assertThat(definition.getValue().isReadOnly()).isTrue();
+        assertThat(definition.getValue().getIsolationLevel()).isEqualTo(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+    }
+
+    @Test
+    @DisplayName("Should normalize parameter order, blanks and nulls into one signature")
+    void should_NormalizeSignature() {
+        QuerySignature a = QuerySignature.of("trend", 1).with("eventName", " pv ").with("start", null)
+                .with("end", LocalDateTime.of(2024, 1, 31, 0, 0));
+        QuerySignature b = QuerySignature.of("trend", 1).with("end", LocalDateTime.of(2024, 1, 31, 0, 0))
+                .with("eventName", "pv");
+
+        assertThat(a.canonical()).isEqualTo(b.canonical()).isEqualTo("trend|app=1|end=2024-01-31T00:00|eventName=pv");
+        assertThat(QuerySignature.of("trend", 2).with("eventName", "pv").canonical())
+                .isNotEqualTo(QuerySignature.of("trend", 1).with("eventName", "pv").canonical());
+    }
+
+    private AnalyticsCache newCache() {
+        return new AnalyticsCache(new AnalyticsCacheProperties(), new RollupProperties(), jdbcTemplate, transactionManager, new ObjectMapper(), null, null);
+    }
+}
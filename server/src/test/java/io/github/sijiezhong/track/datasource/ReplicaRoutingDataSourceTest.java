@@ -0,0 +1,135 @@
+package io.github.sijiezhong.track.datasource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for ReplicaRoutingDataSource routing and fallback decisions.
+ */
+public class ReplicaRoutingDataSourceTest {
+
+    private DataSource primary;
+    private DataSource replicaA;
+    private DataSource replicaB;
+    private Connection primaryConn;
+    private Connection connA;
+    private Connection connB;
+    private ReplicaRoutingDataSource routing;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        primary = mock(DataSource.class);
+        replicaA = mock(DataSource.class);
+        replicaB = mock(DataSource.class);
+        primaryConn = mock(Connection.class);
+        connA = mock(Connection.class);
+        connB = mock(Connection.class);
+        when(primary.getConnection()).thenReturn(primaryConn);
+        when(replicaA.getConnection()).thenReturn(connA);
+        when(replicaB.getConnection()).thenReturn(connB);
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        replicas.put("replica-0", replicaA);
+        replicas.put("replica-1", replicaB);
+        routing = new ReplicaRoutingDataSource(primary, replicas, 1000, 0, null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+    }
+
+    @Test
+    @DisplayName("Read-write and non-transactional access should use the primary")
+    void shouldRouteWritesToPrimary() throws SQLException {
+        assertThat(routing.getConnection()).isSameAs(primaryConn);
+    }
+
+    @Test
+    @DisplayName("Read-only transactions should round-robin across replicas")
+    void shouldRouteReadOnlyToReplicas() throws SQLException {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        assertThat(routing.getConnection()).isSameAs(connA);
+        assertThat(routing.getConnection()).isSameAs(connB);
+        assertThat(routing.getConnection()).isSameAs(connA);
+    }
+
+    @Test
+    @DisplayName("Replicas lagging beyond the tolerance should be skipped, falling back to the primary when none is left")
+    void shouldSkipLaggingReplicas() throws SQLException {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        routing.getReplicas().get(0).update(5000, true);
+
+        assertThat(routing.getConnection()).isSameAs(connB);
+        assertThat(routing.getConnection()).isSameAs(connB);
+
+        routing.getReplicas().get(1).update(1500, true);
+        assertThat(routing.getConnection()).isSameAs(primaryConn);
+
+        routing.getReplicas().get(0).update(10, true);
+        assertThat(routing.getConnection()).isSameAs(connA);
+    }
+
+    @Test
+    @DisplayName("A replica that fails to hand out a connection should be marked unreachable and served by the primary")
+    void shouldFallBackWhenReplicaUnreachable() throws SQLException {
+        when(replicaA.getConnection()).thenThrow(new SQLException("connection refused"));
+        routing.getReplicas().get(1).update(0, false);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        assertThat(routing.getConnection()).isSameAs(primaryConn);
+        assertThat(routing.getReplicas().get(0).isReachable()).isFalse();
+        assertThat(routing.getConnection()).isSameAs(primaryConn);
+    }
+
+    @Test
+    @DisplayName("A replica whose WAL receiver is not streaming should be marked unreachable by the lag probe")
+    void shouldMarkReplicaWithoutWalReceiverUnreachable() throws SQLException {
+        Statement primaryStatement = mock(Statement.class);
+        ResultSet primaryLsn = mock(ResultSet.class);
+        when(primaryConn.createStatement()).thenReturn(primaryStatement);
+        when(primaryStatement.executeQuery(anyString())).thenReturn(primaryLsn);
+        when(primaryLsn.next()).thenReturn(true);
+        when(primaryLsn.getString(1)).thenReturn("0/3000148");
+        PreparedStatement probeA = probe(connA, -1L);
+        PreparedStatement probeB = probe(connB, 0L);
+
+        routing.checkLag();
+
+        verify(probeA).setString(1, "0/3000148");
+        verify(probeB).setString(1, "0/3000148");
+        assertThat(routing.getReplicas().get(0).isReachable()).isFalse();
+        assertThat(routing.getReplicas().get(1).isReachable()).isTrue();
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertThat(routing.getConnection()).isSameAs(connB);
+        assertThat(routing.getConnection()).isSameAs(connB);
+    }
+
+    private static PreparedStatement probe(Connection connection, long result) throws SQLException {
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(true);
+        when(rs.getLong(1)).thenReturn(result);
+        return statement;
+    }
+}
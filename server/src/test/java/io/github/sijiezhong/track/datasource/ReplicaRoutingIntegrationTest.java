@@ -0,0 +1,96 @@
+package io.github.sijiezhong.track.datasource;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Routing tests against two local Postgres containers standing in for a primary and a replica.
+ * 
+ * The containers are independent databases (no streaming replication); the test identifies
+ * which one served a statement by its database name.
+ */
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class ReplicaRoutingIntegrationTest {
+
+    private static PostgreSQLContainer<?> primaryDb;
+    private static PostgreSQLContainer<?> replicaDb;
+    private static ReplicaRoutingDataSource routing;
+    private static JdbcTemplate jdbc;
+    private static TransactionTemplate readOnlyTx;
+    private static TransactionTemplate readWriteTx;
+
+    @BeforeAll
+    static void startDatabases() {
+        primaryDb = new PostgreSQLContainer<>(DockerImageName.parse("postgres:15")).withDatabaseName("track_primary");
+        replicaDb = new PostgreSQLContainer<>(DockerImageName.parse("postgres:15")).withDatabaseName("track_replica");
+        primaryDb.start();
+        replicaDb.start();
+
+        routing = new ReplicaRoutingDataSource(dataSource(primaryDb), Map.of("replica-0", dataSource(replicaDb)), 5000, 0, null);
+        DataSource lazy = new LazyConnectionDataSourceProxy(routing);
+        jdbc = new JdbcTemplate(lazy);
+        DataSourceTransactionManager txManager = new DataSourceTransactionManager(lazy);
+        readOnlyTx = new TransactionTemplate(txManager);
+        readOnlyTx.setReadOnly(true);
+        readWriteTx = new TransactionTemplate(txManager);
+    }
+
+    @AfterAll
+    static void stopDatabases() {
+        if (primaryDb != null) primaryDb.stop();
+        if (replicaDb != null) replicaDb.stop();
+    }
+
+    @Test
+    @Order(1)
+    @DisplayName("Read-only transactions should be served by the replica, everything else by the primary")
+    void shouldRouteByTransactionType() {
+        routing.checkLag();
+
+        assertThat(readOnlyTx.<String>execute(s -> currentDatabase())).isEqualTo("track_replica");
+        assertThat(readWriteTx.<String>execute(s -> currentDatabase())).isEqualTo("track_primary");
+        assertThat(currentDatabase()).isEqualTo("track_primary");
+        assertThat(routing.getReplicas().get(0).getLagMs()).isZero();
+    }
+
+    @Test
+    @Order(2)
+    @DisplayName("An unreachable replica should be detected by the lag probe and reads should fall back to the primary")
+    void shouldFallBackWhenReplicaStops() {
+        replicaDb.stop();
+        try {
+            routing.checkLag();
+
+            assertThat(routing.getReplicas().get(0).isReachable()).isFalse();
+            assertThat(readOnlyTx.<String>execute(s -> currentDatabase())).isEqualTo("track_primary");
+        } finally {
+            // Restarting changes the mapped port, so this case runs last
+            replicaDb.start();
+        }
+    }
+
+    private static String currentDatabase() {
+        return jdbc.queryForObject("select current_database()", String.class);
+    }
+
+    private static DataSource dataSource(PostgreSQLContainer<?> c) {
+        return new DriverManagerDataSource(c.getJdbcUrl(), c.getUsername(), c.getPassword());
+    }
+}
@@ -0,0 +1,36 @@
+package io.github.sijiezhong.track.dto;
+
+import io.github.sijiezhong.track.exception.BusinessException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for EventCursor.
+ */
+public class EventCursorTest {
+
+    @Test
+    @DisplayName("Encoded cursor should round-trip and be URL safe")
+    void shouldRoundTrip() {
+        LocalDateTime t = LocalDateTime.of(2026, 3, 1, 12, 30, 45, 123_456_000);
+        String token = new EventCursor(t, 987654321L).encode();
+
+        assertThat(token).doesNotContain("+", "/", "=", "|");
+        EventCursor decoded = EventCursor.decode(token);
+        assertThat(decoded.getEventTime()).isEqualTo(t);
+        assertThat(decoded.getId()).isEqualTo(987654321L);
+    }
+
+    @Test
+    @DisplayName("Malformed cursors should be rejected as bad requests")
+    void shouldRejectMalformedCursor() {
+        assertThatThrownBy(() -> EventCursor.decode("not base64 !")).isInstanceOf(BusinessException.class);
+        assertThatThrownBy(() -> EventCursor.decode("bm9waXBl")).isInstanceOf(BusinessException.class);
+        assertThatThrownBy(() -> EventCursor.decode("MjAyNi0wMS0wMXxhYmM")).isInstanceOf(BusinessException.class);
+    }
+}
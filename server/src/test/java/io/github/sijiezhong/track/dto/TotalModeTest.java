@@ -0,0 +1,29 @@
+package io.github.sijiezhong.track.dto;
+
+import io.github.sijiezhong.track.exception.BusinessException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for TotalMode.
+ */
+public class TotalModeTest {
+
+    @Test
+    @DisplayName("Should parse values case-insensitively and fall back to the default")
+    void shouldParse() {
+        assertThat(TotalMode.from(null, TotalMode.EXACT)).isEqualTo(TotalMode.EXACT);
+        assertThat(TotalMode.from(" ", TotalMode.NONE)).isEqualTo(TotalMode.NONE);
+        assertThat(TotalMode.from("Estimate", TotalMode.EXACT)).isEqualTo(TotalMode.ESTIMATE);
+        assertThat(TotalMode.from("none", TotalMode.EXACT)).isEqualTo(TotalMode.NONE);
+    }
+
+    @Test
+    @DisplayName("Unknown values should be rejected")
+    void shouldRejectUnknown() {
+        assertThatThrownBy(() -> TotalMode.from("approx", TotalMode.EXACT)).isInstanceOf(BusinessException.class);
+    }
+}
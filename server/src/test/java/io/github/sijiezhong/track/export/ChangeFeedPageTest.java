@@ -0,0 +1,96 @@
+package io.github.sijiezhong.track.export;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for change feed paging and the settle window.
+ */
+public class ChangeFeedPageTest {
+
+    private static final LocalDateTime CUTOFF = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @Test
+    @DisplayName("Full page of settled rows should advance the watermark and report more")
+    void shouldReportMoreWhenPageIsFull() {
+        long[] ids = {11, 12, 15, 16};
+        LocalDateTime[] times = {CUTOFF.minusSeconds(9), CUTOFF.minusSeconds(8), CUTOFF.minusSeconds(7), CUTOFF.minusSeconds(6)};
+
+        ChangeFeedPage page = ChangeFeedPage.settle(rows(ids), ids, times, CUTOFF, 10, 3);
+
+        assertThat(page.getRows()).extracting(r -> r[0]).containsExactly(11L, 12L, 15L);
+        assertThat(page.getNextWatermark()).isEqualTo(15);
+        assertThat(page.isHasMore()).isTrue();
+        assertThat(page.isSettling()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Rows created inside the settle window should stop the page before them")
+    void shouldStopAtFirstUnsettledRow() {
+        long[] ids = {11, 12, 13};
+        LocalDateTime[] times = {CUTOFF.minusSeconds(1), CUTOFF.plusSeconds(1), CUTOFF.minusSeconds(1)};
+
+        ChangeFeedPage page = ChangeFeedPage.settle(rows(ids), ids, times, CUTOFF, 10, 3);
+
+        assertThat(page.getRows()).extracting(r -> r[0]).containsExactly(11L);
+        assertThat(page.getNextWatermark()).isEqualTo(11);
+        assertThat(page.isHasMore()).isFalse();
+        assertThat(page.isSettling()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Empty page should keep the requested watermark")
+    void shouldKeepWatermarkWhenEmpty() {
+        ChangeFeedPage page = ChangeFeedPage.settle(new ArrayList<>(), new long[1], new LocalDateTime[1], CUTOFF, 42, 100);
+
+        assertThat(page.getRows()).isEmpty();
+        assertThat(page.getNextWatermark()).isEqualTo(42);
+        assertThat(page.isHasMore()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Page skipped for an in-flight import should keep the watermark and report settling")
+    void shouldKeepWatermarkWhileImporting() {
+        ChangeFeedPage page = ChangeFeedPage.importing(42);
+
+        assertThat(page.getRows()).isEmpty();
+        assertThat(page.getNextWatermark()).isEqualTo(42);
+        assertThat(page.isHasMore()).isFalse();
+        assertThat(page.isSettling()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Query should range-scan by id between the watermark and the page bound and fetch one extra row")
+    void shouldBuildIdRangeQuery() {
+        List<Object> args = new ArrayList<>();
+        String sql = ChangeFeedReader.toSql(7, 100L, 700L, "click",
+                List.of(EventExportColumn.ID, EventExportColumn.EVENT_NAME), 500, args);
+
+        assertThat(sql).isEqualTo("select e.id, e.event_name, e.id, e.create_time from event e "
+                + "where e.app_id = ? and e.id > ? and e.id <= ? and e.event_name = ? order by e.id limit ?");
+        assertThat(args).containsExactly(7, 100L, 700L, "click", 501);
+    }
+
+    @Test
+    @DisplayName("Page bound should be the id of the extra row read past a full page")
+    void shouldBuildBoundQuery() {
+        List<Object> args = new ArrayList<>();
+        String sql = ChangeFeedReader.boundSql(7, 100L, null, 500, args);
+
+        assertThat(sql).isEqualTo("select max(t.id) from (select e.id from event e "
+                + "where e.app_id = ? and e.id > ? order by e.id limit ?) t");
+        assertThat(args).containsExactly(7, 100L, 501);
+    }
+
+    private static List<Object[]> rows(long[] ids) {
+        List<Object[]> rows = new ArrayList<>();
+        for (long id : ids) rows.add(new Object[]{id});
+        return rows;
+    }
+}
@@ -0,0 +1,92 @@
+package io.github.sijiezhong.track.export;
+
+import io.github.sijiezhong.track.importer.ImportBarrier;
+import io.github.sijiezhong.track.testsupport.PostgresTestBase;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static io.github.sijiezhong.track.testsupport.TestConstants.DEFAULT_TENANT_ID;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Reads the change feed while a bulk import merge is still in flight.
+ */
+public class ChangeFeedReaderImportTest extends PostgresTestBase {
+
+    private static final List<EventExportColumn> COLUMNS = List.of(EventExportColumn.ID, EventExportColumn.EVENT_NAME);
+
+    @Autowired
+    private ChangeFeedReader changeFeedReader;
+
+    @Test
+    @DisplayName("Should return an empty settling page while an import chunk is uncommitted, then include its rows")
+    void should_WaitForImportChunk() throws Exception {
+        insertEvent("page_view");
+        ChangeFeedPage first = changeFeedReader.read(DEFAULT_TENANT_ID, 0, null, COLUMNS, 100);
+        assertThat(first.getRows()).hasSize(1);
+
+        try (Connection merge = dataSource.getConnection()) {
+            merge.setAutoCommit(false);
+            try (PreparedStatement enter = merge.prepareStatement(ImportBarrier.ENTER_SQL)) {
+                enter.setInt(1, DEFAULT_TENANT_ID);
+                enter.execute();
+            }
+            try (PreparedStatement ps = merge.prepareStatement("insert into event (event_name, app_id, event_time, "
+                    + "create_time, update_time) select 'imported', ?, ?, ?, ? from generate_series(1, 3)")) {
+                Timestamp old = Timestamp.valueOf(LocalDateTime.now().minusHours(1));
+                ps.setInt(1, DEFAULT_TENANT_ID);
+                ps.setTimestamp(2, old);
+                ps.setTimestamp(3, old);
+                ps.setTimestamp(4, old);
+                ps.executeUpdate();
+            }
+            insertEvent("page_view");
+
+            ChangeFeedPage blocked = changeFeedReader.read(DEFAULT_TENANT_ID, first.getNextWatermark(), null, COLUMNS, 100);
+            assertThat(blocked.getRows()).isEmpty();
+            assertThat(blocked.getNextWatermark()).isEqualTo(first.getNextWatermark());
+            assertThat(blocked.isSettling()).isTrue();
+            assertThat(blocked.isHasMore()).isFalse();
+
+            merge.commit();
+        }
+
+        ChangeFeedPage next = changeFeedReader.read(DEFAULT_TENANT_ID, first.getNextWatermark(), null, COLUMNS, 100);
+        assertThat(next.getRows()).extracting(r -> r[1])
+                .containsExactly("imported", "imported", "imported", "page_view");
+        assertThat(next.isSettling()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should keep serving an app while another app's import chunk is uncommitted")
+    void should_IgnoreOtherAppsImport() throws Exception {
+        insertEvent("page_view");
+        try (Connection merge = dataSource.getConnection()) {
+            merge.setAutoCommit(false);
+            try (PreparedStatement enter = merge.prepareStatement(ImportBarrier.ENTER_SQL)) {
+                enter.setInt(1, DEFAULT_TENANT_ID + 1);
+                enter.execute();
+            }
+
+            ChangeFeedPage page = changeFeedReader.read(DEFAULT_TENANT_ID, 0, null, COLUMNS, 100);
+
+            assertThat(page.getRows()).hasSize(1);
+            assertThat(page.isSettling()).isFalse();
+            merge.commit();
+        }
+    }
+
+    // created well before the settle window so only the import barrier can hold rows back
+    private void insertEvent(String name) {
+        LocalDateTime old = LocalDateTime.now().minusHours(1);
+        jdbcTemplate.update("insert into event (event_name, app_id, event_time, create_time, update_time) "
+                + "values (?, ?, ?, ?, ?)", name, DEFAULT_TENANT_ID, old, old, old);
+    }
+}
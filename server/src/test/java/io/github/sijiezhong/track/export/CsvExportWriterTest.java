@@ -0,0 +1,57 @@
+package io.github.sijiezhong.track.export;
+
+import io.github.sijiezhong.track.repository.PropertyFilter;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for CsvExportWriter.
+ */
+public class CsvExportWriterTest {
+
+    @Test
+    @DisplayName("Rows should follow the requested header order and leave unknown or hidden columns empty")
+    void shouldWriteSelectedColumns() throws Exception {
+        ExportColumnSelection sel = ExportColumnSelection.parse("eventTime,nope,id,properties", true);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CsvExportWriter writer = new CsvExportWriter(out, sel);
+
+        writer.writeHeader();
+        // query columns are de-duplicated in first-seen order: eventTime, id
+        writer.writeRow(new Object[]{LocalDateTime.of(2024, 1, 2, 3, 4, 5), 42L});
+        writer.flush();
+
+        assertThat(out.toString(StandardCharsets.UTF_8))
+                .isEqualTo("eventTime,nope,id,properties\n2024-01-02T03:04:05,,42,\n");
+    }
+
+    @Test
+    @DisplayName("Values with commas, quotes or newlines should be quoted")
+    void shouldEscape() {
+        assertThat(CsvExportWriter.escape("plain")).isEqualTo("plain");
+        assertThat(CsvExportWriter.escape("{\"a\":1,\"b\":2}")).isEqualTo("\"{\"\"a\"\":1,\"\"b\"\":2}\"");
+        assertThat(CsvExportWriter.escape("x\ny")).isEqualTo("\"x\ny\"");
+    }
+
+    @Test
+    @DisplayName("Export SQL should push app, event name, time range and property filters into the where clause")
+    void shouldBuildFilteredSql() {
+        List<Object> args = new ArrayList<>();
+        EventExportQuery query = new EventExportQuery(7, "click", LocalDateTime.of(2024, 1, 1, 0, 0), null,
+                PropertyFilter.parse(List.of("plan:pro")));
+
+        String sql = query.toSql(List.of(EventExportColumn.ID, EventExportColumn.EVENT_NAME), args);
+
+        assertThat(sql).isEqualTo("select e.id, e.event_name from event e where e.app_id = ? and e.event_name = ?"
+                + " and e.event_time >= ? and (e.properties @> ?::jsonb) order by e.event_time desc, e.id desc");
+        assertThat(args).hasSize(4).startsWith(7, "click");
+    }
+}
@@ -0,0 +1,52 @@
+package io.github.sijiezhong.track.export;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for EventExportQuery time slicing.
+ */
+public class EventExportQueryTest {
+
+    @Test
+    @DisplayName("Slices should tile the range newest first with only the newest slice closed at the end")
+    void shouldTileRangeNewestFirst() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 4, 0, 0);
+        EventExportQuery query = new EventExportQuery(7, "click", start, end, null);
+
+        List<EventExportQuery> slices = query.slices(null, null, 3);
+
+        assertThat(slices).extracting(EventExportQuery::getStartTime)
+                .containsExactly(start.plusDays(2), start.plusDays(1), start);
+        assertThat(slices).extracting(EventExportQuery::getEndTime)
+                .containsExactly(end, start.plusDays(2), start.plusDays(1));
+        List<Object> args = new ArrayList<>();
+        assertThat(slices.get(0).toSql(List.of(EventExportColumn.ID), args))
+                .contains("e.event_time <= ?").endsWith("order by e.event_time desc, e.id desc");
+        assertThat(slices.get(1).toSql(List.of(EventExportColumn.ID), new ArrayList<>()))
+                .contains("e.event_time < ?");
+        assertThat(args).containsExactly(7, "click", start.plusDays(2), end);
+    }
+
+    @Test
+    @DisplayName("Open-ended query should slice between data bounds and fall back to one slice without data")
+    void shouldUseDataBounds() {
+        EventExportQuery query = new EventExportQuery(7, null, null, null, null);
+        LocalDateTime min = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+        assertThat(query.slices(min, min.plusHours(2), 2)).extracting(EventExportQuery::getStartTime)
+                .containsExactly(min.plusHours(1), min);
+        List<EventExportQuery> empty = query.slices(null, null, 4);
+        assertThat(empty).hasSize(1);
+        assertThat(empty.get(0).toSql(List.of(EventExportColumn.ID), new ArrayList<>()))
+                .doesNotContain("event_time >=").doesNotContain("event_time <");
+        assertThat(query.toSql(List.of(EventExportColumn.ID), new ArrayList<>())).endsWith("order by e.event_time desc, e.id desc");
+    }
+}
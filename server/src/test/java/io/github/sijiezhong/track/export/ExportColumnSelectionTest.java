@@ -0,0 +1,34 @@
+package io.github.sijiezhong.track.export;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for ExportColumnSelection.
+ */
+public class ExportColumnSelectionTest {
+
+    @Test
+    @DisplayName("Default selection should include properties only when not hidden")
+    void shouldUseDefaults() {
+        ExportColumnSelection all = ExportColumnSelection.parse(null, false);
+        assertThat(all.headers()).startsWith("id", "eventName").endsWith("properties");
+        assertThat(all.queryAttributes()).contains("properties");
+
+        ExportColumnSelection hidden = ExportColumnSelection.parse(" ", true);
+        assertThat(hidden.headers()).doesNotContain("properties");
+        assertThat(hidden.queryAttributes()).doesNotContain("properties");
+    }
+
+    @Test
+    @DisplayName("Selected fields should keep header order and only query known, visible columns once")
+    void shouldProjectSelectedFields() {
+        ExportColumnSelection sel = ExportColumnSelection.parse("eventName,unknown,properties,eventName", true);
+
+        assertThat(sel.headers()).containsExactly("eventName", "unknown", "properties", "eventName");
+        assertThat(sel.columns()).containsExactly(EventExportColumn.EVENT_NAME, null, null, EventExportColumn.EVENT_NAME);
+        assertThat(sel.queryAttributes()).containsExactly("eventName");
+    }
+}
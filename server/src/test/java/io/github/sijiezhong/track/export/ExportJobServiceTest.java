@@ -0,0 +1,181 @@
+package io.github.sijiezhong.track.export;
+
+import io.github.sijiezhong.track.config.ExportProperties;
+import io.github.sijiezhong.track.exception.BusinessException;
+import io.github.sijiezhong.track.exception.ErrorCode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for ExportJobService scheduling, limits and spool lifecycle.
+ */
+public class ExportJobServiceTest {
+
+    @TempDir
+    Path spool;
+
+    private EventExportReader reader;
+    private ExportProperties properties;
+    private ExportJobService service;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        reader = mock(EventExportReader.class);
+        properties = new ExportProperties();
+        properties.getJobs().setSpoolDir(spool.toString());
+        properties.getJobs().setWorkerThreads(1);
+        properties.getJobs().setMaxActivePerApp(2);
+        service = new ExportJobService(reader, properties, null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        service.shutdown();
+    }
+
+    @Test
+    @DisplayName("Finished job should expose progress and a complete file without the .part suffix")
+    void shouldWriteSpoolFile() throws Exception {
+        doAnswer(inv -> {
+            EventExportReader.RowHandler handler = inv.getArgument(2);
+            for (long i = 1; i <= 3; i++) handler.onRow(new Object[]{i, "evt" + i});
+            return 3L;
+        }).when(reader).scan(any(), any(), any());
+
+        ExportJob job = service.submit(query(1), ExportColumnSelection.parse("id,eventName", false), ExportFormat.CSV, false, 1);
+        awaitTerminal(job);
+
+        assertThat(job.getStatus()).isEqualTo(ExportJob.Status.SUCCEEDED);
+        assertThat(job.getRowsWritten()).isEqualTo(3);
+        String content = Files.readString(job.getFile(), StandardCharsets.UTF_8);
+        assertThat(content).isEqualTo("id,eventName\n1,evt1\n2,evt2\n3,evt3\n");
+        assertThat(job.getBytesWritten()).isEqualTo(content.length());
+        try (var files = Files.list(spool)) {
+            assertThat(files).containsExactly(job.getFile());
+        }
+    }
+
+    @Test
+    @DisplayName("Per-app limit should reject extra jobs with 429 without affecting other apps")
+    void shouldLimitActiveJobsPerApp() throws Exception {
+        doAnswer(inv -> {
+            release.await(5, TimeUnit.SECONDS);
+            return 0L;
+        }).when(reader).scan(any(), any(), any());
+        ExportColumnSelection sel = ExportColumnSelection.parse(null, false);
+
+        ExportJob first = service.submit(query(1), sel, ExportFormat.CSV, false, 1);
+        ExportJob second = service.submit(query(1), sel, ExportFormat.CSV, false, 1);
+        assertThatThrownBy(() -> service.submit(query(1), sel, ExportFormat.CSV, false, 1))
+                .isInstanceOf(BusinessException.class)
+                .satisfies(ex -> assertThat(((BusinessException) ex).getErrorCode()).isEqualTo(ErrorCode.TOO_MANY_REQUESTS));
+        ExportJob other = service.submit(query(2), sel, ExportFormat.CSV, false, 1);
+
+        // cancelling the queued job frees its slot immediately
+        service.cancel(1, second.getId());
+        assertThat(second.getStatus()).isEqualTo(ExportJob.Status.CANCELLED);
+        ExportJob third = service.submit(query(1), sel, ExportFormat.CSV, false, 1);
+
+        release.countDown();
+        awaitTerminal(first);
+        awaitTerminal(other);
+        awaitTerminal(third);
+        assertThat(service.list(1)).extracting(ExportJob::getId).containsExactlyInAnyOrder(first.getId(), third.getId());
+    }
+
+    @Test
+    @DisplayName("Failed job should clean its partial file and expired jobs should be swept")
+    void shouldCleanFailedAndExpiredJobs() throws Exception {
+        doAnswer(inv -> {
+            EventExportReader.RowHandler handler = inv.getArgument(2);
+            handler.onRow(new Object[]{1L});
+            throw new IllegalStateException("boom");
+        }).when(reader).scan(any(), any(), any());
+
+        ExportJob failed = service.submit(query(1), ExportColumnSelection.parse("id", false), ExportFormat.CSV, false, 1);
+        awaitTerminal(failed);
+        assertThat(failed.getStatus()).isEqualTo(ExportJob.Status.FAILED);
+        assertThat(failed.getError()).isEqualTo("boom");
+        try (var files = Files.list(spool)) {
+            assertThat(files).isEmpty();
+        }
+
+        properties.getJobs().setRetentionMinutes(0);
+        ExportJobService expiring = new ExportJobService(reader, properties, null);
+        try {
+            Path orphan = Files.writeString(spool.resolve("leftover.csv"), "x");
+            ExportJob job = expiring.submit(query(1), ExportColumnSelection.parse("id", false), ExportFormat.CSV, false, 1);
+            awaitTerminal(job);
+            Thread.sleep(5);
+            expiring.sweep();
+            assertThat(expiring.list(1)).isEmpty();
+            assertThat(orphan).doesNotExist();
+        } finally {
+            expiring.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Parallel job should gzip each time slice separately and concatenate them newest first with one header")
+    void shouldMergeGzipSlicesInOrder() throws Exception {
+        LocalDateTime min = LocalDateTime.of(2024, 1, 1, 0, 0);
+        LocalDateTime max = LocalDateTime.of(2024, 1, 5, 0, 0);
+        when(reader.timeBounds(any())).thenReturn(new LocalDateTime[]{min, max});
+        doAnswer(inv -> {
+            EventExportQuery slice = inv.getArgument(0);
+            // older slices finish first to prove the merge order does not depend on completion order
+            Thread.sleep(slice.getStartTime().getDayOfMonth() * 20L);
+            EventExportReader.RowHandler handler = inv.getArgument(2);
+            handler.onRow(new Object[]{(long) slice.getStartTime().getDayOfMonth()});
+            return 1L;
+        }).when(reader).scan(any(), any(), any());
+
+        ExportJob job = service.submit(query(1), ExportColumnSelection.parse("id", false), ExportFormat.CSV, true, 4);
+        awaitTerminal(job);
+
+        assertThat(job.getStatus()).isEqualTo(ExportJob.Status.SUCCEEDED);
+        assertThat(job.getParallelism()).isEqualTo(4);
+        assertThat(job.getRowsWritten()).isEqualTo(4);
+        assertThat(job.getFileName()).endsWith(".csv.gz");
+        assertThat(Files.size(job.getFile())).isEqualTo(job.getBytesWritten());
+        try (GZIPInputStream in = new GZIPInputStream(Files.newInputStream(job.getFile()))) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("id\n4\n3\n2\n1\n");
+        }
+        try (var files = Files.list(spool)) {
+            assertThat(files).containsExactly(job.getFile());
+        }
+    }
+
+    private static EventExportQuery query(int appId) {
+        return new EventExportQuery(appId, null, null, null, null);
+    }
+
+    private static void awaitTerminal(ExportJob job) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!job.getStatus().isTerminal() || job.getFinishedAt() == null) {
+            if (System.currentTimeMillis() > deadline) throw new AssertionError("job did not finish: " + job.getStatus());
+            Thread.sleep(10);
+        }
+    }
+}
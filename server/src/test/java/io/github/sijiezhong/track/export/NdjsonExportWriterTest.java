@@ -0,0 +1,55 @@
+package io.github.sijiezhong.track.export;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for NdjsonExportWriter.
+ */
+public class NdjsonExportWriterTest {
+
+    @Test
+    @DisplayName("Each row should be one JSON object with properties embedded as a real object")
+    void shouldWriteOneObjectPerLine() throws Exception {
+        ExportColumnSelection sel = ExportColumnSelection.parse("id,eventTime,userId,properties,nope", false);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        NdjsonExportWriter writer = new NdjsonExportWriter(out, sel);
+
+        writer.writeRow(new Object[]{1L, LocalDateTime.of(2024, 1, 2, 3, 4, 5), 9, "{\"plan\":\"pro\",\"tags\":[1,2]}"});
+        writer.writeRow(new Object[]{2L, null, null, null});
+        writer.finish();
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(2);
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode first = mapper.readTree(lines[0]);
+        assertThat(first.get("id").asLong()).isEqualTo(1L);
+        assertThat(first.get("eventTime").asText()).isEqualTo("2024-01-02T03:04:05");
+        assertThat(first.get("properties").get("tags").get(1).asInt()).isEqualTo(2);
+        assertThat(first.get("nope").isNull()).isTrue();
+        JsonNode second = mapper.readTree(lines[1]);
+        assertThat(second.get("userId").isNull()).isTrue();
+        assertThat(second.get("properties").isNull()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Hidden properties should be written as null for read-only users")
+    void shouldNullHiddenColumns() throws Exception {
+        ExportColumnSelection sel = ExportColumnSelection.parse("id,properties", true);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        NdjsonExportWriter writer = new NdjsonExportWriter(out, sel);
+
+        writer.writeRow(new Object[]{5L});
+        writer.finish();
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo("{\"id\":5,\"properties\":null}\n");
+    }
+}
@@ -0,0 +1,79 @@
+package io.github.sijiezhong.track.export.arrow;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for the Arrow IPC stream framing.
+ */
+public class ArrowStreamWriterTest {
+
+    @Test
+    @DisplayName("Stream should contain a schema, one message per batch and an end-of-stream marker, all 8-byte aligned")
+    void shouldFrameMessages() throws Exception {
+        List<ArrowColumn> columns = List.of(
+                ArrowColumn.of("id", ArrowColumn.Kind.INT64, false),
+                ArrowColumn.of("name", ArrowColumn.Kind.STRING, true));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ArrowStreamWriter writer = new ArrowStreamWriter(out, columns, 2, ArrowCompression.NONE);
+        writer.writeRow(new Object[]{1L, "a"});
+        writer.writeRow(new Object[]{2L, null});
+        writer.writeRow(new Object[]{3L, "ccc"});
+        writer.close();
+
+        List<Long> bodyLengths = messageBodies(out.toByteArray());
+        // schema without body, then batches of 2 and 1 rows
+        assertThat(bodyLengths).hasSize(3);
+        assertThat(bodyLengths.get(0)).isZero();
+        // batch 1: id validity omitted (no nulls) + ids(16) + name validity(1) + offsets(12) + data(1), each padded to 8
+        assertThat(bodyLengths.get(1)).isEqualTo(0 + 16 + 8 + 16 + 8);
+        assertThat(writer.getRowCount()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("ZSTD compression should prefix each non-empty buffer with its uncompressed length")
+    void shouldCompressBuffers() throws Exception {
+        List<ArrowColumn> columns = List.of(ArrowColumn.of("name", ArrowColumn.Kind.STRING, false));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ArrowStreamWriter writer = new ArrowStreamWriter(out, columns, 10_000, ArrowCompression.ZSTD);
+        for (int i = 0; i < 10_000; i++) writer.writeRow(new Object[]{"same-value"});
+        writer.close();
+
+        List<Long> bodyLengths = messageBodies(out.toByteArray());
+        // uncompressed: offsets 40,004 bytes + data 100,000 bytes
+        assertThat(bodyLengths.get(1)).isPositive().isLessThan(40_000L);
+    }
+
+    /**
+     * Walks the stream and returns each message's body length, asserting framing and alignment.
+     */
+    private static List<Long> messageBodies(byte[] bytes) {
+        ByteBuffer buf = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        List<Long> bodies = new ArrayList<>();
+        while (true) {
+            assertThat(buf.getInt()).isEqualTo(0xFFFFFFFF);
+            int metadataLength = buf.getInt();
+            if (metadataLength == 0) break;
+            assertThat(metadataLength % 8).isZero();
+            int metadataStart = buf.position();
+            // Message.bodyLength is the last field; read it through the flatbuffer vtable
+            int table = metadataStart + buf.getInt(metadataStart);
+            int vtable = table - buf.getInt(table);
+            int bodyLengthOffset = buf.getShort(vtable + 4 + 2 * 3);
+            long bodyLength = buf.getLong(table + bodyLengthOffset);
+            assertThat(bodyLength % 8).isZero();
+            bodies.add(bodyLength);
+            buf.position(metadataStart + metadataLength + (int) bodyLength);
+        }
+        assertThat(buf.remaining()).isZero();
+        return bodies;
+    }
+}
@@ -0,0 +1,159 @@
+package io.github.sijiezhong.track.export.parquet;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for the hand-rolled Parquet writer.
+ */
+public class ParquetFileWriterTest {
+
+    @Test
+    @DisplayName("File should start and end with PAR1 and carry a footer length that fits inside the file")
+    void shouldWriteMagicAndFooter() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<ParquetColumn> columns = List.of(
+                ParquetColumn.of("id", ParquetColumn.Kind.INT64, true),
+                ParquetColumn.dictionary("eventName", 4),
+                ParquetColumn.of("eventTime", ParquetColumn.Kind.TIMESTAMP_MICROS, false));
+        ParquetFileWriter writer = new ParquetFileWriter(out, columns, ParquetCodec.GZIP, 1024, 100);
+        for (int i = 0; i < 1000; i++) {
+            writer.writeRow(new Object[]{(long) i, "evt" + (i % 10), i % 3 == 0 ? null : LocalDateTime.of(2024, 1, 1, 0, 0).plusSeconds(i)});
+        }
+        writer.close();
+
+        byte[] bytes = out.toByteArray();
+        assertThat(writer.getRowCount()).isEqualTo(1000);
+        assertThat(new String(bytes, 0, 4, StandardCharsets.US_ASCII)).isEqualTo("PAR1");
+        assertThat(new String(bytes, bytes.length - 4, 4, StandardCharsets.US_ASCII)).isEqualTo("PAR1");
+        int footerLength = ByteBuffer.wrap(bytes, bytes.length - 8, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        assertThat(footerLength).isPositive().isLessThan(bytes.length - 12);
+        // column names live in the footer schema
+        String footer = new String(bytes, bytes.length - 8 - footerLength, footerLength, StandardCharsets.ISO_8859_1);
+        assertThat(footer).contains("eventName", "eventTime");
+    }
+
+    @ParameterizedTest
+    @EnumSource(ParquetCodec.class)
+    @DisplayName("Footer metadata and every column chunk should decode back to the written rows with each codec")
+    @SuppressWarnings("unchecked")
+    void shouldRoundTripThroughIndependentReader(ParquetCodec codec) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<ParquetColumn> columns = List.of(
+                ParquetColumn.of("id", ParquetColumn.Kind.INT64, true),
+                ParquetColumn.dictionary("eventName", 4),
+                ParquetColumn.of("eventTime", ParquetColumn.Kind.TIMESTAMP_MICROS, false),
+                ParquetColumn.of("properties", ParquetColumn.Kind.JSON, false));
+        ParquetFileWriter writer = new ParquetFileWriter(out, columns, codec, 16 * 1024, 100);
+        LocalDateTime base = LocalDateTime.of(2024, 1, 1, 0, 0);
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            // first row group stays within 4 names (dictionary), later ones overflow and fall back to PLAIN
+            String name = i < 600 ? "evt" + (i % 4) : "evt" + (i % 10);
+            Object[] row = {(long) i, i % 7 == 0 ? null : name, i % 3 == 0 ? null : base.plusSeconds(i),
+                    i % 5 == 0 ? null : "{\"n\":" + i + "}"};
+            rows.add(row);
+            writer.writeRow(row);
+        }
+        writer.close();
+
+        ParquetTestReader reader = new ParquetTestReader(out.toByteArray());
+        Map<Integer, Object> meta = reader.metadata();
+        assertThat(meta.get(1)).isEqualTo(1L);
+        assertThat(meta.get(3)).isEqualTo(3000L);
+        List<Map<Integer, Object>> schema = (List<Map<Integer, Object>>) meta.get(2);
+        assertThat(schema).hasSize(5);
+        assertThat(schema.get(0).get(5)).isEqualTo(4L);
+        assertThat(schema.stream().skip(1).map(e -> new String((byte[]) e.get(4), StandardCharsets.UTF_8)))
+                .containsExactly("id", "eventName", "eventTime", "properties");
+        assertThat(schema.get(1).get(3)).isEqualTo(0L);
+        assertThat(schema.get(3).get(6)).isEqualTo(10L);
+
+        List<Map<Integer, Object>> groups = reader.rowGroups();
+        assertThat(groups).hasSizeGreaterThan(1);
+        List<Object> ids = new ArrayList<>();
+        List<Object> names = new ArrayList<>();
+        List<Object> times = new ArrayList<>();
+        List<Object> props = new ArrayList<>();
+        boolean sawDictionary = false;
+        long firstId = 0;
+        for (Map<Integer, Object> group : groups) {
+            long groupRows = (Long) group.get(3);
+            Map<Integer, Object> idMeta = ParquetTestReader.chunkMeta(group, 0);
+            assertThat(idMeta.get(4)).isEqualTo((long) codec.thriftValue());
+            assertThat(idMeta.get(5)).isEqualTo(groupRows);
+            Map<Integer, Object> stats = (Map<Integer, Object>) idMeta.get(12);
+            assertThat(stats.get(6)).isEqualTo(le64(firstId));
+            assertThat(stats.get(5)).isEqualTo(le64(firstId + groupRows - 1));
+            sawDictionary |= ParquetTestReader.chunkMeta(group, 1).containsKey(11);
+            ids.addAll(reader.readColumn(group, 0, false));
+            names.addAll(reader.readColumn(group, 1, true));
+            times.addAll(reader.readColumn(group, 2, true));
+            props.addAll(reader.readColumn(group, 3, true));
+            firstId += groupRows;
+        }
+        assertThat(sawDictionary).isTrue();
+        assertThat(ids).hasSize(3000);
+        for (int i = 0; i < 3000; i++) {
+            Object[] row = rows.get(i);
+            assertThat(ids.get(i)).isEqualTo(row[0]);
+            assertThat(names.get(i)).isEqualTo(row[1]);
+            assertThat(times.get(i)).isEqualTo(row[2] == null ? null
+                    : ((LocalDateTime) row[2]).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() * 1000);
+            assertThat(props.get(i)).isEqualTo(row[3]);
+        }
+    }
+
+    private static byte[] le64(long v) {
+        return ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(v).array();
+    }
+
+    @Test
+    @DisplayName("Empty export should still be a valid file with only a footer")
+    void shouldWriteEmptyFile() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ParquetFileWriter writer = new ParquetFileWriter(out,
+                List.of(ParquetColumn.of("id", ParquetColumn.Kind.INT64, true)), ParquetCodec.UNCOMPRESSED, 1024, 100);
+        writer.close();
+
+        byte[] bytes = out.toByteArray();
+        int footerLength = ByteBuffer.wrap(bytes, bytes.length - 8, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        assertThat(bytes.length).isEqualTo(4 + footerLength + 8);
+        ParquetTestReader reader = new ParquetTestReader(bytes);
+        assertThat(reader.metadata().get(3)).isEqualTo(0L);
+        assertThat(reader.rowGroups()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Hybrid encoder should emit an RLE run for repeated values and bit-pack the rest")
+    void shouldEncodeRunsAndBitPackedGroups() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int[] values = {1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 0, 1, 0, 1};
+        HybridEncoder.encode(values, 0, values.length, 1, out);
+
+        byte[] bytes = out.toByteArray();
+        // RLE run: header = 10 << 1, value in one byte
+        assertThat(bytes[0]).isEqualTo((byte) 20);
+        assertThat(bytes[1]).isEqualTo((byte) 1);
+        // remaining 4 values padded to one group: header = (1 << 1) | 1, LSB first 0,1,0,1 -> 0b1010
+        assertThat(bytes[2]).isEqualTo((byte) 3);
+        assertThat(bytes[3]).isEqualTo((byte) 0b1010);
+        assertThat(bytes).hasSize(4);
+        assertThat(HybridEncoder.bitWidth(0)).isEqualTo(1);
+        assertThat(HybridEncoder.bitWidth(255)).isEqualTo(8);
+    }
+}
@@ -0,0 +1,268 @@
+package io.github.sijiezhong.track.export.parquet;
+
+import io.airlift.compress.snappy.SnappyDecompressor;
+import io.airlift.compress.zstd.ZstdDecompressor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Minimal Parquet reader used only to verify ParquetFileWriter output.
+ *
+ * <p>It is written against the Parquet and Thrift compact protocol specs rather than the writer's code.
+ * Thrift structs decode into maps keyed by field id, and flat columns decode back to Java values (null for
+ * undefined rows). Binary columns become UTF-8 strings and INT64 columns become Long.
+ */
+final class ParquetTestReader {
+
+    private final byte[] file;
+    private final Map<Integer, Object> metadata;
+
+    ParquetTestReader(byte[] file) {
+        this.file = file;
+        if (!"PAR1".equals(new String(file, 0, 4, StandardCharsets.US_ASCII))
+                || !"PAR1".equals(new String(file, file.length - 4, 4, StandardCharsets.US_ASCII))) {
+            throw new IllegalArgumentException("missing PAR1 magic");
+        }
+        int footerLength = ByteBuffer.wrap(file, file.length - 8, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        this.metadata = new Compact(file, file.length - 8 - footerLength).struct();
+    }
+
+    /** FileMetaData as a field-id map. */
+    Map<Integer, Object> metadata() {
+        return metadata;
+    }
+
+    @SuppressWarnings("unchecked")
+    List<Map<Integer, Object>> rowGroups() {
+        return (List<Map<Integer, Object>>) (List<?>) metadata.get(4);
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<Integer, Object> chunkMeta(Map<Integer, Object> rowGroup, int column) {
+        List<Object> chunks = (List<Object>) rowGroup.get(1);
+        return (Map<Integer, Object>) ((Map<Integer, Object>) chunks.get(column)).get(3);
+    }
+
+    /**
+     * Decodes every page of one column chunk.
+     *
+     * @param optional whether the column carries definition levels
+     */
+    List<Object> readColumn(Map<Integer, Object> rowGroup, int column, boolean optional) throws IOException {
+        Map<Integer, Object> meta = chunkMeta(rowGroup, column);
+        int physicalType = ((Long) meta.get(1)).intValue();
+        int codec = ((Long) meta.get(4)).intValue();
+        long numValues = (Long) meta.get(5);
+        long offset = meta.containsKey(11) ? (Long) meta.get(11) : (Long) meta.get(9);
+        List<Object> dictionary = null;
+        List<Object> values = new ArrayList<>();
+        while (values.size() < numValues) {
+            Compact header = new Compact(file, (int) offset);
+            Map<Integer, Object> page = header.struct();
+            int type = ((Long) page.get(1)).intValue();
+            int compressedSize = ((Long) page.get(3)).intValue();
+            byte[] raw = decompress(codec, header.pos, compressedSize);
+            offset = header.pos + compressedSize;
+            ByteBuffer buf = ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN);
+            if (type == 2) {
+                int count = ((Long) sub(page, 7).get(1)).intValue();
+                dictionary = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) dictionary.add(plain(physicalType, buf));
+                continue;
+            }
+            Map<Integer, Object> dataHeader = sub(page, 5);
+            int count = ((Long) dataHeader.get(1)).intValue();
+            int encoding = ((Long) dataHeader.get(2)).intValue();
+            int[] levels = new int[count];
+            int present = count;
+            if (optional) {
+                int length = buf.getInt();
+                ByteBuffer levelBytes = buf.slice(buf.position(), length).order(ByteOrder.LITTLE_ENDIAN);
+                buf.position(buf.position() + length);
+                decodeHybrid(levelBytes, 1, levels, count);
+                present = 0;
+                for (int level : levels) present += level;
+            } else {
+                Arrays.fill(levels, 1);
+            }
+            List<Object> decoded = new ArrayList<>(present);
+            if (encoding == 2 || encoding == 8) {
+                int bitWidth = buf.get() & 0xFF;
+                int[] indices = new int[present];
+                decodeHybrid(buf, bitWidth, indices, present);
+                for (int index : indices) decoded.add(dictionary.get(index));
+            } else {
+                for (int i = 0; i < present; i++) decoded.add(plain(physicalType, buf));
+            }
+            int next = 0;
+            for (int level : levels) values.add(level == 1 ? decoded.get(next++) : null);
+        }
+        return values;
+    }
+
+    private byte[] decompress(int codec, int offset, int length) throws IOException {
+        switch (codec) {
+            case 0:
+                return Arrays.copyOfRange(file, offset, offset + length);
+            case 1: {
+                byte[] raw = new byte[SnappyDecompressor.getUncompressedLength(file, offset)];
+                new SnappyDecompressor().decompress(file, offset, length, raw, 0, raw.length);
+                return raw;
+            }
+            case 2:
+                try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(file, offset, length))) {
+                    return in.readAllBytes();
+                }
+            case 6: {
+                byte[] raw = new byte[(int) ZstdDecompressor.getDecompressedSize(file, offset, length)];
+                new ZstdDecompressor().decompress(file, offset, length, raw, 0, raw.length);
+                return raw;
+            }
+            default:
+                throw new IllegalStateException("unsupported codec " + codec);
+        }
+    }
+
+    private static Object plain(int physicalType, ByteBuffer buf) {
+        return switch (physicalType) {
+            case 1 -> buf.getInt();
+            case 2 -> buf.getLong();
+            case 6 -> {
+                byte[] bytes = new byte[buf.getInt()];
+                buf.get(bytes);
+                yield new String(bytes, StandardCharsets.UTF_8);
+            }
+            default -> throw new IllegalStateException("unsupported physical type " + physicalType);
+        };
+    }
+
+    /** RLE / bit-packing hybrid decoding of exactly {@code count} values. */
+    static void decodeHybrid(ByteBuffer buf, int bitWidth, int[] out, int count) {
+        int n = 0;
+        while (n < count) {
+            long header = varint(buf);
+            if ((header & 1) == 1) {
+                int values = (int) (header >>> 1) * 8;
+                long buffer = 0;
+                int bits = 0;
+                for (int i = 0; i < values; i++) {
+                    while (bits < bitWidth) {
+                        buffer |= (long) (buf.get() & 0xFF) << bits;
+                        bits += 8;
+                    }
+                    int v = (int) (buffer & ((1L << bitWidth) - 1));
+                    buffer >>>= bitWidth;
+                    bits -= bitWidth;
+                    if (n < count) out[n++] = v;
+                }
+            } else {
+                int run = (int) (header >>> 1);
+                int v = 0;
+                for (int b = 0; b < (bitWidth + 7) / 8; b++) v |= (buf.get() & 0xFF) << (8 * b);
+                for (int i = 0; i < run && n < count; i++) out[n++] = v;
+            }
+        }
+    }
+
+    private static long varint(ByteBuffer buf) {
+        long result = 0;
+        int shift = 0;
+        while (true) {
+            int b = buf.get() & 0xFF;
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return result;
+            shift += 7;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<Integer, Object> sub(Map<Integer, Object> struct, int field) {
+        return (Map<Integer, Object>) struct.get(field);
+    }
+
+    /**
+     * Generic Thrift compact protocol decoder: structs become field-id maps, integers Long, binaries byte[].
+     */
+    static final class Compact {
+        private final byte[] data;
+        int pos;
+
+        Compact(byte[] data, int pos) {
+            this.data = data;
+            this.pos = pos;
+        }
+
+        Map<Integer, Object> struct() {
+            Map<Integer, Object> fields = new HashMap<>();
+            int lastId = 0;
+            while (true) {
+                int b = data[pos++] & 0xFF;
+                if (b == 0) return fields;
+                int type = b & 0x0F;
+                int delta = b >>> 4;
+                int id = delta == 0 ? (int) zigzag(varint()) : lastId + delta;
+                lastId = id;
+                fields.put(id, value(type));
+            }
+        }
+
+        private Object value(int type) {
+            return switch (type) {
+                case 1 -> Boolean.TRUE;
+                case 2 -> Boolean.FALSE;
+                case 3 -> (long) data[pos++];
+                case 4, 5, 6 -> zigzag(varint());
+                case 7 -> {
+                    long bits = ByteBuffer.wrap(data, pos, 8).order(ByteOrder.LITTLE_ENDIAN).getLong();
+                    pos += 8;
+                    yield Double.longBitsToDouble(bits);
+                }
+                case 8 -> {
+                    int length = (int) varint();
+                    byte[] bytes = Arrays.copyOfRange(data, pos, pos + length);
+                    pos += length;
+                    yield bytes;
+                }
+                case 9, 10 -> {
+                    int header = data[pos++] & 0xFF;
+                    int size = header >>> 4;
+                    if (size == 15) size = (int) varint();
+                    int elementType = header & 0x0F;
+                    List<Object> list = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        list.add(elementType == 1 || elementType == 2 ? data[pos++] == 1 : value(elementType));
+                    }
+                    yield list;
+                }
+                case 12 -> struct();
+                default -> throw new IllegalStateException("unsupported thrift type " + type);
+            };
+        }
+
+        private long varint() {
+            long result = 0;
+            int shift = 0;
+            while (true) {
+                int b = data[pos++] & 0xFF;
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return result;
+                shift += 7;
+            }
+        }
+
+        private static long zigzag(long v) {
+            return (v >>> 1) ^ -(v & 1);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package io.github.sijiezhong.track.funnel;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FunnelMatcherTest {
+
+    private static final long MINUTE = 60_000L;
+    private static final long DAY = 24 * 60 * MINUTE;
+    private static final String[] STEPS = {"view", "cart", "pay"};
+
+    @Test
+    @DisplayName("Should count sessions reaching each step in loose order")
+    void should_CountSteps_InLooseOrder() {
+        FunnelMatcher m = new FunnelMatcher(STEPS, 0, FunnelOrder.LOOSE);
+        // session 1 completes the funnel with noise in between
+        m.accept(1, "view", 0);
+        m.accept(1, "pay", 1);
+        m.accept(1, "view", 2);
+        m.accept(1, "cart", 3);
+        m.accept(1, "pay", 4);
+        // session 2 stops after cart
+        m.accept(2, "view", 0);
+        m.accept(2, "cart", 1);
+        // session 3 never starts the funnel
+        m.accept(3, "cart", 0);
+        m.accept(3, "pay", 1);
+
+        assertThat(m.finish()).containsExactly(2, 2, 1);
+    }
+
+    @Test
+    @DisplayName("Should require every step within the window from the latest usable start")
+    void should_ApplyWindow_FromLatestStart() {
+        FunnelMatcher m = new FunnelMatcher(STEPS, DAY, FunnelOrder.LOOSE);
+        // the first view is too old for the purchase, the second one is not
+        m.accept(1, "view", 0);
+        m.accept(1, "view", 3 * DAY);
+        m.accept(1, "cart", 3 * DAY + MINUTE);
+        m.accept(1, "pay", 4 * DAY);
+        // cart arrives in time but pay is outside the window
+        m.accept(2, "view", 0);
+        m.accept(2, "cart", MINUTE);
+        m.accept(2, "pay", DAY + MINUTE);
+
+        assertThat(m.finish()).containsExactly(2, 2, 1);
+    }
+
+    @Test
+    @DisplayName("Should break the chain in strict order when another step event intervenes")
+    void should_BreakChain_InStrictOrder() {
+        FunnelMatcher m = new FunnelMatcher(STEPS, 0, FunnelOrder.STRICT);
+        // view, pay, cart: pay interrupts before cart
+        m.accept(1, "view", 0);
+        m.accept(1, "pay", 1);
+        m.accept(1, "cart", 2);
+        // repeated view restarts the chain, then the steps follow directly
+        m.accept(2, "view", 0);
+        m.accept(2, "view", 1);
+        m.accept(2, "cart", 2);
+        m.accept(2, "pay", 3);
+
+        assertThat(m.finish()).containsExactly(2, 1, 1);
+    }
+
+    @Test
+    @DisplayName("Should not let one event satisfy two steps with the same name")
+    void should_UseEachEventOnce_When_StepsRepeat() {
+        FunnelMatcher m = new FunnelMatcher(new String[]{"view", "view"}, 0, FunnelOrder.LOOSE);
+        m.accept(1, "view", 0);
+        m.accept(2, "view", 0);
+        m.accept(2, "view", 1);
+
+        assertThat(m.finish()).containsExactly(2, 1);
+    }
+}
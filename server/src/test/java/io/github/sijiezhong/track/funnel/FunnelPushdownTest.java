@@ -0,0 +1,91 @@
+package io.github.sijiezhong.track.funnel;
+
+import io.github.sijiezhong.track.domain.Session;
+import io.github.sijiezhong.track.repository.EventRepository;
+import io.github.sijiezhong.track.repository.SessionRepository;
+import io.github.sijiezhong.track.testsupport.EventTestBuilder;
+import io.github.sijiezhong.track.testsupport.PostgresTestBase;
+import io.github.sijiezhong.track.testsupport.SessionTestBuilder;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import static io.github.sijiezhong.track.testsupport.TestConstants.DEFAULT_TENANT_ID;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the in-database funnel returns the same counts as the streaming matcher.
+ */
+public class FunnelPushdownTest extends PostgresTestBase {
+
+    private static final String[] STEPS = {"view", "cart", "pay"};
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private SessionRepository sessionRepository;
+
+    @Autowired
+    private FunnelScanner funnelScanner;
+
+    @Autowired
+    private FunnelPushdown funnelPushdown;
+
+    @Test
+    @DisplayName("Should match the streaming matcher for loose, strict and windowed funnels")
+    void should_MatchStreamingMatcher() {
+        LocalDateTime base = LocalDateTime.of(2024, 3, 1, 12, 0);
+        // completes the funnel with an out-of-order pay in between
+        save("sess-pd-1", base, "view", "pay", "cart", "pay");
+        // completes it only more than a day after the first view
+        save("sess-pd-2", base, "view", "cart");
+        Session late = session("sess-pd-3");
+        event(late, "view", base);
+        event(late, "cart", base.plusDays(2));
+        event(late, "pay", base.plusDays(2).plusMinutes(1));
+        // never starts the funnel
+        save("sess-pd-4", base, "cart", "pay");
+
+        LocalDateTime start = base.minusDays(1);
+        LocalDateTime end = base.plusDays(3);
+        long day = TimeUnit.DAYS.toMicros(1);
+        for (FunnelOrder order : FunnelOrder.values()) {
+            for (long window : new long[]{0, day}) {
+                long[] expected = funnelScanner.scan(DEFAULT_TENANT_ID, STEPS, start, end, window, order);
+                long[] actual = funnelPushdown.count(DEFAULT_TENANT_ID, STEPS, start, end, window, order);
+                assertThat(actual).as("order=%s window=%d", order, window).containsExactly(expected);
+            }
+        }
+        assertThat(funnelPushdown.count(DEFAULT_TENANT_ID, STEPS, start, end, 0, FunnelOrder.LOOSE))
+                .containsExactly(3, 3, 2);
+        assertThat(funnelPushdown.count(DEFAULT_TENANT_ID, STEPS, start, end, day, FunnelOrder.LOOSE))
+                .containsExactly(3, 2, 1);
+    }
+
+    private void save(String sessionKey, LocalDateTime base, String... names) {
+        Session session = session(sessionKey);
+        for (int i = 0; i < names.length; i++) {
+            event(session, names[i], base.plusMinutes(i));
+        }
+    }
+
+    private Session session(String sessionKey) {
+        return sessionRepository.save(SessionTestBuilder.create()
+                .withSessionId(sessionKey)
+                .withTenantId(DEFAULT_TENANT_ID)
+                .build());
+    }
+
+    private void event(Session session, String name, LocalDateTime time) {
+        eventRepository.save(EventTestBuilder.create()
+                .withEventName(name)
+                .withTenantId(DEFAULT_TENANT_ID)
+                .withSessionId(session.getId())
+                .withEventTime(time)
+                .build());
+    }
+}
@@ -0,0 +1,115 @@
+package io.github.sijiezhong.track.importer;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for import parsing, validation and COPY encoding.
+ */
+public class ImportRowTest {
+
+    @Test
+    @DisplayName("CSV reader should handle quoted commas, escaped quotes, multi-line fields and CRLF")
+    void shouldReadQuotedCsv() throws IOException {
+        String csv = "\uFEFFevent_name,eventTime,properties\r\n"
+                + "click,2024-01-01T10:00:00,\"{\"\"a\"\":\"\"x,y\"\"}\"\r\n"
+                + "\n"
+                + "view,2024-01-01 10:00:01,\"line1\nline2\"\n"
+                + "broken,2024-01-01T10:00:02\n";
+
+        List<ImportRecord> records = readAll(ImportFormat.CSV, csv);
+
+        assertThat(records).hasSize(3);
+        assertThat(records.get(0).getLine()).isEqualTo(2);
+        assertThat(records.get(0).get("eventName")).isEqualTo("click");
+        assertThat(records.get(0).get("properties")).isEqualTo("{\"a\":\"x,y\"}");
+        assertThat(records.get(1).getLine()).isEqualTo(4);
+        assertThat(records.get(1).get("properties")).isEqualTo("line1\nline2");
+        assertThat(records.get(2).getLine()).isEqualTo(6);
+        assertThat(records.get(2).getError()).contains("列数");
+        assertThat(records.get(2).getRaw()).isEqualTo("broken,2024-01-01T10:00:02");
+    }
+
+    @Test
+    @DisplayName("NDJSON reader should keep properties as JSON and flag malformed lines")
+    void shouldReadNdjson() throws IOException {
+        String ndjson = "{\"eventName\":\"pay\",\"event_time\":1704103200000,\"userId\":7,\"properties\":{\"amt\":3}}\n"
+                + "not json\n"
+                + "[1]\n";
+
+        List<ImportRecord> records = readAll(ImportFormat.NDJSON, ndjson);
+
+        assertThat(records).hasSize(3);
+        ImportRow row = ImportRow.from(records.get(0));
+        assertThat(row.userId).isEqualTo(7);
+        assertThat(row.properties).isEqualTo("{\"amt\":3}");
+        assertThat(records.get(1).getError()).startsWith("JSON");
+        assertThat(records.get(2).getError()).isNotNull();
+    }
+
+    @Test
+    @DisplayName("Validation should reject missing or invalid required fields")
+    void shouldRejectInvalidRows() throws IOException {
+        List<ImportRecord> records = readAll(ImportFormat.CSV,
+                "eventName,eventTime,userId,sessionId\n"
+                        + ",2024-01-01T00:00:00,,\n"
+                        + "a,yesterday,,\n"
+                        + "a,2024-01-01T00:00:00,abc,\n"
+                        + "a,2024-01-01T00:00:00,," + "s".repeat(65) + "\n");
+
+        assertThatThrownBy(() -> ImportRow.from(records.get(0))).hasMessageContaining("eventName");
+        assertThatThrownBy(() -> ImportRow.from(records.get(1))).hasMessageContaining("eventTime");
+        assertThatThrownBy(() -> ImportRow.from(records.get(2))).hasMessageContaining("userId");
+        assertThatThrownBy(() -> ImportRow.from(records.get(3))).hasMessageContaining("sessionId");
+    }
+
+    @Test
+    @DisplayName("Event time should accept local ISO, offset ISO and epoch seconds or millis")
+    void shouldParseEventTimes() {
+        LocalDateTime local = LocalDateTime.of(2024, 1, 1, 10, 0);
+        LocalDateTime fromOffset = OffsetDateTime.parse("2024-01-01T10:00:00Z")
+                .atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+
+        assertThat(ImportRow.parseTime("2024-01-01T10:00:00")).isEqualTo(local);
+        assertThat(ImportRow.parseTime("2024-01-01 10:00:00")).isEqualTo(local);
+        assertThat(ImportRow.parseTime("2024-01-01T10:00:00Z")).isEqualTo(fromOffset);
+        assertThat(ImportRow.parseTime("1704103200")).isEqualTo(fromOffset);
+        assertThat(ImportRow.parseTime("1704103200000")).isEqualTo(fromOffset);
+    }
+
+    @Test
+    @DisplayName("COPY CSV should quote text, leave NULL unquoted and wrap non-object properties")
+    void shouldEncodeCopyCsv() throws IOException {
+        List<ImportRecord> records = readAll(ImportFormat.CSV,
+                "eventName,eventTime,sessionId,properties,ua\n"
+                        + "say \"hi\",2024-01-01T10:00:00,s1,plain text,\n");
+        ImportRow row = ImportRow.from(records.get(0));
+        StringBuilder out = new StringBuilder();
+
+        row.appendCopyCsv(2, out);
+
+        assertThat(out.toString()).isEqualTo("2,\"say \"\"hi\"\"\",,\"s1\",2024-01-01T10:00,"
+                + "\"{\"\"_raw\"\":\"\"plain text\"\"}\",,,,,,,,\n");
+    }
+
+    private static List<ImportRecord> readAll(ImportFormat format, String text) throws IOException {
+        List<ImportRecord> out = new ArrayList<>();
+        try (ImportRecordReader reader = format.open(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)))) {
+            ImportRecord r;
+            while ((r = reader.next()) != null) out.add(r);
+        }
+        return out;
+    }
+}
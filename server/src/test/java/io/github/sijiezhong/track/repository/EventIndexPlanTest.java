@@ -0,0 +1,100 @@
+package io.github.sijiezhong.track.repository;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.sijiezhong.track.testsupport.PostgresTestBase;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plan regression tests for the event table indexes.
+ * 
+ * Seeds a multi-app dataset, refreshes planner statistics and asserts that none
+ * of the hot EventRepository access paths falls back to a sequential scan on event.
+ * The SQL mirrors the repository queries with literal parameters.
+ */
+public class EventIndexPlanTest extends PostgresTestBase {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private static final Map<String, String> HOT_QUERIES = new LinkedHashMap<>();
+
+  static {
+    String range = "e.event_time between now() - interval '2 day' and now() - interval '1 day'";
+    HOT_QUERIES.put("countByApp", "select count(*) from event e where e.app_id = 7");
+    HOT_QUERIES.put("countByAppAndTimeRange", "select count(*) from event e where e.app_id = 7 and " + range);
+    HOT_QUERIES.put("countByAppAndEventName", "select count(*) from event e where e.app_id = 7 and e.event_name = 'click'");
+    HOT_QUERIES.put("aggregateDaily", "select date_trunc('day', event_time) as d, count(*) as c from event e "
+        + "where e.app_id = 7 and e.event_name = 'click' and " + range + " group by d order by d");
+    HOT_QUERIES.put("funnelEvents", "select e.session_id, e.event_name, e.event_time from event e where e.app_id = 7 "
+        + "and e.event_name = any(array['view','click','pay']) and " + range + " order by e.session_id, e.event_time");
+    HOT_QUERIES.put("pathEdges", "select lag(e.event_name) over (partition by e.session_id order by e.event_time), e.event_name "
+        + "from event e where e.app_id = 7 and " + range);
+    HOT_QUERIES.put("latestByApp", "select * from event e where e.app_id = 7 order by e.event_time desc limit 1");
+    HOT_QUERIES.put("pageByApp", "select * from event e where e.app_id = 7 order by e.event_time desc, e.id desc limit 20");
+    HOT_QUERIES.put("pageByAppAndEventName", "select * from event e where e.app_id = 7 and e.event_name = 'click' "
+        + "order by e.event_time desc, e.id desc limit 20");
+    HOT_QUERIES.put("cursorPage", "select * from event e where e.app_id = 7 and e.event_time <= now() - interval '3 day' "
+        + "and (e.event_time < now() - interval '3 day' or e.id < 100000) order by e.event_time desc, e.id desc limit 21");
+    HOT_QUERIES.put("distinctUsers", "select count(distinct e.user_id) from event e where e.app_id = 7 and e.user_id is not null");
+    HOT_QUERIES.put("onlineUsers", "select count(distinct e.user_id) from event e where e.app_id = 7 and e.user_id is not null "
+        + "and e.event_time >= now() - interval '1 minute'");
+    HOT_QUERIES.put("segmentByDevice", "select coalesce(e.device, 'unknown') as key, count(*) from event e "
+        + "where e.app_id = 7 and e.event_name = 'click' group by key");
+  }
+
+  @BeforeEach
+  void seed() {
+    // 100 个应用 x 600 条，事件时间分布在最近30天，约三成匿名
+    jdbcTemplate.execute("insert into event (event_name, user_id, properties, app_id, device, event_time, create_time, update_time) "
+        + "select (array['view','click','pay','login','logout','search','share','like','scroll','exit'])[1 + g % 10], "
+        + "       case when g % 3 = 0 then null else (g % 500) end, "
+        + "       '{}', 1 + (g % 100), (array['Desktop','Mobile','Tablet'])[1 + g % 3], "
+        + "       now() - (g % 43200) * interval '1 minute', now(), now() "
+        + "from generate_series(1, 60000) g");
+    jdbcTemplate.execute("analyze event");
+  }
+
+  @Test
+  @DisplayName("Hot event queries should not fall back to a sequential scan")
+  void hotQueriesShouldUseIndexes() throws Exception {
+    SoftAssertions softly = new SoftAssertions();
+    for (Map.Entry<String, String> entry : HOT_QUERIES.entrySet()) {
+      String plan = jdbcTemplate.queryForObject("explain (format json) " + entry.getValue(), String.class);
+      List<String> seqScans = new ArrayList<>();
+      collectSeqScans(MAPPER.readTree(plan).path(0).path("Plan"), seqScans);
+      softly.assertThat(seqScans)
+          .as("%s should not seq scan event, plan: %s", entry.getKey(), plan)
+          .isEmpty();
+    }
+    softly.assertAll();
+  }
+
+  @Test
+  @DisplayName("Redundant single-column indexes should be gone and composite ones present")
+  void indexSetShouldMatchWorkload() {
+    List<String> indexes = jdbcTemplate.queryForList(
+        "select indexname from pg_indexes where tablename = 'event'", String.class);
+    SoftAssertions softly = new SoftAssertions();
+    softly.assertThat(indexes).contains("ix_event_app_name_time", "ix_event_app_time_id",
+        "ix_event_app_user_time", "brin_event_event_time", "ix_event_session_id");
+    softly.assertThat(indexes).doesNotContain("ix_event_tenant_id", "ix_event_event_name", "ix_event_event_time");
+    softly.assertAll();
+  }
+
+  private static void collectSeqScans(JsonNode node, List<String> out) {
+    if ("Seq Scan".equals(node.path("Node Type").asText()) && "event".equals(node.path("Relation Name").asText())) {
+      out.add(node.path("Filter").asText());
+    }
+    for (JsonNode child : node.path("Plans")) {
+      collectSeqScans(child, out);
+    }
+  }
+}
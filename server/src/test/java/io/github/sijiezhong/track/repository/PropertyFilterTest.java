@@ -0,0 +1,58 @@
+package io.github.sijiezhong.track.repository;
+
+import io.github.sijiezhong.track.exception.BusinessException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for PropertyFilter.
+ */
+public class PropertyFilterTest {
+
+    @Test
+    @DisplayName("Empty input should produce no conditions")
+    void shouldBeEmpty() {
+        assertThat(PropertyFilter.parse(null)).isSameAs(PropertyFilter.NONE);
+        assertThat(PropertyFilter.parse(List.of(" "))).isSameAs(PropertyFilter.NONE);
+        assertThat(PropertyFilter.NONE.toSpecification()).isNull();
+    }
+
+    @Test
+    @DisplayName("Each condition should become a jsonb containment on a nested document")
+    void shouldRenderContainment() {
+        StringBuilder sql = new StringBuilder();
+        List<Object> args = new ArrayList<>();
+        PropertyFilter.parse(List.of("plan:pro", "page.url:/home")).appendSql("e", sql, args);
+
+        assertThat(sql.toString()).isEqualTo(" and (e.properties @> ?::jsonb) and (e.properties @> ?::jsonb)");
+        assertThat(args).containsExactly("{\"plan\":\"pro\"}", "{\"page\":{\"url\":\"/home\"}}");
+    }
+
+    @Test
+    @DisplayName("Numeric and boolean values should also match their JSON typed form")
+    void shouldMatchTypedValues() {
+        StringBuilder sql = new StringBuilder();
+        List<Object> args = new ArrayList<>();
+        PropertyFilter.parse(List.of("n:42", "vip:true", "code:007")).appendSql("e", sql, args);
+
+        assertThat(args).containsExactly(
+                "{\"n\":\"42\"}", "{\"n\":42}",
+                "{\"vip\":\"true\"}", "{\"vip\":true}",
+                "{\"code\":\"007\"}");
+        assertThat(sql.toString()).contains("(e.properties @> ?::jsonb or e.properties @> ?::jsonb)");
+    }
+
+    @Test
+    @DisplayName("Malformed conditions and paths should be rejected")
+    void shouldRejectMalformed() {
+        assertThatThrownBy(() -> PropertyFilter.parse(List.of("plan"))).isInstanceOf(BusinessException.class);
+        assertThatThrownBy(() -> PropertyFilter.parse(List.of("a..b:1"))).isInstanceOf(BusinessException.class);
+        assertThatThrownBy(() -> PropertyFilter.parsePath("")).isInstanceOf(BusinessException.class);
+    }
+}
@@ -0,0 +1,71 @@
+package io.github.sijiezhong.track.retention;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IntBitmapTest {
+
+    @Test
+    @DisplayName("Should behave like a set for sparse, dense and unordered values")
+    void should_MatchHashSet() {
+        Random random = new Random(42);
+        IntBitmap bitmap = new IntBitmap();
+        Set<Integer> expected = new HashSet<>();
+        // dense block that turns into a bitmap container, sparse values across buckets, negatives as unsigned
+        for (int i = 0; i < 10_000; i++) add(bitmap, expected, 70_000 + random.nextInt(8_000));
+        for (int i = 0; i < 2_000; i++) add(bitmap, expected, random.nextInt());
+        add(bitmap, expected, -1);
+        add(bitmap, expected, 0);
+
+        assertThat(bitmap.cardinality()).isEqualTo(expected.size());
+        for (int v : expected) assertThat(bitmap.contains(v)).isTrue();
+        assertThat(bitmap.contains(70_000 - 1)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should count intersections across array and bitmap containers")
+    void should_CountIntersection() {
+        Random random = new Random(7);
+        IntBitmap dense = new IntBitmap();
+        IntBitmap sparse = new IntBitmap();
+        IntBitmap denseToo = new IntBitmap();
+        Set<Integer> a = new HashSet<>();
+        Set<Integer> b = new HashSet<>();
+        Set<Integer> c = new HashSet<>();
+        for (int i = 0; i < 30_000; i++) add(dense, a, random.nextInt(200_000));
+        for (int i = 0; i < 500; i++) add(sparse, b, random.nextInt(200_000));
+        for (int i = 0; i < 30_000; i++) add(denseToo, c, random.nextInt(200_000));
+
+        assertThat(dense.andCardinality(sparse)).isEqualTo(intersection(a, b));
+        assertThat(sparse.andCardinality(dense)).isEqualTo(intersection(a, b));
+        assertThat(dense.andCardinality(denseToo)).isEqualTo(intersection(a, c));
+        assertThat(sparse.andCardinality(new IntBitmap())).isZero();
+    }
+
+    @Test
+    @DisplayName("Should switch to a fixed-size bitmap only after the array limit")
+    void should_SwitchContainer_AfterArrayLimit() {
+        IntBitmap bitmap = new IntBitmap();
+        for (int i = 0; i < IntBitmap.ARRAY_MAX; i++) bitmap.add(i * 2);
+        assertThat(bitmap.sizeInBytes()).isLessThan(IntBitmap.ARRAY_MAX * 2L + 16);
+
+        bitmap.add(1);
+        assertThat(bitmap.sizeInBytes()).isEqualTo(8192 + 2);
+        assertThat(bitmap.cardinality()).isEqualTo(IntBitmap.ARRAY_MAX + 1);
+    }
+
+    private static void add(IntBitmap bitmap, Set<Integer> set, int value) {
+        bitmap.add(value);
+        set.add(value);
+    }
+
+    private static long intersection(Set<Integer> a, Set<Integer> b) {
+        return a.stream().filter(b::contains).count();
+    }
+}
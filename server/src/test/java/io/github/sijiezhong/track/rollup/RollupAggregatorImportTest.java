@@ -0,0 +1,222 @@
+package io.github.sijiezhong.track.rollup;
+
+import io.github.sijiezhong.track.config.RollupProperties;
+import io.github.sijiezhong.track.importer.ImportBarrier;
+import io.github.sijiezhong.track.importer.ImportStagingStore;
+import io.github.sijiezhong.track.repository.EventRepository;
+import io.github.sijiezhong.track.testsupport.PostgresTestBase;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static io.github.sijiezhong.track.testsupport.TestConstants.DEFAULT_TENANT_ID;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the rollup aggregator while a bulk import merge is still in flight.
+ */
+public class RollupAggregatorImportTest extends PostgresTestBase {
+
+    private static final LocalDateTime HISTORY = LocalDateTime.of(2024, 3, 1, 12, 0);
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ImportStagingStore stagingStore;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    private RollupAggregator aggregator;
+
+    private RollupQueryRouter router;
+
+    @BeforeEach
+    void createAggregator() {
+        RollupProperties properties = new RollupProperties();
+        properties.setEnabled(false);
+        properties.setSettleMs(0);
+        aggregator = new RollupAggregator(jdbcTemplate, transactionManager, properties, null);
+        RollupProperties routed = new RollupProperties();
+        routed.setEnabled(true);
+        router = new RollupQueryRouter(jdbcTemplate, eventRepository, routed);
+    }
+
+    @Test
+    @DisplayName("Should hold the importing app behind an uncommitted chunk and catch it up once the chunk commits")
+    void should_WaitForImportChunk() throws Exception {
+        insertEvent("page_view", HISTORY);
+        insertEvent("page_view", HISTORY.plusHours(1));
+        assertThat(aggregator.aggregateBatch(100)).isEqualTo(2);
+
+        try (Connection merge = dataSource.getConnection()) {
+            merge.setAutoCommit(false);
+            try (PreparedStatement enter = merge.prepareStatement(ImportBarrier.ENTER_SQL)) {
+                enter.setInt(1, DEFAULT_TENANT_ID);
+                enter.execute();
+            }
+            // the chunk started long before the settle window and allocates lower ids than the live event below
+            try (PreparedStatement ps = merge.prepareStatement("insert into event (event_name, app_id, event_time, "
+                    + "create_time, update_time) select 'imported', ?, ?, ?, ? from generate_series(1, 5)")) {
+                Timestamp old = Timestamp.valueOf(LocalDateTime.now().minusHours(1));
+                ps.setInt(1, DEFAULT_TENANT_ID);
+                ps.setTimestamp(2, Timestamp.valueOf(HISTORY.minusDays(10)));
+                ps.setTimestamp(3, old);
+                ps.setTimestamp(4, old);
+                ps.executeUpdate();
+            }
+            insertEvent("page_view", LocalDateTime.now());
+
+            assertThat(aggregator.aggregateBatch(100)).isEqualTo(1);
+            assertThat(watermark()).isEqualTo(maxEventId());
+            assertThat(lag(DEFAULT_TENANT_ID)).isEqualTo(2L);
+            assertThat(rolledUpCounts()).extracting(r -> r.get("cnt")).containsExactly(2L);
+            assertThat(hourly(router.aggregateByHour(DEFAULT_TENANT_ID, "page_view")))
+                    .isEqualTo(hourly(eventRepository.aggregateByHour(DEFAULT_TENANT_ID, "page_view")));
+
+            merge.commit();
+        }
+
+        drain();
+        assertThat(lag(DEFAULT_TENANT_ID)).isNull();
+        assertThat(watermark()).isEqualTo(maxEventId());
+        assertThat(rolledUpCounts()).isEqualTo(rawCounts());
+        assertThat(jdbcTemplate.queryForObject(
+                "select version from event_history_version where app_id = ?", Long.class, DEFAULT_TENANT_ID))
+                .isEqualTo(jdbcTemplate.queryForObject(
+                        "select max(id) from event where event_name = 'imported'", Long.class));
+    }
+
+    @Test
+    @DisplayName("Should keep rolling up other apps while one app's import chunk is uncommitted")
+    void should_AdvanceOtherApps_While_OneAppImports() throws Exception {
+        int other = DEFAULT_TENANT_ID + 1;
+        insertEvent("page_view", HISTORY);
+        try (Connection merge = dataSource.getConnection()) {
+            merge.setAutoCommit(false);
+            try (PreparedStatement enter = merge.prepareStatement(ImportBarrier.ENTER_SQL)) {
+                enter.setInt(1, DEFAULT_TENANT_ID);
+                enter.execute();
+            }
+            try (PreparedStatement ps = merge.prepareStatement("insert into event (event_name, app_id, event_time, "
+                    + "create_time, update_time) select 'imported', ?, ?, now(), now() from generate_series(1, 5)")) {
+                ps.setInt(1, DEFAULT_TENANT_ID);
+                ps.setTimestamp(2, Timestamp.valueOf(HISTORY.minusDays(10)));
+                ps.executeUpdate();
+            }
+            for (int i = 0; i < 3; i++) {
+                jdbcTemplate.update("insert into event (event_name, app_id, event_time, create_time, update_time) "
+                        + "values ('click', ?, ?, now(), now())", other, HISTORY.minusDays(1));
+            }
+
+            aggregator.aggregateBatch(100);
+
+            assertThat(watermark()).isEqualTo(maxEventId());
+            assertThat(lag(DEFAULT_TENANT_ID)).isZero();
+            assertThat(lag(other)).isNull();
+            assertThat(jdbcTemplate.queryForObject("select sum(cnt) from event_rollup_hourly "
+                    + "where app_id = ? and event_name = 'click' and dim = 'all'", Long.class, other)).isEqualTo(3L);
+            assertThat(jdbcTemplate.queryForObject("select count(*) from event_rollup_hourly where app_id = ?",
+                    Long.class, DEFAULT_TENANT_ID)).isZero();
+            assertThat(hourly(router.aggregateByHour(DEFAULT_TENANT_ID, "page_view")))
+                    .isEqualTo(hourly(eventRepository.aggregateByHour(DEFAULT_TENANT_ID, "page_view")));
+
+            merge.commit();
+        }
+
+        drain();
+        assertThat(lag(DEFAULT_TENANT_ID)).isNull();
+        assertThat(rolledUpCounts()).isEqualTo(rawCounts());
+    }
+
+    @Test
+    @DisplayName("Should report a merge chunk as in flight from before its insert until it commits")
+    void should_EnterBarrierInMergeChunk() throws Exception {
+        String table = "import_stage_rollupbarriertest";
+        stagingStore.drop(table);
+        stagingStore.create(table);
+        try {
+            jdbcTemplate.update("insert into " + table + " (line_no, event_name, event_time) "
+                    + "select g, 'imported', ? from generate_series(1, 3) g", HISTORY);
+
+            CompletableFuture<Integer> merged;
+            try (Connection blocker = dataSource.getConnection()) {
+                blocker.setAutoCommit(false);
+                try (Statement st = blocker.createStatement()) {
+                    st.execute("lock table " + table + " in access exclusive mode");
+                }
+                // the chunk enters the barrier, then waits on the staging table before allocating any id
+                merged = CompletableFuture.supplyAsync(() -> stagingStore.mergeChunk(table, DEFAULT_TENANT_ID, 1, 4));
+                long deadline = System.currentTimeMillis() + 5000;
+                while (!merging(DEFAULT_TENANT_ID) && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(20);
+                }
+                assertThat(merging(DEFAULT_TENANT_ID)).isTrue();
+                assertThat(merging(DEFAULT_TENANT_ID + 1)).isFalse();
+                assertThat(merged).isNotDone();
+                blocker.commit();
+            }
+
+            assertThat(merged.get(10, TimeUnit.SECONDS)).isEqualTo(3);
+            assertThat(merging(DEFAULT_TENANT_ID)).isFalse();
+            assertThat(aggregator.aggregateBatch(100)).isEqualTo(3);
+        } finally {
+            stagingStore.drop(table);
+        }
+    }
+
+    private void drain() {
+        while (aggregator.aggregateBatch(100) > 0) {
+            // catch up
+        }
+    }
+
+    private Long lag(int appId) {
+        return jdbcTemplate.query("select last_event_id from event_rollup_lag where name = ? and app_id = ?",
+                rs -> rs.next() ? rs.getLong(1) : null, RollupAggregator.STATE_NAME, appId);
+    }
+
+    private static List<String> hourly(List<Object[]> rows) {
+        return rows.stream().map(r -> r[0] + "=" + ((Number) r[1]).longValue()).toList();
+    }
+
+    private boolean merging(int appId) {
+        return jdbcTemplate.queryForObject(ImportBarrier.MERGING_SQL, Boolean.class, appId);
+    }
+
+    private void insertEvent(String name, LocalDateTime eventTime) {
+        jdbcTemplate.update("insert into event (event_name, app_id, event_time, create_time, update_time) "
+                + "values (?, ?, ?, now(), now())", name, DEFAULT_TENANT_ID, eventTime);
+    }
+
+    private long watermark() {
+        return jdbcTemplate.queryForObject(RollupAggregator.WATERMARK_SQL, Long.class, RollupAggregator.STATE_NAME);
+    }
+
+    private long maxEventId() {
+        return jdbcTemplate.queryForObject("select max(id) from event", Long.class);
+    }
+
+    private List<Map<String, Object>> rolledUpCounts() {
+        return jdbcTemplate.queryForList("select app_id, event_name, sum(cnt)::bigint as cnt from event_rollup_hourly "
+                + "where dim = 'all' group by app_id, event_name order by app_id, event_name");
+    }
+
+    private List<Map<String, Object>> rawCounts() {
+        return jdbcTemplate.queryForList("select app_id, event_name, count(*) as cnt from event "
+                + "group by app_id, event_name order by app_id, event_name");
+    }
+}
@@ -0,0 +1,58 @@
+package io.github.sijiezhong.track.rollup;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RollupQueryRouterTest {
+
+    @Test
+    @DisplayName("Should round up to the next hour unless already on the hour")
+    void should_CeilHour() {
+        assertThat(RollupQueryRouter.ceilHour(LocalDateTime.of(2024, 1, 1, 10, 0)))
+                .isEqualTo(LocalDateTime.of(2024, 1, 1, 10, 0));
+        assertThat(RollupQueryRouter.ceilHour(LocalDateTime.of(2024, 1, 1, 10, 0, 0, 1000)))
+                .isEqualTo(LocalDateTime.of(2024, 1, 1, 11, 0));
+        assertThat(RollupQueryRouter.ceilHour(LocalDateTime.of(2024, 1, 1, 23, 30)))
+                .isEqualTo(LocalDateTime.of(2024, 1, 2, 0, 0));
+    }
+
+    @Test
+    @DisplayName("Should split a bounded range into rollup buckets, both raw edges and the raw tail")
+    void should_SplitBoundedRange() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 10, 15);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 3, 8, 45);
+        LocalDateTime lo = LocalDateTime.of(2024, 1, 1, 11, 0);
+        LocalDateTime hi = LocalDateTime.of(2024, 1, 3, 8, 0);
+        List<Object> args = new ArrayList<>();
+
+        String sql = RollupQueryRouter.dailySql(7, "pv", start, end, lo, hi, args);
+
+        assertThat(sql).contains("from event_rollup_hourly r").contains("r.bucket >= ?").contains("r.bucket < ?");
+        assertThat(sql.split("union all")).hasSize(4);
+        assertThat(sql).contains("e.id > coalesce((select l.last_event_id from event_rollup_lag l");
+        assertThat(args).containsExactly(
+                7, "pv", lo, hi,
+                7, "pv", start, lo,
+                7, "pv", hi, end,
+                7, "pv", 7, lo, hi);
+        assertThat(sql.chars().filter(c -> c == '?').count()).isEqualTo(args.size());
+    }
+
+    @Test
+    @DisplayName("Should read all buckets and only the raw tail when the range is unbounded")
+    void should_ReadRollupAndTail_When_Unbounded() {
+        List<Object> args = new ArrayList<>();
+
+        String sql = RollupQueryRouter.dailySql(7, "pv", null, null, null, null, args);
+
+        assertThat(sql.split("union all")).hasSize(2);
+        assertThat(sql).doesNotContain("r.bucket >=").doesNotContain("e.event_time >=").doesNotContain("e.event_time <");
+        assertThat(args).containsExactly(7, "pv", 7, "pv", 7);
+    }
+}
@@ -0,0 +1,62 @@
+package io.github.sijiezhong.track.sketch;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HyperLogLogTest {
+
+    @Test
+    @DisplayName("Should estimate small and large cardinalities within a few standard errors")
+    void should_EstimateWithinErrorBound() {
+        assertThat(new HyperLogLog().estimate()).isZero();
+        for (int n : new int[]{1, 100, 5_000, 40_000, 1_000_000}) {
+            HyperLogLog hll = new HyperLogLog();
+            for (int i = 0; i < n; i++) {
+                hll.add(i);
+                hll.add(i);
+            }
+            double error = Math.abs(hll.estimate() - n) / (double) n;
+            assertThat(error).as("n=%d", n).isLessThan(3 * HyperLogLog.relativeStandardError());
+        }
+    }
+
+    @Test
+    @DisplayName("Should give the same sketch for a union as for adding everything to one sketch")
+    void should_MergeLikeUnion() {
+        Random random = new Random(11);
+        HyperLogLog a = new HyperLogLog();
+        HyperLogLog b = new HyperLogLog();
+        HyperLogLog all = new HyperLogLog();
+        for (int i = 0; i < 200_000; i++) {
+            int v = random.nextInt(150_000);
+            (i % 2 == 0 ? a : b).add(v);
+            all.add(v);
+        }
+        a.merge(b);
+        assertThat(a).isEqualTo(all);
+
+        a.merge(b);
+        assertThat(a).isEqualTo(all);
+    }
+
+    @Test
+    @DisplayName("Should round-trip through the sparse and dense encodings")
+    void should_RoundTripBothEncodings() {
+        HyperLogLog sparse = new HyperLogLog();
+        for (int i = 0; i < 300; i++) sparse.add(i);
+        byte[] sparseBytes = sparse.toBytes();
+        assertThat(sparseBytes.length).isLessThan(1_000);
+        assertThat(HyperLogLog.fromBytes(sparseBytes)).isEqualTo(sparse);
+
+        HyperLogLog dense = new HyperLogLog();
+        for (int i = 0; i < 100_000; i++) dense.add(i);
+        byte[] denseBytes = dense.toBytes();
+        assertThat(denseBytes).hasSize(1 + HyperLogLog.M * 6 / 8);
+        assertThat(HyperLogLog.fromBytes(denseBytes)).isEqualTo(dense);
+        assertThat(HyperLogLog.fromBytes(denseBytes).estimate()).isEqualTo(dense.estimate());
+    }
+}
@@ -0,0 +1,212 @@
+package io.github.sijiezhong.track.sketch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.sijiezhong.track.config.SketchProperties;
+import io.github.sijiezhong.track.importer.ImportBarrier;
+import io.github.sijiezhong.track.testsupport.PostgresTestBase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+
+import static io.github.sijiezhong.track.testsupport.TestConstants.DEFAULT_TENANT_ID;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Checks user sketch aggregation and estimates against exact distinct counts computed straight from the event table.
+ */
+@AutoConfigureMockMvc
+public class UserSketchIntegrationTest extends PostgresTestBase {
+
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 1);
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private UserSketchService userSketchService;
+
+    @Autowired
+    private SketchProperties sketchProperties;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private UserSketchAggregator aggregator;
+
+    @BeforeEach
+    void createAggregator() {
+        SketchProperties properties = new SketchProperties();
+        properties.setEnabled(false);
+        properties.setSettleMs(0);
+        aggregator = new UserSketchAggregator(jdbcTemplate, transactionManager, properties, null);
+        userSketchService.clearCache();
+    }
+
+    @AfterEach
+    void disableSketches() {
+        sketchProperties.setEnabled(false);
+    }
+
+    @Test
+    @DisplayName("Should estimate bounded and unbounded ranges from sketches plus the raw tail past the watermark")
+    void should_MatchExactCounts_WithSketchesAndTail() {
+        insertEvents(1, 1000, 200);
+        drain();
+        // not aggregated yet: only the raw tail past the watermark sees users 200..259
+        insertEvents(1001, 1100, 260);
+
+        assertEstimates();
+        assertThat(jdbcTemplate.queryForObject("select count(*) from event_user_sketch_total", Long.class)).isPositive();
+
+        drain();
+        assertEstimates();
+    }
+
+    @Test
+    @DisplayName("Should fall back to day sketches and seed the all-time sketch when it is missing")
+    void should_SeedMissingTotalSketch() {
+        insertEvents(1, 1000, 200);
+        drain();
+        jdbcTemplate.update("delete from event_user_sketch_total");
+
+        assertThat(userSketchService.estimate(DEFAULT_TENANT_ID, null, null, null, null, null))
+                .isCloseTo(exact("true"), within(2L));
+
+        jdbcTemplate.update("insert into event (event_name, app_id, user_id, browser, event_time, create_time, update_time) "
+                + "values ('page_view', ?, 999, 'Chrome', ?, now(), now())", DEFAULT_TENANT_ID, DAY.atTime(9, 0));
+        drain();
+
+        byte[] total = jdbcTemplate.queryForObject("select sketch from event_user_sketch_total "
+                + "where app_id = ? and event_name = '' and dim = 'all'", byte[].class, DEFAULT_TENANT_ID);
+        assertThat(HyperLogLog.fromBytes(total).estimate()).isCloseTo(exact("true"), within(2L));
+        assertThat(userSketchService.estimate(DEFAULT_TENANT_ID, null, null, null, null, null))
+                .isCloseTo(exact("true"), within(2L));
+    }
+
+    @Test
+    @DisplayName("Should hold back only the importing app and catch it up once its merge ends")
+    void should_HoldImportingAppOnly() throws Exception {
+        int other = DEFAULT_TENANT_ID + 1;
+        insertEvents(1, 100, 50);
+        try (Connection merge = dataSource.getConnection()) {
+            merge.setAutoCommit(false);
+            try (PreparedStatement enter = merge.prepareStatement(ImportBarrier.ENTER_SQL)) {
+                enter.setInt(1, DEFAULT_TENANT_ID);
+                enter.execute();
+            }
+            jdbcTemplate.update("insert into event (event_name, app_id, user_id, event_time, create_time, update_time) "
+                    + "select 'click', ?, g, ?, now(), now() from generate_series(1, 30) g", other, DAY.atTime(9, 0));
+
+            assertThat(aggregator.aggregateBatch(1000)).isEqualTo(130);
+            assertThat(jdbcTemplate.queryForObject("select count(*) from event_user_sketch where app_id = ?",
+                    Long.class, DEFAULT_TENANT_ID)).isZero();
+            assertThat(userSketchService.estimate(other, null, null, null, null, null)).isCloseTo(30L, within(1L));
+            assertThat(userSketchService.estimate(DEFAULT_TENANT_ID, null, null, null, null, null))
+                    .isCloseTo(exact("true"), within(2L));
+            merge.commit();
+        }
+        assertThat(aggregator.aggregateBatch(1000)).isEqualTo(100);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from event_rollup_lag", Long.class)).isZero();
+        assertEstimates();
+    }
+
+    @Test
+    @DisplayName("Unique users endpoint and stats should report sketch estimates, or exact counts when sketches are off")
+    void should_ServeUniqueUsersEndpoint() throws Exception {
+        insertEvents(1, 1000, 200);
+        drain();
+        insertEvents(1001, 1050, 230);
+        long clicks = exact("event_name = 'click' and event_time >= '2024-03-02' and event_time < '2024-03-06'");
+
+        sketchProperties.setEnabled(true);
+        JsonNode estimated = uniqueUsers();
+        assertThat(estimated.path("uniqueUsers").asLong()).isCloseTo(clicks, within(2L));
+        assertThat(estimated.path("relativeError").asDouble()).isEqualTo(HyperLogLog.relativeStandardError());
+        JsonNode stats = data(mockMvc.perform(get("/api/v1/events/stats")
+                        .header("X-App-Id", DEFAULT_TENANT_ID)
+                        .header("Authorization", "Bearer role:ADMIN"))
+                .andExpect(status().isOk())
+                .andReturn());
+        assertThat(stats.path("uniqueUsers").asLong()).isCloseTo(exact("true"), within(2L));
+
+        sketchProperties.setEnabled(false);
+        JsonNode counted = uniqueUsers();
+        assertThat(counted.path("uniqueUsers").asLong()).isEqualTo(clicks);
+        assertThat(counted.path("relativeError").asDouble()).isZero();
+    }
+
+    private JsonNode uniqueUsers() throws Exception {
+        return data(mockMvc.perform(get("/api/v1/events/stats/unique-users")
+                        .header("X-App-Id", DEFAULT_TENANT_ID)
+                        .header("Authorization", "Bearer role:ADMIN")
+                        .param("startDate", "2024-03-02")
+                        .param("endDate", "2024-03-05")
+                        .param("eventName", "click"))
+                .andExpect(status().isOk())
+                .andReturn());
+    }
+
+    private JsonNode data(MvcResult result) throws Exception {
+        return objectMapper.readTree(result.getResponse().getContentAsString()).path("data");
+    }
+
+    private void assertEstimates() {
+        assertEstimate(null, null, null, null, null, "true");
+        assertEstimate(DAY.plusDays(1), DAY.plusDays(4), null, null, null,
+                "event_time >= '2024-03-02' and event_time < '2024-03-06'");
+        assertEstimate(null, null, "click", null, null, "event_name = 'click'");
+        assertEstimate(DAY, DAY.plusDays(9), null, "browser", "unknown",
+                "browser is null and event_time >= '2024-03-01' and event_time < '2024-03-11'");
+        assertEstimate(null, null, "page_view", "browser", "Chrome", "event_name = 'page_view' and browser = 'Chrome'");
+        assertEstimate(null, DAY.plusDays(2), null, "os", "unknown", "os is null and event_time < '2024-03-04'");
+    }
+
+    private void assertEstimate(LocalDate startDay, LocalDate endDay, String eventName, String dim, String dimValue,
+                                String where) {
+        long expected = exact(where);
+        assertThat(expected).isPositive();
+        assertThat(userSketchService.estimate(DEFAULT_TENANT_ID, startDay, endDay, eventName, dim, dimValue))
+                .as("%s .. %s, event=%s, %s=%s", startDay, endDay, eventName, dim, dimValue)
+                .isCloseTo(expected, within(Math.max(2L, expected / 50)));
+    }
+
+    private long exact(String where) {
+        return jdbcTemplate.queryForObject("select count(distinct user_id) from event where app_id = ? and "
+                + "user_id is not null and (" + where + ")", Long.class, DEFAULT_TENANT_ID);
+    }
+
+    /**
+     * Events from...to spread over eleven days, a third of them clicks, every other one from Chrome,
+     * with user ids cycling below {@code users}; every seventh event is anonymous.
+     */
+    private void insertEvents(int from, int to, int users) {
+        jdbcTemplate.update("insert into event (event_name, app_id, user_id, browser, event_time, create_time, update_time) "
+                + "select case when g % 3 = 0 then 'click' else 'page_view' end, ?, "
+                + "case when g % 7 = 0 then null else g % ? end, case when g % 2 = 0 then 'Chrome' end, "
+                + "? + (g % 11) * interval '1 day' + (g % 24) * interval '1 hour', now(), now() "
+                + "from generate_series(?, ?) g", DEFAULT_TENANT_ID, users, DAY.atStartOfDay(), from, to);
+    }
+
+    private void drain() {
+        while (aggregator.aggregateBatch(300) > 0) {
+            // catch up
+        }
+    }
+}
@@ -1,13 +1,25 @@
 package io.github.sijiezhong.track.stream;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.sijiezhong.track.config.SseProperties;
 import io.github.sijiezhong.track.domain.Event;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -35,6 +47,443 @@ public class EventStreamBroadcasterTest {
         }
     }
 
+    /**
+     * Emitter that blocks on its first write until released, simulating a slow client.
+     */
+    static class SlowEmitter extends SseEmitter {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch firstWriteStarted = new CountDownLatch(1);
+        final List<String> written = new CopyOnWriteArrayList<>();
+        SlowEmitter() { super(60_000L); }
+        @Override
+        public void send(@org.springframework.lang.NonNull Set<ResponseBodyEmitter.DataWithMediaType> items) throws IOException {
+            firstWriteStarted.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            written.add(items.stream().map(d -> String.valueOf(d.getData())).collect(Collectors.joining()));
+        }
+    }
+
+    /**
+     * Emitter that records every frame written by the dispatcher.
+     */
+    static class FrameRecordingEmitter extends SseEmitter {
+        final List<String> written = new CopyOnWriteArrayList<>();
+        FrameRecordingEmitter() { super(60_000L); }
+        @Override
+        public void send(@org.springframework.lang.NonNull Set<ResponseBodyEmitter.DataWithMediaType> items) {
+            written.add(items.stream().map(d -> String.valueOf(d.getData())).collect(Collectors.joining()));
+        }
+    }
+
+    private static void awaitSize(List<?> list, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (list.size() < size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static Event event(long id, String name) {
+        Event e = new Event();
+        e.setId(id);
+        e.setEventName(name);
+        e.setEventTime(LocalDateTime.now());
+        return e;
+    }
+
+    private static SseProperties props(int capacity, SseProperties.OverflowPolicy policy) {
+        SseProperties p = new SseProperties();
+        p.setQueueCapacity(capacity);
+        p.setOverflowPolicy(policy);
+        p.setDispatcherThreads(1);
+        return p;
+    }
+
+    @Test
+    @DisplayName("Broadcast should return immediately even when a subscriber is blocked")
+    void broadcastShouldNotBlockOnSlowSubscriber() throws Exception {
+        EventStreamBroadcaster b = new EventStreamBroadcaster(props(1024, SseProperties.OverflowPolicy.DROP_OLDEST), null);
+        SlowEmitter slow = new SlowEmitter();
+        b.subscribe(1, slow);
+
+        b.broadcastEvent(1, event(1L, "first"));
+        assertThat(slow.firstWriteStarted.await(2, TimeUnit.SECONDS)).isTrue();
+
+        long start = System.nanoTime();
+        for (int i = 2; i <= 200; i++) {
+            b.broadcastEvent(1, event(i, "e" + i));
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        slow.release.countDown();
+
+        assertThat(elapsedMs).isLessThan(1000);
+        b.shutdown();
+    }
+
+    @Test
+    @DisplayName("DROP_OLDEST keeps the newest frames when a subscriber queue overflows")
+    void dropOldestShouldKeepNewestFrames() throws Exception {
+        EventStreamBroadcaster b = new EventStreamBroadcaster(props(2, SseProperties.OverflowPolicy.DROP_OLDEST), null);
+        SlowEmitter slow = new SlowEmitter();
+        b.subscribe(2, slow);
+
+        b.broadcastEvent(2, event(1L, "in_flight"));
+        assertThat(slow.firstWriteStarted.await(2, TimeUnit.SECONDS)).isTrue();
+        for (int i = 2; i <= 6; i++) {
+            b.broadcastEvent(2, event(i, "e" + i));
+        }
+        slow.release.countDown();
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (slow.written.size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(slow.written).hasSize(3);
+        assertThat(slow.written.get(0)).contains("in_flight");
+        assertThat(slow.written.get(1)).contains("\"e5\"");
+        assertThat(slow.written.get(2)).contains("\"e6\"");
+        assertThat(b.getSubscriberCount(2)).isEqualTo(1);
+        b.shutdown();
+    }
+
+    @Test
+    @DisplayName("DISCONNECT policy removes a subscriber whose queue overflows")
+    void disconnectPolicyShouldRemoveSlowSubscriber() throws Exception {
+        EventStreamBroadcaster b = new EventStreamBroadcaster(props(1, SseProperties.OverflowPolicy.DISCONNECT), null);
+        SlowEmitter slow = new SlowEmitter();
+        b.subscribe(3, slow);
+
+        b.broadcastEvent(3, event(1L, "in_flight"));
+        assertThat(slow.firstWriteStarted.await(2, TimeUnit.SECONDS)).isTrue();
+        b.broadcastEvent(3, event(2L, "queued"));
+        b.broadcastEvent(3, event(3L, "overflow"));
+
+        assertThat(b.getSubscriberCount(3)).isZero();
+        slow.release.countDown();
+        b.shutdown();
+    }
+
+    @Test
+    @DisplayName("BATCH subscribers receive one coalesced events frame per window while RAW receive each event")
+    void batchModeShouldCoalesceEventsIntoOneFrame() throws Exception {
+        SseProperties p = new SseProperties();
+        p.setCoalesceWindowMs(60_000L); // flush manually
+        EventStreamBroadcaster b = new EventStreamBroadcaster(p, null);
+        FrameRecordingEmitter raw = new FrameRecordingEmitter();
+        FrameRecordingEmitter batch1 = new FrameRecordingEmitter();
+        FrameRecordingEmitter batch2 = new FrameRecordingEmitter();
+        b.subscribe(5, StreamMode.RAW, raw);
+        b.subscribe(5, StreamMode.BATCH, batch1);
+        b.subscribe(5, StreamMode.BATCH, batch2);
+
+        b.broadcastEvent(5, event(1L, "a"));
+        b.broadcastEvent(5, event(2L, "b"));
+        b.broadcastEvent(5, event(3L, "c"));
+        b.flushCoalesced();
+
+        awaitSize(raw.written, 3);
+        awaitSize(batch1.written, 1);
+        awaitSize(batch2.written, 1);
+        assertThat(raw.written).hasSize(3);
+        assertThat(batch1.written).hasSize(1);
+        String frame = batch1.written.get(0);
+        assertThat(frame).contains("event:events");
+        assertThat(frame).contains("[{\"id\":1").contains("{\"id\":3");
+        assertThat(batch2.written).containsExactly(frame);
+        b.shutdown();
+    }
+
+    @Test
+    @DisplayName("Coalesced frames are split when exceeding the per-frame event limit")
+    void batchModeShouldSplitLargeWindows() throws Exception {
+        SseProperties p = new SseProperties();
+        p.setCoalesceWindowMs(60_000L);
+        p.setCoalesceMaxEvents(2);
+        EventStreamBroadcaster b = new EventStreamBroadcaster(p, null);
+        FrameRecordingEmitter batch = new FrameRecordingEmitter();
+        b.subscribe(6, StreamMode.BATCH, batch);
+
+        for (int i = 1; i <= 5; i++) {
+            b.broadcastEvent(6, event(i, "e" + i));
+        }
+        b.flushCoalesced();
+
+        awaitSize(batch.written, 3);
+        assertThat(batch.written).hasSize(3);
+        b.shutdown();
+    }
+
+    @Test
+    @DisplayName("Should export connection and queue gauges per app")
+    void shouldExportPerAppGauges() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        EventStreamBroadcaster b = new EventStreamBroadcaster(new SseProperties(), registry);
+        b.subscribe(4, new SlowEmitter());
+        b.subscribe(4, new SlowEmitter());
+
+        assertThat(registry.get("track.sse.connections").tag("appId", "4").gauge().value()).isEqualTo(2.0);
+        assertThat(registry.get("track.sse.queue.depth").tag("appId", "4").gauge()).isNotNull();
+        assertThat(registry.get("track.sse.queue.lag").tag("appId", "4").gauge()).isNotNull();
+        b.shutdown();
+    }
+
+    @Test
+    @DisplayName("Subscribers with equivalent filters should share one group")
+    void equivalentFiltersShouldShareGroup() {
+        EventStreamBroadcaster b = new EventStreamBroadcaster(new SseProperties(), null);
+        StreamFilter clicks = StreamFilter.of(List.of("click"), null, null, null, null, null);
+        StreamFilter sameClicks = StreamFilter.of(List.of(" click "), null, null, null, null, null);
+        b.subscribe(5, StreamMode.RAW, clicks, new FrameRecordingEmitter());
+        b.subscribe(5, StreamMode.RAW, sameClicks, new FrameRecordingEmitter());
+        b.subscribe(5, StreamMode.BATCH, clicks, new FrameRecordingEmitter());
+        b.subscribe(5, new FrameRecordingEmitter());
+
+        assertThat(b.getSubscriberCount(5)).isEqualTo(4);
+        assertThat(b.getGroupCount(5)).isEqualTo(3);
+        b.shutdown();
+    }
+
+    @Test
+    @DisplayName("Filtered subscribers should only receive matching events")
+    void filteredSubscriberShouldOnlyReceiveMatchingEvents() throws Exception {
+        EventStreamBroadcaster b = new EventStreamBroadcaster(props(64, SseProperties.OverflowPolicy.DROP_OLDEST), null);
+        FrameRecordingEmitter filtered = new FrameRecordingEmitter();
+        FrameRecordingEmitter all = new FrameRecordingEmitter();
+        b.subscribe(6, StreamMode.RAW, StreamFilter.of(List.of("click"), null, null, null, null, null), filtered);
+        b.subscribe(6, all);
+
+        b.broadcastEvent(6, event(1L, "click"));
+        b.broadcastEvent(6, event(2L, "view"));
+        b.broadcastEvent(6, event(3L, "click"));
+
+        awaitSize(all.written, 3);
+        awaitSize(filtered.written, 2);
+        assertThat(all.written).hasSize(3);
+        assertThat(filtered.written).hasSize(2);
+        assertThat(filtered.written).allMatch(w -> w.contains("\"eventName\":\"click\""));
+        b.shutdown();
+    }
+
+    private static String dataOf(String frame) {
+        for (String line : frame.split("\n")) {
+            if (line.startsWith("data:")) return line.substring(5);
+        }
+        return null;
+    }
+
+    private static String idOf(String frame) {
+        for (String line : frame.split("\n")) {
+            if (line.startsWith("id:")) return line.substring(3);
+        }
+        return null;
+    }
+
+    @Test
+    @DisplayName("Concurrent ingest should reach every subscriber in event id order")
+    void concurrentBroadcastShouldDeliverInSeqOrder() throws Exception {
+        int threads = 8;
+        int perThread = 250;
+        SseProperties p = props(threads * perThread, SseProperties.OverflowPolicy.DROP_OLDEST);
+        p.setDispatcherThreads(4);
+        p.setCoalesceWindowMs(5);
+        EventStreamBroadcaster b = new EventStreamBroadcaster(p, null);
+        FrameRecordingEmitter raw = new FrameRecordingEmitter();
+        FrameRecordingEmitter batch = new FrameRecordingEmitter();
+        b.subscribe(12, raw);
+        b.subscribe(12, StreamMode.BATCH, batch);
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int base = t * perThread;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    b.broadcastEvent(12, event(base + i, "e"));
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join(5000);
+        }
+
+        awaitSize(raw.written, threads * perThread);
+        List<Long> rawSeqs = seqsOf(raw.written);
+        assertThat(rawSeqs).hasSize(threads * perThread).isSorted().doesNotHaveDuplicates();
+        long deadline = System.currentTimeMillis() + 2000;
+        while (System.currentTimeMillis() < deadline
+                && (batch.written.isEmpty() || !seqsOf(batch.written).contains(rawSeqs.get(rawSeqs.size() - 1)))) {
+            Thread.sleep(10);
+        }
+        assertThat(seqsOf(batch.written)).isSorted().doesNotHaveDuplicates()
+                .endsWith(rawSeqs.get(rawSeqs.size() - 1));
+        b.shutdown();
+    }
+
+    private static List<Long> seqsOf(List<String> frames) {
+        return frames.stream().map(EventStreamBroadcasterTest::idOf).filter(id -> id != null)
+                .map(id -> Long.parseLong(id.substring(id.lastIndexOf('-') + 1))).collect(Collectors.toList());
+    }
+
+    @Test
+    @DisplayName("Reconnecting with Last-Event-ID should replay only the missed events")
+    void shouldReplayMissedEventsOnReconnect() throws Exception {
+        EventStreamBroadcaster b = new EventStreamBroadcaster(props(64, SseProperties.OverflowPolicy.DROP_OLDEST), null);
+        FrameRecordingEmitter first = new FrameRecordingEmitter();
+        b.subscribe(7, first);
+        b.broadcastEvent(7, event(1L, "a"));
+        b.broadcastEvent(7, event(2L, "b"));
+        awaitSize(first.written, 2);
+        String lastId = idOf(first.written.get(0));
+        assertThat(lastId).isNotNull();
+
+        FrameRecordingEmitter resumed = new FrameRecordingEmitter();
+        b.subscribe(7, StreamMode.RAW, StreamFilter.none(), lastId, resumed);
+        b.broadcastEvent(7, event(3L, "c"));
+
+        awaitSize(resumed.written, 2);
+        Thread.sleep(50);
+        assertThat(resumed.written).hasSize(2);
+        assertThat(resumed.written.get(0)).contains("\"eventName\":\"b\"");
+        assertThat(resumed.written.get(1)).contains("\"eventName\":\"c\"");
+        b.shutdown();
+    }
+
+    @Test
+    @DisplayName("Reconnecting with an evicted or foreign Last-Event-ID should signal a gap")
+    void shouldSignalGapWhenReplayIsNotPossible() throws Exception {
+        SseProperties p = props(64, SseProperties.OverflowPolicy.DROP_OLDEST);
+        p.setReplayBufferSize(2);
+        EventStreamBroadcaster b = new EventStreamBroadcaster(p, null);
+        FrameRecordingEmitter first = new FrameRecordingEmitter();
+        b.subscribe(8, first);
+        for (int i = 1; i <= 5; i++) {
+            b.broadcastEvent(8, event(i, "e" + i));
+        }
+        awaitSize(first.written, 5);
+        String evicted = idOf(first.written.get(0));
+
+        FrameRecordingEmitter afterEviction = new FrameRecordingEmitter();
+        b.subscribe(8, StreamMode.RAW, StreamFilter.none(), evicted, afterEviction);
+        FrameRecordingEmitter foreign = new FrameRecordingEmitter();
+        b.subscribe(8, StreamMode.RAW, StreamFilter.none(), "other\"epoch\\-3", foreign);
+
+        awaitSize(afterEviction.written, 1);
+        awaitSize(foreign.written, 1);
+        assertThat(afterEviction.written).hasSize(1);
+        assertThat(afterEviction.written.get(0)).contains("event:gap").contains(idOf(first.written.get(4)));
+        assertThat(foreign.written.get(0)).contains("event:gap");
+        JsonNode gap = new ObjectMapper().readTree(dataOf(foreign.written.get(0)));
+        assertThat(gap.get("lastEventId").asText()).isEqualTo("other\"epoch\\-3");
+        assertThat(gap.get("currentEventId").asText()).isEqualTo(idOf(first.written.get(4)));
+        b.shutdown();
+    }
+
+    /**
+     * In-memory bus shared by several broadcasters, standing in for Redis or Postgres.
+     */
+    static class InMemoryBus implements EventStreamBus {
+        final List<InMemoryBus> peers;
+        final Set<Integer> listening = java.util.concurrent.ConcurrentHashMap.newKeySet();
+        final AtomicInteger published = new AtomicInteger();
+        volatile java.util.function.BiConsumer<Integer, String> handler;
+        InMemoryBus(List<InMemoryBus> peers) { this.peers = peers; peers.add(this); }
+        @Override public void start(java.util.function.BiConsumer<Integer, String> handler) { this.handler = handler; }
+        @Override public void publish(int appId, String message) {
+            published.incrementAndGet();
+            for (InMemoryBus peer : peers) {
+                if (peer.listening.contains(appId)) peer.handler.accept(appId, message);
+            }
+        }
+        @Override public void listen(int appId) { listening.add(appId); }
+        @Override public void unlisten(int appId) { listening.remove(appId); }
+        @Override public int maxMessageBytes() { return 8000; }
+        @Override public void stop() { }
+    }
+
+    @Test
+    @DisplayName("Events ingested on one node should reach subscribers on another node in batches")
+    void shouldRelayEventsAcrossNodes() throws Exception {
+        List<InMemoryBus> peers = new CopyOnWriteArrayList<>();
+        SseProperties p = props(64, SseProperties.OverflowPolicy.DROP_OLDEST);
+        p.getCluster().setFlushIntervalMs(20);
+        InMemoryBus busA = new InMemoryBus(peers);
+        InMemoryBus busB = new InMemoryBus(peers);
+        EventStreamBroadcaster nodeA = new EventStreamBroadcaster(p, null, busA);
+        EventStreamBroadcaster nodeB = new EventStreamBroadcaster(p, null, busB);
+        FrameRecordingEmitter local = new FrameRecordingEmitter();
+        FrameRecordingEmitter remote = new FrameRecordingEmitter();
+        nodeA.subscribe(9, local);
+        nodeB.subscribe(9, StreamMode.RAW, StreamFilter.of(List.of("click"), null, null, null, null, null), remote);
+        assertThat(busB.listening).containsExactly(9);
+
+        for (int i = 1; i <= 10; i++) {
+            nodeA.broadcastEvent(9, event(i, i % 2 == 0 ? "click" : "view"));
+        }
+
+        awaitSize(local.written, 10);
+        awaitSize(remote.written, 5);
+        Thread.sleep(50);
+        assertThat(local.written).hasSize(10);
+        assertThat(remote.written).hasSize(5);
+        assertThat(busA.published.get()).isLessThan(10);
+        nodeA.shutdown();
+        nodeB.shutdown();
+    }
+
+    @Test
+    @DisplayName("Cluster outbox should drop and count events beyond its capacity and oversize events")
+    void clusterOutboxShouldBeBounded() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        SseProperties.Cluster cluster = new SseProperties.Cluster();
+        cluster.setOutboxCapacity(3);
+        InMemoryBus bus = new InMemoryBus(new CopyOnWriteArrayList<>());
+        ClusterRelay relay = new ClusterRelay(bus, cluster, registry);
+
+        for (int i = 1; i <= 5; i++) {
+            relay.offer(1, new StreamEvent((long) i, "e", null, null, null, null, null, "{}", 0L));
+        }
+        assertThat(relay.pendingCount()).isEqualTo(3);
+        assertThat(registry.get("track.sse.cluster.events.dropped").counter().count()).isEqualTo(2.0);
+
+        relay.flush();
+        assertThat(relay.pendingCount()).isZero();
+        assertThat(bus.published.get()).isEqualTo(1);
+
+        String big = "{\"x\":\"" + "a".repeat(8000) + "\"}";
+        relay.offer(1, new StreamEvent(6L, "e", null, null, null, null, null, big, 0L));
+        relay.offer(1, new StreamEvent(7L, "e", null, null, null, null, null, "{}", 0L));
+        relay.flush();
+        assertThat(registry.get("track.sse.cluster.events.oversize").counter().count()).isEqualTo(1.0);
+        assertThat(bus.published.get()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Metrics subscribers should receive snapshots computed from the ingest stream")
+    void metricsSubscriberShouldReceiveSnapshots() throws Exception {
+        EventStreamBroadcaster b = new EventStreamBroadcaster(props(64, SseProperties.OverflowPolicy.DROP_OLDEST), null);
+        FrameRecordingEmitter metrics = new FrameRecordingEmitter();
+        b.subscribeMetrics(10, metrics);
+        b.broadcastEvent(10, event(1L, "click"));
+
+        b.publishMetrics();
+        awaitSize(metrics.written, 1);
+        assertThat(metrics.written.get(0)).contains("event:metrics").contains("\"minute\"").contains("\"activeUsers\"");
+        assertThat(b.getSubscriberCount(10)).isEqualTo(1);
+        b.shutdown();
+    }
+
     @Test
     @DisplayName("Should add emitter when subscribing")
     void subscribeAddsEmitter() {
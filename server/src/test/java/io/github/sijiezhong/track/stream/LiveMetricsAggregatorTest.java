@@ -0,0 +1,82 @@
+package io.github.sijiezhong.track.stream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.sijiezhong.track.domain.Event;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for LiveMetricsAggregator.
+ */
+public class LiveMetricsAggregatorTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    // 2026-01-01T00:00:00Z, aligned to a minute boundary
+    private static final long MINUTE = 1767225600_000L;
+
+    private static StreamEvent event(String name, Integer userId) {
+        Event e = new Event();
+        e.setId(1L);
+        e.setEventName(name);
+        e.setUserId(userId);
+        return StreamEvent.from(e);
+    }
+
+    @Test
+    @DisplayName("Snapshot should report the last complete second and the last 60 complete seconds")
+    void shouldAggregateWindows() throws Exception {
+        LiveMetricsAggregator agg = new LiveMetricsAggregator();
+        agg.record(1, event("click", 1), MINUTE + 1_100);
+        agg.record(1, event("click", 2), MINUTE + 1_900);
+        agg.record(1, event("view", 1), MINUTE + 2_500);
+        agg.record(1, event("view", 3), MINUTE + 3_200); // current, incomplete second
+        agg.record(2, event("view", 9), MINUTE + 2_500); // other app
+
+        JsonNode snap = MAPPER.readTree(agg.snapshot(1, MINUTE + 3_500));
+        assertThat(snap.get("eventsPerSecond").asLong()).isEqualTo(1);
+        assertThat(snap.at("/second/byEventName/view").asLong()).isEqualTo(1);
+        assertThat(snap.at("/minute/total").asLong()).isEqualTo(3);
+        assertThat(snap.at("/minute/byEventName/click").asLong()).isEqualTo(2);
+        assertThat(snap.get("activeUsers").asInt()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Minute window should slide over the last 60 complete seconds and stale users should expire")
+    void shouldSlideMinuteAndExpireUsers() throws Exception {
+        LiveMetricsAggregator agg = new LiveMetricsAggregator();
+        agg.record(1, event("click", 1), MINUTE + 58_000);
+        agg.record(1, event("click", 2), MINUTE + 60_500);
+        agg.record(1, event("view", 2), MINUTE + 61_200); // current, incomplete second
+
+        // crossing the minute boundary keeps the earlier second in the window
+        JsonNode snap = MAPPER.readTree(agg.snapshot(1, MINUTE + 61_500));
+        assertThat(snap.at("/minute/start").asText()).isEqualTo("2026-01-01T00:00:01Z");
+        assertThat(snap.at("/minute/total").asLong()).isEqualTo(2);
+        assertThat(snap.get("activeUsers").asInt()).isEqualTo(2);
+
+        // second 58 has just left the window; the bucket for the current second must not evict second 60
+        agg.record(1, event("view", 3), MINUTE + 119_100);
+        JsonNode later = MAPPER.readTree(agg.snapshot(1, MINUTE + 119_500));
+        assertThat(later.at("/minute/total").asLong()).isEqualTo(2);
+        assertThat(later.at("/minute/byEventName/click").asLong()).isEqualTo(1);
+        assertThat(later.get("activeUsers").asInt()).isEqualTo(2);
+
+        JsonNode full = MAPPER.readTree(agg.snapshot(1, MINUTE + 120_500));
+        assertThat(full.at("/minute/total").asLong()).isEqualTo(3);
+
+        JsonNode slid = MAPPER.readTree(agg.snapshot(1, MINUTE + 121_500));
+        assertThat(slid.at("/minute/total").asLong()).isEqualTo(2);
+        assertThat(slid.at("/minute/byEventName/click").isMissingNode()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Unknown apps should yield an empty snapshot")
+    void shouldReturnEmptySnapshotForUnknownApp() throws Exception {
+        JsonNode snap = MAPPER.readTree(new LiveMetricsAggregator().snapshot(42, MINUTE));
+        assertThat(snap.get("eventsPerSecond").asLong()).isZero();
+        assertThat(snap.get("activeUsers").asInt()).isZero();
+    }
+}
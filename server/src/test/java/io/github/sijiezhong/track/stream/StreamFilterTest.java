@@ -0,0 +1,89 @@
+package io.github.sijiezhong.track.stream;
+
+import io.github.sijiezhong.track.domain.Event;
+import io.github.sijiezhong.track.exception.BusinessException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for StreamFilter.
+ */
+public class StreamFilterTest {
+
+    private static StreamEvent event(long id, String name, String device, String properties) {
+        Event e = new Event();
+        e.setId(id);
+        e.setEventName(name);
+        e.setDevice(device);
+        e.setProperties(properties);
+        return StreamEvent.from(e);
+    }
+
+    @Test
+    @DisplayName("Empty parameters should collapse to the pass-through filter")
+    void emptyParametersShouldBePassThrough() {
+        StreamFilter filter = StreamFilter.of(null, List.of(), null, List.of(" "), null, null);
+        assertThat(filter).isSameAs(StreamFilter.none());
+        assertThat(filter.isPassThrough()).isTrue();
+        assertThat(filter.matches(event(1L, null, null, null))).isTrue();
+    }
+
+    @Test
+    @DisplayName("Equivalent conditions should share one canonical key")
+    void equivalentConditionsShouldShareKey() {
+        StreamFilter a = StreamFilter.of(List.of("click,view"), List.of("Mobile"), null, null, List.of("plan:pro"), null);
+        StreamFilter b = StreamFilter.of(List.of("view", "click"), List.of("mobile"), null, null, List.of(" plan : pro "), null);
+        assertThat(a.key()).isEqualTo(b.key());
+    }
+
+    @Test
+    @DisplayName("Dimensions should be AND-ed and values within a dimension OR-ed")
+    void shouldMatchAcrossDimensions() {
+        StreamFilter filter = StreamFilter.of(List.of("click", "view"), List.of("mobile"), null, null, null, null);
+        assertThat(filter.matches(event(1L, "click", "MOBILE", null))).isTrue();
+        assertThat(filter.matches(event(2L, "view", "mobile", null))).isTrue();
+        assertThat(filter.matches(event(3L, "click", "desktop", null))).isFalse();
+        assertThat(filter.matches(event(4L, "pay", "mobile", null))).isFalse();
+        assertThat(filter.matches(event(5L, null, "mobile", null))).isFalse();
+    }
+
+    @Test
+    @DisplayName("Property predicates should support nested paths")
+    void shouldMatchPropertyPredicates() {
+        StreamFilter filter = StreamFilter.of(null, null, null, null, List.of("plan:pro", "user.level:3"), null);
+        assertThat(filter.matches(event(1L, "e", null, "{\"plan\":\"pro\",\"user\":{\"level\":3}}"))).isTrue();
+        assertThat(filter.matches(event(2L, "e", null, "{\"plan\":\"free\",\"user\":{\"level\":3}}"))).isFalse();
+        assertThat(filter.matches(event(3L, "e", null, "{\"plan\":\"pro\"}"))).isFalse();
+        assertThat(filter.matches(event(4L, "e", null, null))).isFalse();
+        assertThat(filter.matches(event(5L, "e", null, "not json"))).isFalse();
+    }
+
+    @Test
+    @DisplayName("Sampling should be deterministic and close to the requested rate")
+    void samplingShouldBeDeterministic() {
+        StreamFilter filter = StreamFilter.of(null, null, null, null, null, 0.25);
+        int hits = 0;
+        for (long id = 1; id <= 10_000; id++) {
+            boolean first = filter.matches(event(id, "e", null, null));
+            assertThat(filter.matches(event(id, "e", null, null))).isEqualTo(first);
+            if (first) hits++;
+        }
+        assertThat(hits).isBetween(2_200, 2_800);
+    }
+
+    @Test
+    @DisplayName("Invalid parameters should be rejected")
+    void shouldRejectInvalidParameters() {
+        assertThatThrownBy(() -> StreamFilter.of(null, null, null, null, null, 0.0))
+                .isInstanceOf(BusinessException.class);
+        assertThatThrownBy(() -> StreamFilter.of(null, null, null, null, null, 1.5))
+                .isInstanceOf(BusinessException.class);
+        assertThatThrownBy(() -> StreamFilter.of(null, null, null, null, List.of("noColon"), null))
+                .isInstanceOf(BusinessException.class);
+    }
+}
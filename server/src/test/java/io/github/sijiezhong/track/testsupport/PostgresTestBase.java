@@ -99,6 +99,12 @@ public abstract class PostgresTestBase {
     // Disable Flyway auto-migration in all tests - migrations are handled by SharedPostgresContainer
     // This ensures migrations are executed once on container start, not per test class
     registry.add("spring.flyway.enabled", () -> "false");
+    // Tables are truncated between tests, so cached analytics results and decoded user sketches
+    // would leak from one test into the next
+    registry.add("analytics-cache.enabled", () -> "false");
+    registry.add("sketch.enabled", () -> "false");
+    // Background aggregators would race the truncation and the tests that drive them directly
+    registry.add("rollup.enabled", () -> "false");
     // Don't set Redis properties - RedisIdempotencyService is conditionally created
     // only when StringRedisTemplate bean exists. Tests that need Redis should use RedisTestBase.
   }
@@ -133,7 +139,7 @@ public abstract class PostgresTestBase {
         for (int attempt = 0; attempt < maxRetries; attempt++) {
           try {
             transactionTemplate.executeWithoutResult(status -> {
-              jdbcTemplate.execute("TRUNCATE TABLE event, session, audit_log, webhook_subscription, application, users RESTART IDENTITY CASCADE");
+              jdbcTemplate.execute("TRUNCATE TABLE event, session, audit_log, webhook_subscription, application, users, event_rollup_hourly, event_rollup_state, event_rollup_lag, event_user_sketch, event_user_sketch_total, event_history_version RESTART IDENTITY CASCADE");
             });
             // ✅ P0修复：清理后必须验证清理成功
             verifyDatabaseClean();
@@ -176,7 +182,7 @@ public abstract class PostgresTestBase {
         }
       } else {
         // Fallback if TransactionTemplate is not available
-        jdbcTemplate.execute("TRUNCATE TABLE event, session, audit_log, webhook_subscription, application, users RESTART IDENTITY CASCADE");
+        jdbcTemplate.execute("TRUNCATE TABLE event, session, audit_log, webhook_subscription, application, users, event_rollup_hourly, event_rollup_state, event_rollup_lag, event_user_sketch, event_user_sketch_total, event_history_version RESTART IDENTITY CASCADE");
         // ✅ P0修复：验证清理成功
         verifyDatabaseClean();
       }
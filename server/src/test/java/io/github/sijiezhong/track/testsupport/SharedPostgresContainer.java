@@ -10,6 +10,7 @@ import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.Statement;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -167,6 +168,9 @@ public class SharedPostgresContainer {
                 .dataSource(container.getJdbcUrl(), container.getUsername(), container.getPassword())
                 .locations("classpath:db/migration")
                 .baselineOnMigrate(true)
+                // Session-level lock: CREATE INDEX CONCURRENTLY would wait forever on the transaction
+                // that holds Flyway's default transactional advisory lock (same as FlywayConfig)
+                .configuration(Map.of("flyway.postgresql.transactional.lock", "false"))
                 .load();
         
         flyway.migrate();